@@ -0,0 +1,99 @@
+package fr.jazer.benchmark;
+
+import fr.jazer.session.RPacket;
+import fr.jazer.session.SPacket;
+import fr.jazer.session.codec.CodecRegistry;
+import fr.jazer.session.codec.MessageCodec;
+import fr.jazer.session.codec.PacketReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of a small message by its {@link MessageCodec} and by the writers and readers of the packets,
+ * against the same message joined in a String for {@link SPacket#writeString(String)} and split back.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    private static final int TAG = 1000;
+
+    private final CodecRegistry registry = new CodecRegistry();
+    private final Move move = new Move(42, -3, 7, "player-é");
+    private RPacket encoded;
+    private RPacket joined;
+
+    @Setup
+    public void setup() {
+        this.registry.register(TAG, Move.class, MessageCodec.of(
+                (move, out) -> out.writeVarInt(move.id).writeSignedVarInt(move.x).writeSignedVarInt(move.y).writeUtf(move.name),
+                in -> new Move(in.readVarInt(), in.readSignedVarInt(), in.readSignedVarInt(), in.readUtf())));
+        try (final SPacket packet = this.registry.encode(TAG, this.move)) {
+            this.encoded = new RPacket(TAG, packet.getData());
+        }
+        this.joined = new RPacket(TAG, new SPacket(TAG).writeString(join(this.move)).getData());
+    }
+
+    @Benchmark
+    public int encodeCodec() {
+        try (final SPacket packet = this.registry.encode(TAG, this.move)) {
+            return packet.getLength();
+        }
+    }
+
+    @Benchmark
+    public int encodePacket() {
+        try (final SPacket packet = new SPacket(TAG, 32).writeVarInt(this.move.id).writeSignedVarInt(this.move.x)
+                .writeSignedVarInt(this.move.y).writeUtf(this.move.name)) {
+            return packet.getLength();
+        }
+    }
+
+    @Benchmark
+    public int encodeString() {
+        try (final SPacket packet = new SPacket(TAG).writeString(join(this.move))) {
+            return packet.getLength();
+        }
+    }
+
+    @Benchmark
+    public Move decodeCodec() {
+        return this.registry.decode(this.encoded, Move.class);
+    }
+
+    @Benchmark
+    public Move decodePacket() {
+        final PacketReader in = this.encoded.reader();
+        return new Move(in.readVarInt(), in.readSignedVarInt(), in.readSignedVarInt(), in.readUtf());
+    }
+
+    @Benchmark
+    public Move decodeString() {
+        final String[] parts = this.joined.readString().split(";", 4);
+        return new Move(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), parts[3]);
+    }
+
+    private static String join(final Move move) {
+        return move.id + ";" + move.x + ";" + move.y + ";" + move.name;
+    }
+
+    public static class Move {
+
+        final int id;
+        final int x;
+        final int y;
+        final String name;
+
+        Move(final int id, final int x, final int y, final String name) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.name = name;
+        }
+    }
+}
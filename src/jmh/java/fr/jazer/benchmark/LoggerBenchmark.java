@@ -0,0 +1,50 @@
+package fr.jazer.benchmark;
+
+import fr.jazer.logger.Level;
+import fr.jazer.logger.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of {@link Logger#log(String)} when the output of the class is disabled, as for most of the library.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggerBenchmark {
+
+    private Logger logger;
+    private int counter;
+
+    @Setup
+    public void setup() {
+        this.logger = Logger.loggerOfStatic(LoggerBenchmark.class);
+        Logger.setLevel(LoggerBenchmark.class, Level.WARN);
+    }
+
+    @Benchmark
+    public void disabledLog() {
+        this.logger.log("Disabled message " + this.counter++ + ".");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void disabledLogContended() {
+        this.logger.log("Disabled message.");
+    }
+
+    @Benchmark
+    public void disabledPattern() {
+        this.logger.log("Disabled message {}.", this.counter++);
+    }
+
+    @Benchmark
+    public void disabledGuard() {
+        if (this.logger.isEnabled(Level.INFO))
+            this.logger.log("Disabled message " + this.counter++ + ".");
+    }
+}
@@ -0,0 +1,47 @@
+package fr.jazer.benchmark;
+
+import fr.jazer.metrics.Histogram;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cost of the instrumentation of the hot paths under contention : a {@link LongAdder} against a shared {@link AtomicLong},
+ * and a record in a striped {@link Histogram}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    private final LongAdder adder = new LongAdder();
+    private final AtomicLong atomic = new AtomicLong();
+    private final Histogram histogram = new Histogram();
+    private final Histogram unstriped = new Histogram(1);
+
+    @Benchmark
+    public void longAdder() {
+        this.adder.increment();
+    }
+
+    @Benchmark
+    public long atomicLong() {
+        return this.atomic.incrementAndGet();
+    }
+
+    @Benchmark
+    public void histogram() {
+        this.histogram.record(System.nanoTime() & 0xFFFFF);
+    }
+
+    @Benchmark
+    public void unstripedHistogram() {
+        this.unstriped.record(System.nanoTime() & 0xFFFFF);
+    }
+}
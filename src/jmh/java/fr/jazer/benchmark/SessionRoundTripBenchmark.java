@@ -0,0 +1,70 @@
+package fr.jazer.benchmark;
+
+import fr.jazer.session.RPacket;
+import fr.jazer.session.SPacket;
+import fr.jazer.session.Session;
+import fr.jazer.session.SessionServer;
+import fr.jazer.session.stream.DispatchMode;
+import fr.jazer.session.utils.TransportMode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a packet sent by a client {@link Session}, echoed by the server and read back with {@link Session#read(int)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionRoundTripBenchmark {
+
+    private static final int PORT = 5570;
+
+    @Param({"BLOCKING", "NIO"})
+    public TransportMode transport;
+
+    @Param({"16", "1024", "65536"})
+    public int size;
+
+    private SessionServer server;
+    private Session client;
+    private SPacket packet;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        // Packets sent before the listener of the server is added would be queued, wait for it.
+        final CountDownLatch ready = new CountDownLatch(1);
+        this.server = new SessionServer();
+        this.server.addSessionListener(session -> {
+            session.setPacketDispatchMode(DispatchMode.INLINE);
+            session.addPacketListener(1, received -> session.send(new SPacket(2, received.getData())));
+            ready.countDown();
+        });
+        this.server.setPooledPackets(true);
+        this.server.openSession(PORT, this.transport);
+        this.client = new Session();
+        this.client.setPooledPackets(true);
+        this.client.connect("localhost", PORT);
+        ready.await();
+        this.packet = new SPacket(1, new byte[this.size]);
+    }
+
+    @Benchmark
+    public int roundTrip() {
+        this.client.send(this.packet);
+        final RPacket echo = this.client.read(2);
+        final int length = echo.getLength();
+        echo.release();
+        return length;
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.client.destroy();
+        this.server.destroy();
+    }
+}
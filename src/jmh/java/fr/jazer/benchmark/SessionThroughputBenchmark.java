@@ -0,0 +1,72 @@
+package fr.jazer.benchmark;
+
+import fr.jazer.session.SPacket;
+import fr.jazer.session.Session;
+import fr.jazer.session.SessionServer;
+import fr.jazer.session.stream.DispatchMode;
+import fr.jazer.session.utils.TransportMode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Packets per second from a client {@link Session} to a server, each invocation sends a batch and waits until the server received it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionThroughputBenchmark {
+
+    private static final int PORT = 5571;
+    private static final int BATCH = 256;
+
+    @Param({"BLOCKING", "NIO"})
+    public TransportMode transport;
+
+    @Param({"16", "1024", "16384", "262144"})
+    public int size;
+
+    private final AtomicLong received = new AtomicLong();
+    private long sent;
+    private SessionServer server;
+    private Session client;
+    private SPacket packet;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        // Packets sent before the listener of the server is added would be queued, wait for it.
+        final CountDownLatch ready = new CountDownLatch(1);
+        this.server = new SessionServer();
+        this.server.addSessionListener(session -> {
+            session.setPacketDispatchMode(DispatchMode.INLINE);
+            session.addPacketListener(1, packet -> this.received.incrementAndGet());
+            ready.countDown();
+        });
+        this.server.openSession(PORT, this.transport);
+        this.client = new Session();
+        this.client.connect("localhost", PORT);
+        ready.await();
+        this.packet = new SPacket(1, new byte[this.size]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void send() {
+        for (int i = 0; i < BATCH; i++)
+            this.client.send(this.packet);
+        this.sent += BATCH;
+        while (this.received.get() < this.sent)
+            Thread.onSpinWait();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.client.destroy();
+        this.server.destroy();
+    }
+}
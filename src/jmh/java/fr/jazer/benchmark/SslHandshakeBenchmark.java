@@ -0,0 +1,127 @@
+package fr.jazer.benchmark;
+
+import fr.jazer.session.utils.crypted.CertFormat;
+import fr.jazer.session.utils.crypted.ClientCertConfig;
+import fr.jazer.session.utils.crypted.SSLServerSocketKeystoreFactory;
+import fr.jazer.session.utils.crypted.SSLSocketKeystoreFactory;
+import fr.jazer.session.utils.crypted.SecureType;
+import fr.jazer.session.utils.crypted.ServerCertConfig;
+import org.openjdk.jmh.annotations.*;
+
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Secured connections per second, each connection does its TLS handshake and reads one byte of the server.
+ * <p>
+ * NEW_CONTEXT reads the cert and builds a context for each connection, FULL shares the context of a {@link ClientCertConfig}
+ * but forgets the TLS sessions, RESUMED shares the context and resumes the TLS session of the previous connection.
+ * The keystore is generated with the keytool of the running JDK.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SslHandshakeBenchmark {
+
+    private static final int PORT = 5590;
+    private static final String PASSWORD = "benchmark";
+
+    public enum Handshake {
+        NEW_CONTEXT,
+        FULL,
+        RESUMED
+    }
+
+    @Param({"TLSv1_2", "TLSv1_3"})
+    public SecureType protocol;
+
+    @Param({"NEW_CONTEXT", "FULL", "RESUMED"})
+    public Handshake handshake;
+
+    private byte[] keystore;
+    private SSLServerSocket server;
+    private Thread acceptor;
+    private ClientCertConfig clientConfig;
+
+    @Setup
+    public void setup() throws Exception {
+        this.keystore = generateKeystore();
+        final ServerCertConfig serverConfig = new ServerCertConfig(new ByteArrayInputStream(this.keystore), PASSWORD, this.protocol, CertFormat.JKS);
+        this.server = SSLServerSocketKeystoreFactory.getServerSocketWithCert(PORT, serverConfig);
+        this.acceptor = new Thread(this::accept, "SslHandshakeBenchmark-acceptor");
+        this.acceptor.start();
+        this.clientConfig = new ClientCertConfig(new ByteArrayInputStream(this.keystore), PASSWORD, this.protocol, CertFormat.JKS);
+    }
+
+    private void accept() {
+        while (!this.server.isClosed()) {
+            try (Socket socket = this.server.accept()) {
+                socket.setTcpNoDelay(true);
+                socket.getOutputStream().write(1);
+                final InputStream input = socket.getInputStream();
+                while (input.read() != -1) ;
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Benchmark
+    public int connect() throws Exception {
+        final SSLSocketFactory factory = this.handshake == Handshake.NEW_CONTEXT
+                ? SSLSocketKeystoreFactory.getSocketFactory(new ByteArrayInputStream(this.keystore), PASSWORD, this.protocol, CertFormat.JKS)
+                : this.clientConfig.context().getSocketFactory();
+        final int read;
+        try (SSLSocket socket = (SSLSocket) factory.createSocket("localhost", PORT)) {
+            socket.setTcpNoDelay(true);
+            // The byte comes after the session tickets of TLSv1.3, they are received before closing.
+            read = socket.getInputStream().read();
+        }
+        if (this.handshake == Handshake.FULL) {
+            final SSLSessionContext sessions = this.clientConfig.context().getClientSessionContext();
+            for (final byte[] id : Collections.list(sessions.getIds())) {
+                final SSLSession session = sessions.getSession(id);
+                if (session != null)
+                    session.invalidate();
+            }
+        }
+        return read;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.server.close();
+        this.acceptor.join();
+    }
+
+    private static byte[] generateKeystore() throws Exception {
+        final File file = File.createTempFile("jazer-benchmark", ".jks");
+        file.delete();
+        final String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        final Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "benchmark", "-keyalg", "EC", "-groupname", "secp256r1",
+                "-dname", "CN=localhost", "-validity", "1", "-storetype", "JKS", "-keystore", file.getPath(),
+                "-storepass", PASSWORD, "-keypass", PASSWORD)
+                .inheritIO()
+                .start();
+        if (process.waitFor() != 0)
+            throw new IllegalStateException("keytool couldn't generate the keystore.");
+        try {
+            return Files.readAllBytes(file.toPath());
+        } finally {
+            file.delete();
+        }
+    }
+}
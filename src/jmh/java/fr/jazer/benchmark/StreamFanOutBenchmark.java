@@ -0,0 +1,56 @@
+package fr.jazer.benchmark;
+
+import fr.jazer.session.RPacket;
+import fr.jazer.session.stream.DeliveryMode;
+import fr.jazer.session.stream.DispatchMode;
+import fr.jazer.session.stream.PacketVirtualStream;
+import fr.jazer.session.stream.QueueOverflowPolicy;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Values per second emitted with {@link PacketVirtualStream#emitValue(fr.jazer.session.stream.TaggedEntity)} to N receivers of a tag,
+ * each invocation emits a batch and waits until all receivers handled it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamFanOutBenchmark {
+
+    private static final int BATCH = 256;
+
+    @Param({"1", "4", "16"})
+    public int receivers;
+
+    @Param({"PARALLEL", "SERIAL", "INLINE"})
+    public DispatchMode dispatch;
+
+    private final AtomicLong handled = new AtomicLong();
+    private long expected;
+    private PacketVirtualStream<RPacket> stream;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        this.stream = new PacketVirtualStream<>(DeliveryMode.LISTENERS_ONLY, PacketVirtualStream.DEFAULT_QUEUE_CAPACITY, QueueOverflowPolicy.DROP_OLDEST);
+        this.stream.setDispatchMode(this.dispatch);
+        for (int i = 0; i < this.receivers; i++)
+            this.stream.addReceiver(1, packet -> this.handled.incrementAndGet());
+        this.data = new byte[64];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void emitValue() {
+        for (int i = 0; i < BATCH; i++)
+            this.stream.emitValue(new RPacket(1, this.data));
+        this.expected += (long) BATCH * this.receivers;
+        while (this.handled.get() < this.expected)
+            Thread.onSpinWait();
+    }
+}
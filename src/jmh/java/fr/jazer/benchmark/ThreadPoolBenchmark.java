@@ -0,0 +1,63 @@
+package fr.jazer.benchmark;
+
+import fr.jazer.thread_manager.ThreadPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of {@link ThreadPool#exe(Runnable)} : submission alone, and submission until the tasks ran.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThreadPoolBenchmark {
+
+    private static final int BATCH = 256;
+
+    private final AtomicLong done = new AtomicLong();
+    private final Runnable task = this.done::incrementAndGet;
+    private long expected;
+    private ThreadPool pool;
+
+    @Setup
+    public void setup() {
+        this.pool = new ThreadPool(2000);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void exe() {
+        for (int i = 0; i < BATCH; i++)
+            this.pool.exe(this.task);
+        this.expected += BATCH;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void exeAndRun() {
+        for (int i = 0; i < BATCH; i++)
+            this.pool.exe(this.task);
+        this.expected += BATCH;
+        while (this.done.get() < this.expected)
+            Thread.onSpinWait();
+    }
+
+    /**
+     * Let the tasks of an iteration run before the next one, so the queue doesn't grow between iterations.
+     */
+    @TearDown(Level.Iteration)
+    public void drain() {
+        while (this.done.get() < this.expected)
+            Thread.onSpinWait();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.pool.destroy();
+    }
+}
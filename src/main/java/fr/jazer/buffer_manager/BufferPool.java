@@ -0,0 +1,183 @@
+package fr.jazer.buffer_manager;
+
+import fr.jazer.logger.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of on-heap byte arrays, sorted in power of two size classes from {@link BufferPool#MIN_CLASS_SIZE} to {@link BufferPool#MAX_CLASS_SIZE}.
+ * <p>
+ * Bigger buffers are not pooled. Each class keeps at most {@link BufferPool#maxBytesPerClass} bytes of free arrays.
+ * <p>
+ * The leak detector, enabled by {@link BufferPool#setLeakDetection(boolean)} or the system property "jazer.leakDetection",
+ * records where each buffer was acquired until its last release.
+ */
+public class BufferPool {
+
+    private static final Logger logger = Logger.loggerOfStatic(BufferPool.class);
+
+    /**
+     * Smallest size class.
+     */
+    public static final int MIN_CLASS_SIZE = 64;
+    /**
+     * Biggest size class, bigger buffers are allocated and left to the GC.
+     */
+    public static final int MAX_CLASS_SIZE = 1024 * 1024;
+    /**
+     * Default value of {@link BufferPool#maxBytesPerClass}.
+     */
+    private static final int DEFAULT_MAX_BYTES_PER_CLASS = 2 * 1024 * 1024;
+
+    private static final BufferPool defaultPool = new BufferPool();
+
+    private static volatile boolean leakDetection = Boolean.getBoolean("jazer.leakDetection");
+    /**
+     * Buffers acquired and not released, with the place of their acquisition. Only filled while the leak detection is enabled.
+     */
+    private static final Map<PooledBuffer, Throwable> alive = new ConcurrentHashMap<>();
+
+    /**
+     * Free arrays of each size class.
+     */
+    protected final ConcurrentLinkedQueue<byte[]>[] classes;
+    /**
+     * Number of free arrays of each size class.
+     */
+    protected final AtomicInteger[] classCounts;
+    /**
+     * Maximum number of bytes kept free by size class.
+     */
+    protected final int maxBytesPerClass;
+
+    /**
+     * @param maxBytesPerClass maximum number of bytes kept free by size class. At least two arrays are kept.
+     */
+    public BufferPool(final int maxBytesPerClass) {
+        final int count = Integer.numberOfTrailingZeros(MAX_CLASS_SIZE) - Integer.numberOfTrailingZeros(MIN_CLASS_SIZE) + 1;
+        this.maxBytesPerClass = maxBytesPerClass;
+        this.classes = newClasses(count);
+        this.classCounts = new AtomicInteger[count];
+        for (int i = 0; i < count; i++) {
+            this.classes[i] = new ConcurrentLinkedQueue<>();
+            this.classCounts[i] = new AtomicInteger();
+        }
+    }
+
+    public BufferPool() {
+        this(DEFAULT_MAX_BYTES_PER_CLASS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentLinkedQueue<byte[]>[] newClasses(final int count) {
+        return (ConcurrentLinkedQueue<byte[]>[]) new ConcurrentLinkedQueue<?>[count];
+    }
+
+    /**
+     * @return the pool shared by Sessions and packets.
+     */
+    public static BufferPool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * Borrow a buffer of at least the requested capacity, with one reference.
+     *
+     * @param capacity the minimum size of the buffer.
+     * @return the buffer, to be released by its owner.
+     */
+    public PooledBuffer acquire(final int capacity) {
+        final PooledBuffer buffer;
+        if (capacity > MAX_CLASS_SIZE) {
+            buffer = new PooledBuffer(new byte[capacity], null);
+        } else {
+            final int index = classIndex(capacity);
+            byte[] array = this.classes[index].poll();
+            if (array != null)
+                this.classCounts[index].decrementAndGet();
+            else
+                array = new byte[MIN_CLASS_SIZE << index];
+            buffer = new PooledBuffer(array, this);
+        }
+        if (leakDetection)
+            alive.put(buffer, new Throwable("PooledBuffer of " + capacity + " bytes acquired here."));
+        return buffer;
+    }
+
+    /**
+     * Called by a buffer at its last release.
+     *
+     * @param buffer the released buffer.
+     */
+    protected void recycle(final PooledBuffer buffer) {
+        if (leakDetection)
+            alive.remove(buffer);
+        final int index = classIndex(buffer.array.length);
+        if (this.classCounts[index].incrementAndGet() * (long) buffer.array.length > Math.max(this.maxBytesPerClass, 2L * buffer.array.length)) {
+            this.classCounts[index].decrementAndGet();
+            return;
+        }
+        this.classes[index].offer(buffer.array);
+    }
+
+    /**
+     * @param capacity a capacity.
+     * @return the index of the smallest size class able to hold the capacity.
+     */
+    protected static int classIndex(final int capacity) {
+        if (capacity <= MIN_CLASS_SIZE)
+            return 0;
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - Integer.numberOfTrailingZeros(MIN_CLASS_SIZE);
+    }
+
+    /**
+     * @return the number of free arrays kept by the pool.
+     */
+    public int freeBuffers() {
+        int count = 0;
+        for (final AtomicInteger classCount : this.classCounts)
+            count += classCount.get();
+        return count;
+    }
+
+    /**
+     * Enable or disable the leak detector. Buffers acquired while it was disabled are not tracked.
+     *
+     * @param enabled true to record the acquisition of each buffer.
+     */
+    public static void setLeakDetection(final boolean enabled) {
+        leakDetection = enabled;
+        if (!enabled)
+            alive.clear();
+    }
+
+    public static boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    /**
+     * @return the acquisition places of buffers acquired while the leak detector was enabled and not released yet.
+     */
+    public static List<Throwable> leaks() {
+        return new ArrayList<>(alive.values());
+    }
+
+    /**
+     * Print the acquisition places of all buffers not released yet.
+     *
+     * @return the number of leaked buffers.
+     */
+    public static int reportLeaks() {
+        final List<Throwable> leaks = leaks();
+        for (final Throwable leak : leaks) {
+            logger.err("LEAK : {}", leak.getMessage());
+            leak.printStackTrace();
+        }
+        return leaks.size();
+    }
+}
@@ -0,0 +1,88 @@
+package fr.jazer.buffer_manager;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A byte array borrowed from a {@link BufferPool}, given back when its last reference is released.
+ * <p>
+ * The array can be bigger than the requested capacity, it is rounded to the size class of the pool.
+ */
+public class PooledBuffer implements ReferenceCounted {
+
+    /**
+     * The borrowed array.
+     */
+    protected final byte[] array;
+    /**
+     * The pool owning the array, null if the array is too big to be pooled.
+     */
+    protected final BufferPool pool;
+    /**
+     * Number of references alive.
+     */
+    protected final AtomicInteger references = new AtomicInteger(1);
+
+    protected PooledBuffer(final byte[] array, @Nullable final BufferPool pool) {
+        this.array = array;
+        this.pool = pool;
+    }
+
+    /**
+     * @return the borrowed array. Must not be used after the last release.
+     */
+    public byte[] array() {
+        if (this.references.get() <= 0)
+            throw new IllegalStateException("PooledBuffer used after its last release.");
+        return this.array;
+    }
+
+    /**
+     * @return the size of the borrowed array.
+     */
+    public int capacity() {
+        return this.array.length;
+    }
+
+    /**
+     * @return the number of references alive.
+     */
+    public int referenceCount() {
+        return this.references.get();
+    }
+
+    @Override
+    public PooledBuffer retain() {
+        int count;
+        do {
+            count = this.references.get();
+            if (count <= 0)
+                throw new IllegalStateException("PooledBuffer retained after its last release.");
+        } while (!this.references.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        final int count = this.references.decrementAndGet();
+        if (count > 0)
+            return false;
+        if (count < 0) {
+            this.references.set(0);
+            throw new IllegalStateException("PooledBuffer released more times than retained.");
+        }
+        if (this.pool != null)
+            this.pool.recycle(this);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "PooledBuffer{" +
+                "capacity=" + array.length +
+                ", references=" + references.get() +
+                ", pooled=" + (pool != null) +
+                '}';
+    }
+}
@@ -0,0 +1,30 @@
+package fr.jazer.buffer_manager;
+
+/**
+ * An object holding a {@link PooledBuffer}. Each owner of a reference must release it once, the buffer goes back
+ * to its {@link BufferPool} when the last reference is released.
+ */
+public interface ReferenceCounted extends AutoCloseable {
+
+    /**
+     * Take a new reference, to be released by the new owner.
+     *
+     * @return this object.
+     */
+    ReferenceCounted retain();
+
+    /**
+     * Release a reference.
+     *
+     * @return true if it was the last reference and the buffer was given back to its pool.
+     */
+    boolean release();
+
+    /**
+     * Same as {@link ReferenceCounted#release()}, to be used with try-with-resources.
+     */
+    @Override
+    default void close() {
+        release();
+    }
+}
@@ -0,0 +1,17 @@
+package fr.jazer.logger;
+
+/**
+ * The default {@link LogSink}, writing on {@link System#out}.
+ */
+public class ConsoleSink implements LogSink {
+
+    @Override
+    public void write(final CharSequence lines) {
+        System.out.print(lines);
+    }
+
+    @Override
+    public void flush() {
+        System.out.flush();
+    }
+}
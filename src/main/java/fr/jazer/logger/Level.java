@@ -0,0 +1,47 @@
+package fr.jazer.logger;
+
+/**
+ * Levels of the {@link Logger} messages, by increasing severity. A Logger prints the messages at or above its level.
+ */
+public enum Level {
+    /**
+     * Detailed flow of the library, e.g. each frame.
+     */
+    TRACE("TRC"),
+    /**
+     * Life cycle of the internals, e.g. Threads started or released.
+     */
+    DEBUG("DBG"),
+    /**
+     * Standard messages, printed by {@link Logger#log(String)}.
+     */
+    INFO("OUT"),
+    /**
+     * Unexpected states the library recovers from.
+     */
+    WARN("WRN"),
+    /**
+     * Errors, printed by {@link Logger#err(String)}.
+     */
+    ERROR("ERR"),
+    /**
+     * Used as a level only, nothing is printed.
+     */
+    OFF("OFF");
+
+    /**
+     * The channel printed before the class name.
+     */
+    public final String tag;
+
+    Level(final String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * @return true if a message of this level is printed by a Logger of the given level.
+     */
+    public boolean isEnabledFor(final Level threshold) {
+        return this != OFF && this.ordinal() >= threshold.ordinal();
+    }
+}
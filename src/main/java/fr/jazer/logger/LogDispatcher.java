@@ -0,0 +1,234 @@
+package fr.jazer.logger;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * The Thread of the {@link Logger} : it reads the events of the {@link LogRing}, formats them and writes them by batches to the {@link LogSink}.
+ * <p>
+ * Callers never format nor write, the arguments and the Object of a Logger are converted to String by this Thread.
+ */
+class LogDispatcher {
+
+    /**
+     * Events waiting to be written, above they are dropped and counted.
+     */
+    static final int CAPACITY = 16 * 1024;
+    /**
+     * Events formatted before writing the batch.
+     */
+    static final int BATCH_SIZE = 256;
+    /**
+     * The longest park of the Thread without event.
+     */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("'['HH:mm:ss.SSS dd/MM']'").withZone(ZoneId.systemDefault());
+
+    private static final LogDispatcher INSTANCE = new LogDispatcher();
+
+    protected final LogRing ring = new LogRing(CAPACITY);
+    protected final Thread worker;
+    /**
+     * True while the worker is parked or about to park, producers unpark it.
+     */
+    protected volatile boolean waiting = false;
+    /**
+     * Events dropped because the ring was full, reported by the next line.
+     */
+    protected final AtomicLong dropped = new AtomicLong();
+    /**
+     * Position of the ring before which all events are written and flushed.
+     */
+    protected volatile long written = 0;
+
+    /**
+     * The sink given by {@link Logger#setSink(LogSink)}, applied by the worker between two batches.
+     */
+    protected volatile LogSink nextSink = new ConsoleSink();
+    /**
+     * Only used by the worker.
+     */
+    protected LogSink sink = this.nextSink;
+    /**
+     * True once a failure of the {@link ConsoleSink} is reported, the next ones are silent. Only used by the worker.
+     */
+    protected boolean consoleFailed = false;
+    protected final StringBuilder batch = new StringBuilder(BATCH_SIZE * 128);
+
+    private LogDispatcher() {
+        this.worker = new Thread(this::internalLoop, "Jazer Logger");
+        this.worker.setDaemon(true);
+        this.worker.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "Jazer Logger flush"));
+    }
+
+    static LogDispatcher get() {
+        return INSTANCE;
+    }
+
+    void append(final Level level, final Logger logger, final String message, final int argCount,
+                final Object arg1, final Object arg2, final Object[] args, final Supplier<String> supplier) {
+        if (!this.ring.offer(System.currentTimeMillis(), level, logger, message, argCount, arg1, arg2, args, supplier)) {
+            this.dropped.incrementAndGet();
+            return;
+        }
+        if (this.waiting)
+            LockSupport.unpark(this.worker);
+    }
+
+    /**
+     * Wait until the events already appended are written and flushed.
+     */
+    void flush() {
+        if (Thread.currentThread() == this.worker)
+            return;
+        final long target = this.ring.published();
+        while (this.written < target && this.worker.isAlive()) {
+            LockSupport.unpark(this.worker);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    void setSink(final LogSink sink) {
+        this.nextSink = sink;
+        LockSupport.unpark(this.worker);
+    }
+
+    private void internalLoop() {
+        while (true) {
+            try {
+                applySink();
+                int count = 0;
+                LogRing.Event event;
+                while (count < BATCH_SIZE && (event = this.ring.poll()) != null) {
+                    final int lineStart = this.batch.length();
+                    try {
+                        format(event);
+                    } catch (RuntimeException e) {
+                        this.batch.setLength(lineStart);
+                        this.batch.append("Log message couldn't be formatted : ").append(e).append(System.lineSeparator());
+                    }
+                    this.ring.release(event);
+                    count++;
+                }
+                final long lost = this.dropped.getAndSet(0);
+                if (lost > 0)
+                    this.batch.append(DATE_FORMAT.format(Instant.now())).append("  [ERR]  ").append(lost)
+                            .append(" log messages dropped, the logger couldn't keep up.").append(System.lineSeparator());
+                if (this.batch.length() > 0) {
+                    this.sink.write(this.batch);
+                    this.batch.setLength(0);
+                }
+                if (count == BATCH_SIZE)
+                    continue;
+                this.sink.flush();
+                this.written = this.ring.head;
+                this.waiting = true;
+                if (this.ring.isEmpty() && this.nextSink == this.sink)
+                    LockSupport.parkNanos(PARK_NANOS);
+                this.waiting = false;
+            } catch (IOException e) {
+                this.batch.setLength(0);
+                System.err.println("Logger couldn't write : " + e.getMessage());
+                this.written = this.ring.head;
+            } catch (RuntimeException e) {
+                this.batch.setLength(0);
+                replaceFailedSink(e);
+                this.written = this.ring.head;
+            }
+        }
+    }
+
+    /**
+     * A sink throwing a RuntimeException is replaced by a {@link ConsoleSink}, the failure is reported once on System.err.
+     * The batch being written is lost.
+     */
+    private void replaceFailedSink(final RuntimeException e) {
+        final LogSink failed = this.sink;
+        if (failed instanceof ConsoleSink) {
+            if (!this.consoleFailed)
+                System.err.println("Logger couldn't write to the console : " + e);
+            this.consoleFailed = true;
+            return;
+        }
+        System.err.println("Logger sink " + failed + " failed, logging to the console : " + e);
+        this.sink = new ConsoleSink();
+        if (this.nextSink == failed)
+            this.nextSink = this.sink;
+        try {
+            failed.close();
+        } catch (IOException | RuntimeException ignored) {
+        }
+    }
+
+    private void applySink() throws IOException {
+        final LogSink next = this.nextSink;
+        if (next == this.sink)
+            return;
+        final LogSink previous = this.sink;
+        this.sink = next;
+        previous.flush();
+        previous.close();
+    }
+
+    /**
+     * Same layout as the first synchronous Logger : [date]  [OUT]  [class]  message | object, with the tag of the level as channel.
+     */
+    private void format(final LogRing.Event event) {
+        final StringBuilder line = this.batch;
+        DATE_FORMAT.formatTo(Instant.ofEpochMilli(event.time), line);
+        line.append("  [").append(event.level.tag).append("]  [");
+        final int classStart = line.length();
+        line.append(Logger.StringUtils.center(event.logger.className, 30));
+        pad(line, classStart, 30);
+        line.append("]  ");
+        final int messageStart = line.length();
+        appendMessage(line, event);
+        if (event.logger.object != null) {
+            pad(line, messageStart, 60);
+            line.append("       | ").append(event.logger.object);
+        }
+        line.append(System.lineSeparator());
+    }
+
+    private static void appendMessage(final StringBuilder line, final LogRing.Event event) {
+        if (event.supplier != null) {
+            line.append(event.supplier.get());
+            return;
+        }
+        final String message = event.message;
+        if (event.argCount == 0) {
+            line.append(message);
+            return;
+        }
+        // {} are replaced by the arguments in order.
+        int argument = 0;
+        int from = 0;
+        int index;
+        final int count = event.argCount < 0 ? event.args.length : event.argCount;
+        while (argument < count && (index = message.indexOf("{}", from)) >= 0) {
+            line.append(message, from, index);
+            line.append(argument(event, argument++));
+            from = index + 2;
+        }
+        line.append(message, from, message.length());
+    }
+
+    private static Object argument(final LogRing.Event event, final int index) {
+        if (event.argCount < 0)
+            return event.args[index];
+        return index == 0 ? event.arg1 : event.arg2;
+    }
+
+    private static void pad(final StringBuilder line, final int start, final int width) {
+        while (line.length() - start < width)
+            line.append(' ');
+    }
+}
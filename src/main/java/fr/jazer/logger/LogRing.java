@@ -0,0 +1,136 @@
+package fr.jazer.logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Bounded lock-free ring of log events, written by any Thread and read by the only Thread of the {@link LogDispatcher}.
+ * <p>
+ * The slots are allocated once and reused. Each slot has a sequence telling if it is free for the producer of a position
+ * or published for the consumer, producers only compete on the CAS of {@link LogRing#tail}.
+ */
+class LogRing {
+
+    protected final Event[] slots;
+    protected final AtomicLongArray sequences;
+    protected final int mask;
+    /**
+     * Next position given to a producer.
+     */
+    protected final AtomicLong tail = new AtomicLong();
+    /**
+     * Next position read by the consumer. Only used by the consumer Thread.
+     */
+    protected long head = 0;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two.
+     */
+    LogRing(final int capacity) {
+        final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Event[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            this.slots[i] = new Event();
+            this.sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Publish an event, never blocks.
+     *
+     * @return false if the ring is full, the event is dropped.
+     */
+    boolean offer(final long time, final Level level, final Logger logger, final String message, final int argCount,
+                  final Object arg1, final Object arg2, final Object[] args, final Supplier<String> supplier) {
+        long position;
+        while (true) {
+            position = this.tail.get();
+            final long available = this.sequences.get((int) position & this.mask) - position;
+            if (available == 0) {
+                if (this.tail.compareAndSet(position, position + 1))
+                    break;
+            } else if (available < 0) {
+                return false;
+            }
+        }
+        final int index = (int) position & this.mask;
+        final Event event = this.slots[index];
+        event.time = time;
+        event.level = level;
+        event.logger = logger;
+        event.message = message;
+        event.argCount = argCount;
+        event.arg1 = arg1;
+        event.arg2 = arg2;
+        event.args = args;
+        event.supplier = supplier;
+        // Volatile write, the consumer parked after checking the ring sees it.
+        this.sequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * @return the next published event, null if there is none. It must be given back with {@link LogRing#release(Event)} before the next poll.
+     */
+    Event poll() {
+        final int index = (int) this.head & this.mask;
+        if (this.sequences.get(index) != this.head + 1)
+            return null;
+        return this.slots[index];
+    }
+
+    /**
+     * Free the slot of the last polled event for the producers.
+     */
+    void release(final Event event) {
+        event.clear();
+        final int index = (int) this.head & this.mask;
+        this.sequences.lazySet(index, this.head + this.slots.length);
+        this.head++;
+    }
+
+    /**
+     * @return the position of the next event published, used to wait for the events already published.
+     */
+    long published() {
+        return this.tail.get();
+    }
+
+    boolean isEmpty() {
+        return this.sequences.get((int) this.head & this.mask) != this.head + 1;
+    }
+
+    /**
+     * A log call, formatted later by the {@link LogDispatcher}.
+     */
+    static class Event {
+
+        long time;
+        Level level;
+        Logger logger;
+        /**
+         * The message or its pattern, null if the message is given by {@link Event#supplier}.
+         */
+        String message;
+        /**
+         * Number of arguments of the pattern, -1 if they are in {@link Event#args}.
+         */
+        int argCount;
+        Object arg1;
+        Object arg2;
+        Object[] args;
+        Supplier<String> supplier;
+
+        void clear() {
+            this.logger = null;
+            this.message = null;
+            this.arg1 = null;
+            this.arg2 = null;
+            this.args = null;
+            this.supplier = null;
+        }
+    }
+}
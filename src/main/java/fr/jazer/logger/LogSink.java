@@ -0,0 +1,30 @@
+package fr.jazer.logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where the {@link Logger} outputs are written. Only called by the Thread of the logger, implementations don't need to be Thread-safe.
+ */
+public interface LogSink extends Closeable {
+
+    /**
+     * @param lines a batch of formatted lines, each ending by a line separator.
+     * @throws IOException if the lines couldn't be written.
+     */
+    void write(final CharSequence lines) throws IOException;
+
+    /**
+     * Called once the waiting lines are written.
+     *
+     * @throws IOException if the lines couldn't be flushed.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Called when the sink is replaced, see {@link Logger#setSink(LogSink)}.
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -1,24 +1,41 @@
 package fr.jazer.logger;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * This class is the Logger module of Jazer. By default, she print only errors.
+ * <p>
+ * Logging never blocks : the message and its arguments are stored in a ring, and a background Thread formats and writes them
+ * to the {@link LogSink}. Messages can be patterns, each {} is replaced by the next argument, or {@link Supplier}s called only if
+ * the message is written. When the ring is full the messages are dropped, and the number of dropped messages is logged.
+ * <p>
+ * Each Logger prints the messages at or above its {@link Level}, configured by {@link Logger#setLevel(String, Level)}.
+ * The level is resolved once and cached by the Logger, a reconfiguration invalidates the cached levels of all Loggers.
  */
 public class Logger {
 
     /**
-     * Disable [OUT] channel {@link Logger#log(String)} from all classes name contained in this list.
+     * Level of the Loggers without configured level.
      */
-    public static final ArrayList<String> disabledOutPut = new ArrayList<>(List.of("ThreadPool", "SessionServer", "fr.jazer.session.Session"));
-
+    private static volatile Level defaultLevel = Level.INFO;
+    /**
+     * Levels configured by class name or by package name.
+     */
+    private static final ConcurrentHashMap<String, Level> levels = new ConcurrentHashMap<>();
     /**
-     * The format used to date all outputs.
+     * Incremented by each reconfiguration, a cached level of another configuration is resolved again.
      */
-    private static final SimpleDateFormat format = new SimpleDateFormat("[HH:mm:ss.SSS dd/MM]");
+    private static volatile int configuration = 0;
+
+    private static final Level[] LEVELS = Level.values();
+    private static final Object[] NO_ARGS = new Object[0];
+
+    static {
+        // The internals of the library only print their errors by default.
+        for (final String name : new String[]{"ThreadPool", "SessionServer", "fr.jazer.session.Session", "EventLoop", "fr.jazer.session.transport.NioSession"})
+            levels.put(name, Level.WARN);
+    }
 
     /**
      * The name of the class using this Logger.
@@ -28,10 +45,99 @@ public class Logger {
      * If Logger is created with special Object instance.
      */
     protected Object object;
+    /**
+     * The configuration in the high 32 bits, the ordinal of the level in the low 32 bits.
+     */
+    protected volatile long resolvedLevel;
 
     protected Logger(final String className, final Object object) {
         this.className = className;
         this.object = object;
+        resolveLevel();
+    }
+
+    /**
+     * Used to print the detailed flow of a class.
+     *
+     * @param message the message to print.
+     */
+    public void trace(final String message) {
+        if (isEnabled(Level.TRACE))
+            LogDispatcher.get().append(Level.TRACE, this, message, 0, null, null, null, null);
+    }
+
+    /**
+     * @param pattern the message, {} is replaced by the argument.
+     */
+    public void trace(final String pattern, final Object arg) {
+        if (isEnabled(Level.TRACE))
+            LogDispatcher.get().append(Level.TRACE, this, pattern, 1, arg, null, null, null);
+    }
+
+    /**
+     * @param pattern the message, each {} is replaced by the next argument.
+     */
+    public void trace(final String pattern, final Object arg1, final Object arg2) {
+        if (isEnabled(Level.TRACE))
+            LogDispatcher.get().append(Level.TRACE, this, pattern, 2, arg1, arg2, null, null);
+    }
+
+    /**
+     * @param pattern the message, each {} is replaced by the next argument.
+     */
+    public void trace(final String pattern, final Object... args) {
+        if (isEnabled(Level.TRACE))
+            LogDispatcher.get().append(Level.TRACE, this, pattern, -1, null, null, args == null ? NO_ARGS : args, null);
+    }
+
+    /**
+     * @param message built by the Thread of the logger, only if the message is printed.
+     */
+    public void trace(final Supplier<String> message) {
+        if (isEnabled(Level.TRACE))
+            LogDispatcher.get().append(Level.TRACE, this, null, 0, null, null, null, message);
+    }
+
+    /**
+     * Used to print the life cycle of the internals.
+     *
+     * @param message the message to print.
+     */
+    public void debug(final String message) {
+        if (isEnabled(Level.DEBUG))
+            LogDispatcher.get().append(Level.DEBUG, this, message, 0, null, null, null, null);
+    }
+
+    /**
+     * @param pattern the message, {} is replaced by the argument.
+     */
+    public void debug(final String pattern, final Object arg) {
+        if (isEnabled(Level.DEBUG))
+            LogDispatcher.get().append(Level.DEBUG, this, pattern, 1, arg, null, null, null);
+    }
+
+    /**
+     * @param pattern the message, each {} is replaced by the next argument.
+     */
+    public void debug(final String pattern, final Object arg1, final Object arg2) {
+        if (isEnabled(Level.DEBUG))
+            LogDispatcher.get().append(Level.DEBUG, this, pattern, 2, arg1, arg2, null, null);
+    }
+
+    /**
+     * @param pattern the message, each {} is replaced by the next argument.
+     */
+    public void debug(final String pattern, final Object... args) {
+        if (isEnabled(Level.DEBUG))
+            LogDispatcher.get().append(Level.DEBUG, this, pattern, -1, null, null, args == null ? NO_ARGS : args, null);
+    }
+
+    /**
+     * @param message built by the Thread of the logger, only if the message is printed.
+     */
+    public void debug(final Supplier<String> message) {
+        if (isEnabled(Level.DEBUG))
+            LogDispatcher.get().append(Level.DEBUG, this, null, 0, null, null, null, message);
     }
 
     /**
@@ -39,17 +145,83 @@ public class Logger {
      *
      * @param message the message to print.
      */
-    public synchronized void log(final String message) {
-        if (disabledOutPut.contains(this.className))
-            return;
-        final long ms = System.currentTimeMillis();
-        final Date date = new Date(ms);
-        String logMessage;
-        if (this.object != null)
-            logMessage = String.format("%s  [OUT]  [%-30s]  %-60s       | %s", format.format(date), StringUtils.center(className, 30), message, this.object.toString());
-        else
-            logMessage = String.format("%s  [OUT]  [%-30s]  %s", format.format(date), StringUtils.center(className, 30), message);
-        System.out.println(logMessage);
+    public void log(final String message) {
+        if (isEnabled(Level.INFO))
+            LogDispatcher.get().append(Level.INFO, this, message, 0, null, null, null, null);
+    }
+
+    /**
+     * @param pattern the message, {} is replaced by the argument.
+     */
+    public void log(final String pattern, final Object arg) {
+        if (isEnabled(Level.INFO))
+            LogDispatcher.get().append(Level.INFO, this, pattern, 1, arg, null, null, null);
+    }
+
+    /**
+     * @param pattern the message, each {} is replaced by the next argument.
+     */
+    public void log(final String pattern, final Object arg1, final Object arg2) {
+        if (isEnabled(Level.INFO))
+            LogDispatcher.get().append(Level.INFO, this, pattern, 2, arg1, arg2, null, null);
+    }
+
+    /**
+     * @param pattern the message, each {} is replaced by the next argument.
+     */
+    public void log(final String pattern, final Object... args) {
+        if (isEnabled(Level.INFO))
+            LogDispatcher.get().append(Level.INFO, this, pattern, -1, null, null, args == null ? NO_ARGS : args, null);
+    }
+
+    /**
+     * @param message built by the Thread of the logger, only if the message is printed.
+     */
+    public void log(final Supplier<String> message) {
+        if (isEnabled(Level.INFO))
+            LogDispatcher.get().append(Level.INFO, this, null, 0, null, null, null, message);
+    }
+
+    /**
+     * Used to print a recovered error.
+     *
+     * @param message the message to print.
+     */
+    public void warn(final String message) {
+        if (isEnabled(Level.WARN))
+            LogDispatcher.get().append(Level.WARN, this, message, 0, null, null, null, null);
+    }
+
+    /**
+     * @param pattern the message, {} is replaced by the argument.
+     */
+    public void warn(final String pattern, final Object arg) {
+        if (isEnabled(Level.WARN))
+            LogDispatcher.get().append(Level.WARN, this, pattern, 1, arg, null, null, null);
+    }
+
+    /**
+     * @param pattern the message, each {} is replaced by the next argument.
+     */
+    public void warn(final String pattern, final Object arg1, final Object arg2) {
+        if (isEnabled(Level.WARN))
+            LogDispatcher.get().append(Level.WARN, this, pattern, 2, arg1, arg2, null, null);
+    }
+
+    /**
+     * @param pattern the message, each {} is replaced by the next argument.
+     */
+    public void warn(final String pattern, final Object... args) {
+        if (isEnabled(Level.WARN))
+            LogDispatcher.get().append(Level.WARN, this, pattern, -1, null, null, args == null ? NO_ARGS : args, null);
+    }
+
+    /**
+     * @param message built by the Thread of the logger, only if the message is printed.
+     */
+    public void warn(final Supplier<String> message) {
+        if (isEnabled(Level.WARN))
+            LogDispatcher.get().append(Level.WARN, this, null, 0, null, null, null, message);
     }
 
     /**
@@ -57,17 +229,146 @@ public class Logger {
      *
      * @param message the message to print.
      */
-    public synchronized void err(final String message) {
-        final long ms = System.currentTimeMillis();
-        final Date date = new Date(ms);
-        String logMessage;
-        if (this.object != null)
-            logMessage = String.format("%s  [ERR]  [%-30s]  %-60s       | %s", format.format(date), StringUtils.center(className, 30), message, this.object.toString());
+    public void err(final String message) {
+        if (isEnabled(Level.ERROR))
+            LogDispatcher.get().append(Level.ERROR, this, message, 0, null, null, null, null);
+    }
+
+    /**
+     * @param pattern the message, {} is replaced by the argument.
+     */
+    public void err(final String pattern, final Object arg) {
+        if (isEnabled(Level.ERROR))
+            LogDispatcher.get().append(Level.ERROR, this, pattern, 1, arg, null, null, null);
+    }
+
+    /**
+     * @param pattern the message, each {} is replaced by the next argument.
+     */
+    public void err(final String pattern, final Object arg1, final Object arg2) {
+        if (isEnabled(Level.ERROR))
+            LogDispatcher.get().append(Level.ERROR, this, pattern, 2, arg1, arg2, null, null);
+    }
+
+    /**
+     * @param pattern the message, each {} is replaced by the next argument.
+     */
+    public void err(final String pattern, final Object... args) {
+        if (isEnabled(Level.ERROR))
+            LogDispatcher.get().append(Level.ERROR, this, pattern, -1, null, null, args == null ? NO_ARGS : args, null);
+    }
+
+    /**
+     * @param message built by the Thread of the logger, only if the message is printed.
+     */
+    public void err(final Supplier<String> message) {
+        if (isEnabled(Level.ERROR))
+            LogDispatcher.get().append(Level.ERROR, this, null, 0, null, null, null, message);
+    }
+
+    /**
+     * Guard for messages whose arguments are expensive to compute.
+     *
+     * @return true if the messages of this level are printed by this Logger.
+     */
+    public boolean isEnabled(final Level level) {
+        return level.isEnabledFor(getLevel());
+    }
+
+    /**
+     * @return the level of this Logger, from the current configuration.
+     */
+    public Level getLevel() {
+        final long resolved = this.resolvedLevel;
+        if ((int) (resolved >>> 32) == configuration)
+            return LEVELS[(int) resolved];
+        return resolveLevel();
+    }
+
+    private Level resolveLevel() {
+        // Configuration read before the levels : if they change meanwhile, the next call resolves again.
+        final int current = configuration;
+        final Level level = levelOf(this.className);
+        this.resolvedLevel = ((long) current << 32) | level.ordinal();
+        return level;
+    }
+
+    /**
+     * @return the level of the class name, else of its closest package, else the default level.
+     */
+    private static Level levelOf(final String name) {
+        String current = name;
+        while (true) {
+            final Level level = levels.get(current);
+            if (level != null)
+                return level;
+            final int dot = current.lastIndexOf('.');
+            if (dot < 0)
+                return defaultLevel;
+            current = current.substring(0, dot);
+        }
+    }
+
+    /**
+     * Configure the level of the Loggers of a class or of a package.
+     * <p>
+     * Static Loggers are named by the simple name of their class, Object Loggers by the canonical name, see {@link Logger#loggerOfStatic(Class)}
+     * and {@link Logger#loggerOfObject(Object)}. A package name applies to the Object Loggers of its classes.
+     *
+     * @param name  the name of the Logger or the package.
+     * @param level the new level, null to remove it.
+     */
+    public static synchronized void setLevel(final String name, final Level level) {
+        if (level == null)
+            levels.remove(name);
         else
-            logMessage = String.format("%s  [ERR]  [%-30s]  %s", format.format(date), StringUtils.center(className, 30), message);
-        System.out.println(logMessage);
+            levels.put(name, level);
+        configuration++;
+    }
+
+    /**
+     * Configure the level of the static and Object Loggers of a class.
+     *
+     * @param component the class.
+     * @param level     the new level, null to remove it.
+     */
+    public static synchronized void setLevel(final Class<?> component, final Level level) {
+        setLevel(component.getSimpleName(), level);
+        if (component.getCanonicalName() != null)
+            setLevel(component.getCanonicalName(), level);
+    }
+
+    /**
+     * @param level the level of the Loggers without configured level, {@link Level#INFO} by default.
+     */
+    public static synchronized void setDefaultLevel(final Level level) {
+        if (level == null)
+            throw new NullPointerException("The default level can't be null.");
+        defaultLevel = level;
+        configuration++;
+    }
+
+    public static Level getDefaultLevel() {
+        return defaultLevel;
     }
 
+    /**
+     * Replace the output of all Loggers, by default {@link ConsoleSink}. The previous sink is flushed and closed by the Thread of the logger.
+     *
+     * @param sink the new output.
+     */
+    public static void setSink(final LogSink sink) {
+        if (sink == null)
+            throw new NullPointerException("The sink can't be null.");
+        LogDispatcher.get().setSink(sink);
+    }
+
+    /**
+     * Wait until all messages already logged are written.
+     */
+    public static void flush() {
+        LogDispatcher.get().flush();
+    }
 
     /**
      * Generate a Logger for a Class.
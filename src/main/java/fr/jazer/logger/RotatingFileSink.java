@@ -0,0 +1,102 @@
+package fr.jazer.logger;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link LogSink} appending to a file, rotated when it reaches a size.
+ * <p>
+ * At rotation the file becomes file.1, file.1 becomes file.2... up to {@link RotatingFileSink#maxBackups}, the oldest is deleted.
+ * A batch of lines is never split, the file is rotated before the batch which would exceed {@link RotatingFileSink#maxBytes}.
+ */
+public class RotatingFileSink implements LogSink {
+
+    protected final Path file;
+    protected final long maxBytes;
+    protected final int maxBackups;
+
+    protected OutputStream output;
+    /**
+     * Bytes of the current file.
+     */
+    protected long size;
+
+    /**
+     * @param file       the log file, created if it doesn't exist.
+     * @param maxBytes   size of the file triggering a rotation.
+     * @param maxBackups number of rotated files kept.
+     * @throws IOException if the file couldn't be opened.
+     */
+    public RotatingFileSink(final Path file, final long maxBytes, final int maxBackups) throws IOException {
+        if (maxBytes <= 0 || maxBackups < 0)
+            throw new IllegalArgumentException("Invalid rotation : maxBytes=" + maxBytes + ", maxBackups=" + maxBackups + ".");
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxBackups = maxBackups;
+        open();
+    }
+
+    @Override
+    public void write(final CharSequence lines) throws IOException {
+        final byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        if (this.size > 0 && this.size + bytes.length > this.maxBytes)
+            rotate();
+        this.output.write(bytes);
+        this.size += bytes.length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.output.close();
+    }
+
+    /**
+     * @return the path of a rotated file.
+     */
+    public Path backup(final int index) {
+        return this.file.resolveSibling(this.file.getFileName() + "." + index);
+    }
+
+    protected void rotate() throws IOException {
+        this.output.close();
+        if (this.maxBackups == 0) {
+            Files.delete(this.file);
+        } else {
+            Files.deleteIfExists(backup(this.maxBackups));
+            for (int i = this.maxBackups - 1; i >= 1; i--)
+                if (Files.exists(backup(i)))
+                    Files.move(backup(i), backup(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(this.file, backup(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        open();
+    }
+
+    private void open() throws IOException {
+        final Path parent = this.file.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        this.output = new BufferedOutputStream(Files.newOutputStream(this.file, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+        this.size = Files.size(this.file);
+    }
+
+    @Override
+    public String toString() {
+        return "RotatingFileSink{" +
+                "file=" + file +
+                ", maxBytes=" + maxBytes +
+                ", maxBackups=" + maxBackups +
+                ", size=" + size +
+                '}';
+    }
+}
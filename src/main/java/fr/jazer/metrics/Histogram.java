@@ -0,0 +1,164 @@
+package fr.jazer.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * A histogram of positive values with a bounded relative error, as HdrHistogram does.
+ * <p>
+ * Values are counted in log-linear buckets : each power of two is split into {@link Histogram#SUB_BUCKETS} buckets, so a percentile
+ * is known within 1 / {@link Histogram#SUB_BUCKETS} of its value, from 1 to {@link Long#MAX_VALUE}. The buckets are allocated once,
+ * recording a value never allocates nor locks.
+ * <p>
+ * Threads record in their own stripe of buckets, stripes are merged by {@link Histogram#snapshot()}.
+ */
+public class Histogram {
+
+    protected static final int SUB_BUCKET_BITS = 5;
+    /**
+     * Buckets by power of two.
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Buckets of a stripe, enough for all positive longs.
+     */
+    protected static final int BUCKETS = (64 - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+
+    protected final AtomicLongArray counts;
+    protected final int stripeMask;
+    protected final DoubleAdder sum = new DoubleAdder();
+    protected final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param stripes number of stripes, rounded up to a power of two. One stripe by core avoids contention.
+     */
+    public Histogram(final int stripes) {
+        final int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.counts = new AtomicLongArray(size * BUCKETS);
+        this.stripeMask = size - 1;
+    }
+
+    /**
+     * A histogram with a stripe by core, up to 8.
+     */
+    public Histogram() {
+        this(Math.min(8, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param value the value, negative values are counted as 0.
+     */
+    public void record(final long value) {
+        final long positive = Math.max(0, value);
+        final int stripe = (int) Thread.currentThread().getId() & this.stripeMask;
+        this.counts.incrementAndGet(stripe * BUCKETS + bucketOf(positive));
+        this.sum.add(positive);
+        this.max.accumulate(positive);
+    }
+
+    /**
+     * @return the merged buckets of all stripes.
+     */
+    public Snapshot snapshot() {
+        final long[] buckets = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            final long bucket = this.counts.get(i);
+            buckets[i % BUCKETS] += bucket;
+            count += bucket;
+        }
+        return new Snapshot(buckets, count, this.sum.sum(), this.max.get());
+    }
+
+    /**
+     * Forget the recorded values. Values recorded meanwhile may be kept or not.
+     */
+    public void reset() {
+        for (int i = 0; i < this.counts.length(); i++)
+            this.counts.set(i, 0);
+        this.sum.reset();
+        this.max.reset();
+    }
+
+    protected static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the highest value counted in a bucket.
+     */
+    protected static long highestOf(final int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        final int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        final long lowest = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "Histogram{" + snapshot() + '}';
+    }
+
+    /**
+     * The values recorded by a {@link Histogram} at a time.
+     */
+    public static class Snapshot {
+
+        protected final long[] buckets;
+        protected final long count;
+        protected final double sum;
+        protected final long max;
+
+        protected Snapshot(final long[] buckets, final long count, final double sum, final long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @param percentile between 0 and 100.
+         * @return the value below which are this percentile of the values, 0 if no value was recorded.
+         */
+        public long getPercentile(final double percentile) {
+            if (this.count == 0)
+                return 0;
+            final long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * this.count));
+            long seen = 0;
+            for (int i = 0; i < this.buckets.length; i++) {
+                seen += this.buckets[i];
+                if (seen >= rank)
+                    return Math.min(highestOf(i), this.max);
+            }
+            return this.max;
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+
+        public double getMean() {
+            return this.count == 0 ? 0 : this.sum / this.count;
+        }
+
+        public long getMax() {
+            return this.max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count +
+                    ", mean=" + (long) getMean() +
+                    ", p50=" + getPercentile(50) +
+                    ", p90=" + getPercentile(90) +
+                    ", p99=" + getPercentile(99) +
+                    ", p999=" + getPercentile(99.9) +
+                    ", max=" + max;
+        }
+    }
+}
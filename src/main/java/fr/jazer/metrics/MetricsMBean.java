@@ -0,0 +1,97 @@
+package fr.jazer.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Expose a {@link MetricsRegistry} through JMX, an attribute by counter and gauge, and for each histogram the attributes
+ * name.count, name.mean, name.p50, name.p90, name.p99, name.p999 and name.max. Attributes are read only.
+ */
+class MetricsMBean implements DynamicMBean {
+
+    private static final String[] HISTOGRAM_ATTRIBUTES = {"count", "mean", "p50", "p90", "p99", "p999", "max"};
+
+    protected final MetricsRegistry registry;
+
+    MetricsMBean(final MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+        final LongSupplier value = this.registry.values().get(attribute);
+        if (value != null)
+            return value.getAsLong();
+        final int dot = attribute.lastIndexOf('.');
+        final Histogram histogram = dot < 0 ? null : this.registry.histograms.get(attribute.substring(0, dot));
+        if (histogram == null)
+            throw new AttributeNotFoundException(attribute);
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        switch (attribute.substring(dot + 1)) {
+            case "count":
+                return snapshot.getCount();
+            case "mean":
+                return (long) snapshot.getMean();
+            case "p50":
+                return snapshot.getPercentile(50);
+            case "p90":
+                return snapshot.getPercentile(90);
+            case "p99":
+                return snapshot.getPercentile(99);
+            case "p999":
+                return snapshot.getPercentile(99.9);
+            case "max":
+                return snapshot.getMax();
+            default:
+                throw new AttributeNotFoundException(attribute);
+        }
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] attributes) {
+        final AttributeList list = new AttributeList();
+        for (final String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException ignored) {
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read only : " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(final String actionName, final Object[] params, final String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        final ArrayList<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (final Map.Entry<String, LongSupplier> value : this.registry.values().entrySet())
+            attributes.add(new MBeanAttributeInfo(value.getKey(), "long", value.getKey(), true, false, false));
+        for (final String histogram : this.registry.histograms.keySet())
+            for (final String suffix : HISTOGRAM_ATTRIBUTES)
+                attributes.add(new MBeanAttributeInfo(histogram + "." + suffix, "long", histogram + " " + suffix, true, false, false));
+        return new MBeanInfo(getClass().getName(), "Metrics of Jazer.", attributes.toArray(new MBeanAttributeInfo[0]),
+                null, new MBeanOperationInfo[0], null);
+    }
+}
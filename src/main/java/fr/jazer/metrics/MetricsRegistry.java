@@ -0,0 +1,146 @@
+package fr.jazer.metrics;
+
+import fr.jazer.logger.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of Jazer by name, read by {@link MetricsRegistry#snapshot()} or through JMX.
+ * <p>
+ * Three kinds of metrics :
+ * <ul>
+ *     <li>counters, {@link LongAdder} incremented without contention. A counter decremented too gives a level, e.g. the Slaves alive.</li>
+ *     <li>gauges, a value read only when the metrics are read, e.g. the Sessions of a server.</li>
+ *     <li>{@link Histogram}s, e.g. the send latencies.</li>
+ * </ul>
+ * Metrics are looked up once, when their owner is created : the instrumented code keeps the counter and never goes through the registry.
+ * <p>
+ * The {@link MetricsRegistry#getDefault()} registry is exposed as the MBean {@link MetricsRegistry#DEFAULT_OBJECT_NAME}.
+ */
+public class MetricsRegistry {
+
+    /**
+     * Name of the MBean of the default registry.
+     */
+    public static final String DEFAULT_OBJECT_NAME = "fr.jazer:type=Metrics";
+
+    private static final Logger logger = Logger.loggerOfStatic(MetricsRegistry.class);
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    static {
+        DEFAULT.registerMBean(DEFAULT_OBJECT_NAME);
+    }
+
+    protected final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    protected final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    protected final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * @return the registry used by the library.
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param name the name of the counter.
+     * @return the counter, created if needed.
+     */
+    public LongAdder counter(final String name) {
+        return this.counters.computeIfAbsent(name, created -> new LongAdder());
+    }
+
+    /**
+     * @param name the name of the histogram.
+     * @return the histogram, created if needed.
+     */
+    public Histogram histogram(final String name) {
+        return this.histograms.computeIfAbsent(name, created -> new Histogram());
+    }
+
+    /**
+     * Register or replace a gauge.
+     *
+     * @param name  the name of the gauge.
+     * @param gauge read each time the metrics are read.
+     */
+    public void gauge(final String name, final LongSupplier gauge) {
+        this.gauges.put(name, gauge);
+    }
+
+    /**
+     * Remove a metric of any kind, e.g. the gauges of a closed server.
+     *
+     * @param name the name of the metric.
+     */
+    public void remove(final String name) {
+        this.counters.remove(name);
+        this.gauges.remove(name);
+        this.histograms.remove(name);
+    }
+
+    /**
+     * @return the current value of all metrics.
+     */
+    public MetricsSnapshot snapshot() {
+        final TreeMap<String, Long> values = new TreeMap<>();
+        this.counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        this.gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        final TreeMap<String, Histogram.Snapshot> histograms = new TreeMap<>();
+        this.histograms.forEach((name, histogram) -> histograms.put(name, histogram.snapshot()));
+        return new MetricsSnapshot(System.currentTimeMillis(), values, histograms);
+    }
+
+    /**
+     * Expose this registry on the platform MBean server.
+     *
+     * @param objectName the name of the MBean.
+     * @return false if the MBean couldn't be registered.
+     */
+    public boolean registerMBean(final String objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this), new ObjectName(objectName));
+            return true;
+        } catch (JMException | SecurityException e) {
+            logger.err("Metrics couldn't be exposed as {} : {}", objectName, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @param objectName the name given to {@link MetricsRegistry#registerMBean(String)}.
+     */
+    public void unregisterMBean(final String objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(objectName));
+        } catch (JMException | SecurityException e) {
+            logger.err("Metrics MBean {} couldn't be unregistered : {}", objectName, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the names of the counters and gauges, used by the MBean.
+     */
+    Map<String, LongSupplier> values() {
+        final TreeMap<String, LongSupplier> values = new TreeMap<>(this.gauges);
+        this.counters.forEach((name, counter) -> values.put(name, counter::sum));
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsRegistry{" +
+                "counters=" + counters.size() +
+                ", gauges=" + gauges.size() +
+                ", histograms=" + histograms.size() +
+                '}';
+    }
+}
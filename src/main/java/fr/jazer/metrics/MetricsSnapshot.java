@@ -0,0 +1,76 @@
+package fr.jazer.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The metrics of a {@link MetricsRegistry} at a time. Rates are computed from two snapshots, e.g. the Sessions accepted by second.
+ */
+public class MetricsSnapshot {
+
+    protected final long time;
+    protected final Map<String, Long> values;
+    protected final Map<String, Histogram.Snapshot> histograms;
+
+    protected MetricsSnapshot(final long time, final Map<String, Long> values, final Map<String, Histogram.Snapshot> histograms) {
+        this.time = time;
+        this.values = Collections.unmodifiableMap(values);
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * @return the time of the snapshot, in ms since epoch.
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * @param name the name of a counter or a gauge.
+     * @return its value, 0 if there is no such metric.
+     */
+    public long get(final String name) {
+        final Long value = this.values.get(name);
+        return value != null ? value : 0;
+    }
+
+    /**
+     * @param name the name of a histogram.
+     * @return its snapshot, null if there is no such histogram.
+     */
+    public Histogram.Snapshot getHistogram(final String name) {
+        return this.histograms.get(name);
+    }
+
+    /**
+     * @return the counters and gauges by name, sorted.
+     */
+    public Map<String, Long> getValues() {
+        return this.values;
+    }
+
+    /**
+     * @return the histograms by name, sorted.
+     */
+    public Map<String, Histogram.Snapshot> getHistograms() {
+        return this.histograms;
+    }
+
+    /**
+     * @param previous an older snapshot.
+     * @param name     the name of a counter.
+     * @return the increase of the counter by second between the two snapshots.
+     */
+    public double rate(final MetricsSnapshot previous, final String name) {
+        final long elapsed = this.time - previous.time;
+        return elapsed <= 0 ? 0 : (get(name) - previous.get(name)) * 1000.0 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("MetricsSnapshot{time=").append(time);
+        this.values.forEach((name, value) -> builder.append(", ").append(name).append('=').append(value));
+        this.histograms.forEach((name, histogram) -> builder.append(", ").append(name).append("={").append(histogram).append('}'));
+        return builder.append('}').toString();
+    }
+}
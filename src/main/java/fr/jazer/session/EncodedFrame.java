@@ -0,0 +1,59 @@
+package fr.jazer.session;
+
+import fr.jazer.buffer_manager.BufferPool;
+import fr.jazer.buffer_manager.PooledBuffer;
+import fr.jazer.buffer_manager.ReferenceCounted;
+import fr.jazer.session.transport.FrameDecoder;
+
+/**
+ * A packet encoded once as a complete frame, header included, to be written by many Sessions. See {@link SessionGroup}.
+ * <p>
+ * The frame is read-only once encoded, each Session queuing it retains it until it is written.
+ * Frames are never compressed, the Sessions negotiating a compression still read uncompressed frames.
+ */
+public class EncodedFrame implements ReferenceCounted {
+
+    protected final PooledBuffer buffer;
+    /**
+     * Bytes of the frame, header included.
+     */
+    protected final int length;
+
+    /**
+     * Encode the frame of a packet in a pooled buffer.
+     *
+     * @param packet the packet at encode, it can be released once encoded.
+     */
+    public EncodedFrame(final SPacket packet) {
+        this.length = FrameDecoder.HEADER_SIZE + packet.getLength();
+        this.buffer = BufferPool.getDefault().acquire(this.length);
+        Session.putInt(this.buffer.array(), 0, packet.getLength());
+        Session.putInt(this.buffer.array(), 4, packet.getTag());
+        System.arraycopy(packet.getArray(), 0, this.buffer.array(), FrameDecoder.HEADER_SIZE, packet.getLength());
+    }
+
+    /**
+     * @return the array holding the frame, the frame is the {@link EncodedFrame#getLength()} first bytes.
+     */
+    public byte[] getArray() {
+        return this.buffer.array();
+    }
+
+    /**
+     * @return bytes of the frame, header included.
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    @Override
+    public EncodedFrame retain() {
+        this.buffer.retain();
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return this.buffer.release();
+    }
+}
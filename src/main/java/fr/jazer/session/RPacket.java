@@ -1,5 +1,9 @@
 package fr.jazer.session;
 
+import fr.jazer.buffer_manager.PooledBuffer;
+import fr.jazer.buffer_manager.ReferenceCounted;
+import fr.jazer.session.codec.CodecException;
+import fr.jazer.session.codec.PacketReader;
 import fr.jazer.session.stream.TaggedEntity;
 
 import java.nio.charset.StandardCharsets;
@@ -7,16 +11,34 @@ import java.util.Arrays;
 
 /**
  * This class is used to receive data from a {@link Session}.
+ * <p>
+ * Packets read by a Session are backed by a plain array, unless {@link Session#setPooledPackets(boolean)} is set : they are then
+ * backed by a {@link PooledBuffer}. The owner of a pooled packet (the caller of {@link Session#read(int)})
+ * should {@link RPacket#release()} it, or use try-with-resources, when done. Packets given to listeners are released
+ * after the listener returned, a listener keeping the packet must {@link RPacket#retain()} it.
+ * Packets never released are left to the GC. Releasing a packet backed by a plain array does nothing.
+ * <p>
+ * The data written by the appending writers of {@link SPacket} are read in place by {@link RPacket#reader()}. Each call gives a new
+ * cursor starting at the first byte, so listeners dispatched in parallel on the same packet don't move the cursor of each other.
+ * A read beyond the data throws a {@link CodecException}.
  */
-public class RPacket implements TaggedEntity {
+public class RPacket implements TaggedEntity, ReferenceCounted {
     /**
      * RPacket represent the ID of a packet, it can be recognized by this number.
      */
     protected int packetNumber;
     /**
-     * The data contained by the Packet as ByteArray.
+     * The data contained by the Packet as ByteArray. For pooled packets, copied from {@link RPacket#buffer} at the first {@link RPacket#getData()}.
      */
     protected byte[] data;
+    /**
+     * The buffer holding the data, null if the packet isn't pooled.
+     */
+    protected PooledBuffer buffer;
+    /**
+     * The number of bytes of data.
+     */
+    protected int length;
 
     /**
      * Constructor used by a Session when reading a new packet.
@@ -27,6 +49,20 @@ public class RPacket implements TaggedEntity {
     public RPacket(final int packetNumber, final byte[] data) {
         this.packetNumber = packetNumber;
         this.data = data;
+        this.length = data.length;
+    }
+
+    /**
+     * Constructor used by a Session when reading a new packet in a pooled buffer. The packet take the reference of the buffer.
+     *
+     * @param packetNumber the packetNumber representing the ID of the packet.
+     * @param buffer       the buffer holding the data.
+     * @param length       the number of bytes of data at the start of the buffer.
+     */
+    public RPacket(final int packetNumber, final PooledBuffer buffer, final int length) {
+        this.packetNumber = packetNumber;
+        this.buffer = buffer;
+        this.length = length;
     }
 
     /**
@@ -38,24 +74,78 @@ public class RPacket implements TaggedEntity {
     }
 
     /**
-     * @return the data contained by the packet.
+     * @return the data contained by the packet. For pooled packets, the data are copied at the first call.
      */
     public byte[] getData() {
+        if (this.data == null)
+            this.data = Arrays.copyOf(this.buffer.array(), this.length);
         return this.data;
     }
 
+    /**
+     * Access the data without copy.
+     *
+     * @return the array holding the data, the data are the {@link RPacket#getLength()} first bytes.
+     */
+    public byte[] getArray() {
+        return this.data != null ? this.data : this.buffer.array();
+    }
+
+    /**
+     * @return the number of bytes of data.
+     */
+    public int getLength() {
+        return this.length;
+    }
+
     /**
      * @return use the {@link RPacket#data} to parse a String encoded with UTF_8.
      */
     public String readString() {
-        return new String(this.data, StandardCharsets.UTF_8);
+        return new String(getArray(), 0, this.length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the data written by the appending writers of {@link SPacket}, from the first byte.
+     *
+     * @return a new reader, the cursor of its caller alone.
+     */
+    public PacketReader reader() {
+        return new PacketReader(this);
+    }
+
+    /**
+     * Copy the data out of the pooled buffer and {@link RPacket#release()} it. The packet is then backed by a plain array.
+     * Only the owner of the last reference should detach the packet.
+     *
+     * @return this packet.
+     */
+    public RPacket detach() {
+        if (this.buffer != null) {
+            getData();
+            release();
+            this.buffer = null;
+        }
+        return this;
+    }
+
+    @Override
+    public RPacket retain() {
+        if (this.buffer != null)
+            this.buffer.retain();
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return this.buffer != null && this.buffer.release();
     }
 
     @Override
     public String toString() {
         return "RPacket{" +
                 "packetNumber=" + packetNumber +
-                ", data=" + Arrays.toString(data) +
+                ", data=" + (data != null ? Arrays.toString(data) : buffer) +
                 '}';
     }
 }
@@ -0,0 +1,114 @@
+package fr.jazer.session;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The packets written by a resumable Session and not yet acknowledged by the other side, replayed when the Session resumes.
+ * <p>
+ * Packets are numbered in the order they are written, the numbers are implicit : TCP keeps the order, so both sides count the same packets.
+ * The other side acknowledges the number of packets it received with {@link fr.jazer.session.utils.ReservedTags#FRAMES_ACK}.
+ * <p>
+ * The buffer is bounded : above its capacity the oldest packets are dropped, and a Session who lost them can't be resumed anymore.
+ */
+public class RetransmitBuffer {
+
+    /**
+     * Default capacity, in bytes.
+     */
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+
+    protected final ArrayDeque<EncodedFrame> frames = new ArrayDeque<>();
+    /**
+     * Number of the first packet of {@link RetransmitBuffer#frames}.
+     */
+    protected long first = 0;
+    /**
+     * Bytes of the buffered frames.
+     */
+    protected long bytes = 0;
+    protected int capacity = DEFAULT_CAPACITY;
+
+    /**
+     * Keep a written packet until it is acknowledged.
+     *
+     * @param frame the frame of the packet, the buffer takes its reference.
+     */
+    public synchronized void add(final EncodedFrame frame) {
+        this.frames.add(frame);
+        this.bytes += frame.getLength();
+        while (this.bytes > this.capacity && !this.frames.isEmpty())
+            drop();
+    }
+
+    /**
+     * Release the packets received by the other side.
+     *
+     * @param received number of packets received by the other side.
+     */
+    public synchronized void acknowledge(final long received) {
+        while (this.first < received && !this.frames.isEmpty())
+            drop();
+    }
+
+    private void drop() {
+        final EncodedFrame frame = this.frames.poll();
+        this.bytes -= frame.getLength();
+        this.first++;
+        frame.release();
+    }
+
+    /**
+     * @return the number of the oldest packet still buffered, the other side must have received all packets before it to resume.
+     */
+    public synchronized long getFirstSequence() {
+        return this.first;
+    }
+
+    /**
+     * @return the number of the next packet written.
+     */
+    public synchronized long getNextSequence() {
+        return this.first + this.frames.size();
+    }
+
+    /**
+     * @return the buffered frames by order, retained by the buffer.
+     */
+    public synchronized List<EncodedFrame> getPending() {
+        return new ArrayList<>(this.frames);
+    }
+
+    /**
+     * Release all frames and start the numbering again, used when a new Session starts.
+     */
+    public synchronized void reset() {
+        EncodedFrame frame;
+        while ((frame = this.frames.poll()) != null)
+            frame.release();
+        this.first = 0;
+        this.bytes = 0;
+    }
+
+    /**
+     * @param capacity bytes of frames kept, the oldest are dropped above.
+     */
+    public synchronized void setCapacity(final int capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RetransmitBuffer{" +
+                "first=" + first +
+                ", frames=" + frames.size() +
+                ", bytes=" + bytes +
+                ", capacity=" + capacity +
+                '}';
+    }
+}
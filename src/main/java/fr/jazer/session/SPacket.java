@@ -1,22 +1,55 @@
 package fr.jazer.session;
 
+import fr.jazer.buffer_manager.BufferPool;
+import fr.jazer.buffer_manager.PooledBuffer;
+import fr.jazer.buffer_manager.ReferenceCounted;
 import fr.jazer.session.stream.TaggedEntity;
+import fr.jazer.session.utils.Utf8;
+import fr.jazer.session.utils.Varint;
 
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
  * This class is used to send data through a {@link Session}.
+ * <p>
+ * {@link SPacket#writeString(String)} encodes in a {@link PooledBuffer}. The packet can be sent many times,
+ * then {@link SPacket#release()} it, or use try-with-resources, to give the buffer back. Packets never released are left to the GC.
+ * <p>
+ * {@link SPacket#writeBytes(byte[])} and {@link SPacket#writeString(String)} replace the data, the other writers append to them
+ * in a pooled buffer grown as needed : a message of many fields is a single buffer, written by the Session without another copy.
+ * Fixed size numbers are big-endian, varints are {@link Varint}s and texts are UTF-8 prefixed by their varint length, read back by
+ * {@link RPacket#reader()}. A packet must not be written while it is being sent.
  */
-public class SPacket implements TaggedEntity {
+public class SPacket implements TaggedEntity, ReferenceCounted {
+
+    /**
+     * Default initial capacity of the buffer of the appending writers.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final byte[] EMPTY = new byte[0];
+
     /**
      * RPacket represent the ID of a packet, it can be recognized by this number.
      */
     protected int packetNumber;
     /**
-     * The data contained by the Packet as ByteArray.
+     * The data contained by the Packet as ByteArray. For pooled packets, copied from {@link SPacket#buffer} at the first {@link SPacket#getData()}.
      */
     protected byte[] data;
+    /**
+     * The buffer holding the data, null if the packet isn't pooled.
+     */
+    protected PooledBuffer buffer;
+    /**
+     * The number of bytes of data.
+     */
+    protected int length;
+    /**
+     * Flags of the frame header, set by the Session on the frames it builds itself.
+     */
+    protected int frameFlags;
 
     /**
      * Use this constructor to create a packet with empty data.
@@ -24,8 +57,7 @@ public class SPacket implements TaggedEntity {
      * @param packetNumber the packetNumber representing the ID of the packet.
      */
     public SPacket(final int packetNumber) {
-        this.packetNumber = packetNumber;
-        this.data = new byte[0];
+        this(packetNumber, EMPTY);
     }
 
     /**
@@ -37,34 +69,188 @@ public class SPacket implements TaggedEntity {
     public SPacket(final int packetNumber, final byte[] data) {
         this.packetNumber = packetNumber;
         this.data = data;
+        this.length = data.length;
+    }
+
+    /**
+     * Use this constructor to send data already written in a pooled buffer, the packet takes the reference of the caller.
+     *
+     * @param packetNumber the packetNumber representing the ID of the packet.
+     * @param buffer       the buffer holding the data.
+     * @param length       the number of bytes of data.
+     */
+    public SPacket(final int packetNumber, final PooledBuffer buffer, final int length) {
+        this.packetNumber = packetNumber;
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    /**
+     * Use this constructor to build the data with the appending writers, in a pooled buffer.
+     *
+     * @param packetNumber the packetNumber representing the ID of the packet.
+     * @param capacity     the initial capacity, the buffer grows beyond.
+     */
+    public SPacket(final int packetNumber, final int capacity) {
+        this(packetNumber, BufferPool.getDefault().acquire(capacity), 0);
     }
 
     /**
-     * @return the current data owned by this SPacket.
+     * @return the current data owned by this SPacket. For pooled packets, the data are copied at the first call.
      */
     public byte[] getData() {
+        if (this.data == null)
+            this.data = Arrays.copyOf(this.buffer.array(), this.length);
         return this.data;
     }
 
     /**
-     * Used to set the data of the current SPacket.
+     * Access the data without copy, used by Sessions to write the packet.
+     *
+     * @return the array holding the data, the data are the {@link SPacket#getLength()} first bytes.
+     */
+    public byte[] getArray() {
+        return this.data != null ? this.data : this.buffer.array();
+    }
+
+    /**
+     * @return the number of bytes of data.
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Used to set the data of the current SPacket, replacing the data written before.
      *
      * @param data the data to used.
      * @return the current SPacket, to be used as a Builder.
      */
     public SPacket writeBytes(final byte[] data) {
+        releaseBuffer();
         this.data = data;
+        this.length = data.length;
         return this;
     }
 
     /**
-     * Used to save a String in this packet, encoded with UTF_8.
+     * Used to save a String in this packet, encoded with UTF_8 in a pooled buffer, replacing the data written before.
      *
      * @param text the text to encode.
      * @return the current SPacket, to be used as a Builder.
      */
     public SPacket writeString(final String text) {
-        this.data = text.getBytes(StandardCharsets.UTF_8);
+        releaseBuffer();
+        final long maxLength = text.length() * 3L;
+        this.buffer = BufferPool.getDefault().acquire(maxLength <= BufferPool.MAX_CLASS_SIZE ? (int) maxLength : Utf8.encodedLength(text));
+        this.length = Utf8.encode(text, this.buffer.array(), 0);
+        this.data = null;
+        return this;
+    }
+
+    public SPacket writeByte(final int value) {
+        ensure(1);
+        this.buffer.array()[this.length++] = (byte) value;
+        return this;
+    }
+
+    public SPacket writeBoolean(final boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    public SPacket writeShort(final int value) {
+        ensure(2);
+        final byte[] array = this.buffer.array();
+        array[this.length++] = (byte) (value >>> 8);
+        array[this.length++] = (byte) value;
+        return this;
+    }
+
+    public SPacket writeInt(final int value) {
+        ensure(4);
+        final byte[] array = this.buffer.array();
+        array[this.length++] = (byte) (value >>> 24);
+        array[this.length++] = (byte) (value >>> 16);
+        array[this.length++] = (byte) (value >>> 8);
+        array[this.length++] = (byte) value;
+        return this;
+    }
+
+    public SPacket writeLong(final long value) {
+        writeInt((int) (value >>> 32));
+        return writeInt((int) value);
+    }
+
+    public SPacket writeFloat(final float value) {
+        return writeInt(Float.floatToIntBits(value));
+    }
+
+    public SPacket writeDouble(final double value) {
+        return writeLong(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * @param value written on 1 to 5 bytes, 5 for negative values.
+     */
+    public SPacket writeVarInt(final int value) {
+        ensure(Varint.MAX_INT_SIZE);
+        this.length = Varint.put(this.buffer.array(), this.length, value);
+        return this;
+    }
+
+    /**
+     * @param value written on 1 to 10 bytes, 10 for negative values.
+     */
+    public SPacket writeVarLong(final long value) {
+        ensure(Varint.MAX_LONG_SIZE);
+        this.length = Varint.put(this.buffer.array(), this.length, value);
+        return this;
+    }
+
+    /**
+     * @param value written zigzag encoded, small when close to 0 whatever the sign.
+     */
+    public SPacket writeSignedVarInt(final int value) {
+        return writeVarInt(Varint.zigzag(value));
+    }
+
+    public SPacket writeSignedVarLong(final long value) {
+        return writeVarLong(Varint.zigzag(value));
+    }
+
+    /**
+     * Append a text in UTF-8 after its length in bytes, encoded straight in the buffer. Not to mix up with {@link SPacket#writeString(String)}.
+     *
+     * @param text the text, not null.
+     */
+    public SPacket writeUtf(final CharSequence text) {
+        final int length = Utf8.encodedLength(text);
+        writeVarInt(length);
+        ensure(length);
+        this.length += Utf8.encode(text, this.buffer.array(), this.length);
+        return this;
+    }
+
+    /**
+     * Append raw bytes, without their length. Not to mix up with {@link SPacket#writeBytes(byte[])}.
+     */
+    public SPacket writeBytes(final byte[] bytes, final int offset, final int length) {
+        ensure(length);
+        System.arraycopy(bytes, offset, this.buffer.array(), this.length, length);
+        this.length += length;
+        return this;
+    }
+
+    /**
+     * Append the remaining bytes of a buffer, heap or direct, without their length.
+     *
+     * @param bytes the bytes, its position is moved to its limit.
+     */
+    public SPacket writeBytes(final ByteBuffer bytes) {
+        final int length = bytes.remaining();
+        ensure(length);
+        bytes.get(this.buffer.array(), this.length, length);
+        this.length += length;
         return this;
     }
 
@@ -76,11 +262,51 @@ public class SPacket implements TaggedEntity {
         return this.packetNumber;
     }
 
+    @Override
+    public SPacket retain() {
+        if (this.buffer != null)
+            this.buffer.retain();
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return this.buffer != null && this.buffer.release();
+    }
+
+    /**
+     * Make room to append some bytes in a pooled buffer, moving the data in a buffer of the next size class of the pool if needed.
+     */
+    protected void ensure(final int bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException("Negative length " + bytes + ".");
+        // The copy of getData() is out of date once appended to.
+        final byte[] data = this.data;
+        this.data = null;
+        if (this.buffer != null && this.buffer.capacity() - this.length >= bytes)
+            return;
+        final long needed = (long) this.length + bytes;
+        if (needed > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Packet data above 2GB.");
+        final int capacity = this.buffer != null ? this.buffer.capacity() : DEFAULT_CAPACITY;
+        final PooledBuffer bigger = BufferPool.getDefault().acquire((int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, 2L * capacity)));
+        System.arraycopy(this.buffer != null ? this.buffer.array() : data, 0, bigger.array(), 0, this.length);
+        releaseBuffer();
+        this.buffer = bigger;
+    }
+
+    private void releaseBuffer() {
+        if (this.buffer != null) {
+            this.buffer.release();
+            this.buffer = null;
+        }
+    }
+
     @Override
     public String toString() {
         return "SPacket{" +
                 "packetNumber=" + packetNumber +
-                ", data=" + Arrays.toString(data) +
+                ", data=" + (data != null ? Arrays.toString(data) : buffer) +
                 '}';
     }
 }
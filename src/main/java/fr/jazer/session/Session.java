@@ -1,36 +1,115 @@
 package fr.jazer.session;
 
+import fr.jazer.buffer_manager.BufferPool;
+import fr.jazer.buffer_manager.PooledBuffer;
 import fr.jazer.session.utils.crypted.ClientCertConfig;
-import fr.jazer.session.utils.crypted.SSLSocketKeystoreFactory;
+import fr.jazer.session.channel.Channel;
+import fr.jazer.session.channel.ChannelInputStream;
+import fr.jazer.session.channel.ChannelManager;
+import fr.jazer.session.codec.CodecException;
+import fr.jazer.session.codec.CodecRegistry;
+import fr.jazer.session.compression.Codec;
+import fr.jazer.session.utils.Compression;
 import fr.jazer.session.utils.ConnectionStatus;
+import fr.jazer.session.utils.ReservedTags;
 import fr.jazer.session.utils.SessionType;
+import fr.jazer.session.utils.WriteOverflowPolicy;
+import fr.jazer.thread_manager.ThreadMode;
 import fr.jazer.thread_manager.ThreadPool;
+import fr.jazer.thread_manager.WheelTimer;
+import fr.jazer.logger.Level;
 import fr.jazer.logger.Logger;
+import fr.jazer.session.rpc.RequestHandler;
+import fr.jazer.session.rpc.RpcManager;
+import fr.jazer.session.stream.DeliveryMode;
+import fr.jazer.session.stream.DispatchMode;
 import fr.jazer.session.stream.PacketVirtualStream;
+import fr.jazer.session.stream.QueueOverflowPolicy;
 import fr.jazer.session.stream.Receiver;
 import fr.jazer.session.stream.VirtualStream;
+import fr.jazer.session.transport.FrameDecoder;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static fr.jazer.session.utils.SessionType.isServerSide;
 
 public class Session implements Receiver<ConnectionStatus> {
 
+    /**
+     * Size of {@link Session#sendBuffer}. Frames up to this size are written with a single call on the transport.
+     */
+    protected static final int SEND_BUFFER_SIZE = 8192;
+    /**
+     * Default value of {@link Session#writeHighWaterMark}, in bytes.
+     */
+    protected static final long DEFAULT_WRITE_HIGH_WATER_MARK = 4 * 1024 * 1024;
+    /**
+     * Timeout of {@link Session#request(SPacket)}, in ms.
+     */
+    public static final long DEFAULT_REQUEST_TIMEOUT = 30_000;
+    /**
+     * Default value of {@link Session#compressionThreshold}, in bytes.
+     */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+    /**
+     * Default value of {@link Session#handshakeTimeout}, in ms.
+     */
+    public static final int DEFAULT_HANDSHAKE_TIMEOUT = 2000;
+    /**
+     * Default value of {@link Session#maxFrameSize}, in bytes. Bigger data are sent with {@link Session#sendStream(int, InputStream)}.
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    /**
+     * Size of the token identifying a resumable Session, in bytes.
+     */
+    public static final int RESUME_TOKEN_SIZE = 16;
+    /**
+     * A {@link ReservedTags#FRAMES_ACK} is sent each time this number of packets, or {@link Session#ACK_BYTES} bytes, were received.
+     */
+    protected static final int ACK_INTERVAL = 64;
+    protected static final int ACK_BYTES = 256 * 1024;
+    /**
+     * Delays between two attempts of {@link Session#setAutoReconnect(boolean)}, doubled after each failure, in ms.
+     */
+    public static final long RECONNECT_MIN_DELAY = 100;
+    public static final long RECONNECT_MAX_DELAY = 5000;
+
     /**
      * The main component of a Session, the embedded Socket.
      */
     protected Socket socket;
 
+    /**
+     * Source of {@link Session#id}.
+     */
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+    /**
+     * Identifier of the Session, unique in the JVM and stable for the life of the Session. See {@link SessionRegistry}.
+     */
+    protected final long id = NEXT_ID.getAndIncrement();
     /**
      * SessionType is used to differentiate a Session created by a {@link SessionServer} with a client Session.
      * <p>
@@ -66,9 +145,13 @@ public class Session implements Receiver<ConnectionStatus> {
     protected final ThreadPool executor = new ThreadPool();
     /**
      * The Thread reading continually on Socket for new Packets. He is managed in {@link Session#onChanged(ConnectionStatus)}.
-     * His implementation could be find in {@link Session#internalReadLoop()};
+     * His implementation could be find in {@link Session#internalReadLoop(Socket)};
      */
     protected Thread reader;
+    /**
+     * The kind of Thread used by the {@link Session#reader}. By default {@link ThreadMode#getDefault()}.
+     */
+    protected ThreadMode threadMode = ThreadMode.getDefault();
 
     /**
      * A virtual stream to listen status changes.
@@ -76,13 +159,205 @@ public class Session implements Receiver<ConnectionStatus> {
     protected final VirtualStream<ConnectionStatus> statusFlux = new VirtualStream<>();
     /**
      * A virtual stream to listen on packet receive.
+     * By default, packets of a tag are given to its listeners, or queued for {@link Session#read(int)} if it has none.
      */
     protected final PacketVirtualStream<RPacket> packetFlux = new PacketVirtualStream<>();
+    /**
+     * Requests and responses of {@link Session#request(SPacket)}, listening on the reserved tags of {@link Session#packetFlux}.
+     */
+    protected final RpcManager rpc = new RpcManager(this);
+    /**
+     * Channels multiplexed over the Session, see {@link Session#openChannel()}.
+     */
+    protected final ChannelManager channels = new ChannelManager(this);
+    /**
+     * Codecs of the typed messages, see {@link Session#send(int, Object)}.
+     */
+    protected volatile CodecRegistry codecRegistry = CodecRegistry.getDefault();
 
     /**
      * Locker used in {@link Session#send(SPacket)}
+     * <p>
+     * Taken holding {@link Session#lockerConnect} when a new socket replays the lost packets, so the status must never be changed holding it.
      */
     protected final Object lockerSend = new Object();
+    /**
+     * Buffer reused to assemble the header and the data of a frame, allocated at the first send. Guarded by {@link Session#lockerSend}.
+     */
+    protected byte[] sendBuffer;
+
+    /**
+     * Packets sent with {@link Session#sendAsync(SPacket)} waiting for the writer. Many producers, a single writer.
+     */
+    protected final ConcurrentLinkedQueue<PendingWrite> writeQueue = new ConcurrentLinkedQueue<>();
+    /**
+     * Bytes of frames waiting in {@link Session#writeQueue}.
+     */
+    protected final AtomicLong writeQueueBytes = new AtomicLong();
+    /**
+     * True while a writer is scheduled on {@link Session#executor} to drain {@link Session#writeQueue}.
+     */
+    protected final AtomicBoolean writerScheduled = new AtomicBoolean(false);
+    /**
+     * Above this number of pending bytes, {@link Session#writeOverflowPolicy} is applied to new async packets.
+     */
+    private long writeHighWaterMark = DEFAULT_WRITE_HIGH_WATER_MARK;
+    /**
+     * Applied when {@link Session#writeHighWaterMark} is reached.
+     */
+    private WriteOverflowPolicy writeOverflowPolicy = WriteOverflowPolicy.REJECT;
+
+    /**
+     * Frames announcing more data, or decompressing to more data, are refused before allocating their buffer and the Session is disconnected.
+     */
+    protected volatile int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    /**
+     * True if the packets received are given backed by their {@link PooledBuffer}, else they are copied in a plain array.
+     */
+    protected volatile boolean pooledPackets = false;
+
+    /**
+     * Given to the readers of {@link Session#packetFlux} once the Session is destroyed.
+     */
+    private static final RPacket END_OF_STREAM = new RPacket(0, new byte[0]);
+    /**
+     * Frames sent by idle Sessions and their answers, shared by all Sessions.
+     */
+    private static final EncodedFrame PING_FRAME = new EncodedFrame(new SPacket(ReservedTags.PING));
+    private static final EncodedFrame PONG_FRAME = new EncodedFrame(new SPacket(ReservedTags.PONG));
+
+    /**
+     * A {@link ReservedTags#PING} is sent when nothing was written for this time, in ms. 0 disables the heartbeat.
+     */
+    protected volatile long heartbeatInterval = 0;
+    /**
+     * The peer is considered dead and the Session disconnected when nothing was read for this time, in ms. 0 disables the timeout.
+     */
+    protected volatile long readIdleTimeout = 0;
+    /**
+     * The Session is disconnected when frames wait to be written and nothing was written for this time, in ms. 0 disables the timeout.
+     */
+    protected volatile long writeIdleTimeout = 0;
+    /**
+     * {@link System#nanoTime()} of the last frame read.
+     */
+    protected volatile long lastReadTime = System.nanoTime();
+    /**
+     * {@link System#nanoTime()} of the last time the transport accepted all the bytes written.
+     */
+    protected volatile long lastWriteTime = System.nanoTime();
+    /**
+     * True while a Thread writes on the transport.
+     */
+    protected volatile boolean writing = false;
+    /**
+     * Incremented each time the idle check is armed, older checks stop when they see a newer generation. Guarded by {@link Session#lockerTimer}.
+     */
+    private int idleCheckGeneration;
+    /**
+     * The timeout destroying the Session after {@link Session#sessionTimeOut} disconnected.
+     */
+    private WheelTimer.Timeout destroyTimeout;
+    /**
+     * Locker of the timeouts of the Session.
+     */
+    protected final Object lockerTimer = new Object();
+
+    /**
+     * Compressions offered by a client during {@link Session#integrityCheck(Socket)} by order of preference, or accepted from clients by a server Session.
+     * Clients offer none by default, server Sessions accept all.
+     */
+    protected volatile Compression[] compressions;
+    /**
+     * Packets with less data are sent uncompressed.
+     */
+    protected volatile int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    /**
+     * Time a client waits the answer of the server to its handshake, in ms. Without answer, the Session is not compressed.
+     */
+    protected int handshakeTimeout = DEFAULT_HANDSHAKE_TIMEOUT;
+    /**
+     * The negotiated compression, null if the frames aren't compressed.
+     */
+    protected volatile Compression compression;
+    /**
+     * The codec of {@link Session#compression}, reused for all packets. Compressing is guarded by {@link Session#lockerSend},
+     * decompressing is done by the reader.
+     */
+    protected volatile Codec codec;
+    /**
+     * True once the server answered the handshake of {@link Session#integrityCheck(Socket)}.
+     */
+    private boolean handshakeAnswered;
+    /**
+     * Clients offer the resumption of the Session at each connection, see {@link Session#setResumable(boolean)}.
+     */
+    protected volatile boolean resumable = false;
+    /**
+     * True while the packets of the connection are numbered, once the server accepted the resumption.
+     * Packets on {@link ReservedTags} are never numbered.
+     */
+    protected volatile boolean sequenced = false;
+    /**
+     * Packets written and not yet acknowledged by the other side, replayed when the Session resumes.
+     */
+    protected final RetransmitBuffer retransmit = new RetransmitBuffer();
+    /**
+     * The traffic of this Session, see {@link Session#getMetrics()}.
+     */
+    protected final SessionMetrics metrics = new SessionMetrics();
+    /**
+     * Number of numbered packets received since the Session started. Only written by the reader.
+     */
+    protected volatile long received = 0;
+    /**
+     * Last value of {@link Session#received} acknowledged to the other side, and bytes received since.
+     */
+    private volatile long receivedAcked = 0;
+    private final AtomicInteger unackedBytes = new AtomicInteger();
+    /**
+     * Identify the Session to the server when it resumes, given by the server.
+     */
+    protected volatile byte[] resumeToken;
+    /**
+     * True if the last connection resumed the previous one.
+     */
+    protected volatile boolean resumed = false;
+    /**
+     * The server of a {@link SessionType#SERVER_SIDE} Session accepting resumptions, null otherwise.
+     */
+    volatile SessionServer resumeServer;
+    /**
+     * Set once the {@link SessionServer} gave this Session to its listeners, or gave its connection to the Session it resumed.
+     */
+    final AtomicBoolean published = new AtomicBoolean(false);
+    /**
+     * True while a new connection is given to this Session by {@link Session#resume(Session, long, long, long)}.
+     */
+    private final AtomicBoolean resuming = new AtomicBoolean(false);
+    /**
+     * Clients reconnect by themselves when disconnected, see {@link Session#setAutoReconnect(boolean)}.
+     */
+    protected volatile boolean autoReconnect = false;
+    /**
+     * Where the client was connected, used by {@link Session#reconnect()}. Guarded by {@link Session#lockerConnect}.
+     */
+    private String lastAddress;
+    private int lastPort;
+    private ClientCertConfig lastCertConfig;
+    /**
+     * True once the transport of the last connection was stopped by {@link Session#releaseTransport()}. Guarded by {@link Session#lockerConnect}.
+     */
+    private boolean transportReleased = true;
+    /**
+     * Number of times the Session was connected, a write failing on a previous connection doesn't disconnect the current one. Written holding {@link Session#lockerConnect}.
+     */
+    private volatile long connections = 0;
+    /**
+     * The socket read by {@link Session#reader}.
+     */
+    private Socket readerSocket;
+
     /**
      * Locker used in {@link Session#connect(String, int, ClientCertConfig)}, {@link Session#setStatus(ConnectionStatus)}, {@link Session#onChanged(ConnectionStatus)}.
      */
@@ -97,7 +372,17 @@ public class Session implements Receiver<ConnectionStatus> {
      * Default constructor for clients.
      */
     public Session() {
-        this.sessionType = SessionType.CLIENT_SIDE;
+        this(SessionType.CLIENT_SIDE);
+    }
+
+    /**
+     * Constructor used by subclasses who need to finish their own initialisation before emitting the first status.
+     *
+     * @param sessionType the type of the session.
+     */
+    protected Session(final SessionType sessionType) {
+        this.sessionType = sessionType;
+        this.compressions = isServerSide(sessionType) ? Compression.values() : new Compression[0];
         this.statusFlux.addReceiver(this);
     }
 
@@ -110,13 +395,46 @@ public class Session implements Receiver<ConnectionStatus> {
      * @param sessionType the type of the session.
      */
     public Session(final Socket socket, final SessionType sessionType) {
+        this(socket, sessionType, ThreadMode.getDefault());
+    }
+
+    /**
+     * Same as {@link Session#Session(Socket, SessionType)}, choosing the kind of Thread of the {@link Session#reader}.
+     *
+     * @param socket      the socket to embed.
+     * @param sessionType the type of the session.
+     * @param threadMode  the kind of Thread used by the reader.
+     */
+    public Session(final Socket socket, final SessionType sessionType, final ThreadMode threadMode) {
+        this(sessionType);
         this.socket = socket;
-        this.sessionType = sessionType;
-        this.statusFlux.addReceiver(this);
+        this.threadMode = threadMode;
         if (this.socket != null && this.socket.isConnected())
             setStatus(ConnectionStatus.CONNECTED);
     }
 
+    /**
+     * Used by {@link SessionServer} to accept a socket, the Session is configured by the server before its reader starts.
+     *
+     * @param socket the accepted socket.
+     * @param server the server accepting the socket.
+     */
+    Session(final Socket socket, final SessionServer server) {
+        this(SessionType.SERVER_SIDE);
+        this.socket = socket;
+        this.threadMode = server.threadMode;
+        server.configure(this);
+        if (this.socket.isConnected())
+            setStatus(ConnectionStatus.CONNECTED);
+    }
+
+    /**
+     * @return the identifier of the Session, unique in the JVM.
+     */
+    public long getId() {
+        return this.id;
+    }
+
     /**
      * @return the embedded socket by the Session.
      */
@@ -166,38 +484,63 @@ public class Session implements Receiver<ConnectionStatus> {
                 return this.status;
             try {
                 final Socket newSocket;
-                if ((newSocket = constructSocket(address, port, clientCertConfig)).isConnected() && integrityCheck(newSocket)) {
-                    this.socket = newSocket;
-                    setStatus(ConnectionStatus.CONNECTED);
+                if ((newSocket = constructSocket(address, port, clientCertConfig)).isConnected()) {
+                    this.lastAddress = address;
+                    this.lastPort = port;
+                    this.lastCertConfig = clientCertConfig;
+                    awaitReader();
+                    if (integrityCheck(newSocket) && attach(newSocket)) {
+                        setStatus(ConnectionStatus.CONNECTED);
+                    } else {
+                        newSocket.close();
+                    }
                 }
             } catch (IOException e) {
-                logger.err("Handled output : " + e.getMessage());
+                logger.err("Handled output : {}", e.getMessage());
             } catch (CertificateException | NoSuchAlgorithmException | KeyStoreException | KeyManagementException e) {
-                logger.err("Couldn't create secured socket : " + e.getMessage());
+                logger.err("Couldn't create secured socket : {}", e.getMessage());
             }
             return this.status;
         }
     }
 
     /**
-     * Try to reconnect the Socket using data's of the current disconnected {@link Session#socket}.
-     * This method don't reconnect secured socket.
+     * Try to reconnect the Session to the server of the last {@link Session#connect(String, int, ClientCertConfig)}, secured Sessions included.
      * <p>
-     * To prevent to reconnect secured session you need to validate that it's not a secured session. Using secured param.
+     * A resumable Session resumes : the packets lost with the previous connection are replayed, see {@link Session#setResumable(boolean)}.
      * <p>
-     * This method call {@link Session#connect(String, int)} go check how it works !
+     * This method call {@link Session#connect(String, int, ClientCertConfig)} go check how it works !
      *
-     * @param secured if the socket is secured.
      * @return the new status of the Session.
      */
-    public ConnectionStatus reconnect(final boolean secured) {
-        if (secured)
-            new IllegalStateException("Session.reconnect() method cannot be used on SECURED Session.").printStackTrace();
-        if (!secured && socket != null)
-            return connect(socket.getInetAddress().getHostAddress(), socket.getPort());
+    public ConnectionStatus reconnect() {
+        final String address;
+        final int port;
+        final ClientCertConfig certConfig;
+        synchronized (this.lockerConnect) {
+            address = this.lastAddress;
+            port = this.lastPort;
+            certConfig = this.lastCertConfig;
+        }
+        if (address != null)
+            return connect(address, port, certConfig);
+        if (this.socket != null)
+            return connect(this.socket.getInetAddress().getHostAddress(), this.socket.getPort());
         return this.status;
     }
 
+    /**
+     * Same as {@link Session#reconnect()}, secured Sessions can be reconnected.
+     *
+     * @param secured ignored.
+     * @return the new status of the Session.
+     * @deprecated use {@link Session#reconnect()}.
+     */
+    @Deprecated
+    public ConnectionStatus reconnect(final boolean secured) {
+        return reconnect();
+    }
+
     /**
      * Construct a Socket using params and the optional {@link ClientCertConfig}.
      * <p>
@@ -216,100 +559,1065 @@ public class Session implements Receiver<ConnectionStatus> {
     protected Socket constructSocket(final String address, final int port, @Nullable final ClientCertConfig clientCertConfig) throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
         if (clientCertConfig == null)
             return new Socket(address, port);
-        else
-            return SSLSocketKeystoreFactory.getSocketWithCert(address, port, clientCertConfig.input(), clientCertConfig.password(), clientCertConfig.type(), clientCertConfig.format());
+        // The context of the config is shared, reconnections resume the TLS session.
+        return clientCertConfig.context().getSocketFactory().createSocket(address, port);
     }
 
-    protected boolean integrityCheck(final Socket socket) {
+    /**
+     * Handshake of a client, done before the Session is {@link ConnectionStatus#CONNECTED}.
+     * <p>
+     * A resumable Session first sends a {@link ReservedTags#SESSION_RESUME} frame, and waits the {@link ReservedTags#SESSION_RESUMED}
+     * of the server at most {@link Session#handshakeTimeout} ms. Without answer the socket isn't used.
+     * <p>
+     * If {@link Session#compressions} isn't empty, they are offered to the server in a {@link ReservedTags#COMPRESSION_HELLO} frame,
+     * and the Session waits the {@link ReservedTags#COMPRESSION_ACK} of the server at most {@link Session#handshakeTimeout} ms.
+     * Frames received before the answer are emitted as usual.
+     *
+     * @param socket the new socket.
+     * @return true if the socket can be used.
+     * @throws IOException if the socket failed.
+     */
+    protected boolean integrityCheck(final Socket socket) throws IOException {
         // TODO make the handshake exchange a client key.
+        useCompression(null);
+        if (!offerResume(socket))
+            return false;
+        if (this.compressions.length == 0)
+            return true;
+
+        final byte[] frame = new byte[FrameDecoder.HEADER_SIZE + this.compressions.length];
+        putInt(frame, 0, this.compressions.length);
+        putInt(frame, 4, ReservedTags.COMPRESSION_HELLO);
+        for (int i = 0; i < this.compressions.length; i++)
+            frame[FrameDecoder.HEADER_SIZE + i] = this.compressions[i].id;
+        if (exchangeHandshake(socket, frame) < 0)
+            return false;
+        if (!this.handshakeAnswered)
+            logger.log("Server didn't answer the handshake in {} ms, frames are not compressed.", this.handshakeTimeout);
         return true;
     }
 
     /**
-     * Internal method used to change the current {@link Session#status}.
-     * <p>
-     * This method emit a new value on the {@link Session#statusFlux}.
+     * Offer the server to resume the Session of {@link Session#resumeToken}, or to start a new resumable Session.
+     * The frame holds [received][first buffered][next sequence][token].
      *
-     * @param status the new value of status.
-     * @return false if status was changed, true if status was changed.
+     * @param socket the new socket.
+     * @return false if the server didn't answer.
+     * @throws IOException if the socket failed.
      */
-    protected boolean setStatus(final ConnectionStatus status) {
-        synchronized (this.lockerConnect) {
-            if (this.status == status)
-                return false;
-            this.statusFlux.emitValue(status);
-            this.status = status;
+    private boolean offerResume(final Socket socket) throws IOException {
+        this.resumed = false;
+        this.sequenced = false;
+        if (!this.resumable)
             return true;
+
+        final byte[] token = this.resumeToken;
+        final int length = 24 + (token != null ? token.length : 0);
+        final byte[] frame = new byte[FrameDecoder.HEADER_SIZE + length];
+        putInt(frame, 0, length);
+        putInt(frame, 4, ReservedTags.SESSION_RESUME);
+        putLong(frame, 8, this.received);
+        putLong(frame, 16, this.retransmit.getFirstSequence());
+        putLong(frame, 24, this.retransmit.getNextSequence());
+        if (token != null)
+            System.arraycopy(token, 0, frame, 32, token.length);
+        if (exchangeHandshake(socket, frame) <= 0) {
+            logger.err("Server didn't answer the resumption in {} ms.", this.handshakeTimeout);
+            return false;
         }
+        return true;
     }
 
     /**
-     * This method destroy this session, with closing {@link Session#socket} and destroying {@link Session#statusFlux} and {@link Session#packetFlux}.
+     * Send a handshake frame and read the frames of the server until {@link Session#handshakeAnswered}, at most {@link Session#handshakeTimeout} ms.
+     *
+     * @param socket the new socket.
+     * @param frame  the complete frame.
+     * @return 1 if the server answered, 0 if it didn't in time, -1 if the stream ended.
+     * @throws IOException if the socket failed.
      */
-    public void destroy() {
-        if (this.status == ConnectionStatus.DESTROYED)
-            return;
-        setStatus(ConnectionStatus.DISCONNECTED);
-        setStatus(ConnectionStatus.DESTROYED);
+    private int exchangeHandshake(final Socket socket, final byte[] frame) throws IOException {
+        socket.getOutputStream().write(frame);
+
+        final int previousTimeout = socket.getSoTimeout();
+        socket.setSoTimeout(this.handshakeTimeout);
+        this.handshakeAnswered = false;
         try {
-            this.socket.close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            final InputStream in = socket.getInputStream();
+            final byte[] header = new byte[FrameDecoder.HEADER_SIZE];
+            while (!this.handshakeAnswered)
+                if (!readFrame(in, header))
+                    return -1;
+            return 1;
+        } catch (SocketTimeoutException e) {
+            return 0;
+        } finally {
+            socket.setSoTimeout(previousTimeout);
         }
     }
 
-    public void setSessionTimeOut(long sessionTimeOut) {
-        this.sessionTimeOut = sessionTimeOut;
+    /**
+     * Handle the {@link ReservedTags#SESSION_RESUMED} of the server : [resumed][token][packets received by the server].
+     * An empty answer means the server doesn't resume Sessions.
+     */
+    private void onResumeAnswer(final RPacket answer) {
+        if (answer.getLength() < 1 + RESUME_TOKEN_SIZE + 8) {
+            logger.log("Server doesn't resume Sessions.");
+            return;
+        }
+        final byte[] data = answer.getArray();
+        if (data[0] != 0) {
+            this.retransmit.acknowledge(getLong(data, 1 + RESUME_TOKEN_SIZE));
+            this.resumed = true;
+            if (logger.isEnabled(Level.INFO))
+                logger.log("Session resumed, {} packets to replay.", this.retransmit.getNextSequence() - this.retransmit.getFirstSequence());
+        } else {
+            if (this.resumeToken != null)
+                logger.log("Session couldn't be resumed, a new Session starts.");
+            this.retransmit.reset();
+            this.received = 0;
+            this.receivedAcked = 0;
+            this.unackedBytes.set(0);
+        }
+        this.resumeToken = Arrays.copyOfRange(data, 1, 1 + RESUME_TOKEN_SIZE);
+        this.sequenced = true;
     }
 
-    public VirtualStream<ConnectionStatus> getStatusFlux() {
-        return this.statusFlux;
+    /**
+     * Answer the resumption asked by a client in its first frame, see {@link Session#setResumable(boolean)}.
+     * <p>
+     * If the token designates a Session of the server whose lost packets can be replayed, the connection is given to it and this Session is destroyed.
+     * Otherwise this Session becomes resumable with a new token.
+     *
+     * @param hello the offer of the client.
+     * @throws IOException if the answer couldn't be sent.
+     */
+    protected void acceptResume(final RPacket hello) throws IOException {
+        final SessionServer server = this.resumeServer;
+        if (server == null || hello.getLength() < 24) {
+            synchronized (this.lockerSend) {
+                try (final SPacket answer = new SPacket(ReservedTags.SESSION_RESUMED)) {
+                    writePacket(answer);
+                }
+            }
+            return;
+        }
+        final boolean first = this.published.compareAndSet(false, true);
+        final byte[] data = hello.getArray();
+        if (first && hello.getLength() >= 24 + RESUME_TOKEN_SIZE) {
+            final Session previous = server.getResumable(Arrays.copyOfRange(data, 24, 24 + RESUME_TOKEN_SIZE));
+            if (previous != null && previous != this && previous.getClass() == getClass()
+                    && previous.resume(this, getLong(data, 0), getLong(data, 8), getLong(data, 16))) {
+                destroy();
+                return;
+            }
+        }
+
+        final byte[] token = server.newResumable(this);
+        synchronized (this.lockerSend) {
+            this.resumeToken = token;
+            this.sequenced = true;
+            try (final SPacket answer = resumeAnswer(false)) {
+                writePacket(answer);
+            }
+        }
+        if (first)
+            server.publish(this);
     }
 
-    public void addStatusListener(final Receiver<ConnectionStatus> statusReceiver) {
-        this.statusFlux.addReceiver(statusReceiver);
+    /**
+     * Give the connection of a new server Session to this one, disconnected or not yet seen disconnected.
+     * The answer of the resumption is written first, followed by the packets the client didn't receive.
+     *
+     * @param from           the new Session, asking to resume this one. It must be destroyed if this method returns true.
+     * @param clientReceived packets of this Session received by the client.
+     * @param clientFirst    first packet the client can replay.
+     * @param clientNext     next packet the client will write.
+     * @return false if this Session can't be resumed, the connection is left to the new Session.
+     */
+    boolean resume(final Session from, final long clientReceived, final long clientFirst, final long clientNext) {
+        if (!this.resuming.compareAndSet(false, true))
+            return false;
+        try {
+            synchronized (this.lockerConnect) {
+                if (this.status == ConnectionStatus.DESTROYED || !this.sequenced)
+                    return false;
+                final long received = this.received;
+                if (received < clientFirst || received > clientNext
+                        || clientReceived < this.retransmit.getFirstSequence() || clientReceived > this.retransmit.getNextSequence()) {
+                    logger.log("Packets were lost by the retransmit buffers, the Session can't be resumed.");
+                    return false;
+                }
+                cancelDestroyTimeout();
+            }
+            // The previous connection can still look alive on this side.
+            if (this.isConnected())
+                dropConnection();
+            releaseTransport();
+
+            synchronized (this.lockerSend) {
+                takeTransport(from);
+                useCompression(null);
+                this.retransmit.acknowledge(clientReceived);
+                this.resumed = true;
+                try (final SPacket answer = resumeAnswer(true)) {
+                    writePacket(answer);
+                    replay();
+                } catch (IOException e) {
+                    logger.err("Resumed connection failed : {}", e.getMessage());
+                    closeSocket();
+                    scheduleDestroy();
+                    return true;
+                }
+            }
+
+            synchronized (this.lockerConnect) {
+                if (this.status == ConnectionStatus.DESTROYED) {
+                    closeSocket();
+                    return true;
+                }
+                setStatus(ConnectionStatus.CONNECTED);
+            }
+            logger.log("Session resumed.");
+            if (this.resumeServer != null)
+                this.resumeServer.reattach(this);
+            return true;
+        } finally {
+            this.resuming.set(false);
+        }
     }
 
-    public void removeStatusListener(final Receiver<ConnectionStatus> statusReceiver) {
-        this.statusFlux.removeReceiver(statusReceiver);
+    private SPacket resumeAnswer(final boolean resumed) {
+        final byte[] data = new byte[1 + RESUME_TOKEN_SIZE + 8];
+        data[0] = (byte) (resumed ? 1 : 0);
+        System.arraycopy(this.resumeToken, 0, data, 1, RESUME_TOKEN_SIZE);
+        putLong(data, 1 + RESUME_TOKEN_SIZE, resumed ? this.received : 0);
+        return new SPacket(ReservedTags.SESSION_RESUMED, data);
     }
 
-    public ConnectionStatus nextStatus() {
-        return this.statusFlux.readASlash();
+    /**
+     * Take the transport of another Session, who can't use it anymore. Always called holding {@link Session#lockerSend}.
+     *
+     * @param from the Session giving its transport.
+     */
+    protected void takeTransport(final Session from) {
+        this.socket = from.socket;
+        from.socket = null;
     }
 
-    public void slashStatus(final ConnectionStatus status) {
-        this.statusFlux.slash(status);
+    /**
+     * Close the socket of the previous connection and wait its reader at most {@link Session#handshakeTimeout} ms,
+     * a frame read after the resumption counted the packets received would be received twice.
+     */
+    private void awaitReader() {
+        final Thread reader = this.reader;
+        if (reader == null || reader == Thread.currentThread())
+            return;
+        closeSocket();
+        try {
+            reader.join(this.handshakeTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
-     * Send a packed throw {@link Session#socket}.
+     * Use a new socket, replaying the packets the server didn't receive if the Session resumed.
      *
-     * @param packet the packet at send.
-     * @return true if the packet was sent, false if not.
+     * @return false if the socket failed.
      */
-    public boolean send(final SPacket packet) {
+    private boolean attach(final Socket socket) {
+        releaseTransport();
         synchronized (this.lockerSend) {
+            this.socket = socket;
             try {
-                socket.getOutputStream().write(ByteBuffer.allocate(4).putInt(packet.data.length).array());
-                socket.getOutputStream().write(ByteBuffer.allocate(4).putInt(packet.packetNumber).array());
-                socket.getOutputStream().write(packet.data);
-                socket.getOutputStream().flush();
-
+                replay();
                 return true;
-            } catch (SocketException e) {
-                this.setStatus(ConnectionStatus.DISCONNECTED);
-                return false;
             } catch (IOException e) {
-                e.printStackTrace();
-                logger.err("COULD'T SEND RETURN FALSE.");
+                logger.err("Couldn't replay the packets : {}", e.getMessage());
                 return false;
             }
         }
     }
 
+    /**
+     * Write again the packets the other side didn't receive before the last disconnection, if the Session resumed.
+     * Always called holding {@link Session#lockerSend}, before the Session is connected again.
+     *
+     * @throws IOException if the transport couldn't write the packets.
+     */
+    protected void replay() throws IOException {
+        if (!this.resumed)
+            return;
+        for (final EncodedFrame frame : this.retransmit.getPending())
+            writeBytes(frame.getArray(), 0, frame.getLength());
+    }
 
-    public PacketVirtualStream<RPacket> getPacketFlux() {
+    /**
+     * Keep a written packet until the other side acknowledges it, if the packets are numbered.
+     * Always called holding {@link Session#lockerSend}, in the order packets are written.
+     */
+    private void sent(final SPacket packet) {
+        this.metrics.sent(packet.getTag(), FrameDecoder.HEADER_SIZE + packet.getLength());
+        if (this.sequenced && !ReservedTags.isReserved(packet.getTag()))
+            this.retransmit.add(new EncodedFrame(packet));
+    }
+
+    private void sent(final EncodedFrame frame) {
+        final int tag = getInt(frame.getArray(), 4);
+        this.metrics.sent(tag, frame.getLength());
+        if (this.sequenced && !ReservedTags.isReserved(tag))
+            this.retransmit.add(frame.retain());
+    }
+
+    /**
+     * Mark the written packets of a batch, from the first not yet marked.
+     *
+     * @return the index of the next packet at mark.
+     */
+    private int sent(final List<PendingWrite> batch, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            final PendingWrite pending = batch.get(i);
+            if (pending.encoded != null)
+                sent(pending.encoded);
+            else
+                sent(pending.packet);
+        }
+        return to;
+    }
+
+    /**
+     * Count a numbered packet received, and acknowledge the packets received every {@link Session#ACK_INTERVAL} packets or {@link Session#ACK_BYTES} bytes.
+     */
+    private void countReceived(final int length) {
+        final long received = ++this.received;
+        final int unackedBytes = this.unackedBytes.addAndGet(length);
+        if (received - this.receivedAcked >= ACK_INTERVAL || unackedBytes >= ACK_BYTES)
+            acknowledge();
+    }
+
+    /**
+     * Send the number of packets received, the other side releases them from its {@link RetransmitBuffer}.
+     */
+    private void acknowledge() {
+        // Called by the reader and by the timer, the bytes counted meanwhile are kept.
+        final int unackedBytes = this.unackedBytes.get();
+        final long received = this.received;
+        final byte[] data = new byte[8];
+        putLong(data, 0, received);
+        try (final EncodedFrame ack = new EncodedFrame(new SPacket(ReservedTags.FRAMES_ACK, data))) {
+            if (offer(ack)) {
+                this.receivedAcked = received;
+                this.unackedBytes.addAndGet(-unackedBytes);
+            }
+        }
+    }
+
+    /**
+     * Answer the compressions offered by a client, choosing the first one accepted by {@link Session#compressions}.
+     * The answer is the last uncompressed frame, the next frames sent and received can be compressed.
+     *
+     * @param hello the offer of the client.
+     * @throws IOException if the answer couldn't be sent.
+     */
+    protected void acceptCompression(final RPacket hello) throws IOException {
+        Compression chosen = null;
+        final byte[] offer = hello.getArray();
+        for (int i = 0; i < hello.getLength() && chosen == null; i++)
+            for (final Compression accepted : this.compressions)
+                if (accepted.id == offer[i])
+                    chosen = accepted;
+
+        synchronized (this.lockerSend) {
+            try (final SPacket ack = new SPacket(ReservedTags.COMPRESSION_ACK, new byte[]{chosen != null ? chosen.id : 0})) {
+                writePacket(ack);
+            }
+            useCompression(chosen);
+        }
+        logger.log("Compression negotiated : {}.", chosen);
+    }
+
+    private void useCompression(final Compression compression) {
+        this.compression = compression;
+        this.codec = compression != null ? compression.newCodec() : null;
+    }
+
+    /**
+     * Internal method used to change the current {@link Session#status}.
+     * <p>
+     * This method emit a new value on the {@link Session#statusFlux}.
+     *
+     * @param status the new value of status.
+     * @return false if status was changed, true if status was changed.
+     */
+    protected boolean setStatus(final ConnectionStatus status) {
+        synchronized (this.lockerConnect) {
+            if (this.status == status)
+                return false;
+            if (status == ConnectionStatus.CONNECTED) {
+                this.transportReleased = false;
+                this.connections++;
+            }
+            this.statusFlux.emitValue(status);
+            this.status = status;
+            return true;
+        }
+    }
+
+    /**
+     * This method destroy this session, with closing {@link Session#socket} and destroying {@link Session#statusFlux} and {@link Session#packetFlux}.
+     */
+    public void destroy() {
+        if (this.status == ConnectionStatus.DESTROYED)
+            return;
+        setStatus(ConnectionStatus.DISCONNECTED);
+        setStatus(ConnectionStatus.DESTROYED);
+        try {
+            if (this.socket != null)
+                this.socket.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void setSessionTimeOut(long sessionTimeOut) {
+        this.sessionTimeOut = sessionTimeOut;
+    }
+
+    /**
+     * Offer the server to resume this Session at the next connections. The packets are numbered and kept in a {@link RetransmitBuffer}
+     * until the server acknowledges them. When the client reconnects before the server Session timed out, the server Session gets the
+     * new connection and both sides replay the packets the other didn't receive : no listener needs to be added again.
+     * <p>
+     * Only packets on user tags are replayed : requests and channels of the lost connection fail as usual.
+     * The server must accept resumptions, see {@link SessionServer#setResumable(boolean)}.
+     *
+     * @param resumable true to resume the Session when it reconnects.
+     */
+    public void setResumable(final boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    /**
+     * @return true if the last connection resumed the previous one, the lost packets were replayed.
+     */
+    public boolean isResumed() {
+        return this.resumed;
+    }
+
+    /**
+     * @param capacity bytes of packets kept until acknowledged, the Session can't be resumed when older packets were dropped.
+     */
+    public void setRetransmitCapacity(final int capacity) {
+        this.retransmit.setCapacity(capacity);
+    }
+
+    /**
+     * Reconnect a disconnected client by itself with {@link Session#reconnect()}, waiting from {@link Session#RECONNECT_MIN_DELAY}
+     * to {@link Session#RECONNECT_MAX_DELAY} ms between attempts, until the Session is destroyed by its time out.
+     *
+     * @param autoReconnect true to reconnect the client by itself.
+     */
+    public void setAutoReconnect(final boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+    }
+
+    /**
+     * @param heartbeatInterval a {@link ReservedTags#PING} is sent when nothing was written for this time, in ms. 0 disables the heartbeat.
+     */
+    public void setHeartbeatInterval(final long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+        armIdleCheck();
+    }
+
+    /**
+     * Detect dead peers : with a heartbeat on the other side, a live peer always writes.
+     *
+     * @param readIdleTimeout the Session is disconnected when nothing was read for this time, in ms. 0 disables the timeout.
+     */
+    public void setReadIdleTimeout(final long readIdleTimeout) {
+        this.readIdleTimeout = readIdleTimeout;
+        armIdleCheck();
+    }
+
+    /**
+     * Detect peers who stopped reading.
+     *
+     * @param writeIdleTimeout the Session is disconnected when frames wait to be written and nothing was written for this time, in ms.
+     *                         0 disables the timeout.
+     */
+    public void setWriteIdleTimeout(final long writeIdleTimeout) {
+        this.writeIdleTimeout = writeIdleTimeout;
+        armIdleCheck();
+    }
+
+    /**
+     * Schedule the idle check of the Session on the shared {@link WheelTimer}, replacing the previous one.
+     * The check runs every half of the smallest enabled interval, and schedules the next one while the Session is connected.
+     */
+    protected void armIdleCheck() {
+        long interval = Long.MAX_VALUE;
+        for (final long enabled : new long[]{this.heartbeatInterval, this.readIdleTimeout, this.writeIdleTimeout})
+            if (enabled > 0)
+                interval = Math.min(interval, enabled);
+        synchronized (this.lockerTimer) {
+            final int generation = ++this.idleCheckGeneration;
+            if (interval == Long.MAX_VALUE || !this.isConnected())
+                return;
+            final long delay = Math.max(interval / 2, 1);
+            WheelTimer.getDefault().schedule(() -> checkIdle(generation, delay), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Run on the timer Thread, must not block.
+     */
+    private void checkIdle(final int generation, final long delay) {
+        synchronized (this.lockerTimer) {
+            if (generation != this.idleCheckGeneration || !this.isConnected())
+                return;
+        }
+        final long now = System.nanoTime();
+        final long readIdle = this.readIdleTimeout;
+        final long writeIdle = this.writeIdleTimeout;
+        final long heartbeat = this.heartbeatInterval;
+        if (readIdle > 0 && now - this.lastReadTime >= TimeUnit.MILLISECONDS.toNanos(readIdle)) {
+            logger.log("Nothing read for {} ms, the peer is considered dead.", readIdle);
+            this.executor.exe(this::closeIdle);
+            return;
+        }
+        if (writeIdle > 0 && hasPendingWrites() && now - this.lastWriteTime >= TimeUnit.MILLISECONDS.toNanos(writeIdle)) {
+            logger.log("Nothing written for {} ms, the peer doesn't read.", writeIdle);
+            this.executor.exe(this::closeIdle);
+            return;
+        }
+        if (heartbeat > 0 && now - this.lastWriteTime >= TimeUnit.MILLISECONDS.toNanos(heartbeat))
+            offer(PING_FRAME);
+        if (this.sequenced && this.received != this.receivedAcked)
+            acknowledge();
+
+        synchronized (this.lockerTimer) {
+            if (generation == this.idleCheckGeneration)
+                WheelTimer.getDefault().schedule(() -> checkIdle(generation, delay), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Disconnect a Session who timed out, closing its socket to stop the reader.
+     */
+    private void closeIdle() {
+        if (dropConnection())
+            this.metrics.idleTimedOut();
+    }
+
+    /**
+     * Disconnect the Session, closing its socket to stop the reader.
+     *
+     * @return false if the Session was already disconnected.
+     */
+    private boolean dropConnection() {
+        if (!setStatus(ConnectionStatus.DISCONNECTED))
+            return false;
+        closeSocket();
+        return true;
+    }
+
+    private void closeSocket() {
+        try {
+            if (this.socket != null)
+                this.socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Used by the idle check, can be called without holding {@link Session#lockerSend}.
+     *
+     * @return true if frames wait to be written.
+     */
+    protected boolean hasPendingWrites() {
+        return this.writing || !this.writeQueue.isEmpty();
+    }
+
+    /**
+     * @param writeHighWaterMark number of bytes pending, see {@link Session#getPendingWriteBytes()}, above which the overflow policy is applied.
+     */
+    public void setWriteHighWaterMark(final long writeHighWaterMark) {
+        this.writeHighWaterMark = writeHighWaterMark;
+    }
+
+    /**
+     * @return the number of bytes pending, see {@link Session#getPendingWriteBytes()}, above which the overflow policy is applied.
+     */
+    public long getWriteHighWaterMark() {
+        return this.writeHighWaterMark;
+    }
+
+    /**
+     * @param writeOverflowPolicy applied to {@link Session#sendAsync(SPacket)} when the high-water mark is reached.
+     */
+    public void setWriteOverflowPolicy(final WriteOverflowPolicy writeOverflowPolicy) {
+        this.writeOverflowPolicy = writeOverflowPolicy;
+    }
+
+    /**
+     * @return the number of bytes queued by {@link Session#sendAsync(SPacket)} or kept by the transport, and not yet written.
+     */
+    public long getPendingWriteBytes() {
+        return this.writeQueueBytes.get() + transportPendingBytes();
+    }
+
+    /**
+     * Bytes given to the transport and kept by it until the peer reads them. A blocking socket keeps none.
+     * Can be called without holding {@link Session#lockerSend}.
+     *
+     * @return the number of bytes the transport didn't write yet.
+     */
+    protected long transportPendingBytes() {
+        return 0;
+    }
+
+    /**
+     * Change the kind of Thread used by the {@link Session#reader}. Applied at the next connection.
+     *
+     * @param threadMode the kind of Thread.
+     */
+    public void setThreadMode(final ThreadMode threadMode) {
+        this.threadMode = threadMode;
+    }
+
+    public ThreadMode getThreadMode() {
+        return this.threadMode;
+    }
+
+    public VirtualStream<ConnectionStatus> getStatusFlux() {
+        return this.statusFlux;
+    }
+
+    public void addStatusListener(final Receiver<ConnectionStatus> statusReceiver) {
+        this.statusFlux.addReceiver(statusReceiver);
+    }
+
+    public void removeStatusListener(final Receiver<ConnectionStatus> statusReceiver) {
+        this.statusFlux.removeReceiver(statusReceiver);
+    }
+
+    public ConnectionStatus nextStatus() {
+        return this.statusFlux.readASlash();
+    }
+
+    public void slashStatus(final ConnectionStatus status) {
+        this.statusFlux.slash(status);
+    }
+
+    /**
+     * Send a packed throw {@link Session#socket}.
+     *
+     * @param packet the packet at send.
+     * @return true if the packet was sent, false if not.
+     */
+    public boolean send(final SPacket packet) {
+        final long since = System.nanoTime();
+        final long connection;
+        synchronized (this.lockerSend) {
+            connection = this.connections;
+            SPacket frame = packet;
+            try {
+                awaitTransport();
+                frame = compress(packet);
+                this.writing = true;
+                writePacket(frame);
+                sent(packet);
+                this.metrics.written(since);
+                if (canWrite())
+                    this.lastWriteTime = System.nanoTime();
+                return true;
+            } catch (SocketException e) {
+                // The Session is disconnected below, out of lockerSend.
+            } catch (IOException e) {
+                e.printStackTrace();
+                logger.err("COULD'T SEND RETURN FALSE.");
+                return false;
+            } finally {
+                this.writing = false;
+                if (frame != packet)
+                    frame.release();
+            }
+        }
+        writeFailed(connection);
+        return false;
+    }
+
+    /**
+     * Wait until the transport can take more bytes, called by {@link Session#send(SPacket)} with {@link Session#lockerSend}
+     * before the packet is compressed. A blocking socket waits in its write, nothing to do.
+     *
+     * @throws IOException if the transport can't take more bytes.
+     */
+    protected void awaitTransport() throws IOException {
+    }
+
+    /**
+     * Disconnect the Session after a write failed, called without holding {@link Session#lockerSend}.
+     *
+     * @param connection the value of {@link Session#connections} when the write started.
+     */
+    private void writeFailed(final long connection) {
+        synchronized (this.lockerConnect) {
+            if (connection == this.connections)
+                setStatus(ConnectionStatus.DISCONNECTED);
+        }
+    }
+
+
+    /**
+     * Queue a packet to be sent by the writer of this Session, without waiting for the transport.
+     * <p>
+     * The writer drains the queue packing as many frames as possible in {@link Session#sendBuffer}, and write them with a single call.
+     * There is no order guaranty between packets sent with {@link Session#send(SPacket)} and this method.
+     * <p>
+     * If more than {@link Session#writeHighWaterMark} bytes are pending, {@link Session#writeOverflowPolicy} is applied.
+     *
+     * @param packet the packet at send.
+     * @return a future completed with true when the packet was written, false if it couldn't be.
+     */
+    public CompletableFuture<Boolean> sendAsync(final SPacket packet) {
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        final int size = FrameDecoder.HEADER_SIZE + packet.getLength();
+
+        if (!reserveWriteQueue(size)) {
+            future.complete(false);
+            return future;
+        }
+        this.writeQueue.add(new PendingWrite(packet, future, size));
+        if (!this.isConnected()) {
+            failPendingWrites();
+            return future;
+        }
+        scheduleWriter();
+        return future;
+    }
+
+    /**
+     * Send a typed message, encoded by the codec of its tag in {@link Session#codecRegistry} straight in the buffer of the packet.
+     *
+     * @param tag     the tag of the message.
+     * @param message the message.
+     * @return true if the packet was sent, false if not.
+     * @throws CodecException if the tag has no codec for the message.
+     */
+    public boolean send(final int tag, final Object message) {
+        try (final SPacket packet = this.codecRegistry.encode(tag, message)) {
+            return send(packet);
+        }
+    }
+
+    /**
+     * Same as {@link Session#send(int, Object)} through the writer of this Session, see {@link Session#sendAsync(SPacket)}.
+     */
+    public CompletableFuture<Boolean> sendAsync(final int tag, final Object message) {
+        try (final SPacket packet = this.codecRegistry.encode(tag, message)) {
+            return sendAsync(packet);
+        }
+    }
+
+    /**
+     * Queue a frame encoded once for many Sessions, see {@link SessionGroup}. The frame is retained until it is written.
+     * <p>
+     * Never waits : above {@link Session#writeHighWaterMark} the frame is refused whatever {@link Session#writeOverflowPolicy}.
+     *
+     * @param frame the encoded frame.
+     * @return false if the frame was refused or the Session is disconnected.
+     */
+    public boolean offer(final EncodedFrame frame) {
+        if (!this.isConnected() || isAboveHighWaterMark(frame.getLength()))
+            return false;
+        this.writeQueueBytes.addAndGet(frame.getLength());
+        this.writeQueue.add(new PendingWrite(frame));
+        if (!this.isConnected()) {
+            failPendingWrites();
+            return false;
+        }
+        scheduleWriter();
+        return true;
+    }
+
+    /**
+     * Wait, or not, for room in the {@link Session#writeQueue} depending on {@link Session#writeOverflowPolicy}.
+     *
+     * @param size the size of the frame at queue.
+     * @return true if the frame can be queued.
+     */
+    private boolean reserveWriteQueue(final int size) {
+        if (!this.isConnected())
+            return false;
+        if (this.writeOverflowPolicy == WriteOverflowPolicy.BLOCK) {
+            synchronized (this.writeQueue) {
+                while (isAboveHighWaterMark(size)) {
+                    if (!this.isConnected())
+                        return false;
+                    try {
+                        this.writeQueue.wait(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+            }
+        } else if (isAboveHighWaterMark(size)) {
+            logger.err("Write queue full, packet rejected.");
+            return false;
+        }
+        this.writeQueueBytes.addAndGet(size);
+        return true;
+    }
+
+    private boolean isAboveHighWaterMark(final int size) {
+        final long queued = getPendingWriteBytes();
+        return queued > 0 && queued + size > this.writeHighWaterMark;
+    }
+
+    /**
+     * Schedule the writer on {@link Session#executor} if it isn't already.
+     */
+    protected void scheduleWriter() {
+        if (this.writerScheduled.compareAndSet(false, true))
+            this.executor.exe(this::drainWriteQueue);
+    }
+
+    /**
+     * The writer, drain {@link Session#writeQueue} while the transport accept to write.
+     */
+    protected void drainWriteQueue() {
+        do {
+            final List<PendingWrite> batch = new ArrayList<>();
+            boolean written = false;
+            long failed = -1;
+            synchronized (this.lockerSend) {
+                try {
+                    this.writing = true;
+                    writeBatch(batch);
+                    if (!batch.isEmpty() && canWrite())
+                        this.lastWriteTime = System.nanoTime();
+                    written = true;
+                } catch (SocketException e) {
+                    failed = this.connections;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    logger.err("COULD'T SEND BATCH.");
+                } finally {
+                    this.writing = false;
+                }
+            }
+            if (failed >= 0)
+                writeFailed(failed);
+            for (final PendingWrite pending : batch) {
+                if (written)
+                    this.metrics.written(pending.queuedAt);
+                pending.complete(written);
+            }
+            if (this.writeOverflowPolicy == WriteOverflowPolicy.BLOCK) {
+                synchronized (this.writeQueue) {
+                    this.writeQueue.notifyAll();
+                }
+            }
+            this.writerScheduled.set(false);
+        } while (!this.writeQueue.isEmpty() && canWrite() && this.writerScheduled.compareAndSet(false, true));
+    }
+
+    /**
+     * Write the frames of {@link Session#writeQueue}, flushing {@link Session#sendBuffer} each time it is full.
+     *
+     * @param batch filled with the packets taken from the queue.
+     * @throws IOException if the transport couldn't write the frames.
+     */
+    private void writeBatch(final List<PendingWrite> batch) throws IOException {
+        if (this.sendBuffer == null)
+            this.sendBuffer = new byte[SEND_BUFFER_SIZE];
+        int batched = 0;
+        // Packets of the batch already written, the others are in the send buffer.
+        int written = 0;
+        PendingWrite pending;
+        while (canWrite() && (pending = this.writeQueue.poll()) != null) {
+            this.writeQueueBytes.addAndGet(-pending.size);
+            batch.add(pending);
+            if (pending.encoded != null) {
+                if (batched > 0 && batched + pending.size > this.sendBuffer.length) {
+                    writeBytes(this.sendBuffer, 0, batched);
+                    batched = 0;
+                    written = sent(batch, written, batch.size() - 1);
+                }
+                if (pending.size > this.sendBuffer.length) {
+                    writeBytes(pending.encoded.getArray(), 0, pending.size);
+                    written = sent(batch, written, batch.size());
+                } else {
+                    System.arraycopy(pending.encoded.getArray(), 0, this.sendBuffer, batched, pending.size);
+                    batched += pending.size;
+                }
+                continue;
+            }
+            final SPacket frame = compress(pending.packet);
+            try {
+                final int size = FrameDecoder.HEADER_SIZE + frame.getLength();
+                if (batched > 0 && batched + size > this.sendBuffer.length) {
+                    writeBytes(this.sendBuffer, 0, batched);
+                    batched = 0;
+                    written = sent(batch, written, batch.size() - 1);
+                }
+                if (size > this.sendBuffer.length) {
+                    writePacket(frame);
+                    written = sent(batch, written, batch.size());
+                } else {
+                    batched += FrameDecoder.HEADER_SIZE + fillSendBuffer(frame, batched);
+                }
+            } finally {
+                if (frame != pending.packet)
+                    frame.release();
+            }
+        }
+        if (batched > 0)
+            writeBytes(this.sendBuffer, 0, batched);
+        sent(batch, written, batch.size());
+    }
+
+    /**
+     * Complete all queued async packets with false. Used when the Session is disconnected.
+     */
+    protected void failPendingWrites() {
+        PendingWrite pending;
+        while ((pending = this.writeQueue.poll()) != null) {
+            this.writeQueueBytes.addAndGet(-pending.size);
+            pending.complete(false);
+        }
+        synchronized (this.writeQueue) {
+            this.writeQueue.notifyAll();
+        }
+    }
+
+    /**
+     * Used by the writer to know if the transport can accept more bytes. Always called holding {@link Session#lockerSend}.
+     * The writer stops while the transport keeps more than {@link Session#writeHighWaterMark} bytes.
+     *
+     * @return true if the writer can write.
+     */
+    protected boolean canWrite() {
+        return transportPendingBytes() < this.writeHighWaterMark;
+    }
+
+    /**
+     * Write the frame of a packet on the transport. Always called holding {@link Session#lockerSend}.
+     * <p>
+     * Frame format : [length][packetNumber][data].
+     * <p>
+     * The header and the data are written with a single call from {@link Session#sendBuffer}, only the data of
+     * frames bigger than {@link Session#SEND_BUFFER_SIZE} need a second call.
+     *
+     * @param packet the packet at write.
+     * @throws IOException if the transport couldn't write the frame, a {@link SocketException} means the Session is disconnected.
+     */
+    protected void writePacket(final SPacket packet) throws IOException {
+        final int inBuffer = fillSendBuffer(packet, 0);
+        writeBytes(this.sendBuffer, 0, FrameDecoder.HEADER_SIZE + inBuffer);
+        if (inBuffer < packet.getLength())
+            writeBytes(packet.getArray(), inBuffer, packet.getLength() - inBuffer);
+    }
+
+    /**
+     * Write raw bytes on the transport. Always called holding {@link Session#lockerSend}.
+     *
+     * @param bytes  the bytes at write.
+     * @param offset the offset of the first byte.
+     * @param length the number of bytes.
+     * @throws IOException if the transport couldn't write the bytes, a {@link SocketException} means the Session is disconnected.
+     */
+    protected void writeBytes(final byte[] bytes, final int offset, final int length) throws IOException {
+        final OutputStream out = socket.getOutputStream();
+        out.write(bytes, offset, length);
+    }
+
+    /**
+     * Copy the header and as much data of the packet as possible in {@link Session#sendBuffer}. Always called holding {@link Session#lockerSend}.
+     *
+     * @param packet the packet at write.
+     * @param offset the position of the frame in the buffer.
+     * @return the number of data bytes copied after the header.
+     */
+    protected int fillSendBuffer(final SPacket packet, final int offset) {
+        if (this.sendBuffer == null)
+            this.sendBuffer = new byte[SEND_BUFFER_SIZE];
+        final int length = packet.getLength();
+        putInt(this.sendBuffer, offset, length | packet.frameFlags);
+        putInt(this.sendBuffer, offset + 4, packet.getTag());
+        final int inBuffer = Math.min(length, this.sendBuffer.length - offset - FrameDecoder.HEADER_SIZE);
+        System.arraycopy(packet.getArray(), 0, this.sendBuffer, offset + FrameDecoder.HEADER_SIZE, inBuffer);
+        return inBuffer;
+    }
+
+    /**
+     * Compress the data of a packet with {@link Session#codec} if they are bigger than {@link Session#compressionThreshold}.
+     * Always called holding {@link Session#lockerSend}.
+     *
+     * @param packet the packet at send.
+     * @return a new frame with the {@link FrameDecoder#COMPRESSED} flag to release once written, or the packet if it isn't compressed.
+     */
+    protected SPacket compress(final SPacket packet) {
+        final Codec codec = this.codec;
+        final int length = packet.getLength();
+        if (codec == null || length < this.compressionThreshold)
+            return packet;
+
+        final PooledBuffer buffer = BufferPool.getDefault().acquire(4 + codec.maxCompressedLength(length));
+        final int compressed = codec.compress(packet.getArray(), 0, length, buffer.array(), 4);
+        if (compressed < 0 || 4 + compressed >= length) {
+            buffer.release();
+            return packet;
+        }
+        putInt(buffer.array(), 0, length);
+        final SPacket frame = new SPacket(packet.getTag(), buffer, 4 + compressed);
+        frame.frameFlags = FrameDecoder.COMPRESSED;
+        return frame;
+    }
+
+    /**
+     * Write a big-endian int.
+     */
+    protected static void putInt(final byte[] b, final int off, final int value) {
+        b[off] = (byte) (value >>> 24);
+        b[off + 1] = (byte) (value >>> 16);
+        b[off + 2] = (byte) (value >>> 8);
+        b[off + 3] = (byte) value;
+    }
+
+    /**
+     * Read a big-endian int.
+     */
+    protected static int getInt(final byte[] b, final int off) {
+        return (b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16 | (b[off + 2] & 0xFF) << 8 | (b[off + 3] & 0xFF);
+    }
+
+    /**
+     * Write a big-endian long.
+     */
+    protected static void putLong(final byte[] b, final int off, final long value) {
+        putInt(b, off, (int) (value >>> 32));
+        putInt(b, off + 4, (int) value);
+    }
+
+    /**
+     * Read a big-endian long.
+     */
+    protected static long getLong(final byte[] b, final int off) {
+        return (long) getInt(b, off) << 32 | getInt(b, off + 4) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @return the traffic of this Session.
+     */
+    public SessionMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    public PacketVirtualStream<RPacket> getPacketFlux() {
         return this.packetFlux;
     }
 
@@ -325,50 +1633,339 @@ public class Session implements Receiver<ConnectionStatus> {
         return this.packetFlux.readASlash(tag);
     }
 
+    /**
+     * Listen the typed messages of a tag, decoded by the codec of the tag in {@link Session#codecRegistry}.
+     * <p>
+     * A packet who can't be decoded is logged and skipped.
+     *
+     * @param tag      the tag.
+     * @param type     the type of the messages.
+     * @param receiver receive the decoded messages.
+     * @return the packet listener, to give to {@link Session#removePacketListener(Receiver)}.
+     */
+    public <T> Receiver<RPacket> addListener(final int tag, final Class<T> type, final Receiver<T> receiver) {
+        final Receiver<RPacket> listener = packet -> {
+            final T message;
+            try {
+                message = this.codecRegistry.decode(packet, type);
+            } catch (CodecException e) {
+                logger.err("Packet of tag {} couldn't be decoded : {}", tag, e.getMessage());
+                return;
+            }
+            receiver.onChanged(message);
+        };
+        addPacketListener(tag, listener);
+        return listener;
+    }
+
+    /**
+     * Wait for the next packet of a tag and decode it, see {@link Session#read(int)}.
+     *
+     * @return the message, null if the Session is closed.
+     * @throws CodecException if the packet couldn't be decoded.
+     */
+    public <T> T read(final int tag, final Class<T> type) {
+        final RPacket packet = read(tag);
+        if (packet == null || packet == END_OF_STREAM)
+            return null;
+        try {
+            return this.codecRegistry.decode(packet, type);
+        } finally {
+            packet.release();
+        }
+    }
+
+    /**
+     * @param codecRegistry the codecs of the typed messages, {@link CodecRegistry#getDefault()} by default.
+     */
+    public void setCodecRegistry(final CodecRegistry codecRegistry) {
+        this.codecRegistry = codecRegistry;
+    }
+
+    public CodecRegistry getCodecRegistry() {
+        return this.codecRegistry;
+    }
+
 
     public void slashPacket(final RPacket packet) {
         this.packetFlux.slash(packet);
     }
 
+    /**
+     * Choose the compressions offered at the next {@link Session#connect(String, int)} by order of preference,
+     * or accepted from the client for a server Session. Nothing disables the compression.
+     *
+     * @param compressions the compressions.
+     */
+    public void setCompression(final Compression... compressions) {
+        this.compressions = compressions.clone();
+    }
+
+    /**
+     * @param compressionThreshold packets with less data are sent uncompressed.
+     */
+    public void setCompressionThreshold(final int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * @param maxFrameSize frames announcing more data are refused before allocating their buffer and the Session is disconnected.
+     */
+    public void setMaxFrameSize(final int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Give the received packets backed by a {@link PooledBuffer}, saving a copy of their data. A pooled packet is released after
+     * its listeners returned : a listener keeping it must {@link RPacket#retain()} it, the packets read must be released.
+     * By default, the packets are copied in a plain array and stay readable.
+     *
+     * @param pooledPackets true to receive pooled packets.
+     */
+    public void setPooledPackets(final boolean pooledPackets) {
+        this.pooledPackets = pooledPackets;
+    }
+
+    /**
+     * @param handshakeTimeout time a client waits the answer of the server to its handshake, in ms.
+     */
+    public void setHandshakeTimeout(final int handshakeTimeout) {
+        this.handshakeTimeout = handshakeTimeout;
+    }
+
+    /**
+     * @return the negotiated compression, null if the frames aren't compressed.
+     */
+    public Compression getCompression() {
+        return this.compression;
+    }
+
+    /**
+     * Send data of any size in chunks of {@link ChannelManager#CHUNK_SIZE} bytes over a {@link Channel}, without holding them in memory.
+     * The other side reads them with {@link Session#readStream(int)} or its stream listeners.
+     * The Thread waits while the other side doesn't read.
+     *
+     * @param tag the tag of the stream.
+     * @param in  the data, read until its end. It isn't closed.
+     * @return false if the stream was closed by the other side or the Session is disconnected.
+     * @throws IOException if the data couldn't be read, the other side sees an interrupted stream.
+     */
+    public boolean sendStream(final int tag, final InputStream in) throws IOException {
+        return this.channels.sendStream(isServerSide(this.sessionType), tag, in);
+    }
+
+    /**
+     * Same as {@link Session#sendStream(int, InputStream)} for a file, from its current position to its end.
+     * The chunks are sent with {@link Session#sendFileRegion(int, byte[], FileChannel, long, int)}.
+     */
+    public boolean sendStream(final int tag, final FileChannel file) throws IOException {
+        return this.channels.sendStream(isServerSide(this.sessionType), tag, file);
+    }
+
+    /**
+     * Send a frame whose data are the head followed by a region of a file. The file is read in a pooled buffer,
+     * transports writing on a {@link java.nio.channels.SocketChannel} transfer it with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+     *
+     * @param tag      the packetNumber of the frame.
+     * @param head     the first bytes of data.
+     * @param file     the file.
+     * @param position position of the region in the file.
+     * @param count    bytes of the region.
+     * @return false if the Session is disconnected.
+     * @throws IOException if the file couldn't be read.
+     */
+    public boolean sendFileRegion(final int tag, final byte[] head, final FileChannel file, final long position, final int count) throws IOException {
+        final PooledBuffer buffer = BufferPool.getDefault().acquire(head.length + count);
+        try (final SPacket packet = new SPacket(tag, buffer, head.length + count)) {
+            System.arraycopy(head, 0, buffer.array(), 0, head.length);
+            readFully(file, ByteBuffer.wrap(buffer.array(), head.length, count), position);
+            return send(packet);
+        }
+    }
+
+    /**
+     * Read a region of a file until the buffer is full.
+     */
+    protected static void readFully(final FileChannel file, final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = file.read(buffer, position);
+            if (read < 0)
+                throw new EOFException("File ended before the end of the region.");
+            position += read;
+        }
+    }
+
+    /**
+     * @param tag the tag of the stream.
+     * @return the next stream sent with this tag, waiting for it. Close it when done.
+     */
+    public ChannelInputStream readStream(final int tag) {
+        return this.channels.getStreamsFlux().readASlash(tag);
+    }
+
+    /**
+     * Listen to the streams sent with a tag. The listener should read the stream until its end or close it,
+     * the sender waits while the stream isn't read.
+     */
+    public void addStreamListener(final int tag, final Receiver<ChannelInputStream> streamReceiver) {
+        this.channels.getStreamsFlux().addReceiver(tag, streamReceiver);
+    }
+
+    public void removeStreamListener(final Receiver<ChannelInputStream> streamReceiver) {
+        this.channels.getStreamsFlux().removeReceiver(streamReceiver);
+    }
+
+    /**
+     * Same as {@link Session#openChannel(int)} with a window of {@link ChannelManager#DEFAULT_WINDOW} bytes.
+     */
+    public Channel openChannel() {
+        return openChannel(ChannelManager.DEFAULT_WINDOW);
+    }
+
+    /**
+     * Open a {@link Channel} multiplexed over this Session. The other side receives it with {@link Session#nextChannel()}
+     * or its channel listeners.
+     *
+     * @param receiveWindow bytes this side accepts before the received packets are released.
+     * @return the Channel, already closed if the Session is disconnected.
+     */
+    public Channel openChannel(final int receiveWindow) {
+        return this.channels.open(isServerSide(this.sessionType), receiveWindow);
+    }
+
+    public void addChannelListener(final Receiver<Channel> channelReceiver) {
+        this.channels.getChannelsFlux().addReceiver(channelReceiver);
+    }
+
+    public void removeChannelListener(final Receiver<Channel> channelReceiver) {
+        this.channels.getChannelsFlux().removeReceiver(channelReceiver);
+    }
+
+    /**
+     * @return the next Channel opened by the other side, waiting for it. A closed Channel of id 0 once the Session is destroyed.
+     */
+    public Channel nextChannel() {
+        return this.channels.getChannelsFlux().readASlash();
+    }
+
+    /**
+     * Same as {@link Session#request(SPacket, long)} with a timeout of {@link Session#DEFAULT_REQUEST_TIMEOUT} ms.
+     */
+    public CompletableFuture<RPacket> request(final SPacket request) {
+        return request(request, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * Send a request to the handler of its tag on the other side, see {@link Session#addRequestHandler(int, RequestHandler)}.
+     * No Thread waits for the response, many requests can be in flight on the same tag.
+     *
+     * @param request the request.
+     * @param timeout maximum time to wait the response in ms.
+     * @return a future completed with the response, to be released by the caller.
+     */
+    public CompletableFuture<RPacket> request(final SPacket request, final long timeout) {
+        return this.rpc.request(request, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param tag     the tag of requests.
+     * @param handler answers the requests of this tag, replacing the previous one.
+     */
+    public void addRequestHandler(final int tag, final RequestHandler handler) {
+        this.rpc.addHandler(tag, handler);
+    }
+
+    public void removeRequestHandler(final int tag) {
+        this.rpc.removeHandler(tag);
+    }
+
+    /**
+     * @param deliveryMode where received packets are delivered, {@link DeliveryMode#AUTO} by default.
+     */
+    public void setPacketDeliveryMode(final DeliveryMode deliveryMode) {
+        this.packetFlux.setDeliveryMode(deliveryMode);
+    }
+
+    /**
+     * @param tag          the tag of packets.
+     * @param deliveryMode where received packets of this tag are delivered, null to use the mode of the Session.
+     */
+    public void setPacketDeliveryMode(final int tag, final DeliveryMode deliveryMode) {
+        this.packetFlux.setDeliveryMode(tag, deliveryMode);
+    }
+
+    /**
+     * @param dispatchMode how packet listeners are run, {@link DispatchMode#PARALLEL} by default.
+     */
+    public void setPacketDispatchMode(final DispatchMode dispatchMode) {
+        this.packetFlux.setDispatchMode(dispatchMode);
+    }
+
+    /**
+     * @param tag          the tag of packets.
+     * @param dispatchMode how listeners of this tag are run, null to use the mode of the Session.
+     */
+    public void setPacketDispatchMode(final int tag, final DispatchMode dispatchMode) {
+        this.packetFlux.setDispatchMode(tag, dispatchMode);
+    }
+
+    /**
+     * Bound the queue of each tag, applied to tags received after this call.
+     * <p>
+     * With {@link QueueOverflowPolicy#BLOCK}, the reader Thread waits for a {@link Session#read(int)} and stops reading the socket :
+     * the listeners of all tags wait too. A {@link fr.jazer.session.transport.NioSession} shares its reader with the other Sessions
+     * of its EventLoop, it uses {@link QueueOverflowPolicy#DROP_NEWEST} instead.
+     *
+     * @param capacity       the maximum number of queued packets by tag, {@link PacketVirtualStream#DEFAULT_QUEUE_CAPACITY} by default.
+     * @param overflowPolicy applied when the queue of a tag is full, {@link QueueOverflowPolicy#DROP_OLDEST} by default.
+     */
+    public void setPacketQueue(final int capacity, final QueueOverflowPolicy overflowPolicy) {
+        this.packetFlux.setQueueCapacity(capacity);
+        this.packetFlux.setOverflowPolicy(overflowPolicy);
+    }
+
+    /**
+     * Bound the number of tags queuing received packets. The tags are chosen by the peer : packets of a new tag without
+     * listener nor reader are dropped once this number of tags is reached.
+     *
+     * @param maxTags the maximum number of tags with a queue, {@link PacketVirtualStream#DEFAULT_MAX_TAGS} by default.
+     */
+    public void setMaxPacketTags(final int maxTags) {
+        this.packetFlux.setMaxTags(maxTags);
+    }
+
     @Override
     public void onChanged(ConnectionStatus value) {
         synchronized (this.lockerConnect) {
             if (value == ConnectionStatus.DISCONNECTED) {
 
-                this.reader.interrupt();
-                lastConnected = System.currentTimeMillis();
-
-                executor.exe(() -> {
-                    final long lastConnectedTemp = lastConnected;
-                    try {
-                        Thread.sleep(sessionTimeOut);
-                    } catch (InterruptedException ignored) {
-                    }
-                    if (this.status != ConnectionStatus.DESTROYED && lastConnected == lastConnectedTemp) {
-                        logger.log("Session TIME OUT.");
-                        setStatus(ConnectionStatus.DESTROYED);
-                    }
-                });
+                // The Session was connected again before this event was received.
+                if (this.isConnected())
+                    return;
+                releaseTransport();
+                scheduleDestroy();
+                if (this.autoReconnect && !isServerSide(this.sessionType))
+                    scheduleReconnect(RECONNECT_MIN_DELAY);
 
             } else if (value == ConnectionStatus.CONNECTED) {
 
-                if (this.reader != null && this.reader.isAlive()) {
-                    logger.err("COULDN'T CREATE A READER. A READER ALREADY EXIST !");
-                    return;
-                }
-
-                this.reader = new Thread(this::internalReadLoop);
-                this.reader.start();
+                cancelDestroyTimeout();
+                this.lastReadTime = this.lastWriteTime = System.nanoTime();
+                startReader();
+                armIdleCheck();
 
             } else if (status == ConnectionStatus.DESTROYED) {
 
                 logger.log("Session Destroyed.");
+                cancelDestroyTimeout();
+                this.retransmit.reset();
                 if (!this.statusFlux.isClosed()) {
                     this.statusFlux.removeReceiver(this);
                     this.statusFlux.close(ConnectionStatus.DESTROYED);
                 }
                 if (!this.packetFlux.isClosed())
-                    this.packetFlux.close(new RPacket(0, new byte[0]));
+                    this.packetFlux.close(END_OF_STREAM);
+                this.channels.destroy();
 
                 this.executor.destroy();
 
@@ -376,36 +1973,267 @@ public class Session implements Receiver<ConnectionStatus> {
         }
     }
 
-    private void internalReadLoop() {
+    /**
+     * Stop the transport of the last connection and fail what was waiting on it. Done once by connection,
+     * by the status listener or before the Session gets a new transport.
+     */
+    private void releaseTransport() {
+        synchronized (this.lockerConnect) {
+            if (this.transportReleased)
+                return;
+            this.transportReleased = true;
+        }
+        stopReader();
+        failPendingWrites();
+        this.rpc.failCalls(new SocketException("Session disconnected."));
+        this.channels.closeAll();
+    }
+
+    /**
+     * Destroy the Session if it isn't connected again in {@link Session#sessionTimeOut} ms.
+     */
+    private void scheduleDestroy() {
+        lastConnected = System.currentTimeMillis();
+
+        final long lastConnectedTemp = lastConnected;
+        synchronized (this.lockerTimer) {
+            this.idleCheckGeneration++;
+            if (this.destroyTimeout != null)
+                this.destroyTimeout.cancel();
+            this.destroyTimeout = WheelTimer.getDefault().schedule(() -> {
+                if (this.status == ConnectionStatus.DISCONNECTED && lastConnected == lastConnectedTemp)
+                    this.executor.exe(() -> {
+                        if (this.status == ConnectionStatus.DISCONNECTED && lastConnected == lastConnectedTemp) {
+                            logger.log("Session TIME OUT.");
+                            this.metrics.timedOut();
+                            setStatus(ConnectionStatus.DESTROYED);
+                        }
+                    });
+            }, sessionTimeOut, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void cancelDestroyTimeout() {
+        synchronized (this.lockerTimer) {
+            this.idleCheckGeneration++;
+            if (this.destroyTimeout != null)
+                this.destroyTimeout.cancel();
+        }
+    }
+
+    /**
+     * Try to reconnect a client after a delay, doubled at each failure.
+     */
+    private void scheduleReconnect(final long delay) {
+        WheelTimer.getDefault().schedule(() -> {
+            if (this.status == ConnectionStatus.DISCONNECTED)
+                this.executor.exe(() -> {
+                    if (this.status != ConnectionStatus.DISCONNECTED)
+                        return;
+                    logger.log("Trying to reconnect.");
+                    this.metrics.reconnected();
+                    if (reconnect() == ConnectionStatus.DISCONNECTED)
+                        scheduleReconnect(Math.min(delay * 2, RECONNECT_MAX_DELAY));
+                });
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start reading packets from the transport. Called when the Session become {@link ConnectionStatus#CONNECTED}.
+     * <p>
+     * By default, a {@link Session#reader} Thread is started on {@link Session#internalReadLoop(Socket)}.
+     */
+    protected void startReader() {
+        final Socket socket = this.socket;
+        if (this.reader != null && this.reader.isAlive() && this.readerSocket == socket) {
+            logger.err("COULDN'T CREATE A READER. A READER ALREADY EXIST !");
+            return;
+        }
+
+        this.readerSocket = socket;
+        this.reader = this.threadMode.newThread(() -> internalReadLoop(socket));
+        this.reader.start();
+    }
+
+    /**
+     * Stop reading packets from the transport. Called when the Session become {@link ConnectionStatus#DISCONNECTED}.
+     */
+    protected void stopReader() {
+        if (this.reader != null)
+            this.reader.interrupt();
+    }
+
+    /**
+     * @param socket the socket at read, the reader stops quietly when the Session uses another one.
+     */
+    private void internalReadLoop(final Socket socket) {
         try {
             logger.log("READER STARTED !");
 
             InputStream in = new BufferedInputStream(socket.getInputStream());
-            byte[] intBuffer = new byte[4];
-            int packetSize;
-            int packetNumber;
-            int read_byte;
-            
-            while (this.isConnected()) {
-                read_byte = readNBytes(in, intBuffer, 0, intBuffer.length);
-                if (read_byte == 0)
+            byte[] header = new byte[FrameDecoder.HEADER_SIZE];
+
+            while (this.isConnected() && socket == this.socket) {
+                if (!readFrame(in, header))
                     break;
-                packetSize = ByteBuffer.wrap(intBuffer).getInt();
-                readNBytes(in, intBuffer, 0, intBuffer.length);
-                packetNumber = ByteBuffer.wrap(intBuffer).getInt();
-                byte[] datas = new byte[packetSize];
-                readNBytes(in, datas, 0, packetSize);
-                this.packetFlux.emitValue(new RPacket(packetNumber, datas));
             }
+            // Already disconnected, the status lock can be held by a reconnection waiting this reader.
+            if (socket != this.socket || !this.isConnected())
+                return;
 
             logger.log("Reader closing, other part closed the Session.");
             setStatus(ConnectionStatus.DISCONNECTED);
 
         } catch (Exception e) {
-            if (!this.isConnected())
-                logger.log("Reader stopped by closing the socket. " + e.getMessage());
-            else
-                e.printStackTrace();
+            if (!this.isConnected() || socket != this.socket) {
+                logger.log("Reader stopped by closing the socket. {}", e.getMessage());
+                return;
+            }
+            // The socket failed or the other part broke the framing, the Session can't be read anymore.
+            logger.err("Reader stopped : {}", e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            setStatus(ConnectionStatus.DISCONNECTED);
+        }
+    }
+
+    /**
+     * Read a frame from a blocking stream and give it to {@link Session#receiveFrame(int, PooledBuffer, int, int)}.
+     *
+     * @param in     the stream of the socket.
+     * @param header array of {@link FrameDecoder#HEADER_SIZE} bytes receiving the header.
+     * @return false if the stream ended.
+     * @throws IOException if the socket failed or the frame is malformed.
+     */
+    protected boolean readFrame(final InputStream in, final byte[] header) throws IOException {
+        if (readFully(in, header, FrameDecoder.HEADER_SIZE) < FrameDecoder.HEADER_SIZE)
+            return false;
+        final int rawLength = getInt(header, 0);
+        final int packetSize = rawLength & FrameDecoder.LENGTH_MASK;
+        if (packetSize > this.maxFrameSize)
+            throw new IOException("Frame of " + packetSize + " bytes exceeds the maximum of " + this.maxFrameSize + " bytes.");
+        final PooledBuffer buffer = BufferPool.getDefault().acquire(packetSize);
+        if (readFully(in, buffer.array(), packetSize) < packetSize) {
+            buffer.release();
+            return false;
+        }
+        receiveFrame(getInt(header, 4), buffer, packetSize, rawLength & ~FrameDecoder.LENGTH_MASK);
+        return true;
+    }
+
+    private static int readFully(final InputStream in, final byte[] b, final int len) throws IOException {
+        int n = 0;
+        int count;
+        while (n < len && (count = in.read(b, n, len - n)) >= 0)
+            n += count;
+        return n;
+    }
+
+    /**
+     * Every frame read by the transport goes through this method : the data are decompressed,
+     * the control frames on {@link ReservedTags} are handled by the Session, others are emitted on {@link Session#packetFlux}.
+     *
+     * @param packetNumber the packetNumber of the frame.
+     * @param payload      the data of the frame, the Session takes its reference.
+     * @param length       the number of bytes of data.
+     * @param flags        the flags of the length field.
+     * @throws IOException if the frame is malformed.
+     */
+    protected void receiveFrame(final int packetNumber, final PooledBuffer payload, final int length, final int flags) throws IOException {
+        this.lastReadTime = System.nanoTime();
+        if (packetNumber != ReservedTags.SESSION_RESUME && this.resumeServer != null && !this.published.get() && this.published.compareAndSet(false, true))
+            this.resumeServer.publish(this);
+        final RPacket packet;
+        if ((flags & FrameDecoder.COMPRESSED) != 0) {
+            try {
+                packet = decompress(packetNumber, payload, length);
+            } finally {
+                payload.release();
+            }
+        } else {
+            packet = new RPacket(packetNumber, payload, length);
+        }
+
+        this.metrics.received(packetNumber, FrameDecoder.HEADER_SIZE + packet.getLength());
+        if (ReservedTags.isReserved(packetNumber)) {
+            if (handleControlFrame(packet)) {
+                packet.release();
+                return;
+            }
+        } else {
+            if (this.sequenced)
+                countReceived(length);
+            if (!this.pooledPackets)
+                packet.detach();
+        }
+        this.packetFlux.emitValue(packet);
+    }
+
+    private RPacket decompress(final int packetNumber, final PooledBuffer payload, final int length) throws IOException {
+        final Codec codec = this.codec;
+        if (codec == null)
+            throw new IOException("Compressed frame received without negotiated compression.");
+        if (length < 4)
+            throw new IOException("Malformed compressed frame of " + length + " bytes.");
+        final int originalLength = getInt(payload.array(), 0);
+        if (originalLength < 0 || originalLength > this.maxFrameSize)
+            throw new IOException("Malformed compressed frame, original length of " + originalLength + " bytes.");
+
+        final PooledBuffer original = BufferPool.getDefault().acquire(originalLength);
+        try {
+            codec.decompress(payload.array(), 4, length - 4, original.array(), 0, originalLength);
+        } catch (IOException e) {
+            original.release();
+            throw e;
+        }
+        return new RPacket(packetNumber, original, originalLength);
+    }
+
+    /**
+     * Handle the frames of the Session itself.
+     *
+     * @param frame a frame on a reserved tag.
+     * @return true if the frame was handled, false to emit it on {@link Session#packetFlux}.
+     * @throws IOException if the frame required an answer who couldn't be sent.
+     */
+    protected boolean handleControlFrame(final RPacket frame) throws IOException {
+        switch (frame.getTag()) {
+            case ReservedTags.COMPRESSION_HELLO:
+                acceptCompression(frame);
+                return true;
+            case ReservedTags.PING:
+                offer(PONG_FRAME);
+                return true;
+            case ReservedTags.PONG:
+                return true;
+            case ReservedTags.SESSION_RESUME:
+                if (isServerSide(this.sessionType))
+                    acceptResume(frame);
+                return true;
+            case ReservedTags.SESSION_RESUMED:
+                if (!isServerSide(this.sessionType)) {
+                    onResumeAnswer(frame);
+                    this.handshakeAnswered = true;
+                }
+                return true;
+            case ReservedTags.FRAMES_ACK:
+                if (frame.getLength() >= 8)
+                    this.retransmit.acknowledge(getLong(frame.getArray(), 0));
+                return true;
+            case ReservedTags.CHANNEL_OPEN:
+            case ReservedTags.CHANNEL_DATA:
+            case ReservedTags.CHANNEL_CREDIT:
+            case ReservedTags.CHANNEL_CLOSE:
+                return this.channels.onFrame(frame);
+            case ReservedTags.COMPRESSION_ACK:
+                useCompression(frame.getLength() > 0 ? Compression.of(frame.getArray()[0]) : null);
+                this.handshakeAnswered = true;
+                logger.log("Compression negotiated : {}.", this.compression);
+                return true;
+            default:
+                return false;
         }
     }
 
@@ -435,6 +2263,59 @@ public class Session implements Receiver<ConnectionStatus> {
                + ", port=" + socket.getPort() + "}";
     }
 
+    /**
+     * A packet queued by {@link Session#sendAsync(SPacket)}, or a frame queued by {@link Session#offer(EncodedFrame)}.
+     * The pooled buffer of the packet is retained until the packet is written.
+     */
+    protected static class PendingWrite {
+        protected final SPacket packet;
+        /**
+         * The frame of {@link Session#offer(EncodedFrame)}, null for packets.
+         */
+        protected final EncodedFrame encoded;
+        /**
+         * Null for encoded frames.
+         */
+        protected final CompletableFuture<Boolean> future;
+        /**
+         * Size of the frame, header included.
+         */
+        protected final int size;
+        /**
+         * {@link System#nanoTime()} when the frame was queued.
+         */
+        protected final long queuedAt = System.nanoTime();
+        /**
+         * The buffer of the packet when it was queued, null if not pooled.
+         */
+        protected final PooledBuffer buffer;
+
+        protected PendingWrite(final SPacket packet, final CompletableFuture<Boolean> future, final int size) {
+            this.packet = packet;
+            this.future = future;
+            this.size = size;
+            this.buffer = packet.buffer != null ? packet.buffer.retain() : null;
+            this.encoded = null;
+        }
+
+        protected PendingWrite(final EncodedFrame encoded) {
+            this.packet = null;
+            this.future = null;
+            this.size = encoded.getLength();
+            this.buffer = null;
+            this.encoded = encoded.retain();
+        }
+
+        protected void complete(final boolean written) {
+            if (this.buffer != null)
+                this.buffer.release();
+            if (this.encoded != null)
+                this.encoded.release();
+            else
+                this.future.complete(written);
+        }
+    }
+
     @Override
     public String toString() {
         return "Session{" +
@@ -445,9 +2326,11 @@ public class Session implements Receiver<ConnectionStatus> {
                ", lastConnected=" + lastConnected +
                ", executor=" + executor +
                ", reader=" + reader +
+               ", threadMode=" + threadMode +
                ", statusFlux=" + statusFlux +
                ", packetFlux=" + packetFlux +
                ", lockerSend=" + lockerSend +
+               ", pendingWriteBytes=" + writeQueueBytes.get() +
                ", lockerConnect=" + lockerConnect +
                ", logger=" + logger +
                '}';
@@ -0,0 +1,184 @@
+package fr.jazer.session;
+
+import fr.jazer.logger.Logger;
+import fr.jazer.session.stream.DeliveryMode;
+import fr.jazer.session.stream.QueueOverflowPolicy;
+import fr.jazer.session.stream.Receiver;
+import fr.jazer.session.stream.VirtualStream;
+import fr.jazer.session.utils.ConnectionStatus;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A group of Sessions receiving the same packets.
+ * <p>
+ * {@link SessionGroup#broadcast(SPacket)} encodes the frame once in an {@link EncodedFrame} and queues it to the writer of every member,
+ * the writers of the members write it in parallel. A member whose write queue is above its high-water mark is a slow consumer :
+ * it is evicted from the group instead of delaying the others, and emitted on {@link SessionGroup#evictedFlux}. A group created
+ * without eviction only drops the frames the slow consumer couldn't queue, it gets the next ones once its queue drained.
+ * <p>
+ * Members leave the group when they are disconnected.
+ */
+public class SessionGroup {
+
+    private static final Logger logger = Logger.loggerOfStatic(SessionGroup.class);
+
+    /**
+     * Members and the status listeners removing them when disconnected.
+     */
+    protected final ConcurrentHashMap<Session, Receiver<ConnectionStatus>> members = new ConcurrentHashMap<>();
+    /**
+     * Members evicted as slow consumers.
+     */
+    protected final VirtualStream<Session> evictedFlux = new VirtualStream<>(DeliveryMode.LISTENERS_ONLY, VirtualStream.DEFAULT_QUEUE_CAPACITY, QueueOverflowPolicy.DROP_OLDEST);
+    /**
+     * If true, evicted members are also destroyed.
+     */
+    protected volatile boolean destroyEvicted = false;
+    /**
+     * If false, slow consumers stay in the group and miss the frames they couldn't queue.
+     */
+    protected volatile boolean evictSlowConsumers;
+
+    /**
+     * @param evictSlowConsumers true to evict the slow consumers, false to only drop the frames they can't queue.
+     */
+    public SessionGroup(final boolean evictSlowConsumers) {
+        this.evictSlowConsumers = evictSlowConsumers;
+    }
+
+    /**
+     * Create a group evicting its slow consumers.
+     */
+    public SessionGroup() {
+        this(true);
+    }
+
+    /**
+     * Add a connected Session to the group.
+     *
+     * @param session the Session.
+     * @return false if the Session is already a member or isn't connected.
+     */
+    public boolean add(final Session session) {
+        final Receiver<ConnectionStatus> listener = status -> {
+            if (status != ConnectionStatus.CONNECTED)
+                remove(session);
+        };
+        if (this.members.putIfAbsent(session, listener) != null)
+            return false;
+        session.addStatusListener(listener);
+        // Disconnected before the listener was added.
+        if (!session.isConnected()) {
+            remove(session);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param session the Session.
+     * @return false if the Session wasn't a member.
+     */
+    public boolean remove(final Session session) {
+        final Receiver<ConnectionStatus> listener = this.members.remove(session);
+        if (listener == null)
+            return false;
+        session.removeStatusListener(listener);
+        return true;
+    }
+
+    public boolean contains(final Session session) {
+        return this.members.containsKey(session);
+    }
+
+    public int size() {
+        return this.members.size();
+    }
+
+    /**
+     * @return a view of the members.
+     */
+    public Set<Session> getMembers() {
+        return this.members.keySet();
+    }
+
+    /**
+     * Send a packet to all members without waiting for their transport. Slow consumers are evicted, or miss this packet.
+     *
+     * @param packet the packet at send, it can be released when this method returns.
+     * @return the number of members the packet was queued to.
+     */
+    public int broadcast(final SPacket packet) {
+        try (final EncodedFrame frame = new EncodedFrame(packet)) {
+            return broadcast(frame);
+        }
+    }
+
+    /**
+     * Same as {@link SessionGroup#broadcast(SPacket)} with a frame already encoded, it can be broadcast to many groups.
+     *
+     * @param frame the frame, retained by each member until written.
+     * @return the number of members the frame was queued to.
+     */
+    public int broadcast(final EncodedFrame frame) {
+        int queued = 0;
+        for (final Session member : this.members.keySet()) {
+            if (member.offer(frame))
+                queued++;
+            else if (member.isConnected() && this.evictSlowConsumers)
+                evict(member);
+            else if (member.isConnected())
+                logger.debug("Frame dropped for a slow consumer : {} bytes pending.", member.getPendingWriteBytes());
+        }
+        return queued;
+    }
+
+    /**
+     * Remove a slow consumer from the group.
+     */
+    protected void evict(final Session member) {
+        if (!remove(member))
+            return;
+        logger.log("Slow consumer evicted : {} bytes pending.", member.getPendingWriteBytes());
+        this.evictedFlux.emitValue(member);
+        if (this.destroyEvicted)
+            member.destroy();
+    }
+
+    /**
+     * @param destroyEvicted true to destroy the members evicted as slow consumers, false to only remove them from the group.
+     */
+    public void setDestroyEvicted(final boolean destroyEvicted) {
+        this.destroyEvicted = destroyEvicted;
+    }
+
+    /**
+     * @param evictSlowConsumers true to evict the slow consumers, false to keep them and only drop the frames they can't queue.
+     */
+    public void setEvictSlowConsumers(final boolean evictSlowConsumers) {
+        this.evictSlowConsumers = evictSlowConsumers;
+    }
+
+    public VirtualStream<Session> getEvictedFlux() {
+        return this.evictedFlux;
+    }
+
+    public void addEvictionListener(final Receiver<Session> evictionReceiver) {
+        this.evictedFlux.addReceiver(evictionReceiver);
+    }
+
+    public void removeEvictionListener(final Receiver<Session> evictionReceiver) {
+        this.evictedFlux.removeReceiver(evictionReceiver);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionGroup{" +
+                "members=" + members.size() +
+                ", destroyEvicted=" + destroyEvicted +
+                ", evictSlowConsumers=" + evictSlowConsumers +
+                '}';
+    }
+}
@@ -0,0 +1,244 @@
+package fr.jazer.session;
+
+import fr.jazer.metrics.Histogram;
+import fr.jazer.metrics.MetricsRegistry;
+import fr.jazer.session.stream.TagMap;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * The traffic of a {@link Session}, in total and by tag, also added to the totals of all Sessions in {@link MetricsRegistry#getDefault()}.
+ * <p>
+ * Bytes are counted by frame, header included, before compression. Counting never allocates, except the first time a tag is seen.
+ * Tags are chosen by the peer, only the first {@link SessionMetrics#MAX_TAGS} tags seen are counted by tag.
+ */
+public class SessionMetrics {
+
+    /**
+     * Maximum number of tags counted by tag, the traffic of other tags is only in the totals.
+     */
+    public static final int MAX_TAGS = 256;
+
+    private static final LongAdder TOTAL_BYTES_IN = MetricsRegistry.getDefault().counter("session.bytes.in");
+    private static final LongAdder TOTAL_BYTES_OUT = MetricsRegistry.getDefault().counter("session.bytes.out");
+    private static final LongAdder TOTAL_PACKETS_IN = MetricsRegistry.getDefault().counter("session.packets.in");
+    private static final LongAdder TOTAL_PACKETS_OUT = MetricsRegistry.getDefault().counter("session.packets.out");
+    private static final LongAdder TOTAL_RECONNECTS = MetricsRegistry.getDefault().counter("session.reconnects");
+    private static final LongAdder TOTAL_TIMEOUTS = MetricsRegistry.getDefault().counter("session.timeouts");
+    private static final LongAdder TOTAL_IDLE_TIMEOUTS = MetricsRegistry.getDefault().counter("session.idle.timeouts");
+    /**
+     * Nanoseconds from the send of a packet to its write on the transport, of all Sessions.
+     */
+    private static final Histogram SEND_LATENCY = MetricsRegistry.getDefault().histogram("session.send.latency");
+
+    protected final LongAdder bytesIn = new LongAdder();
+    protected final LongAdder bytesOut = new LongAdder();
+    protected final LongAdder packetsIn = new LongAdder();
+    protected final LongAdder packetsOut = new LongAdder();
+    protected final LongAdder reconnects = new LongAdder();
+    protected final LongAdder timeouts = new LongAdder();
+    protected final LongAdder idleTimeouts = new LongAdder();
+    protected final LongAdder sendLatencySum = new LongAdder();
+    protected final LongAdder sendLatencyCount = new LongAdder();
+    protected final LongAccumulator sendLatencyMax = new LongAccumulator(Math::max, 0);
+    protected final TagMap<TagMetrics> tags = new TagMap<>();
+
+    /**
+     * @param tag    the tag of the frame.
+     * @param length the bytes of the frame.
+     */
+    void received(final int tag, final int length) {
+        this.packetsIn.increment();
+        this.bytesIn.add(length);
+        TOTAL_PACKETS_IN.increment();
+        TOTAL_BYTES_IN.add(length);
+        final TagMetrics metrics = tag(tag);
+        if (metrics == null)
+            return;
+        metrics.packetsIn.increment();
+        metrics.bytesIn.add(length);
+    }
+
+    /**
+     * @param tag    the tag of the frame.
+     * @param length the bytes of the frame.
+     */
+    void sent(final int tag, final int length) {
+        this.packetsOut.increment();
+        this.bytesOut.add(length);
+        TOTAL_PACKETS_OUT.increment();
+        TOTAL_BYTES_OUT.add(length);
+        final TagMetrics metrics = tag(tag);
+        if (metrics == null)
+            return;
+        metrics.packetsOut.increment();
+        metrics.bytesOut.add(length);
+    }
+
+    /**
+     * @param since {@link System#nanoTime()} when the packet was sent.
+     */
+    void written(final long since) {
+        final long latency = System.nanoTime() - since;
+        this.sendLatencySum.add(latency);
+        this.sendLatencyCount.increment();
+        this.sendLatencyMax.accumulate(latency);
+        SEND_LATENCY.record(latency);
+    }
+
+    void reconnected() {
+        this.reconnects.increment();
+        TOTAL_RECONNECTS.increment();
+    }
+
+    void timedOut() {
+        this.timeouts.increment();
+        TOTAL_TIMEOUTS.increment();
+    }
+
+    void idleTimedOut() {
+        this.idleTimeouts.increment();
+        TOTAL_IDLE_TIMEOUTS.increment();
+    }
+
+    /**
+     * @return the traffic of the tag, null if the tag isn't counted.
+     */
+    private TagMetrics tag(final int tag) {
+        final TagMetrics metrics = this.tags.get(tag);
+        if (metrics != null || this.tags.size() >= MAX_TAGS)
+            return metrics;
+        return this.tags.computeIfAbsent(tag, TagMetrics::new);
+    }
+
+    public long getBytesIn() {
+        return this.bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return this.bytesOut.sum();
+    }
+
+    public long getPacketsIn() {
+        return this.packetsIn.sum();
+    }
+
+    public long getPacketsOut() {
+        return this.packetsOut.sum();
+    }
+
+    /**
+     * @return the reconnection attempts, see {@link Session#setAutoReconnect(boolean)}.
+     */
+    public long getReconnects() {
+        return this.reconnects.sum();
+    }
+
+    /**
+     * @return the times the Session was destroyed after {@link Session#setSessionTimeOut(long)} without reconnection.
+     */
+    public long getTimeouts() {
+        return this.timeouts.sum();
+    }
+
+    /**
+     * @return the times the Session was closed by {@link Session#setReadIdleTimeout(long)} or {@link Session#setWriteIdleTimeout(long)}.
+     */
+    public long getIdleTimeouts() {
+        return this.idleTimeouts.sum();
+    }
+
+    /**
+     * @return the mean time from the send of a packet to its write on the transport, in ns. The percentiles of all Sessions are in session.send.latency.
+     */
+    public double getMeanSendLatency() {
+        final long count = this.sendLatencyCount.sum();
+        return count == 0 ? 0 : (double) this.sendLatencySum.sum() / count;
+    }
+
+    /**
+     * @return the longest time from the send of a packet to its write on the transport, in ns.
+     */
+    public long getMaxSendLatency() {
+        return this.sendLatencyMax.get();
+    }
+
+    /**
+     * @param tag the tag.
+     * @return the traffic of the tag, null if nothing was sent nor received on it or above {@link SessionMetrics#MAX_TAGS} tags.
+     */
+    public TagMetrics getTag(final int tag) {
+        return this.tags.get(tag);
+    }
+
+    /**
+     * @param action run for the traffic of each tag.
+     */
+    public void forEachTag(final Consumer<TagMetrics> action) {
+        this.tags.forEach(action);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionMetrics{" +
+                "bytesIn=" + bytesIn.sum() +
+                ", bytesOut=" + bytesOut.sum() +
+                ", packetsIn=" + packetsIn.sum() +
+                ", packetsOut=" + packetsOut.sum() +
+                ", reconnects=" + reconnects.sum() +
+                ", timeouts=" + timeouts.sum() +
+                ", idleTimeouts=" + idleTimeouts.sum() +
+                ", meanSendLatency=" + (long) getMeanSendLatency() +
+                ", tags=" + tags.size() +
+                '}';
+    }
+
+    /**
+     * The traffic of a tag.
+     */
+    public static class TagMetrics {
+
+        protected final int tag;
+        protected final LongAdder bytesIn = new LongAdder();
+        protected final LongAdder bytesOut = new LongAdder();
+        protected final LongAdder packetsIn = new LongAdder();
+        protected final LongAdder packetsOut = new LongAdder();
+
+        protected TagMetrics(final int tag) {
+            this.tag = tag;
+        }
+
+        public int getTag() {
+            return this.tag;
+        }
+
+        public long getBytesIn() {
+            return this.bytesIn.sum();
+        }
+
+        public long getBytesOut() {
+            return this.bytesOut.sum();
+        }
+
+        public long getPacketsIn() {
+            return this.packetsIn.sum();
+        }
+
+        public long getPacketsOut() {
+            return this.packetsOut.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "TagMetrics{" +
+                    "tag=" + tag +
+                    ", bytesIn=" + bytesIn.sum() +
+                    ", bytesOut=" + bytesOut.sum() +
+                    ", packetsIn=" + packetsIn.sum() +
+                    ", packetsOut=" + packetsOut.sum() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package fr.jazer.session;
+
+import fr.jazer.session.stream.Receiver;
+import fr.jazer.session.utils.ConnectionStatus;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * The live Sessions by {@link Session#getId()}. A Session leaves the registry when it is disconnected or destroyed.
+ * <p>
+ * Backed by a {@link ConcurrentHashMap} sized for the expected number of Sessions : lookups don't lock and registrations
+ * only lock the bin of their id, so thousands of connections per second don't contend.
+ */
+public class SessionRegistry {
+
+    /**
+     * Default number of Sessions expected by a registry.
+     */
+    public static final int DEFAULT_EXPECTED_SESSIONS = 1024;
+
+    protected final ConcurrentHashMap<Long, Registration> sessions;
+
+    /**
+     * @param expectedSessions number of Sessions the registry holds without resizing.
+     */
+    public SessionRegistry(final int expectedSessions) {
+        this.sessions = new ConcurrentHashMap<>(expectedSessions, 0.75f, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SessionRegistry() {
+        this(DEFAULT_EXPECTED_SESSIONS);
+    }
+
+    /**
+     * Register a connected Session until it is disconnected or destroyed.
+     *
+     * @param session the Session.
+     * @return false if the Session is already registered or isn't connected.
+     */
+    public boolean register(final Session session) {
+        final Registration registration = new Registration(session);
+        if (this.sessions.putIfAbsent(session.getId(), registration) != null)
+            return false;
+        session.addStatusListener(registration);
+        // Disconnected before the listener was added.
+        if (!session.isConnected()) {
+            unregister(session);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param session the Session.
+     * @return false if the Session wasn't registered.
+     */
+    public boolean unregister(final Session session) {
+        final Registration registration = this.sessions.get(session.getId());
+        if (registration == null || !this.sessions.remove(session.getId(), registration))
+            return false;
+        session.removeStatusListener(registration);
+        return true;
+    }
+
+    /**
+     * @param id the id of a Session.
+     * @return the live Session, null if there is none with this id.
+     */
+    public Session getSession(final long id) {
+        final Registration registration = this.sessions.get(id);
+        return registration != null ? registration.session : null;
+    }
+
+    public boolean contains(final Session session) {
+        return this.sessions.containsKey(session.getId());
+    }
+
+    /**
+     * @return the number of live Sessions.
+     */
+    public int sessionCount() {
+        return this.sessions.size();
+    }
+
+    /**
+     * Run an action for each live Session. Sessions registered or removed during the iteration may or may not be seen.
+     *
+     * @param action the action.
+     */
+    public void forEach(final Consumer<Session> action) {
+        this.sessions.forEach((id, registration) -> action.accept(registration.session));
+    }
+
+    /**
+     * Destroy all live Sessions.
+     */
+    public void destroyAll() {
+        forEach(Session::destroy);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionRegistry{" +
+                "sessions=" + sessions.size() +
+                '}';
+    }
+
+    /**
+     * A registered Session, listening its status to leave the registry.
+     */
+    protected class Registration implements Receiver<ConnectionStatus> {
+
+        protected final Session session;
+
+        protected Registration(final Session session) {
+            this.session = session;
+        }
+
+        @Override
+        public void onChanged(final ConnectionStatus status) {
+            if (status != ConnectionStatus.CONNECTED && sessions.remove(this.session.getId(), this))
+                this.session.removeStatusListener(this);
+        }
+    }
+}
@@ -1,43 +1,139 @@
 package fr.jazer.session;
 
 import fr.jazer.logger.Logger;
+import fr.jazer.metrics.MetricsRegistry;
 import fr.jazer.session.stream.Receiver;
+import fr.jazer.session.stream.DeliveryMode;
+import fr.jazer.session.stream.PacketVirtualStream;
+import fr.jazer.session.stream.QueueOverflowPolicy;
 import fr.jazer.session.stream.VirtualStream;
+import fr.jazer.session.utils.Compression;
+import fr.jazer.session.utils.ConnectionStatus;
 import fr.jazer.session.utils.SessionServerStatus;
-import fr.jazer.session.utils.SessionType;
+import fr.jazer.session.utils.TransportMode;
+import fr.jazer.session.transport.EventLoopGroup;
+import fr.jazer.session.transport.NioSession;
 import fr.jazer.session.utils.crypted.SSLServerSocketKeystoreFactory;
 import fr.jazer.session.utils.crypted.ServerCertConfig;
+import fr.jazer.thread_manager.ThreadMode;
 import fr.jazer.thread_manager.ThreadPool;
+import fr.jazer.thread_manager.WheelTimer;
 import org.jetbrains.annotations.Nullable;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 public class SessionServer implements Receiver<SessionServerStatus> {
 
+    /**
+     * Source of the resume tokens.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     protected ServerSocket server;
 
+    /**
+     * The transport used by Sessions accepted by this server. Chosen in {@link SessionServer#openSession(int, ServerCertConfig, TransportMode)}.
+     */
+    protected TransportMode transportMode = TransportMode.BLOCKING;
+    /**
+     * The loops serving Sessions in {@link TransportMode#NIO}, created at the first opening in this mode.
+     */
+    protected EventLoopGroup eventLoops;
+    /**
+     * The number of event loops used in {@link TransportMode#NIO}.
+     */
+    private int eventLoopThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * The context securing the Sessions accepted in {@link TransportMode#NIO}, null if the server isn't secured.
+     */
+    protected SSLContext sslContext;
 
     protected SessionServerStatus status = SessionServerStatus.CLOSED;
 
 
     private long sessionTimeOut = 20000;
+    /**
+     * Compressions accepted from clients, applied to accepted Sessions.
+     */
+    private Compression[] compressions = Compression.values();
+    private int compressionThreshold = Session.DEFAULT_COMPRESSION_THRESHOLD;
+    private int maxFrameSize = Session.DEFAULT_MAX_FRAME_SIZE;
+    private boolean pooledPackets = false;
+    private int maxPacketTags = PacketVirtualStream.DEFAULT_MAX_TAGS;
+    private long heartbeatInterval = 0;
+    private long readIdleTimeout = 0;
+    private long writeIdleTimeout = 0;
+    /**
+     * Accepted Sessions can be resumed by their clients, see {@link SessionServer#setResumable(boolean)}.
+     */
+    private volatile boolean resumable = false;
+    private int retransmitCapacity = RetransmitBuffer.DEFAULT_CAPACITY;
     protected long lastOpen;
 
 
     protected final ThreadPool executor = new ThreadPool();
     protected Thread clientListener;
-
-
-    protected final VirtualStream<Session> sessionsFlux = new VirtualStream<>();
+    /**
+     * The kind of Thread used by the {@link SessionServer#clientListener} and the readers of accepted Sessions.
+     */
+    protected ThreadMode threadMode = ThreadMode.getDefault();
+
+
+    /**
+     * Accepted sessions are given to the listeners, or queued for {@link SessionServer#nextSession()} if there is none.
+     * Sessions are published by the accepting Thread or an EventLoop who must never wait : when the queue is full, the new Session is destroyed.
+     */
+    protected final VirtualStream<Session> sessionsFlux = new VirtualStream<Session>(DeliveryMode.AUTO, VirtualStream.DEFAULT_QUEUE_CAPACITY, QueueOverflowPolicy.DROP_NEWEST) {
+        @Override
+        protected void onDrop(final Session session) {
+            session.destroy();
+        }
+    };
     protected final VirtualStream<SessionServerStatus> statusFlux = new VirtualStream<>();
-
+    /**
+     * All accepted Sessions still connected. A slow Session stays in it and only misses the broadcasts it can't queue.
+     */
+    protected final SessionGroup sessions = new SessionGroup(false);
+    /**
+     * Live accepted Sessions by id.
+     */
+    protected final SessionRegistry registry;
+    /**
+     * Resumable Sessions by resume token, until they are destroyed.
+     */
+    protected final ConcurrentHashMap<String, Session> resumableSessions = new ConcurrentHashMap<>();
+
+
+    /**
+     * Connections accepted by all servers, in {@link MetricsRegistry#getDefault()}.
+     */
+    private static final LongAdder TOTAL_ACCEPTED = MetricsRegistry.getDefault().counter("server.accepted");
+
+    /**
+     * Connections accepted by this server.
+     */
+    protected final LongAdder accepted = new LongAdder();
+    /**
+     * Prefix of the gauges of this server in {@link MetricsRegistry#getDefault()}, server.[port], null while it was never opened.
+     */
+    protected String metricsName;
 
     protected final Object lockerOpen = new Object();
 
@@ -45,6 +141,14 @@ public class SessionServer implements Receiver<SessionServerStatus> {
     protected final Logger logger = Logger.loggerOfStatic(SessionServer.class);
 
     public SessionServer() {
+        this(SessionRegistry.DEFAULT_EXPECTED_SESSIONS);
+    }
+
+    /**
+     * @param expectedSessions number of live Sessions the registry holds without resizing.
+     */
+    public SessionServer(final int expectedSessions) {
+        this.registry = new SessionRegistry(expectedSessions);
         this.statusFlux.addReceiver(this);
     }
 
@@ -59,34 +163,80 @@ public class SessionServer implements Receiver<SessionServerStatus> {
     }
 
     public SessionServerStatus openSession(final int port) {
-        return openSession(port, null);
+        return openSession(port, null, TransportMode.BLOCKING);
     }
 
     public SessionServerStatus openSession(final int port, @Nullable final ServerCertConfig certConfig) {
+        return openSession(port, certConfig, TransportMode.BLOCKING);
+    }
+
+    public SessionServerStatus openSession(final int port, final TransportMode transportMode) {
+        return openSession(port, null, transportMode);
+    }
+
+    /**
+     * Try to open the server on a port.
+     * <p>
+     * In {@link TransportMode#BLOCKING} each accepted Session owns a reader Thread.
+     * In {@link TransportMode#NIO} accepted Sessions are {@link NioSession} served by {@link SessionServer#eventLoops},
+     * secured Sessions do their TLS with an {@link SSLEngine}.
+     *
+     * @param port          port.
+     * @param certConfig    the CertConfig, can be null.
+     * @param transportMode the transport of accepted Sessions.
+     * @return the new status of the SessionServer.
+     */
+    public SessionServerStatus openSession(final int port, @Nullable final ServerCertConfig certConfig, final TransportMode transportMode) {
         synchronized (lockerOpen) {
             if (this.isOpened() || this.status == SessionServerStatus.DESTROYED)
                 return this.status;
             try {
+                final SSLContext sslContext = TransportMode.isNio(transportMode) && certConfig != null ? certConfig.context() : null;
                 final ServerSocket server;
-                if ((server = constructServer(port, certConfig)).isBound()) {
+                if ((server = constructServer(port, certConfig, transportMode)).isBound()) {
+                    this.sslContext = sslContext;
+                    if (TransportMode.isNio(transportMode) && this.eventLoops == null)
+                        this.eventLoops = new EventLoopGroup(this.eventLoopThreads);
+                    this.transportMode = transportMode;
                     this.server = server;
+                    registerMetrics(server.getLocalPort());
                     this.setStatus(SessionServerStatus.OPENED);
                 }
             } catch (IOException e) {
-                logger.err("ServerSocket couldn't be opened : " + e.getMessage());
+                logger.err("ServerSocket couldn't be opened : {}", e.getMessage());
             } catch (CertificateException | UnrecoverableKeyException | NoSuchAlgorithmException | KeyStoreException |
                      KeyManagementException e) {
-                logger.err("Couldn't create secured ServerSocket : " + e.getMessage());
+                logger.err("Couldn't create secured ServerSocket : {}", e.getMessage());
             }
             return this.status;
         }
     }
 
 
-    protected ServerSocket constructServer(final int port, @Nullable final ServerCertConfig certConfig) throws IOException, UnrecoverableKeyException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException, CertificateException {
-        if (certConfig == null) return new ServerSocket(port);
+    /**
+     * Expose the live Sessions and the accepted connections of this server as server.[port].sessions.live and server.[port].accepted.
+     */
+    protected void registerMetrics(final int port) {
+        unregisterMetrics();
+        this.metricsName = "server." + port;
+        MetricsRegistry.getDefault().gauge(this.metricsName + ".sessions.live", this::sessionCount);
+        MetricsRegistry.getDefault().gauge(this.metricsName + ".accepted", this.accepted::sum);
+    }
+
+    protected void unregisterMetrics() {
+        if (this.metricsName == null)
+            return;
+        MetricsRegistry.getDefault().remove(this.metricsName + ".sessions.live");
+        MetricsRegistry.getDefault().remove(this.metricsName + ".accepted");
+        this.metricsName = null;
+    }
+
+    protected ServerSocket constructServer(final int port, @Nullable final ServerCertConfig certConfig, final TransportMode transportMode) throws IOException, UnrecoverableKeyException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException, CertificateException {
+        if (TransportMode.isNio(transportMode))
+            return ServerSocketChannel.open().bind(new InetSocketAddress(port)).socket();
+        else if (certConfig == null) return new ServerSocket(port);
         else
-            return SSLServerSocketKeystoreFactory.getServerSocketWithCert(port, certConfig.input(), certConfig.password(), certConfig.type(), certConfig.format());
+            return SSLServerSocketKeystoreFactory.getServerSocketWithCert(port, certConfig);
     }
 
     protected void setStatus(final SessionServerStatus status) {
@@ -105,6 +255,32 @@ public class SessionServer implements Receiver<SessionServerStatus> {
         this.sessionTimeOut = sessionTimeOut;
     }
 
+    /**
+     * Change the kind of Thread used by the session listener and the readers of accepted Sessions. Applied at the next opening.
+     *
+     * @param threadMode the kind of Thread.
+     */
+    public void setThreadMode(final ThreadMode threadMode) {
+        this.threadMode = threadMode;
+    }
+
+    public ThreadMode getThreadMode() {
+        return this.threadMode;
+    }
+
+    /**
+     * Set the number of event loops used in {@link TransportMode#NIO}. Must be called before the first opening in this mode.
+     *
+     * @param eventLoopThreads the number of loops.
+     */
+    public void setEventLoopThreads(final int eventLoopThreads) {
+        this.eventLoopThreads = eventLoopThreads;
+    }
+
+    public TransportMode getTransportMode() {
+        return this.transportMode;
+    }
+
 
     public VirtualStream<SessionServerStatus> getStatusFlux() {
         return statusFlux;
@@ -147,6 +323,142 @@ public class SessionServer implements Receiver<SessionServerStatus> {
         this.sessionsFlux.slash(session);
     }
 
+    /**
+     * @return the group of all accepted Sessions still connected.
+     */
+    public SessionGroup getSessions() {
+        return this.sessions;
+    }
+
+    public SessionRegistry getRegistry() {
+        return this.registry;
+    }
+
+    /**
+     * @param id the id of an accepted Session.
+     * @return the live Session, null if there is none with this id.
+     */
+    public Session getSession(final long id) {
+        return this.registry.getSession(id);
+    }
+
+    /**
+     * @return the number of live accepted Sessions.
+     */
+    public int sessionCount() {
+        return this.registry.sessionCount();
+    }
+
+    /**
+     * @return the number of connections accepted since the creation of the server, the accept rate is computed from two calls.
+     */
+    public long getAcceptedCount() {
+        return this.accepted.sum();
+    }
+
+    /**
+     * Run an action for each live accepted Session.
+     */
+    public void forEachSession(final Consumer<Session> action) {
+        this.registry.forEach(action);
+    }
+
+    /**
+     * Send a packet to all accepted Sessions, encoding it once. See {@link SessionGroup#broadcast(SPacket)}.
+     * A Session above its write high-water mark misses the packet, it isn't removed from the server group.
+     *
+     * @param packet the packet at send.
+     * @return the number of Sessions the packet was queued to.
+     */
+    public int broadcast(final SPacket packet) {
+        return this.sessions.broadcast(packet);
+    }
+
+    /**
+     * @param deliveryMode where accepted sessions are delivered, {@link DeliveryMode#AUTO} by default.
+     */
+    public void setSessionDeliveryMode(final DeliveryMode deliveryMode) {
+        this.sessionsFlux.setDeliveryMode(deliveryMode);
+    }
+
+
+    /**
+     * Choose the compressions accepted from the clients, applied to the next accepted Sessions. Without any, the offers of the clients are refused.
+     *
+     * @param compressions the accepted compressions, all by default.
+     */
+    public void setCompression(final Compression... compressions) {
+        this.compressions = compressions.clone();
+    }
+
+    /**
+     * @param compressionThreshold packets with less data are sent uncompressed by the next accepted Sessions.
+     */
+    public void setCompressionThreshold(final int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * @param maxFrameSize frames with more data are refused by the next accepted Sessions, before allocating their buffer.
+     */
+    public void setMaxFrameSize(final int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Pooled packets of the next accepted Sessions, see {@link Session#setPooledPackets(boolean)}.
+     */
+    public void setPooledPackets(final boolean pooledPackets) {
+        this.pooledPackets = pooledPackets;
+    }
+
+    /**
+     * Number of tags queuing packets in the next accepted Sessions, see {@link Session#setMaxPacketTags(int)}.
+     */
+    public void setMaxPacketTags(final int maxPacketTags) {
+        this.maxPacketTags = maxPacketTags;
+    }
+
+    /**
+     * Heartbeat of the next accepted Sessions, see {@link Session#setHeartbeatInterval(long)}.
+     */
+    public void setHeartbeatInterval(final long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * Dead peer detection of the next accepted Sessions, see {@link Session#setReadIdleTimeout(long)}.
+     */
+    public void setReadIdleTimeout(final long readIdleTimeout) {
+        this.readIdleTimeout = readIdleTimeout;
+    }
+
+    /**
+     * See {@link Session#setWriteIdleTimeout(long)}, applied to the next accepted Sessions.
+     */
+    public void setWriteIdleTimeout(final long writeIdleTimeout) {
+        this.writeIdleTimeout = writeIdleTimeout;
+    }
+
+    /**
+     * Let the clients resume their Session, see {@link Session#setResumable(boolean)}. A client reconnecting before its Session
+     * timed out gets the same Session back : it isn't given to the session listeners again, and the lost packets are replayed.
+     * <p>
+     * New Sessions are given to the listeners once their first frame shows they don't resume another Session,
+     * or after {@link Session#DEFAULT_HANDSHAKE_TIMEOUT} ms without frame.
+     *
+     * @param resumable true to accept resumptions from the next accepted Sessions.
+     */
+    public void setResumable(final boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    /**
+     * See {@link Session#setRetransmitCapacity(int)}, applied to the next accepted Sessions.
+     */
+    public void setRetransmitCapacity(final int retransmitCapacity) {
+        this.retransmitCapacity = retransmitCapacity;
+    }
 
     @Override
     public void onChanged(SessionServerStatus value) {
@@ -160,17 +472,16 @@ public class SessionServer implements Receiver<SessionServerStatus> {
                 this.clientListener.interrupt();
                 lastOpen = System.currentTimeMillis();
 
-                executor.exe(() -> {
-                    final long lastOpenTemp = lastOpen;
-                    try {
-                        Thread.sleep(sessionTimeOut);
-                    } catch (InterruptedException ignored) {
-                    }
-                    if (this.status != SessionServerStatus.DESTROYED && lastOpen == lastOpenTemp) {
-                        logger.log("Server TIME OUT.");
-                        setStatus(SessionServerStatus.DESTROYED);
-                    }
-                });
+                final long lastOpenTemp = lastOpen;
+                WheelTimer.getDefault().schedule(() -> {
+                    if (this.status != SessionServerStatus.DESTROYED && lastOpen == lastOpenTemp)
+                        executor.exe(() -> {
+                            if (this.status != SessionServerStatus.DESTROYED && lastOpen == lastOpenTemp) {
+                                logger.log("Server TIME OUT.");
+                                setStatus(SessionServerStatus.DESTROYED);
+                            }
+                        });
+                }, sessionTimeOut, TimeUnit.MILLISECONDS);
 
             } else if (value == SessionServerStatus.OPENED) {
 
@@ -179,7 +490,7 @@ public class SessionServer implements Receiver<SessionServerStatus> {
                     return;
                 }
 
-                this.clientListener = new Thread(this::internalSessionsListenerLoop);
+                this.clientListener = this.threadMode.newThread(this::internalSessionsListenerLoop);
                 this.clientListener.start();
 
             } else if (status == SessionServerStatus.DESTROYED) {
@@ -190,7 +501,14 @@ public class SessionServer implements Receiver<SessionServerStatus> {
                 }
                 if (!this.sessionsFlux.isClosed())
                     this.sessionsFlux.close(new Session());
+                this.registry.destroyAll();
+                this.resumableSessions.values().forEach(Session::destroy);
+                if (this.eventLoops != null)
+                    this.eventLoops.shutdown();
                 this.executor.destroy();
+                synchronized (lockerOpen) {
+                    unregisterMetrics();
+                }
             }
         }
     }
@@ -203,28 +521,135 @@ public class SessionServer implements Receiver<SessionServerStatus> {
         try {
             while (this.isOpened()) {
                 socket = this.server.accept();
-                this.sessionsFlux.emitValue(new Session(socket, SessionType.SERVER_SIDE));
+                this.accepted.increment();
+                TOTAL_ACCEPTED.increment();
+                if (TransportMode.isNio(this.transportMode))
+                    acceptNio(socket);
+                else
+                    accept(new Session(socket, this));
             }
             logger.log("Session Listener closed normally.");
         } catch (IOException e) {
             if (!this.isOpened())
                 logger.log("Session Listener closed normally.");
             else {
-                logger.err("Session Listener not normally closed ! " + e.getMessage());
+                logger.err("Session Listener not normally closed ! {}", e.getMessage());
                 this.setStatus(SessionServerStatus.CLOSED);
             }
         }
     }
 
+    /**
+     * Apply the settings of this server to an accepted Session. Called by the constructor of the Session, before it is started
+     * and reads its first frame.
+     *
+     * @param session the accepted Session.
+     */
+    public void configure(final Session session) {
+        session.setCompression(this.compressions);
+        session.setCompressionThreshold(this.compressionThreshold);
+        session.setMaxFrameSize(this.maxFrameSize);
+        session.setPooledPackets(this.pooledPackets);
+        session.setMaxPacketTags(this.maxPacketTags);
+        session.setHeartbeatInterval(this.heartbeatInterval);
+        session.setReadIdleTimeout(this.readIdleTimeout);
+        session.setWriteIdleTimeout(this.writeIdleTimeout);
+        session.setRetransmitCapacity(this.retransmitCapacity);
+        if (this.resumable)
+            session.resumeServer = this;
+    }
+
+    /**
+     * Give an accepted Session to the listeners, once it is known it doesn't resume another Session.
+     */
+    private void accept(final Session session) {
+        if (session.resumeServer == null) {
+            session.published.set(true);
+            publish(session);
+            return;
+        }
+        WheelTimer.getDefault().schedule(() -> {
+            if (session.isConnected() && session.published.compareAndSet(false, true))
+                this.executor.exe(() -> publish(session));
+        }, Session.DEFAULT_HANDSHAKE_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Register a new Session and give it to the listeners.
+     */
+    void publish(final Session session) {
+        this.registry.register(session);
+        this.sessions.add(session);
+        this.sessionsFlux.emitValue(session);
+    }
+
+    /**
+     * Register again a Session resumed by its client, its listeners already know it.
+     */
+    void reattach(final Session session) {
+        this.registry.register(session);
+        this.sessions.add(session);
+    }
+
+    /**
+     * @param token a resume token.
+     * @return the Session of the token, null if there is none.
+     */
+    Session getResumable(final byte[] token) {
+        return this.resumableSessions.get(Base64.getEncoder().encodeToString(token));
+    }
+
+    /**
+     * Make a Session resumable until it is destroyed.
+     *
+     * @return its new resume token.
+     */
+    byte[] newResumable(final Session session) {
+        final byte[] token = new byte[Session.RESUME_TOKEN_SIZE];
+        RANDOM.nextBytes(token);
+        final String key = Base64.getEncoder().encodeToString(token);
+        this.resumableSessions.put(key, session);
+        session.addStatusListener(status -> {
+            if (status == ConnectionStatus.DESTROYED)
+                this.resumableSessions.remove(key, session);
+        });
+        return token;
+    }
+
+    /**
+     * @return a server engine of {@link SessionServer#sslContext}, null if the server isn't secured.
+     */
+    private SSLEngine newEngine() {
+        if (this.sslContext == null)
+            return null;
+        final SSLEngine engine = this.sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        return engine;
+    }
+
+    private void acceptNio(final Socket socket) {
+        try {
+            accept(new NioSession(socket.getChannel(), this.eventLoops.next(), newEngine(), this));
+        } catch (IOException e) {
+            logger.err("Accepted channel couldn't be configured : {}", e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return "SessionServer{" +
                 "server=" + server +
+                ", transportMode=" + transportMode +
                 ", status=" + status +
                 ", sessionTimeOut=" + sessionTimeOut +
                 ", lastOpen=" + lastOpen +
                 ", executor=" + executor +
                 ", clientListener=" + clientListener +
+                ", threadMode=" + threadMode +
                 ", sessionsFlux=" + sessionsFlux +
                 ", statusFlux=" + statusFlux +
                 ", lockerOpen=" + lockerOpen +
@@ -0,0 +1,186 @@
+package fr.jazer.session.channel;
+
+import fr.jazer.session.RPacket;
+import fr.jazer.session.SPacket;
+import fr.jazer.session.Session;
+import fr.jazer.session.stream.PacketVirtualStream;
+import fr.jazer.session.stream.Receiver;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A logical conversation multiplexed with others over one {@link Session}, see {@link Session#openChannel()}.
+ * <p>
+ * Each side of a Channel has a receive window : the bytes it accepts before the packets are released by its listeners or readers.
+ * A sender without credit waits, so a slow consumer only slows its own Channel, the Session keeps reading the others.
+ * Received packets are {@link ChannelPacket}, releasing them gives the credit back.
+ */
+public class Channel {
+
+    protected final ChannelManager manager;
+    protected final int id;
+    /**
+     * Bytes this side accepts before giving credit back.
+     */
+    protected final int receiveWindow;
+    /**
+     * Bytes released and not yet given back to the sender.
+     */
+    protected final AtomicInteger consumed = new AtomicInteger();
+    /**
+     * Bytes received and not yet given back to the sender. The sender only sends while it has credit, so while this is below the window.
+     */
+    protected final AtomicLong unacknowledged = new AtomicLong();
+    /**
+     * Bytes this side can send, guarded by this Channel. Can become negative after a packet bigger than the credit.
+     */
+    protected long sendCredit;
+
+    protected final PacketVirtualStream<RPacket> packetFlux = new PacketVirtualStream<>();
+
+    protected volatile boolean open = true;
+
+    protected Channel(final ChannelManager manager, final int id, final int receiveWindow, final long sendCredit) {
+        this.manager = manager;
+        this.id = id;
+        this.receiveWindow = receiveWindow;
+        this.sendCredit = sendCredit;
+    }
+
+    /**
+     * Send a packet on the Channel, waiting for credit if the other side didn't consume the previous ones.
+     *
+     * @param packet the packet to send, its tag is the tag seen by the other side of the Channel.
+     * @return false if the Channel is closed, the Session is disconnected or the Thread interrupted.
+     */
+    public boolean send(final SPacket packet) {
+        return awaitCredit(ChannelManager.DATA_HEADER + packet.getLength()) && this.manager.sendData(this, packet);
+    }
+
+    /**
+     * Close the Channel on both sides. Waiting senders return false, readers get an empty packet on tag 0.
+     */
+    public void close() {
+        if (this.manager.remove(this))
+            this.manager.sendClose(this.id);
+        closed();
+    }
+
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    public Session getSession() {
+        return this.manager.session;
+    }
+
+    /**
+     * @return the bytes this side can send without waiting.
+     */
+    public synchronized long getSendCredit() {
+        return this.sendCredit;
+    }
+
+    public PacketVirtualStream<RPacket> getPacketFlux() {
+        return this.packetFlux;
+    }
+
+    public void addPacketListener(final int tag, final Receiver<RPacket> receiver) {
+        this.packetFlux.addReceiver(tag, receiver);
+    }
+
+    public void removePacketListener(final Receiver<RPacket> receiver) {
+        this.packetFlux.removeReceiver(receiver);
+    }
+
+    public RPacket read(final int tag) {
+        return this.packetFlux.readASlash(tag);
+    }
+
+    /**
+     * Wait for credit and take the bytes of a packet from it.
+     *
+     * @param size the bytes of the packet.
+     * @return false if the Channel is closed or the Thread interrupted.
+     */
+    protected synchronized boolean awaitCredit(final int size) {
+        try {
+            while (this.open && this.sendCredit <= 0)
+                this.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (!this.open)
+            return false;
+        this.sendCredit -= size;
+        return true;
+    }
+
+    /**
+     * Count the bytes of a received packet against the receive window. Called by the reader of the Session before {@link Channel#receive(ChannelPacket)}.
+     *
+     * @param bytes the bytes of the packet, header included.
+     * @return false if the sender had no credit left when it sent the packet.
+     */
+    protected boolean accept(final int bytes) {
+        return this.unacknowledged.getAndAdd(bytes) < this.receiveWindow;
+    }
+
+    /**
+     * A packet received on this Channel, emitted on {@link Channel#packetFlux}.
+     */
+    protected void receive(final ChannelPacket packet) {
+        this.packetFlux.emitValue(packet);
+    }
+
+    /**
+     * Credit received from the other side.
+     */
+    protected void credit(final int bytes) {
+        synchronized (this) {
+            this.sendCredit += bytes;
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Bytes of a released {@link ChannelPacket}, given back to the sender by half window.
+     */
+    protected void consumed(final int bytes) {
+        if (this.consumed.addAndGet(bytes) < this.receiveWindow / 2 || !this.open)
+            return;
+        final int credit = this.consumed.getAndSet(0);
+        if (credit > 0) {
+            // Counted before the sender can use the credit.
+            this.unacknowledged.addAndGet(-credit);
+            this.manager.sendCredit(this.id, credit);
+        }
+    }
+
+    /**
+     * The Channel is closed by any side or by the disconnection of the Session.
+     */
+    protected void closed() {
+        synchronized (this) {
+            if (!this.open)
+                return;
+            this.open = false;
+            this.notifyAll();
+        }
+        this.packetFlux.close(new RPacket(0, new byte[0]));
+    }
+
+    @Override
+    public String toString() {
+        return "Channel{" +
+                "id=" + id +
+                ", open=" + open +
+                '}';
+    }
+}
@@ -0,0 +1,154 @@
+package fr.jazer.session.channel;
+
+import fr.jazer.session.RPacket;
+import fr.jazer.session.stream.TaggedEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The receiving side of {@link fr.jazer.session.Session#sendStream(int, InputStream)}.
+ * <p>
+ * The data come in chunks on a {@link Channel}, at most its window is held in memory. Chunks are released as they are read,
+ * giving the credit back to the sender. Closing the stream before its end stops the sender.
+ */
+public class ChannelInputStream extends InputStream implements TaggedEntity {
+
+    /**
+     * Queued when the Channel is closed.
+     */
+    private static final RPacket CLOSED = new RPacket(0, new byte[0]);
+
+    protected final Source source;
+    protected final int tag;
+
+    /**
+     * The chunk currently read, null before the first read and at the end.
+     */
+    private RPacket chunk;
+    private int position;
+    private boolean ended;
+
+    protected ChannelInputStream(final ChannelManager manager, final int id, final int window, final long credit, final int tag) {
+        this.source = new Source(manager, id, window, credit);
+        this.tag = tag;
+    }
+
+    /**
+     * @return the tag given by the sender.
+     */
+    @Override
+    public int getTag() {
+        return this.tag;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0)
+            return 0;
+        while (this.chunk == null || this.position == this.chunk.getLength()) {
+            if (this.ended || !next())
+                return -1;
+        }
+        final int count = Math.min(len, this.chunk.getLength() - this.position);
+        System.arraycopy(this.chunk.getArray(), this.position, b, off, count);
+        this.position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return this.chunk == null ? 0 : this.chunk.getLength() - this.position;
+    }
+
+    /**
+     * Release the current chunk and wait for the next one.
+     *
+     * @return false at the end of the stream.
+     * @throws IOException if the stream was interrupted by the sender or the Session.
+     */
+    private boolean next() throws IOException {
+        if (this.chunk != null) {
+            this.chunk.release();
+            this.chunk = null;
+        }
+        final RPacket next;
+        try {
+            next = this.source.chunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting the stream.");
+        }
+        if (next == CLOSED) {
+            this.source.chunks.offer(CLOSED);
+            throw new IOException("Stream interrupted before its end.");
+        }
+        if (next.getLength() == 0) {
+            next.release();
+            this.ended = true;
+            return false;
+        }
+        this.chunk = next;
+        this.position = 0;
+        return true;
+    }
+
+    /**
+     * Release the chunks held by the stream. Before the end, the Channel is closed and the sender stops.
+     */
+    @Override
+    public void close() {
+        if (!this.ended)
+            this.source.close();
+        if (this.chunk != null) {
+            this.chunk.release();
+            this.chunk = null;
+        }
+        RPacket queued;
+        while ((queued = this.source.chunks.poll()) != null)
+            if (queued != CLOSED)
+                queued.release();
+        this.ended = true;
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelInputStream{" +
+                "tag=" + tag +
+                ", channel=" + source +
+                '}';
+    }
+
+    /**
+     * The Channel of a stream, queuing its chunks for the reader.
+     */
+    protected static class Source extends Channel {
+
+        protected final LinkedBlockingQueue<RPacket> chunks = new LinkedBlockingQueue<>();
+
+        protected Source(final ChannelManager manager, final int id, final int receiveWindow, final long sendCredit) {
+            super(manager, id, receiveWindow, sendCredit);
+        }
+
+        @Override
+        protected void receive(final ChannelPacket packet) {
+            this.chunks.offer(packet);
+        }
+
+        @Override
+        protected void closed() {
+            if (!this.open)
+                return;
+            super.closed();
+            this.chunks.offer(CLOSED);
+        }
+    }
+}
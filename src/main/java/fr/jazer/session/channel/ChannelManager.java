@@ -0,0 +1,356 @@
+package fr.jazer.session.channel;
+
+import fr.jazer.buffer_manager.BufferPool;
+import fr.jazer.buffer_manager.PooledBuffer;
+import fr.jazer.logger.Logger;
+import fr.jazer.session.RPacket;
+import fr.jazer.session.SPacket;
+import fr.jazer.session.Session;
+import fr.jazer.session.stream.DeliveryMode;
+import fr.jazer.session.stream.PacketVirtualStream;
+import fr.jazer.session.stream.QueueOverflowPolicy;
+import fr.jazer.session.stream.VirtualStream;
+import fr.jazer.session.utils.ReservedTags;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Channel} multiplexed over a {@link Session}.
+ * <p>
+ * A Channel is opened with {@link ReservedTags#CHANNEL_OPEN} as [channelId:int][window:int], the other side answers with its own window
+ * in a {@link ReservedTags#CHANNEL_CREDIT} [channelId:int][bytes:int] frame. Packets are sent on {@link ReservedTags#CHANNEL_DATA}
+ * as [channelId:int][tag:int][data] and {@link ReservedTags#CHANNEL_CLOSE} [channelId:int] closes the Channel.
+ * <p>
+ * A stream is a Channel opened with [channelId:int][window:int][tag:int], its packets are chunks of data ended by an empty chunk.
+ * The other side reads it as a {@link ChannelInputStream}.
+ * Client sides open odd ids, server sides even ids, so both can open Channels at the same time.
+ */
+public class ChannelManager {
+
+    private static final Logger logger = Logger.loggerOfStatic(ChannelManager.class);
+
+    /**
+     * Default receive window of a Channel, in bytes.
+     */
+    public static final int DEFAULT_WINDOW = 256 * 1024;
+
+    /**
+     * Size of the chunks of a stream, in bytes.
+     */
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    static final int DATA_HEADER = 8;
+
+    protected final Session session;
+    protected final ConcurrentHashMap<Integer, Channel> channels = new ConcurrentHashMap<>();
+    protected final AtomicInteger nextId = new AtomicInteger();
+    /**
+     * Channels opened by the other side.
+     */
+    protected final VirtualStream<Channel> channelsFlux = new VirtualStream<>(DeliveryMode.AUTO, VirtualStream.DEFAULT_QUEUE_CAPACITY, QueueOverflowPolicy.DROP_NEWEST);
+    /**
+     * Streams sent by the other side, by tag.
+     */
+    protected final PacketVirtualStream<ChannelInputStream> streamsFlux = new PacketVirtualStream<>();
+
+    /**
+     * @param session the Session carrying the Channels, it gives the frames of reserved tags to {@link ChannelManager#onFrame(RPacket)}.
+     */
+    public ChannelManager(final Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Open a Channel, the other side receives it on its {@link ChannelManager#channelsFlux}.
+     *
+     * @param serverSide    true if the Session is server side.
+     * @param receiveWindow bytes accepted before the packets are released.
+     * @return the Channel, closed if the Session is disconnected. It can send once the other side answered with its window.
+     */
+    public Channel open(final boolean serverSide, final int receiveWindow) {
+        final int id = nextId(serverSide);
+        final Channel channel = new Channel(this, id, receiveWindow, 0);
+        this.channels.put(id, channel);
+        final byte[] data = new byte[8];
+        putInt(data, 0, id);
+        putInt(data, 4, receiveWindow);
+        opened(channel, data);
+        return channel;
+    }
+
+    /**
+     * Send a stream, the other side reads it with a {@link ChannelInputStream}. The Thread waits while the other side doesn't read.
+     *
+     * @param serverSide true if the Session is server side.
+     * @param tag        the tag of the stream.
+     * @param in         the data, read until its end. It isn't closed.
+     * @return false if the stream was closed by the other side or the Session is disconnected.
+     * @throws IOException if the data couldn't be read, the other side sees an interrupted stream.
+     */
+    public boolean sendStream(final boolean serverSide, final int tag, final InputStream in) throws IOException {
+        final Channel channel = openStream(serverSide, tag);
+        final PooledBuffer buffer = BufferPool.getDefault().acquire(DATA_HEADER + CHUNK_SIZE);
+        try {
+            putInt(buffer.array(), 0, channel.id);
+            putInt(buffer.array(), 4, tag);
+            int read;
+            while ((read = in.read(buffer.array(), DATA_HEADER, CHUNK_SIZE)) >= 0) {
+                if (read == 0)
+                    continue;
+                if (!channel.awaitCredit(DATA_HEADER + read))
+                    return false;
+                try (final SPacket frame = new SPacket(ReservedTags.CHANNEL_DATA, buffer.retain(), DATA_HEADER + read)) {
+                    if (!this.session.send(frame))
+                        return false;
+                }
+            }
+            return end(channel, tag);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Send a file as a stream from its current position to its end, see {@link ChannelManager#sendStream(boolean, int, InputStream)}.
+     * Chunks are sent with {@link Session#sendFileRegion(int, byte[], FileChannel, long, int)}, the position of the file isn't changed.
+     */
+    public boolean sendStream(final boolean serverSide, final int tag, final FileChannel file) throws IOException {
+        final Channel channel = openStream(serverSide, tag);
+        final byte[] head = new byte[DATA_HEADER];
+        putInt(head, 0, channel.id);
+        putInt(head, 4, tag);
+        try {
+            final long end = file.size();
+            for (long position = file.position(); position < end; ) {
+                final int count = (int) Math.min(CHUNK_SIZE, end - position);
+                if (!channel.awaitCredit(DATA_HEADER + count) || !this.session.sendFileRegion(ReservedTags.CHANNEL_DATA, head, file, position, count))
+                    return false;
+                position += count;
+            }
+            return end(channel, tag);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private Channel openStream(final boolean serverSide, final int tag) {
+        final int id = nextId(serverSide);
+        final Channel channel = new Channel(this, id, 0, 0);
+        this.channels.put(id, channel);
+        final byte[] data = new byte[12];
+        putInt(data, 0, id);
+        putInt(data, 4, 0);
+        putInt(data, 8, tag);
+        opened(channel, data);
+        return channel;
+    }
+
+    /**
+     * Send the empty chunk ending a stream and close its Channel.
+     */
+    private boolean end(final Channel channel, final int tag) {
+        final byte[] data = new byte[DATA_HEADER];
+        putInt(data, 0, channel.id);
+        putInt(data, 4, tag);
+        final boolean sent;
+        try (final SPacket frame = new SPacket(ReservedTags.CHANNEL_DATA, data)) {
+            sent = channel.awaitCredit(DATA_HEADER) && this.session.send(frame);
+        }
+        channel.close();
+        return sent;
+    }
+
+    private int nextId(final boolean serverSide) {
+        return 2 * this.nextId.getAndIncrement() + (serverSide ? 2 : 1);
+    }
+
+    private void opened(final Channel channel, final byte[] openFrame) {
+        try (final SPacket frame = new SPacket(ReservedTags.CHANNEL_OPEN, openFrame)) {
+            if (this.session.send(frame))
+                return;
+        }
+        this.channels.remove(channel.id, channel);
+        channel.closed();
+    }
+
+    /**
+     * Handle a frame of a Channel, called by the reader of the Session.
+     *
+     * @param frame a frame on a reserved tag.
+     * @return true if the frame was a frame of a Channel.
+     */
+    public boolean onFrame(final RPacket frame) {
+        final byte[] array = frame.getArray();
+        switch (frame.getTag()) {
+            case ReservedTags.CHANNEL_OPEN:
+                if (malformed(frame, 8))
+                    return true;
+                if (frame.getLength() >= 12)
+                    onOpenStream(getInt(array, 0), getInt(array, 8));
+                else
+                    onOpen(getInt(array, 0), getInt(array, 4));
+                return true;
+            case ReservedTags.CHANNEL_DATA:
+                if (!malformed(frame, DATA_HEADER))
+                    onData(frame);
+                return true;
+            case ReservedTags.CHANNEL_CREDIT:
+                if (malformed(frame, 8))
+                    return true;
+                final Channel channel = this.channels.get(getInt(array, 0));
+                if (channel != null)
+                    channel.credit(getInt(array, 4));
+                return true;
+            case ReservedTags.CHANNEL_CLOSE:
+                if (malformed(frame, 4))
+                    return true;
+                final Channel closed = this.channels.remove(getInt(array, 0));
+                if (closed != null)
+                    closed.closed();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Frames come from the other side, a frame shorter than its header is logged and dropped.
+     */
+    private static boolean malformed(final RPacket frame, final int header) {
+        if (frame.getLength() >= header)
+            return false;
+        logger.err("Malformed frame of tag {} and {} bytes dropped.", frame.getTag(), frame.getLength());
+        return true;
+    }
+
+    private void onOpen(final int id, final int window) {
+        final Channel channel = new Channel(this, id, DEFAULT_WINDOW, window);
+        if (this.channels.putIfAbsent(id, channel) != null) {
+            logger.err("Channel {} already opened.", id);
+            return;
+        }
+        send(ReservedTags.CHANNEL_CREDIT, id, DEFAULT_WINDOW);
+        this.channelsFlux.emitValue(channel);
+    }
+
+    private void onOpenStream(final int id, final int tag) {
+        final ChannelInputStream stream = new ChannelInputStream(this, id, DEFAULT_WINDOW, 0, tag);
+        if (this.channels.putIfAbsent(id, stream.source) != null) {
+            logger.err("Channel {} already opened.", id);
+            return;
+        }
+        send(ReservedTags.CHANNEL_CREDIT, id, DEFAULT_WINDOW);
+        this.streamsFlux.emitValue(stream);
+    }
+
+    private void onData(final RPacket frame) {
+        final Channel channel = this.channels.get(getInt(frame.getArray(), 0));
+        if (channel == null)
+            return; // Closed by this side, the packets in flight are ignored.
+
+        final int length = frame.getLength() - DATA_HEADER;
+        if (!channel.accept(DATA_HEADER + length)) {
+            logger.err("Channel {} received data beyond its window of {} bytes, it is closed.", channel.id, channel.receiveWindow);
+            channel.close();
+            return;
+        }
+        final PooledBuffer buffer = BufferPool.getDefault().acquire(length);
+        System.arraycopy(frame.getArray(), DATA_HEADER, buffer.array(), 0, length);
+        channel.receive(new ChannelPacket(channel, getInt(frame.getArray(), 4), buffer, length));
+    }
+
+    boolean sendData(final Channel channel, final SPacket packet) {
+        final int length = packet.getLength();
+        final PooledBuffer buffer = BufferPool.getDefault().acquire(DATA_HEADER + length);
+        putInt(buffer.array(), 0, channel.id);
+        putInt(buffer.array(), 4, packet.getTag());
+        System.arraycopy(packet.getArray(), 0, buffer.array(), DATA_HEADER, length);
+        try (final SPacket frame = new SPacket(ReservedTags.CHANNEL_DATA, buffer, DATA_HEADER + length)) {
+            return this.session.send(frame);
+        }
+    }
+
+    void sendCredit(final int id, final int bytes) {
+        send(ReservedTags.CHANNEL_CREDIT, id, bytes);
+    }
+
+    void sendClose(final int id) {
+        final byte[] data = new byte[4];
+        putInt(data, 0, id);
+        try (final SPacket frame = new SPacket(ReservedTags.CHANNEL_CLOSE, data)) {
+            this.session.send(frame);
+        }
+    }
+
+    boolean remove(final Channel channel) {
+        return this.channels.remove(channel.id, channel);
+    }
+
+    private boolean send(final int tag, final int id, final int value) {
+        final byte[] data = new byte[8];
+        putInt(data, 0, id);
+        putInt(data, 4, value);
+        try (final SPacket frame = new SPacket(tag, data)) {
+            return this.session.send(frame);
+        }
+    }
+
+    /**
+     * Close all Channels without telling the other side. Called when the Session is disconnected.
+     */
+    public void closeAll() {
+        for (final Channel channel : new ArrayList<>(this.channels.values())) {
+            this.channels.remove(channel.id, channel);
+            channel.closed();
+        }
+    }
+
+    /**
+     * Close {@link ChannelManager#channelsFlux} with a closed Channel of id 0. Called when the Session is destroyed.
+     */
+    public void destroy() {
+        if (this.channelsFlux.isClosed())
+            return;
+        final Channel terminal = new Channel(this, 0, 0, 0);
+        terminal.closed();
+        this.channelsFlux.close(terminal);
+        final ChannelInputStream closedStream = new ChannelInputStream(this, 0, 0, 0, 0);
+        closedStream.source.closed();
+        this.streamsFlux.close(closedStream);
+    }
+
+    /**
+     * @return the number of open Channels.
+     */
+    public int size() {
+        return this.channels.size();
+    }
+
+    public VirtualStream<Channel> getChannelsFlux() {
+        return this.channelsFlux;
+    }
+
+    public PacketVirtualStream<ChannelInputStream> getStreamsFlux() {
+        return this.streamsFlux;
+    }
+
+    private static void putInt(final byte[] b, final int off, final int value) {
+        b[off] = (byte) (value >>> 24);
+        b[off + 1] = (byte) (value >>> 16);
+        b[off + 2] = (byte) (value >>> 8);
+        b[off + 3] = (byte) value;
+    }
+
+    private static int getInt(final byte[] b, final int off) {
+        return (b[off] & 0xff) << 24 | (b[off + 1] & 0xff) << 16 | (b[off + 2] & 0xff) << 8 | (b[off + 3] & 0xff);
+    }
+}
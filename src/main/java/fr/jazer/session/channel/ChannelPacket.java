@@ -0,0 +1,39 @@
+package fr.jazer.session.channel;
+
+import fr.jazer.buffer_manager.PooledBuffer;
+import fr.jazer.session.RPacket;
+
+/**
+ * A packet received on a {@link Channel}. Releasing its last reference gives its bytes back to the window of the sender,
+ * a packet never released holds them.
+ */
+public class ChannelPacket extends RPacket {
+
+    protected final Channel channel;
+
+    protected ChannelPacket(final Channel channel, final int packetNumber, final PooledBuffer buffer, final int length) {
+        super(packetNumber, buffer, length);
+        this.channel = channel;
+    }
+
+    /**
+     * @return the channel who received the packet.
+     */
+    public Channel getChannel() {
+        return this.channel;
+    }
+
+    @Override
+    public ChannelPacket retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        if (!super.release())
+            return false;
+        this.channel.consumed(ChannelManager.DATA_HEADER + this.length);
+        return true;
+    }
+}
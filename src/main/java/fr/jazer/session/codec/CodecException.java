@@ -0,0 +1,13 @@
+package fr.jazer.session.codec;
+
+/**
+ * A message couldn't be encoded or decoded : no codec for its tag, another type, or malformed data.
+ */
+public class CodecException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CodecException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,103 @@
+package fr.jazer.session.codec;
+
+import fr.jazer.session.RPacket;
+import fr.jazer.session.SPacket;
+import fr.jazer.session.stream.TagMap;
+import fr.jazer.session.utils.ReservedTags;
+
+/**
+ * The {@link MessageCodec} of each tag, used by {@link fr.jazer.session.Session#send(int, Object)} and the typed listeners.
+ * <p>
+ * Codecs are looked up by tag in a {@link TagMap}, without lock nor boxing. A tag has one codec for the life of the registry.
+ */
+public class CodecRegistry {
+
+    private static final CodecRegistry DEFAULT = new CodecRegistry();
+
+    protected final TagMap<Registration<?>> codecs = new TagMap<>();
+
+    /**
+     * @return the registry used by Sessions unless they are given another one.
+     */
+    public static CodecRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param tag   the tag of the messages, not a {@link ReservedTags}.
+     * @param type  the type of the messages.
+     * @param codec the codec of the type.
+     * @throws IllegalStateException if the tag already has another codec.
+     */
+    public <T> void register(final int tag, final Class<T> type, final MessageCodec<T> codec) {
+        if (ReservedTags.isReserved(tag))
+            throw new IllegalArgumentException("Tag " + tag + " is reserved by the Session.");
+        final Registration<T> registration = new Registration<>(type, codec);
+        final Registration<?> registered = this.codecs.computeIfAbsent(tag, created -> registration);
+        if (registered != registration && (registered.type != type || registered.codec != codec))
+            throw new IllegalStateException("Tag " + tag + " already has a codec for " + registered.type.getName() + ".");
+    }
+
+    /**
+     * @param tag     the tag.
+     * @param message the message.
+     * @return a packet of the encoded message, to be released by the caller.
+     * @throws CodecException if the tag has no codec for the type of the message.
+     */
+    @SuppressWarnings("unchecked")
+    public SPacket encode(final int tag, final Object message) {
+        final Registration<?> registration = this.codecs.get(tag);
+        if (registration == null)
+            throw new CodecException("No codec for tag " + tag + ".");
+        if (!registration.type.isInstance(message))
+            throw new CodecException("Tag " + tag + " encodes " + registration.type.getName() + ", not " + (message == null ? "null" : message.getClass().getName()) + ".");
+        try (final PacketWriter out = new PacketWriter(tag)) {
+            ((MessageCodec<Object>) registration.codec).encode(message, out);
+            return out.toPacket();
+        }
+    }
+
+    /**
+     * @param packet the packet, still owned by the caller.
+     * @param type   the expected type.
+     * @return the decoded message.
+     * @throws CodecException if the tag has no codec for the type, or the data are malformed.
+     */
+    public <T> T decode(final RPacket packet, final Class<T> type) {
+        final Registration<?> registration = this.codecs.get(packet.getTag());
+        if (registration == null)
+            throw new CodecException("No codec for tag " + packet.getTag() + ".");
+        if (!type.isAssignableFrom(registration.type))
+            throw new CodecException("Tag " + packet.getTag() + " decodes " + registration.type.getName() + ", not " + type.getName() + ".");
+        return type.cast(registration.codec.decode(packet.reader()));
+    }
+
+    /**
+     * @return the codec of the tag, null if there is none.
+     */
+    public MessageCodec<?> getCodec(final int tag) {
+        final Registration<?> registration = this.codecs.get(tag);
+        return registration != null ? registration.codec : null;
+    }
+
+    @Override
+    public String toString() {
+        return "CodecRegistry{" +
+                "codecs=" + codecs.size() +
+                '}';
+    }
+
+    /**
+     * A codec and the type it encodes.
+     */
+    protected static class Registration<T> {
+
+        protected final Class<T> type;
+        protected final MessageCodec<T> codec;
+
+        protected Registration(final Class<T> type, final MessageCodec<T> codec) {
+            this.type = type;
+            this.codec = codec;
+        }
+    }
+}
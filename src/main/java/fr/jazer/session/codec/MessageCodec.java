@@ -0,0 +1,45 @@
+package fr.jazer.session.codec;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Encode and decode the messages of a type, registered on a tag in a {@link CodecRegistry}.
+ * <p>
+ * Codecs are written by hand against {@link PacketWriter} and {@link PacketReader}, without reflection. They must be Thread-safe,
+ * a codec is shared by all Sessions.
+ *
+ * @param <T> the type of the messages.
+ */
+public interface MessageCodec<T> {
+
+    /**
+     * @param message the message, never null.
+     * @param out     the data of the packet.
+     */
+    void encode(final T message, final PacketWriter out);
+
+    /**
+     * @param in the data of the packet.
+     * @return the message.
+     * @throws CodecException if the data are malformed.
+     */
+    T decode(final PacketReader in);
+
+    /**
+     * @return a codec of two lambdas.
+     */
+    static <T> MessageCodec<T> of(final BiConsumer<T, PacketWriter> encoder, final Function<PacketReader, T> decoder) {
+        return new MessageCodec<T>() {
+            @Override
+            public void encode(final T message, final PacketWriter out) {
+                encoder.accept(message, out);
+            }
+
+            @Override
+            public T decode(final PacketReader in) {
+                return decoder.apply(in);
+            }
+        };
+    }
+}
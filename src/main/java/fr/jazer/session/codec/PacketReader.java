@@ -0,0 +1,173 @@
+package fr.jazer.session.codec;
+
+import fr.jazer.session.RPacket;
+import fr.jazer.session.utils.Varint;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read the data of a packet from its buffer, in the format of the appending writers of {@link fr.jazer.session.SPacket}.
+ * Nothing is copied but the texts and the arrays read.
+ * <p>
+ * A read beyond the data throws a {@link CodecException}. A reader is used by one Thread, and only while its packet isn't released.
+ */
+public class PacketReader {
+
+    protected final byte[] array;
+    protected final int limit;
+    protected int position;
+
+    /**
+     * @param array  the array holding the data.
+     * @param offset the position of the first byte.
+     * @param length the number of bytes of data.
+     */
+    public PacketReader(final byte[] array, final int offset, final int length) {
+        this.array = array;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * @param packet the packet, its data are read in place.
+     */
+    public PacketReader(final RPacket packet) {
+        this(packet.getArray(), 0, packet.getLength());
+    }
+
+    public byte readByte() {
+        require(1);
+        return this.array[this.position++];
+    }
+
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    public short readShort() {
+        require(2);
+        return (short) (((this.array[this.position++] & 0xFF) << 8) | (this.array[this.position++] & 0xFF));
+    }
+
+    public int readInt() {
+        require(4);
+        return ((this.array[this.position++] & 0xFF) << 24)
+                | ((this.array[this.position++] & 0xFF) << 16)
+                | ((this.array[this.position++] & 0xFF) << 8)
+                | (this.array[this.position++] & 0xFF);
+    }
+
+    public long readLong() {
+        return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    public float readFloat() {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new CodecException("Malformed varint, more than " + Varint.MAX_INT_SIZE + " bytes.");
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new CodecException("Malformed varint, more than " + Varint.MAX_LONG_SIZE + " bytes.");
+    }
+
+    public int readSignedVarInt() {
+        return Varint.unzigzag(readVarInt());
+    }
+
+    public long readSignedVarLong() {
+        return Varint.unzigzag(readVarLong());
+    }
+
+    /**
+     * @return a text written by {@link fr.jazer.session.SPacket#writeUtf(CharSequence)}, decoded from the buffer.
+     */
+    public String readUtf() {
+        final int length = readVarInt();
+        if (length < 0)
+            throw new CodecException("Malformed text of " + length + " bytes.");
+        require(length);
+        final String text = new String(this.array, this.position, length, StandardCharsets.UTF_8);
+        this.position += length;
+        return text;
+    }
+
+    /**
+     * Read raw bytes.
+     */
+    public void readBytes(final byte[] dest, final int offset, final int length) {
+        require(length);
+        System.arraycopy(this.array, this.position, dest, offset, length);
+        this.position += length;
+    }
+
+    /**
+     * Read raw bytes in a buffer, heap or direct.
+     *
+     * @param dest filled up to its limit.
+     */
+    public void readBytes(final ByteBuffer dest) {
+        final int length = dest.remaining();
+        require(length);
+        dest.put(this.array, this.position, length);
+        this.position += length;
+    }
+
+    /**
+     * Read raw bytes without copy.
+     *
+     * @return a read-only view of the bytes, valid while the packet isn't released.
+     */
+    public ByteBuffer readSlice(final int length) {
+        require(length);
+        final ByteBuffer slice = ByteBuffer.wrap(this.array, this.position, length).slice().asReadOnlyBuffer();
+        this.position += length;
+        return slice;
+    }
+
+    public void skip(final int length) {
+        require(length);
+        this.position += length;
+    }
+
+    /**
+     * @return the number of bytes not yet read.
+     */
+    public int remaining() {
+        return this.limit - this.position;
+    }
+
+    protected void require(final int bytes) {
+        if (bytes < 0 || this.limit - this.position < bytes)
+            throw new CodecException("Read of " + bytes + " bytes beyond the data, " + (this.limit - this.position) + " bytes remaining.");
+    }
+
+    @Override
+    public String toString() {
+        return "PacketReader{" +
+                "position=" + position +
+                ", limit=" + limit +
+                '}';
+    }
+}
@@ -0,0 +1,158 @@
+package fr.jazer.session.codec;
+
+import fr.jazer.session.SPacket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Write the data of a packet with the appending writers of {@link SPacket}, in its pooled buffer grown as needed.
+ * The packet is given by {@link PacketWriter#toPacket()}, nothing is copied after the write.
+ * <p>
+ * A writer is used by one Thread. Closing a writer not given gives the buffer of its packet back, use try-with-resources.
+ */
+public class PacketWriter implements AutoCloseable {
+
+    protected SPacket packet;
+
+    /**
+     * @param tag      the tag of the packet.
+     * @param capacity the initial capacity, the buffer grows beyond.
+     */
+    public PacketWriter(final int tag, final int capacity) {
+        this.packet = new SPacket(tag, capacity);
+    }
+
+    public PacketWriter(final int tag) {
+        this(tag, SPacket.DEFAULT_CAPACITY);
+    }
+
+    public PacketWriter writeByte(final int value) {
+        packet().writeByte(value);
+        return this;
+    }
+
+    public PacketWriter writeBoolean(final boolean value) {
+        packet().writeBoolean(value);
+        return this;
+    }
+
+    public PacketWriter writeShort(final int value) {
+        packet().writeShort(value);
+        return this;
+    }
+
+    public PacketWriter writeInt(final int value) {
+        packet().writeInt(value);
+        return this;
+    }
+
+    public PacketWriter writeLong(final long value) {
+        packet().writeLong(value);
+        return this;
+    }
+
+    public PacketWriter writeFloat(final float value) {
+        packet().writeFloat(value);
+        return this;
+    }
+
+    public PacketWriter writeDouble(final double value) {
+        packet().writeDouble(value);
+        return this;
+    }
+
+    /**
+     * @see SPacket#writeVarInt(int)
+     */
+    public PacketWriter writeVarInt(final int value) {
+        packet().writeVarInt(value);
+        return this;
+    }
+
+    /**
+     * @see SPacket#writeVarLong(long)
+     */
+    public PacketWriter writeVarLong(final long value) {
+        packet().writeVarLong(value);
+        return this;
+    }
+
+    /**
+     * @see SPacket#writeSignedVarInt(int)
+     */
+    public PacketWriter writeSignedVarInt(final int value) {
+        packet().writeSignedVarInt(value);
+        return this;
+    }
+
+    public PacketWriter writeSignedVarLong(final long value) {
+        packet().writeSignedVarLong(value);
+        return this;
+    }
+
+    /**
+     * @see SPacket#writeUtf(CharSequence)
+     */
+    public PacketWriter writeUtf(final CharSequence text) {
+        packet().writeUtf(text);
+        return this;
+    }
+
+    /**
+     * Write raw bytes, without their length.
+     */
+    public PacketWriter writeBytes(final byte[] bytes, final int offset, final int length) {
+        packet().writeBytes(bytes, offset, length);
+        return this;
+    }
+
+    /**
+     * Write the remaining bytes of a buffer, without their length.
+     */
+    public PacketWriter writeBytes(final ByteBuffer bytes) {
+        packet().writeBytes(bytes);
+        return this;
+    }
+
+    /**
+     * @return the number of bytes written.
+     */
+    public int position() {
+        return packet().getLength();
+    }
+
+    /**
+     * Give the packet, the writer can't be used anymore.
+     *
+     * @return the packet, to be released by the caller.
+     */
+    public SPacket toPacket() {
+        final SPacket packet = packet();
+        this.packet = null;
+        return packet;
+    }
+
+    protected SPacket packet() {
+        if (this.packet == null)
+            throw new IllegalStateException("PacketWriter already given its packet.");
+        return this.packet;
+    }
+
+    /**
+     * Give the buffer back if the packet wasn't given.
+     */
+    @Override
+    public void close() {
+        if (this.packet == null)
+            return;
+        this.packet.release();
+        this.packet = null;
+    }
+
+    @Override
+    public String toString() {
+        return "PacketWriter{" +
+                "packet=" + packet +
+                '}';
+    }
+}
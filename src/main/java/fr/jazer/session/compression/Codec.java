@@ -0,0 +1,39 @@
+package fr.jazer.session.compression;
+
+import java.io.IOException;
+
+/**
+ * A compression algorithm used by a Session on the data of its frames.
+ * <p>
+ * A codec keeps its context between packets, so it must not compress from two Threads at once, neither decompress.
+ * Compressing and decompressing at the same time is allowed.
+ */
+public interface Codec {
+
+    /**
+     * @param length a number of bytes at compress.
+     * @return the maximum size of the compressed bytes.
+     */
+    int maxCompressedLength(final int length);
+
+    /**
+     * @param src    the bytes at compress.
+     * @param srcOff the offset of the first byte.
+     * @param length the number of bytes.
+     * @param dst    the array receiving the compressed bytes, with at least {@link Codec#maxCompressedLength(int)} bytes after dstOff.
+     * @param dstOff the offset of the first compressed byte.
+     * @return the number of compressed bytes, -1 if they didn't fit.
+     */
+    int compress(final byte[] src, final int srcOff, final int length, final byte[] dst, final int dstOff);
+
+    /**
+     * @param src            the compressed bytes.
+     * @param srcOff         the offset of the first compressed byte.
+     * @param length         the number of compressed bytes.
+     * @param dst            the array receiving the original bytes.
+     * @param dstOff         the offset of the first original byte.
+     * @param originalLength the number of original bytes.
+     * @throws IOException if the compressed bytes are malformed or don't give originalLength bytes.
+     */
+    void decompress(final byte[] src, final int srcOff, final int length, final byte[] dst, final int dstOff, final int originalLength) throws IOException;
+}
@@ -0,0 +1,55 @@
+package fr.jazer.session.compression;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw Deflate of the JDK, a better ratio than {@link Lz4Codec} for more CPU.
+ * The {@link Deflater} and the {@link Inflater} are reset between packets instead of being recreated.
+ */
+public class DeflateCodec implements Codec {
+
+    protected final Deflater deflater;
+    protected final Inflater inflater = new Inflater(true);
+
+    /**
+     * @param level the level of the {@link Deflater}, from 1 (fast) to 9 (small).
+     */
+    public DeflateCodec(final int level) {
+        this.deflater = new Deflater(level, true);
+    }
+
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    @Override
+    public int maxCompressedLength(final int length) {
+        // Bound of zlib deflateBound() for raw streams.
+        return length + (length >>> 12) + (length >>> 14) + (length >>> 25) + 13;
+    }
+
+    @Override
+    public int compress(final byte[] src, final int srcOff, final int length, final byte[] dst, final int dstOff) {
+        this.deflater.reset();
+        this.deflater.setInput(src, srcOff, length);
+        this.deflater.finish();
+        final int written = this.deflater.deflate(dst, dstOff, dst.length - dstOff);
+        return this.deflater.finished() ? written : -1;
+    }
+
+    @Override
+    public void decompress(final byte[] src, final int srcOff, final int length, final byte[] dst, final int dstOff, final int originalLength) throws IOException {
+        this.inflater.reset();
+        this.inflater.setInput(src, srcOff, length);
+        try {
+            final int read = this.inflater.inflate(dst, dstOff, originalLength);
+            if (read != originalLength || !this.inflater.finished())
+                throw new IOException("Malformed Deflate data, " + read + " bytes decompressed instead of " + originalLength + ".");
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed Deflate data : " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package fr.jazer.session.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pure Java implementation of the LZ4 block format, fast with a lower ratio than {@link DeflateCodec}.
+ * <p>
+ * The compressor finds matches with a hash table of the last positions of each 4 bytes sequence, kept between packets.
+ */
+public class Lz4Codec implements Codec {
+
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_LOG = 12;
+    private static final int MAX_DISTANCE = 65535;
+    /**
+     * The last 5 bytes are always literals.
+     */
+    private static final int LAST_LITERALS = 5;
+    /**
+     * The last match must start at least 12 bytes before the end.
+     */
+    private static final int MF_LIMIT = 12;
+    /**
+     * After 2^SKIP_TRIGGER positions without match, the compressor moves faster in the data.
+     */
+    private static final int SKIP_TRIGGER = 6;
+
+    /**
+     * Last position of the 4 bytes sequences by hash, -1 when there is none.
+     */
+    protected final int[] table = new int[1 << HASH_LOG];
+
+    @Override
+    public int maxCompressedLength(final int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public int compress(final byte[] src, final int srcOff, final int length, final byte[] dst, final int dstOff) {
+        if (dst.length - dstOff < maxCompressedLength(length))
+            return -1;
+        final int end = srcOff + length;
+        final int matchLimit = end - LAST_LITERALS;
+        final int mfLimit = end - MF_LIMIT;
+        int anchor = srcOff;
+        int ip = srcOff;
+        int op = dstOff;
+
+        if (length > MF_LIMIT) {
+            Arrays.fill(this.table, -1);
+            int attempts = 1 << SKIP_TRIGGER;
+            while (ip < mfLimit) {
+                final int sequence = readIntLE(src, ip);
+                final int hash = hash(sequence);
+                int ref = this.table[hash];
+                this.table[hash] = ip;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readIntLE(src, ref) != sequence) {
+                    ip += attempts++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                attempts = 1 << SKIP_TRIGGER;
+
+                while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength])
+                    matchLength++;
+
+                op = writeLiterals(dst, op, src, anchor, ip - anchor, matchLength - MIN_MATCH);
+                dst[op++] = (byte) (ip - ref);
+                dst[op++] = (byte) ((ip - ref) >>> 8);
+                op = writeLength(dst, op, matchLength - MIN_MATCH);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+        op = writeLiterals(dst, op, src, anchor, end - anchor, 0);
+        return op - dstOff;
+    }
+
+    /**
+     * Write the token, the literal length and the literals of a sequence.
+     */
+    private static int writeLiterals(final byte[] dst, int op, final byte[] src, final int from, final int literals, final int matchLength) {
+        dst[op++] = (byte) (Math.min(literals, 15) << 4 | Math.min(matchLength, 15));
+        if (literals >= 15)
+            op = writeLengthBytes(dst, op, literals - 15);
+        System.arraycopy(src, from, dst, op, literals);
+        return op + literals;
+    }
+
+    /**
+     * Write the extra bytes of a match length, the token already holds the first 15.
+     */
+    private static int writeLength(final byte[] dst, final int op, final int matchLength) {
+        return matchLength >= 15 ? writeLengthBytes(dst, op, matchLength - 15) : op;
+    }
+
+    private static int writeLengthBytes(final byte[] dst, int op, int remaining) {
+        while (remaining >= 255) {
+            dst[op++] = (byte) 255;
+            remaining -= 255;
+        }
+        dst[op++] = (byte) remaining;
+        return op;
+    }
+
+    @Override
+    public void decompress(final byte[] src, final int srcOff, final int length, final byte[] dst, final int dstOff, final int originalLength) throws IOException {
+        final int srcEnd = srcOff + length;
+        final int dstEnd = dstOff + originalLength;
+        int sp = srcOff;
+        int dp = dstOff;
+        try {
+            while (true) {
+                final int token = src[sp++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[sp++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                if (literals > dstEnd - dp || literals > srcEnd - sp)
+                    throw new IOException("Malformed LZ4 data, literals out of bounds.");
+                System.arraycopy(src, sp, dst, dp, literals);
+                sp += literals;
+                dp += literals;
+                if (sp == srcEnd)
+                    break;
+
+                final int offset = (src[sp] & 0xFF) | (src[sp + 1] & 0xFF) << 8;
+                sp += 2;
+                if (offset == 0 || dp - offset < dstOff)
+                    throw new IOException("Malformed LZ4 data, offset out of bounds.");
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[sp++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                if (matchLength > dstEnd - dp)
+                    throw new IOException("Malformed LZ4 data, match out of bounds.");
+                if (offset >= matchLength) {
+                    System.arraycopy(dst, dp - offset, dst, dp, matchLength);
+                } else {
+                    for (int i = 0; i < matchLength; i++)
+                        dst[dp + i] = dst[dp - offset + i];
+                }
+                dp += matchLength;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed LZ4 data, truncated.");
+        }
+        if (dp != dstEnd)
+            throw new IOException("Malformed LZ4 data, " + (dp - dstOff) + " bytes decompressed instead of " + originalLength + ".");
+    }
+
+    private static int hash(final int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int readIntLE(final byte[] b, final int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,20 @@
+package fr.jazer.session.rpc;
+
+import fr.jazer.session.RPacket;
+import fr.jazer.session.SPacket;
+
+/**
+ * Answer the requests of a tag, see {@link fr.jazer.session.Session#addRequestHandler(int, RequestHandler)}.
+ */
+@FunctionalInterface
+public interface RequestHandler {
+
+    /**
+     * Called on a Thread of the Session for each request. The request is released once the method returned, retain it to keep it.
+     *
+     * @param request the request, with the tag used by the caller.
+     * @return the response, null for an empty response. Released once sent.
+     * @throws Exception any exception completes the future of the caller with a {@link RpcException}.
+     */
+    SPacket onRequest(final RPacket request) throws Exception;
+}
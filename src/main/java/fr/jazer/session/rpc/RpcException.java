@@ -0,0 +1,13 @@
+package fr.jazer.session.rpc;
+
+/**
+ * The other side of the Session couldn't answer a request : no handler for its tag, or the handler failed.
+ */
+public class RpcException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public RpcException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,206 @@
+package fr.jazer.session.rpc;
+
+import fr.jazer.buffer_manager.BufferPool;
+import fr.jazer.buffer_manager.PooledBuffer;
+import fr.jazer.logger.Logger;
+import fr.jazer.session.RPacket;
+import fr.jazer.session.SPacket;
+import fr.jazer.session.Session;
+import fr.jazer.session.utils.ReservedTags;
+
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Request/response calls over a {@link Session}.
+ * <p>
+ * A request is sent on {@link ReservedTags#RPC_REQUEST} as [correlationId:int][tag:int][data], the response comes back on
+ * {@link ReservedTags#RPC_RESPONSE} as [correlationId:int][status:byte][data]. The correlation id finds the future of the call,
+ * so any number of calls can be in flight on the same tag without Thread waiting for them.
+ */
+public class RpcManager {
+
+    private static final Logger logger = Logger.loggerOfStatic(RpcManager.class);
+
+    private static final int REQUEST_HEADER = 8;
+    private static final int RESPONSE_HEADER = 5;
+
+    private static final byte STATUS_OK = 0;
+    private static final byte STATUS_ERROR = 1;
+    private static final byte STATUS_NO_HANDLER = 2;
+
+    protected final Session session;
+    /**
+     * Calls waiting for their response, by correlation id.
+     */
+    protected final ConcurrentHashMap<Integer, Call> calls = new ConcurrentHashMap<>();
+    protected final AtomicInteger nextId = new AtomicInteger();
+    /**
+     * Handlers of requests, by tag.
+     */
+    protected final ConcurrentHashMap<Integer, RequestHandler> handlers = new ConcurrentHashMap<>();
+
+    /**
+     * @param session the Session carrying the calls, its listeners of reserved tags are added.
+     */
+    public RpcManager(final Session session) {
+        this.session = session;
+        session.addPacketListener(ReservedTags.RPC_REQUEST, this::onRequest);
+        session.addPacketListener(ReservedTags.RPC_RESPONSE, this::onResponse);
+    }
+
+    /**
+     * Send a request and return without waiting the response.
+     *
+     * @param request the request, its tag selects the handler on the other side.
+     * @param timeout maximum time to wait the response.
+     * @param unit    unit of the timeout.
+     * @return a future completed with the response, a {@link RpcException} if it couldn't be answered,
+     * a {@link java.util.concurrent.TimeoutException} or a {@link SocketException} if the Session is disconnected.
+     */
+    public CompletableFuture<RPacket> request(final SPacket request, final long timeout, final TimeUnit unit) {
+        final int id = this.nextId.getAndIncrement();
+        final Call call = new Call(request.getTag());
+        this.calls.put(id, call);
+        call.whenComplete((response, throwable) -> this.calls.remove(id, call));
+        call.orTimeout(timeout, unit);
+
+        final PooledBuffer buffer = BufferPool.getDefault().acquire(REQUEST_HEADER + request.getLength());
+        putInt(buffer.array(), 0, id);
+        putInt(buffer.array(), 4, request.getTag());
+        System.arraycopy(request.getArray(), 0, buffer.array(), REQUEST_HEADER, request.getLength());
+        try (final SPacket frame = new SPacket(ReservedTags.RPC_REQUEST, buffer, REQUEST_HEADER + request.getLength())) {
+            if (!this.session.send(frame))
+                call.completeExceptionally(new SocketException("Request couldn't be sent, the Session is disconnected."));
+        }
+        return call;
+    }
+
+    public void addHandler(final int tag, final RequestHandler handler) {
+        this.handlers.put(tag, handler);
+    }
+
+    public void removeHandler(final int tag) {
+        this.handlers.remove(tag);
+    }
+
+    /**
+     * @return the number of calls waiting for their response.
+     */
+    public int inFlight() {
+        return this.calls.size();
+    }
+
+    /**
+     * Complete exceptionally all calls waiting for their response. Called when the Session is disconnected.
+     *
+     * @param cause the exception given to the calls.
+     */
+    public void failCalls(final Throwable cause) {
+        for (final Call call : this.calls.values())
+            call.completeExceptionally(cause);
+    }
+
+    private void onRequest(final RPacket frame) {
+        if (frame.getLength() < REQUEST_HEADER) {
+            logger.err("Malformed request of {} bytes dropped.", frame.getLength());
+            return;
+        }
+        final byte[] array = frame.getArray();
+        final int id = getInt(array, 0);
+        final int tag = getInt(array, 4);
+        final RequestHandler handler = this.handlers.get(tag);
+        if (handler == null) {
+            respond(id, STATUS_NO_HANDLER, null);
+            return;
+        }
+
+        SPacket response = null;
+        try (final RPacket request = slice(frame, tag, REQUEST_HEADER)) {
+            response = handler.onRequest(request);
+        } catch (Exception e) {
+            respond(id, STATUS_ERROR, new SPacket(tag, String.valueOf(e).getBytes(StandardCharsets.UTF_8)));
+            return;
+        }
+        try {
+            respond(id, STATUS_OK, response);
+        } finally {
+            if (response != null)
+                response.release();
+        }
+    }
+
+    private void respond(final int id, final byte status, final SPacket response) {
+        final int length = response != null ? response.getLength() : 0;
+        final PooledBuffer buffer = BufferPool.getDefault().acquire(RESPONSE_HEADER + length);
+        putInt(buffer.array(), 0, id);
+        buffer.array()[4] = status;
+        if (response != null)
+            System.arraycopy(response.getArray(), 0, buffer.array(), RESPONSE_HEADER, length);
+        try (final SPacket frame = new SPacket(ReservedTags.RPC_RESPONSE, buffer, RESPONSE_HEADER + length)) {
+            if (!this.session.send(frame))
+                logger.log("Response {} couldn't be sent, the Session is disconnected.", id);
+        }
+    }
+
+    private void onResponse(final RPacket frame) {
+        if (frame.getLength() < RESPONSE_HEADER) {
+            logger.err("Malformed response of {} bytes dropped.", frame.getLength());
+            return;
+        }
+        final byte[] array = frame.getArray();
+        final Call call = this.calls.remove(getInt(array, 0));
+        if (call == null)
+            return; // Timed out.
+
+        switch (array[4]) {
+            case STATUS_OK:
+                final RPacket response = slice(frame, call.tag, RESPONSE_HEADER);
+                if (!call.complete(response))
+                    response.release();
+                break;
+            case STATUS_NO_HANDLER:
+                call.completeExceptionally(new RpcException("No handler for tag " + call.tag + "."));
+                break;
+            default:
+                call.completeExceptionally(new RpcException(new String(array, RESPONSE_HEADER, frame.getLength() - RESPONSE_HEADER, StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Copy the data of a frame after its header in a new packet.
+     */
+    private static RPacket slice(final RPacket frame, final int tag, final int offset) {
+        final int length = frame.getLength() - offset;
+        final PooledBuffer buffer = BufferPool.getDefault().acquire(length);
+        System.arraycopy(frame.getArray(), offset, buffer.array(), 0, length);
+        return new RPacket(tag, buffer, length);
+    }
+
+    private static void putInt(final byte[] b, final int off, final int value) {
+        b[off] = (byte) (value >>> 24);
+        b[off + 1] = (byte) (value >>> 16);
+        b[off + 2] = (byte) (value >>> 8);
+        b[off + 3] = (byte) value;
+    }
+
+    private static int getInt(final byte[] b, final int off) {
+        return (b[off] & 0xff) << 24 | (b[off + 1] & 0xff) << 16 | (b[off + 2] & 0xff) << 8 | (b[off + 3] & 0xff);
+    }
+
+    /**
+     * The future of a call, knowing the tag of its request.
+     */
+    protected static class Call extends CompletableFuture<RPacket> {
+
+        protected final int tag;
+
+        protected Call(final int tag) {
+            this.tag = tag;
+        }
+    }
+}
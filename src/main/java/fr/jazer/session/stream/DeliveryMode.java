@@ -0,0 +1,39 @@
+package fr.jazer.session.stream;
+
+/**
+ * Where a stream delivers its values.
+ */
+public enum DeliveryMode {
+    /**
+     * Values are only queued, to be read. Receivers are ignored.
+     */
+    QUEUE_ONLY,
+    /**
+     * Values are only given to receivers, nothing is kept once they are dispatched.
+     */
+    LISTENERS_ONLY,
+    /**
+     * Values are queued and given to receivers.
+     */
+    BOTH,
+    /**
+     * Values are given to receivers if there are any, else they are queued.
+     */
+    AUTO;
+
+    /**
+     * @param receivers the number of receivers of the value.
+     * @return true if the value must be given to the receivers.
+     */
+    public boolean toReceivers(final int receivers) {
+        return this == LISTENERS_ONLY || this == BOTH || (this == AUTO && receivers > 0);
+    }
+
+    /**
+     * @param receivers the number of receivers of the value.
+     * @return true if the value must be queued.
+     */
+    public boolean toQueue(final int receivers) {
+        return this == QUEUE_ONLY || this == BOTH || (this == AUTO && receivers == 0);
+    }
+}
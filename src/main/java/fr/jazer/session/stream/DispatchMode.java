@@ -0,0 +1,20 @@
+package fr.jazer.session.stream;
+
+/**
+ * How a stream runs its receivers.
+ */
+public enum DispatchMode {
+    /**
+     * Each value is given to each receiver in its own task, values can be handled concurrently and out of order.
+     */
+    PARALLEL,
+    /**
+     * Each receiver has a mailbox drained by one task at a time, a receiver handles values one by one in order.
+     * Different receivers still run in parallel.
+     */
+    SERIAL,
+    /**
+     * Receivers are called on the emitting thread, for cheap handlers. For a Session, a slow handler stops reading the socket.
+     */
+    INLINE
+}
@@ -1,96 +1,563 @@
 package fr.jazer.session.stream;
 
+import fr.jazer.buffer_manager.ReferenceCounted;
+import fr.jazer.logger.Logger;
+import fr.jazer.metrics.MetricsRegistry;
 import fr.jazer.thread_manager.ThreadPool;
 
-import java.util.*;
+import java.util.Arrays;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * A stream of tagged values, each value is queued by tag and/or given to the receivers of its tag depending on the {@link DeliveryMode}.
+ * <p>
+ * Tags are looked up in a {@link TagMap} without lock nor boxing, and receivers of a tag are a copy-on-write array.
+ * Emitting never takes a lock shared with other tags, adding or removing receivers never stalls the emitter.
+ * <p>
+ * Queues are bounded, the {@link QueueOverflowPolicy} is applied when a queue is full.
+ * <p>
+ * Tags of emitted values are chosen by the remote peer : at most {@link PacketVirtualStream#maxTags} tags get a queue on emit,
+ * values of other tags without receiver nor reader are dropped. A tag left without receiver, reader nor queued value loses its queue
+ * when a receiver is removed.
+ * <p>
+ * Receivers are run following the {@link DispatchMode} of their tag, in {@link DispatchMode#SERIAL} each receiver has a mailbox
+ * drained by the {@link PacketVirtualStream#executor} so it handles the values of a tag in order.
+ * <p>
+ * {@link ReferenceCounted} values are retained for each receiver and released after the receiver returned.
+ * The reference of the emitter is given to the queue, so to the caller of {@link PacketVirtualStream#readASlash(int)},
+ * or released if the value isn't queued.
+ */
 public class PacketVirtualStream<T extends TaggedEntity> {
 
-    protected final HashMap<Integer, BlockingQueue<T>> queue;
-    protected final HashMap<Integer, ArrayList<Receiver<T>>> receivers;
+    /**
+     * Default value of {@link PacketVirtualStream#queueCapacity}.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    /**
+     * Default value of {@link PacketVirtualStream#maxTags}.
+     */
+    public static final int DEFAULT_MAX_TAGS = 256;
+    /**
+     * Minimum time between two warnings about values dropped beyond {@link PacketVirtualStream#maxTags}, in nanoseconds.
+     */
+    private static final long TAGS_OVERFLOW_REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(1);
 
-    protected boolean closed = false;
+    private static final Logger logger = Logger.loggerOfStatic(PacketVirtualStream.class);
+    /**
+     * Values dropped by all streams, in {@link MetricsRegistry#getDefault()}.
+     */
+    private static final LongAdder TOTAL_DROPPED = MetricsRegistry.getDefault().counter("stream.dropped");
+
+    /**
+     * The queue and the receivers of each tag.
+     */
+    protected final TagMap<TagSlot<T>> slots;
+
+    /**
+     * Delivery mode of tags without their own mode.
+     */
+    protected volatile DeliveryMode deliveryMode;
+    /**
+     * Dispatch mode of tags without their own mode.
+     */
+    protected volatile DispatchMode dispatchMode = DispatchMode.PARALLEL;
+    /**
+     * Capacity of the queue of each tag, applied to tags created after a change.
+     */
+    protected volatile int queueCapacity;
+    /**
+     * Number of tags above which emitted values of a new tag are dropped instead of being queued.
+     */
+    protected volatile int maxTags = DEFAULT_MAX_TAGS;
+    /**
+     * Values dropped beyond {@link PacketVirtualStream#maxTags} since the last warning.
+     */
+    protected final AtomicLong tagsOverflowUnreported = new AtomicLong();
+    /**
+     * Time of the last warning about values dropped beyond {@link PacketVirtualStream#maxTags}, by {@link System#nanoTime()}.
+     */
+    protected final AtomicLong tagsOverflowReportedAt = new AtomicLong(System.nanoTime() - TAGS_OVERFLOW_REPORT_INTERVAL);
+    /**
+     * Applied when the queue of a tag is full.
+     */
+    protected volatile QueueOverflowPolicy overflowPolicy;
+    /**
+     * Number of values dropped because of full queues.
+     */
+    protected final AtomicLong dropped = new AtomicLong();
+
+    protected volatile boolean closed = false;
     protected final ThreadPool executor = new ThreadPool(2000);
 
+    /**
+     * @param deliveryMode   delivery mode of tags without their own mode.
+     * @param queueCapacity  capacity of the queue of each tag.
+     * @param overflowPolicy applied when the queue of a tag is full.
+     */
+    public PacketVirtualStream(final DeliveryMode deliveryMode, final int queueCapacity, final QueueOverflowPolicy overflowPolicy) {
+        this.slots = new TagMap<>();
+        this.deliveryMode = deliveryMode;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Default constructor, values are given to receivers or queued if their tag has no receiver ({@link DeliveryMode#AUTO}).
+     */
     public PacketVirtualStream() {
-        this.queue = new HashMap<>();
-        this.receivers = new HashMap<>();
+        this(DeliveryMode.AUTO, DEFAULT_QUEUE_CAPACITY, QueueOverflowPolicy.DROP_OLDEST);
+    }
+
+    public void emitValue(final T value) {
+        final TagSlot<T> slot = emittedSlot(value.getTag());
+        if (slot == null) {
+            dropTag(value);
+            return;
+        }
+        final Subscriber<T>[] subscribers = slot.subscribers;
+        final DeliveryMode mode = slot.deliveryMode != null ? slot.deliveryMode : this.deliveryMode;
+
+        // Receivers retain the value before the queue can give it to a reader who may release it.
+        if (mode.toReceivers(subscribers.length))
+            this.sendToReceivers(slot, subscribers, value);
+        if (mode.toQueue(subscribers.length))
+            enqueue(slot, value);
+        else
+            release(value);
     }
 
-    public synchronized void emitValue(final T value) {
-        if (!this.queue.containsKey(value.getTag()))
-            this.queue.put(value.getTag(), new LinkedBlockingQueue<>());
+    protected void sendToReceivers(final TagSlot<T> slot, final Subscriber<T>[] subscribers, final T value) {
+        final DispatchMode mode = slot.dispatchMode != null ? slot.dispatchMode : this.dispatchMode;
+        for (final Subscriber<T> subscriber : subscribers) {
+            if (value instanceof ReferenceCounted)
+                ((ReferenceCounted) value).retain();
+            switch (mode) {
+                case PARALLEL:
+                    this.executor.exe(() -> deliver(subscriber.receiver, value));
+                    break;
+                case SERIAL:
+                    subscriber.post(value, this.executor);
+                    break;
+                case INLINE:
+                    deliver(subscriber.receiver, value);
+                    break;
+            }
+        }
+    }
 
+    /**
+     * Run a receiver and release its reference on the value.
+     */
+    protected static <T> void deliver(final Receiver<T> receiver, final T value) {
         try {
-            this.queue.get(value.getTag()).put(value);
-            this.sendToReceivers(value);
-        } catch (InterruptedException e) {
+            receiver.onChanged(value);
+        } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            release(value);
+        }
+    }
+
+    /**
+     * Queue a value applying the {@link PacketVirtualStream#overflowPolicy}, in the current slot of its tag.
+     */
+    protected void enqueue(final TagSlot<T> slot, final T value) {
+        if (!slot.use()) {
+            final TagSlot<T> current = emittedSlot(slot.tag);
+            if (current != null)
+                enqueue(current, value);
+            else
+                dropTag(value);
+            return;
+        }
+        try {
+            offer(slot, value);
+        } finally {
+            slot.unuse();
+        }
+    }
+
+    private void offer(final TagSlot<T> slot, final T value) {
+        switch (this.overflowPolicy) {
+            case BLOCK:
+                try {
+                    slot.queue.put(value);
+                } catch (InterruptedException e) {
+                    drop(slot, value);
+                    Thread.currentThread().interrupt();
+                }
+                break;
+            case DROP_NEWEST:
+                if (!slot.queue.offer(value))
+                    drop(slot, value);
+                break;
+            case DROP_OLDEST:
+                forceOffer(slot, value);
+                break;
+        }
+    }
+
+    /**
+     * Queue a value, dropping the oldest values if needed.
+     */
+    private void forceOffer(final TagSlot<T> slot, final T value) {
+        while (!slot.queue.offer(value)) {
+            final T oldest = slot.queue.poll();
+            if (oldest != null)
+                drop(slot, oldest);
         }
     }
 
-    protected void sendToReceivers(final T value) {
-        synchronized (this.receivers) {
-            if (this.receivers.containsKey(value.getTag()))
-                this.receivers.get(value.getTag()).forEach(receiver -> this.executor.exe(() -> receiver.onChanged(value)));
+    private void drop(final TagSlot<T> slot, final T value) {
+        this.dropped.incrementAndGet();
+        TOTAL_DROPPED.increment();
+        release(value);
+        if (!slot.overflowReported) {
+            slot.overflowReported = true;
+            logger.err("Queue of tag {} is full ({} values), values are dropped.", slot.tag, slot.queue.size());
         }
     }
 
+    /**
+     * Drop a value of a tag without queue, beyond {@link PacketVirtualStream#maxTags}. The drops are reported at most once by second.
+     */
+    private void dropTag(final T value) {
+        this.dropped.incrementAndGet();
+        TOTAL_DROPPED.increment();
+        final int tag = value.getTag();
+        release(value);
+        this.tagsOverflowUnreported.incrementAndGet();
+        final long now = System.nanoTime();
+        final long last = this.tagsOverflowReportedAt.get();
+        if (now - last >= TAGS_OVERFLOW_REPORT_INTERVAL && this.tagsOverflowReportedAt.compareAndSet(last, now))
+            logger.warn("More than {} tags received, {} values of tags without receiver dropped (last tag {}).",
+                    this.maxTags, this.tagsOverflowUnreported.getAndSet(0), tag);
+    }
+
+    private static void release(final Object value) {
+        if (value instanceof ReferenceCounted)
+            ((ReferenceCounted) value).release();
+    }
+
     public T readASlash(final int tag) {
         if (closed)
             return null;
-        synchronized (this) {
-            if (this.queue.get(tag) == null)
-                this.queue.put(tag, new LinkedBlockingQueue<>());
-        }
+        final TagSlot<T> slot = usedSlot(tag);
         try {
-            return this.queue.get(tag).take();
+            return slot.queue.take();
         } catch (InterruptedException e) {
             e.printStackTrace();
+        } finally {
+            slot.unuse();
         }
         return null;
     }
 
     public void addReceiver(final int tag, final Receiver<T> receiver) {
-        synchronized (receivers) {
-            if (!this.receivers.containsKey(tag))
-                this.receivers.put(tag, new ArrayList<>());
-            this.receivers.get(tag).add(receiver);
-        }
+        TagSlot<T> slot = slot(tag);
+        while (!slot.add(receiver))
+            slot = slot(tag);
     }
 
+    /**
+     * Remove a receiver from all tags, the tags left unused lose their queue.
+     */
     public void removeReceiver(final Receiver<T> receiver) {
-        synchronized (receivers) {
-            this.receivers.values().forEach(each -> each.remove(receiver));
-        }
+        this.slots.forEach(slot -> {
+            slot.remove(receiver);
+            if (slot.isUnused() && slot.retire())
+                this.slots.remove(slot.tag);
+        });
     }
 
     public boolean slash(final T value) {
-        synchronized (this) {
-            return queue.get(value.getTag()).remove(value);
-        }
+        final TagSlot<T> slot = this.slots.get(value.getTag());
+        return slot != null && slot.queue.remove(value);
     }
 
     public boolean hasNext(final int tag) {
-        synchronized (this) {
-            return !this.queue.get(tag).isEmpty();
-        }
+        final TagSlot<T> slot = this.slots.get(tag);
+        return slot != null && !slot.queue.isEmpty();
+    }
+
+    /**
+     * Change the delivery mode of tags without their own mode.
+     *
+     * @param deliveryMode the new mode.
+     */
+    public void setDeliveryMode(final DeliveryMode deliveryMode) {
+        this.deliveryMode = deliveryMode;
+    }
+
+    /**
+     * Change the delivery mode of a tag.
+     *
+     * @param tag          the tag.
+     * @param deliveryMode the new mode, null to use the mode of the stream.
+     */
+    public void setDeliveryMode(final int tag, final DeliveryMode deliveryMode) {
+        final TagSlot<T> slot = usedSlot(tag);
+        slot.deliveryMode = deliveryMode;
+        slot.unuse();
+    }
+
+    /**
+     * Change the dispatch mode of tags without their own mode.
+     *
+     * @param dispatchMode the new mode.
+     */
+    public void setDispatchMode(final DispatchMode dispatchMode) {
+        this.dispatchMode = dispatchMode;
+    }
+
+    /**
+     * Change the dispatch mode of a tag.
+     *
+     * @param tag          the tag.
+     * @param dispatchMode the new mode, null to use the mode of the stream.
+     */
+    public void setDispatchMode(final int tag, final DispatchMode dispatchMode) {
+        final TagSlot<T> slot = usedSlot(tag);
+        slot.dispatchMode = dispatchMode;
+        slot.unuse();
+    }
+
+    /**
+     * @param queueCapacity capacity of the queue of each tag, applied to tags created after this call.
+     */
+    public void setQueueCapacity(final int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void setOverflowPolicy(final QueueOverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @param maxTags number of tags above which emitted values of a new tag, without receiver nor reader, are dropped.
+     */
+    public void setMaxTags(final int maxTags) {
+        this.maxTags = maxTags;
+    }
+
+    /**
+     * @return the number of tags with a queue.
+     */
+    public int getTagCount() {
+        return this.slots.size();
+    }
+
+    /**
+     * @return the number of values dropped because of full queues.
+     */
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    /**
+     * @param tag the tag.
+     * @return the number of values of the tag waiting in its queue.
+     */
+    public int getQueueSize(final int tag) {
+        final TagSlot<T> slot = this.slots.get(tag);
+        return slot != null ? slot.queue.size() : 0;
+    }
+
+    /**
+     * @return the number of values waiting in the queues of all tags.
+     */
+    public int getQueueSize() {
+        final int[] size = {0};
+        this.slots.forEach(slot -> size[0] += slot.queue.size());
+        return size[0];
     }
 
     public void close(final T terminal) {
         this.closed = true;
-        this.queue.forEach((integer, ts) -> {
-            try {
-                ts.put(terminal);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        });
+        this.slots.forEach(slot -> forceOffer(slot, terminal));
     }
 
     public boolean isClosed() {
         return closed;
     }
+
+    /**
+     * @param tag the tag.
+     * @return the slot of the tag, created if needed.
+     */
+    protected TagSlot<T> slot(final int tag) {
+        final TagSlot<T> slot = this.slots.get(tag);
+        return slot != null ? slot : this.slots.computeIfAbsent(tag, created -> new TagSlot<>(created, this.queueCapacity));
+    }
+
+    /**
+     * @param tag the tag.
+     * @return the slot of the tag, created if needed, to {@link TagSlot#unuse()} once used.
+     */
+    protected TagSlot<T> usedSlot(final int tag) {
+        TagSlot<T> slot = slot(tag);
+        while (!slot.use())
+            slot = slot(tag);
+        return slot;
+    }
+
+    /**
+     * @param tag the tag of an emitted value.
+     * @return the slot of the tag, created if there are less than {@link PacketVirtualStream#maxTags} tags, else null.
+     */
+    protected TagSlot<T> emittedSlot(final int tag) {
+        final TagSlot<T> slot = this.slots.get(tag);
+        if (slot != null || this.slots.size() >= this.maxTags)
+            return slot;
+        return slot(tag);
+    }
+
+    /**
+     * The queue, the receivers and the modes of a tag.
+     */
+    protected static class TagSlot<T> {
+
+        @SuppressWarnings("rawtypes")
+        private static final Subscriber[] NO_SUBSCRIBER = new Subscriber[0];
+
+        protected final int tag;
+        protected final BlockingQueue<T> queue;
+        /**
+         * Copy-on-write array of the receivers, replaced under the slot lock and read without lock.
+         */
+        @SuppressWarnings("unchecked")
+        protected volatile Subscriber<T>[] subscribers = NO_SUBSCRIBER;
+        /**
+         * The delivery mode of this tag, null to use the mode of the stream.
+         */
+        protected volatile DeliveryMode deliveryMode;
+        /**
+         * The dispatch mode of this tag, null to use the mode of the stream.
+         */
+        protected volatile DispatchMode dispatchMode;
+        /**
+         * True once a drop was logged, to log it only once by tag.
+         */
+        protected volatile boolean overflowReported = false;
+        /**
+         * Readers, emitters and mode changes in progress on the slot. Guarded by the slot lock.
+         */
+        protected int users = 0;
+        /**
+         * True once the slot is removed from the stream, it can't be used anymore. Guarded by the slot lock.
+         */
+        protected boolean retired = false;
+
+        protected TagSlot(final int tag, final int capacity) {
+            this.tag = tag;
+            this.queue = new LinkedBlockingQueue<>(capacity);
+        }
+
+        /**
+         * @return false if the slot is retired, the current slot of the tag must be used.
+         */
+        protected synchronized boolean add(final Receiver<T> receiver) {
+            if (this.retired)
+                return false;
+            final Subscriber<T>[] next = Arrays.copyOf(this.subscribers, this.subscribers.length + 1);
+            next[next.length - 1] = new Subscriber<>(receiver);
+            this.subscribers = next;
+            return true;
+        }
+
+        /**
+         * Prevent the slot from being retired until {@link TagSlot#unuse()}. The lock is never held while waiting on the queue.
+         *
+         * @return false if the slot is retired, the current slot of the tag must be used.
+         */
+        protected synchronized boolean use() {
+            if (this.retired)
+                return false;
+            this.users++;
+            return true;
+        }
+
+        protected synchronized void unuse() {
+            this.users--;
+        }
+
+        /**
+         * @return true if nothing needs the slot, checked without lock.
+         */
+        protected boolean isUnused() {
+            return this.subscribers.length == 0 && this.queue.isEmpty() && this.deliveryMode == null && this.dispatchMode == null;
+        }
+
+        /**
+         * @return true if the slot was retired by this call, it must be removed from the stream.
+         */
+        protected synchronized boolean retire() {
+            if (this.retired || this.users > 0 || !isUnused())
+                return false;
+            this.retired = true;
+            return true;
+        }
+
+        protected synchronized void remove(final Receiver<T> receiver) {
+            final Subscriber<T>[] current = this.subscribers;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].receiver.equals(receiver)) {
+                    final Subscriber<T>[] next = Arrays.copyOf(current, current.length - 1);
+                    System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                    this.subscribers = next;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A receiver of a tag and its mailbox, used in {@link DispatchMode#SERIAL}.
+     * <p>
+     * Only one task drains the mailbox at a time : the first value posted in an empty mailbox schedules the task,
+     * the task runs until it took as many values as were posted.
+     */
+    protected static class Subscriber<T> implements Runnable {
+
+        /**
+         * Values handled by a task before giving its Slave back to other mailboxes.
+         */
+        protected static final int DRAIN_BATCH = 64;
+
+        protected final Receiver<T> receiver;
+        protected final ConcurrentLinkedQueue<T> mailbox = new ConcurrentLinkedQueue<>();
+        /**
+         * Number of values posted and not yet handled.
+         */
+        protected final AtomicInteger pending = new AtomicInteger();
+        protected volatile ThreadPool executor;
+
+        protected Subscriber(final Receiver<T> receiver) {
+            this.receiver = receiver;
+        }
+
+        protected void post(final T value, final ThreadPool executor) {
+            this.mailbox.offer(value);
+            if (this.pending.getAndIncrement() == 0) {
+                this.executor = executor;
+                executor.exe(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < DRAIN_BATCH; i++) {
+                deliver(this.receiver, this.mailbox.poll());
+                if (this.pending.decrementAndGet() == 0)
+                    return;
+            }
+            this.executor.exe(this);
+        }
+    }
 }
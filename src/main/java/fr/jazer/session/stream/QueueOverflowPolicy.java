@@ -0,0 +1,20 @@
+package fr.jazer.session.stream;
+
+/**
+ * What a stream does with a value when its queue is full.
+ */
+public enum QueueOverflowPolicy {
+    /**
+     * The oldest queued value is dropped to make room.
+     */
+    DROP_OLDEST,
+    /**
+     * The new value is dropped.
+     */
+    DROP_NEWEST,
+    /**
+     * The emitter waits until a value is read. For a blocking Session, its reader Thread waits and stops reading the socket.
+     * Never used by a {@link fr.jazer.session.transport.NioSession} : it would stall all the Sessions of its EventLoop.
+     */
+    BLOCK
+}
@@ -0,0 +1,134 @@
+package fr.jazer.session.stream;
+
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * A map keyed by primitive int tags, optimised for reads.
+ * <p>
+ * Entries live in an open-addressing table replaced at each insertion or removal (copy-on-write). {@link TagMap#get(int)} never
+ * takes a lock nor boxes the tag, insertions and removals are serialized and copy the whole table : the owner bounds the number of tags.
+ *
+ * @param <V> the type of the values.
+ */
+public class TagMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * The current table, replaced as a whole by each insertion or removal.
+     */
+    private volatile Table table = new Table(MIN_CAPACITY);
+
+    /**
+     * @param tag the tag.
+     * @return the value of the tag, null if the tag has no value.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final int tag) {
+        final Table table = this.table;
+        int index = mix(tag) & table.mask;
+        Object value;
+        while ((value = table.values[index]) != null) {
+            if (table.keys[index] == tag)
+                return (V) value;
+            index = (index + 1) & table.mask;
+        }
+        return null;
+    }
+
+    /**
+     * @param tag     the tag.
+     * @param factory create the value of the tag if it has none.
+     * @return the value of the tag, created if needed.
+     */
+    public V computeIfAbsent(final int tag, final IntFunction<V> factory) {
+        final V value = get(tag);
+        if (value != null)
+            return value;
+        synchronized (this) {
+            final V existing = get(tag);
+            if (existing != null)
+                return existing;
+            final V created = factory.apply(tag);
+            final Table current = this.table;
+            final Table next = new Table((current.size + 1) * 2 > current.keys.length ? current.keys.length * 2 : current.keys.length);
+            for (int i = 0; i < current.keys.length; i++)
+                if (current.values[i] != null)
+                    next.insert(current.keys[i], current.values[i]);
+            next.insert(tag, created);
+            this.table = next;
+            return created;
+        }
+    }
+
+    /**
+     * @param tag the tag.
+     * @return the removed value of the tag, null if the tag had no value.
+     */
+    public synchronized V remove(final int tag) {
+        final V removed = get(tag);
+        if (removed == null)
+            return null;
+        final Table current = this.table;
+        int capacity = MIN_CAPACITY;
+        while ((current.size - 1) * 2 > capacity)
+            capacity *= 2;
+        final Table next = new Table(capacity);
+        for (int i = 0; i < current.keys.length; i++)
+            if (current.values[i] != null && current.keys[i] != tag)
+                next.insert(current.keys[i], current.values[i]);
+        this.table = next;
+        return removed;
+    }
+
+    /**
+     * Iterate on a snapshot of the values.
+     *
+     * @param action the action applied to each value.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(final Consumer<V> action) {
+        final Table table = this.table;
+        for (final Object value : table.values)
+            if (value != null)
+                action.accept((V) value);
+    }
+
+    /**
+     * @return the number of tags.
+     */
+    public int size() {
+        return this.table.size;
+    }
+
+    private static int mix(final int tag) {
+        final int h = tag * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * An immutable once published table.
+     */
+    private static final class Table {
+        final int[] keys;
+        final Object[] values;
+        final int mask;
+        int size;
+
+        Table(final int capacity) {
+            this.keys = new int[capacity];
+            this.values = new Object[capacity];
+            this.mask = capacity - 1;
+        }
+
+        void insert(final int tag, final Object value) {
+            int index = mix(tag) & this.mask;
+            while (this.values[index] != null)
+                index = (index + 1) & this.mask;
+            this.keys[index] = tag;
+            this.values[index] = value;
+            this.size++;
+        }
+    }
+}
@@ -1,30 +1,74 @@
 package fr.jazer.session.stream;
 
+import fr.jazer.buffer_manager.ReferenceCounted;
+import fr.jazer.logger.Logger;
+import fr.jazer.metrics.MetricsRegistry;
 import fr.jazer.thread_manager.ThreadPool;
 
 import java.util.ArrayList;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * A stream of values, each value is queued and/or given to the receivers depending on the {@link DeliveryMode}.
+ * <p>
+ * The queue is bounded, the {@link QueueOverflowPolicy} is applied when it is full.
+ */
 public class VirtualStream<T> {
 
-    protected boolean closed = false;
+    /**
+     * Default capacity of the queue.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final Logger logger = Logger.loggerOfStatic(VirtualStream.class);
+    /**
+     * Values dropped by all streams, in {@link MetricsRegistry#getDefault()}.
+     */
+    private static final LongAdder TOTAL_DROPPED = MetricsRegistry.getDefault().counter("stream.dropped");
+
+    protected volatile boolean closed = false;
     protected final BlockingQueue<T> queue;
     protected final ArrayList<Receiver<T>> receivers;
     protected final ThreadPool executor = new ThreadPool(2000);
 
-    public VirtualStream() {
-        this.queue = new LinkedBlockingQueue<>();
+    protected volatile DeliveryMode deliveryMode;
+    protected volatile QueueOverflowPolicy overflowPolicy;
+    /**
+     * Number of values dropped because of a full queue.
+     */
+    protected final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param deliveryMode   where values are delivered.
+     * @param queueCapacity  capacity of the queue.
+     * @param overflowPolicy applied when the queue is full.
+     */
+    public VirtualStream(final DeliveryMode deliveryMode, final int queueCapacity, final QueueOverflowPolicy overflowPolicy) {
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
         this.receivers = new ArrayList<>();
+        this.deliveryMode = deliveryMode;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Default constructor, values are queued and given to receivers ({@link DeliveryMode#BOTH}).
+     */
+    public VirtualStream() {
+        this(DeliveryMode.BOTH, DEFAULT_QUEUE_CAPACITY, QueueOverflowPolicy.DROP_OLDEST);
     }
 
     public synchronized void emitValue(final T value) {
-        try {
-            this.queue.put(value);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+        final int receiversCount;
+        synchronized (receivers) {
+            receiversCount = this.receivers.size();
         }
-        this.sendToReceivers(value);
+        if (this.deliveryMode.toQueue(receiversCount))
+            enqueue(value);
+        if (this.deliveryMode.toReceivers(receiversCount))
+            this.sendToReceivers(value);
     }
 
     protected void sendToReceivers(final T value) {
@@ -33,6 +77,53 @@ public class VirtualStream<T> {
         }
     }
 
+    /**
+     * Queue a value applying the {@link VirtualStream#overflowPolicy}.
+     */
+    protected void enqueue(final T value) {
+        switch (this.overflowPolicy) {
+            case BLOCK:
+                try {
+                    this.queue.put(value);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                break;
+            case DROP_NEWEST:
+                if (!this.queue.offer(value))
+                    drop(value);
+                break;
+            case DROP_OLDEST:
+                forceOffer(value);
+                break;
+        }
+    }
+
+    private void forceOffer(final T value) {
+        while (!this.queue.offer(value)) {
+            final T oldest = this.queue.poll();
+            if (oldest != null)
+                drop(oldest);
+        }
+    }
+
+    private void drop(final T value) {
+        onDrop(value);
+        TOTAL_DROPPED.increment();
+        if (this.dropped.getAndIncrement() == 0)
+            logger.err("Queue is full ({} values), values are dropped.", this.queue.size());
+    }
+
+    /**
+     * Called for each value dropped because of a full queue, {@link ReferenceCounted} values are released.
+     *
+     * @param value the dropped value.
+     */
+    protected void onDrop(final T value) {
+        if (value instanceof ReferenceCounted)
+            ((ReferenceCounted) value).release();
+    }
+
     public T readASlash() {
         if (this.closed)
             return null;
@@ -67,8 +158,33 @@ public class VirtualStream<T> {
         }
     }
 
+    public void setDeliveryMode(final DeliveryMode deliveryMode) {
+        this.deliveryMode = deliveryMode;
+    }
+
+    public void setOverflowPolicy(final QueueOverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return the number of values dropped because of a full queue.
+     */
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    /**
+     * @return the number of values waiting in the queue.
+     */
+    public int getQueueSize() {
+        return this.queue.size();
+    }
+
     public void close(final T value) {
-        this.emitValue(value);
+        synchronized (this) {
+            forceOffer(value);
+            this.sendToReceivers(value);
+        }
         this.closed = true;
     }
 
@@ -76,4 +192,4 @@ public class VirtualStream<T> {
         return this.closed;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,184 @@
+package fr.jazer.session.transport;
+
+import fr.jazer.logger.Logger;
+import fr.jazer.thread_manager.ThreadPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * An EventLoop own a Thread and a {@link Selector}. All {@link NioSession} registered on it are read and written by this only Thread.
+ */
+public class EventLoop {
+
+    /**
+     * The size of the buffer shared by all Sessions of the loop to read on their channels.
+     */
+    protected static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final Logger logger = Logger.loggerOfStatic(EventLoop.class);
+
+    /**
+     * The Thread running {@link EventLoop#internalLoop()}.
+     */
+    protected final Thread worker;
+    /**
+     * The Selector watching channels of all registered Sessions.
+     */
+    protected final Selector selector;
+    /**
+     * Tasks submitted by other Threads, executed by the loop between two selections.
+     */
+    protected final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    /**
+     * The read buffer, only used by the loop Thread. Partial frames are kept by the {@link FrameDecoder} of each Session.
+     */
+    protected final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    /**
+     * Run the delegated tasks of the TLS handshakes, so they never stall the loop. See {@link TlsCodec}.
+     */
+    protected final ThreadPool delegatedTasks;
+
+    protected volatile boolean running = true;
+
+    public EventLoop(final String name) throws IOException {
+        this(name, new ThreadPool());
+    }
+
+    /**
+     * @param name           the name of the loop Thread.
+     * @param delegatedTasks the pool running the delegated tasks of the TLS handshakes, can be shared by many loops.
+     * @throws IOException if the Selector couldn't be opened.
+     */
+    public EventLoop(final String name, final ThreadPool delegatedTasks) throws IOException {
+        this.delegatedTasks = delegatedTasks;
+        this.selector = Selector.open();
+        this.worker = new Thread(this::internalLoop);
+        this.worker.setName(name);
+        this.worker.start();
+    }
+
+    /**
+     * Execute a task on the loop Thread.
+     *
+     * @param task the task to execute.
+     */
+    public void execute(final Runnable task) {
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+
+    /**
+     * @return true if the current Thread is the loop Thread.
+     */
+    public boolean inLoop() {
+        return Thread.currentThread() == this.worker;
+    }
+
+    /**
+     * @return the pool running the delegated tasks of the TLS handshakes.
+     */
+    public ThreadPool getDelegatedTasks() {
+        return this.delegatedTasks;
+    }
+
+    /**
+     * Wake up the selector, used after changing interest ops from another Thread.
+     */
+    public void wakeup() {
+        this.selector.wakeup();
+    }
+
+    /**
+     * Register a Session on this loop. The Session start receiving packets as soon as the loop processed the registration.
+     *
+     * @param session the session to register.
+     */
+    protected void register(final NioSession session) {
+        execute(() -> {
+            try {
+                session.key = session.channel.register(this.selector, SelectionKey.OP_READ, session);
+                session.enableWriteInterest();
+                logger.log("Session registered on {}.", this.worker.getName());
+            } catch (IOException e) {
+                session.handleFailure(e);
+            }
+        });
+    }
+
+    /**
+     * Stop the loop, all Sessions still registered are disconnected.
+     */
+    public void shutdown() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    private void internalLoop() {
+        logger.log("EVENT-LOOP STARTED !");
+        try {
+            while (this.running) {
+                this.selector.select();
+                runTasks();
+
+                final Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    final SelectionKey key = iterator.next();
+                    iterator.remove();
+                    final NioSession session = (NioSession) key.attachment();
+                    // The Session resumed on another channel, the old one is closed by its close task.
+                    if (key.channel() != session.channel) {
+                        key.cancel();
+                        continue;
+                    }
+                    try {
+                        if (key.isReadable())
+                            session.handleRead(this.readBuffer);
+                        if (key.isValid() && key.isWritable())
+                            session.handleWrite();
+                    } catch (CancelledKeyException ignored) {
+                    } catch (IOException e) {
+                        session.handleFailure(e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.err("Event loop stopped on error : {}", e.getMessage());
+        } finally {
+            runTasks();
+            for (final SelectionKey key : this.selector.keys())
+                ((NioSession) key.attachment()).handleFailure(new IOException("Event loop closed."));
+            try {
+                this.selector.close();
+            } catch (IOException ignored) {
+            }
+            logger.log("Event loop closed.");
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = this.tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EventLoop{" +
+                "worker=" + worker.getName() +
+                ", registered=" + selector.keys().size() +
+                ", running=" + running +
+                '}';
+    }
+}
@@ -0,0 +1,74 @@
+package fr.jazer.session.transport;
+
+import fr.jazer.thread_manager.RejectionPolicy;
+import fr.jazer.thread_manager.ThreadPool;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of {@link EventLoop} sharing the {@link NioSession} of a server. Sessions are spread in round-robin.
+ */
+public class EventLoopGroup {
+
+    /**
+     * {@link EventLoopGroup} get a number at it creation used to name its loops.
+     */
+    private static final AtomicInteger currentGroup = new AtomicInteger();
+
+    /**
+     * The live time of the Threads running the delegated tasks of TLS handshakes.
+     */
+    protected static final long DELEGATED_TASKS_LIVE_TIME = 20000;
+
+    protected final EventLoop[] loops;
+    protected final AtomicInteger nextLoop = new AtomicInteger();
+    /**
+     * Delegated tasks of the TLS handshakes of all loops, at most one Thread by loop.
+     */
+    protected final ThreadPool delegatedTasks;
+
+    /**
+     * @param threads the number of loops, and so of Threads, serving all Sessions.
+     * @throws IOException if a Selector couldn't be opened.
+     */
+    public EventLoopGroup(final int threads) throws IOException {
+        if (threads <= 0)
+            throw new IllegalArgumentException("An EventLoopGroup need at least one thread, got " + threads + ".");
+        final int groupNb = currentGroup.getAndIncrement();
+        this.delegatedTasks = new ThreadPool(0, threads, DELEGATED_TASKS_LIVE_TIME, Integer.MAX_VALUE, RejectionPolicy.CALLER_RUNS);
+        this.loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++)
+            this.loops[i] = new EventLoop("EventLoop " + groupNb + "-" + i, this.delegatedTasks);
+    }
+
+    /**
+     * Default constructor using one loop by available processor.
+     */
+    public EventLoopGroup() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return the loop who will serve the next Session.
+     */
+    public EventLoop next() {
+        return this.loops[Math.floorMod(this.nextLoop.getAndIncrement(), this.loops.length)];
+    }
+
+    /**
+     * @return the number of loops.
+     */
+    public int size() {
+        return this.loops.length;
+    }
+
+    /**
+     * Stop all loops.
+     */
+    public void shutdown() {
+        for (final EventLoop loop : this.loops)
+            loop.shutdown();
+        this.delegatedTasks.destroy();
+    }
+}
@@ -0,0 +1,147 @@
+package fr.jazer.session.transport;
+
+import fr.jazer.buffer_manager.BufferPool;
+import fr.jazer.buffer_manager.PooledBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental decoder of the Session framing : [flags|length][packetNumber][data].
+ * <p>
+ * Bytes can be given in any chunking, the decoder keep the partial frame between two calls of {@link FrameDecoder#decode(ByteBuffer, FrameHandler)}.
+ */
+public class FrameDecoder {
+
+    /**
+     * Size of the frame header, length and packetNumber.
+     */
+    public static final int HEADER_SIZE = 8;
+    /**
+     * Flag of the length field : the data are compressed, prefixed by their original length.
+     */
+    public static final int COMPRESSED = 0x80000000;
+    /**
+     * Bits of the length field holding the length, the others are flags.
+     */
+    public static final int LENGTH_MASK = 0x7FFFFFFF;
+
+    /**
+     * Frames with more data are refused before allocating their buffer.
+     */
+    protected int maxFrameSize;
+
+    /**
+     * The header currently read.
+     */
+    protected final byte[] header = new byte[HEADER_SIZE];
+    /**
+     * Number of bytes of {@link FrameDecoder#header} already read.
+     */
+    protected int headerRead = 0;
+
+    /**
+     * The packetNumber of the frame currently read.
+     */
+    protected int packetNumber;
+    /**
+     * The flags of the frame currently read.
+     */
+    protected int flags;
+    /**
+     * The buffer receiving the data of the frame currently read, null while reading the header.
+     */
+    protected PooledBuffer payload;
+    /**
+     * The length of the frame currently read.
+     */
+    protected int payloadLength;
+    /**
+     * Number of bytes of {@link FrameDecoder#payload} already read.
+     */
+    protected int payloadRead;
+
+    /**
+     * @param maxFrameSize frames with more data are refused before allocating their buffer.
+     */
+    public FrameDecoder(final int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    public void setMaxFrameSize(final int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Consume all bytes available in the buffer and give every complete frame to the handler.
+     *
+     * @param in  the buffer in read mode.
+     * @param out the handler of the decoded frames.
+     * @throws IOException if the peer sent a malformed frame or a frame bigger than {@link FrameDecoder#maxFrameSize}.
+     */
+    public void decode(final ByteBuffer in, final FrameHandler out) throws IOException {
+        while (in.hasRemaining()) {
+            if (this.payload == null) {
+                final int count = Math.min(HEADER_SIZE - this.headerRead, in.remaining());
+                in.get(this.header, this.headerRead, count);
+                this.headerRead += count;
+                if (this.headerRead < HEADER_SIZE)
+                    return;
+
+                final int rawLength = readInt(this.header, 0);
+                final int packetSize = rawLength & LENGTH_MASK;
+                if (packetSize > this.maxFrameSize)
+                    throw new IOException("Frame of " + packetSize + " bytes exceeds the maximum of " + this.maxFrameSize + " bytes.");
+                this.flags = rawLength & ~LENGTH_MASK;
+                this.packetNumber = readInt(this.header, 4);
+                this.payload = BufferPool.getDefault().acquire(packetSize);
+                this.payloadLength = packetSize;
+                this.payloadRead = 0;
+                this.headerRead = 0;
+            }
+
+            final int count = Math.min(this.payloadLength - this.payloadRead, in.remaining());
+            in.get(this.payload.array(), this.payloadRead, count);
+            this.payloadRead += count;
+
+            if (this.payloadRead == this.payloadLength) {
+                final PooledBuffer frame = this.payload;
+                this.payload = null;
+                out.onFrame(this.packetNumber, frame, this.payloadLength, this.flags);
+            }
+        }
+    }
+
+    /**
+     * Release the partial frame, used when the channel is closed.
+     */
+    public void release() {
+        if (this.payload != null) {
+            this.payload.release();
+            this.payload = null;
+        }
+    }
+
+    /**
+     * Receive the frames decoded by a {@link FrameDecoder}.
+     */
+    @FunctionalInterface
+    public interface FrameHandler {
+
+        /**
+         * @param packetNumber the packetNumber of the frame.
+         * @param payload      the data of the frame, the handler takes its reference.
+         * @param length       the number of bytes of data.
+         * @param flags        the flags of the length field.
+         * @throws IOException if the frame is malformed.
+         */
+        void onFrame(final int packetNumber, final PooledBuffer payload, final int length, final int flags) throws IOException;
+    }
+
+    /**
+     * Read a big-endian int.
+     */
+    protected static int readInt(final byte[] b, final int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,643 @@
+package fr.jazer.session.transport;
+
+import fr.jazer.buffer_manager.BufferPool;
+import fr.jazer.buffer_manager.PooledBuffer;
+import fr.jazer.session.SPacket;
+import fr.jazer.session.Session;
+import fr.jazer.session.SessionServer;
+import fr.jazer.session.stream.QueueOverflowPolicy;
+import fr.jazer.session.utils.ConnectionStatus;
+import fr.jazer.session.utils.ReservedTags;
+import fr.jazer.session.utils.SessionType;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * A {@link SessionType#SERVER_SIDE} Session using a non-blocking {@link SocketChannel}.
+ * <p>
+ * The Session doesn't own any reader Thread, reads and pending writes are handled by the {@link EventLoop} it is registered on.
+ * The public API and the status semantics are the same as {@link Session}.
+ * <p>
+ * A secured Session encrypts its channel with a {@link TlsCodec}, the handshake is driven by the loop and the delegated tasks
+ * of the engine run on {@link EventLoop#getDelegatedTasks()}. Clients connect with {@link fr.jazer.session.utils.crypted.ClientCertConfig} as to a blocking server.
+ */
+public class NioSession extends Session {
+
+    /**
+     * The non-blocking channel embedded by the Session. {@link Session#socket} is its socket adaptor.
+     * Replaced when the Session resumes, null once given to a resumed Session.
+     */
+    protected volatile SocketChannel channel;
+    /**
+     * The loop serving this Session.
+     */
+    protected final EventLoop loop;
+    /**
+     * The key of {@link NioSession#channel} in the selector of {@link NioSession#loop}. Only set by the loop Thread.
+     */
+    protected volatile SelectionKey key;
+
+    /**
+     * Decode frames from the bytes read by the loop. Only used by the loop Thread, a new one is used by each channel.
+     */
+    protected FrameDecoder decoder = new FrameDecoder(DEFAULT_MAX_FRAME_SIZE);
+
+    /**
+     * Frames the channel couldn't write yet. Guarded by {@link Session#lockerSend}.
+     */
+    protected final ArrayDeque<PendingBytes> pendingWrites = new ArrayDeque<>();
+    /**
+     * Number of bytes in {@link NioSession#pendingWrites}, written with {@link Session#lockerSend}.
+     * {@link Session#send(SPacket)} waits while it is above the write high water mark.
+     */
+    protected volatile long pendingBytes;
+    /**
+     * View on {@link Session#sendBuffer}, created at the first send. Guarded by {@link Session#lockerSend}.
+     */
+    protected ByteBuffer sendView;
+    /**
+     * Buffers of a frame bigger than the send buffer, written by a gathering write. Guarded by {@link Session#lockerSend}.
+     */
+    protected final ByteBuffer[] frame = new ByteBuffer[2];
+    /**
+     * The TLS of the channel, null if the Session isn't secured. Moved with the channel when the Session resumes.
+     */
+    protected TlsCodec tls;
+
+    /**
+     * @param channel the connected channel to embed, it is switched to non-blocking mode.
+     * @param loop    the loop who will serve this Session.
+     * @throws IOException if the channel couldn't be configured.
+     */
+    public NioSession(final SocketChannel channel, final EventLoop loop) throws IOException {
+        this(channel, loop, null);
+    }
+
+    /**
+     * @param channel the connected channel to embed, it is switched to non-blocking mode.
+     * @param loop    the loop who will serve this Session.
+     * @param engine  the server engine securing the channel, null for a plain Session.
+     * @throws IOException if the channel couldn't be configured or the handshake couldn't begin.
+     */
+    public NioSession(final SocketChannel channel, final EventLoop loop, @Nullable final SSLEngine engine) throws IOException {
+        this(channel, loop, engine, null);
+    }
+
+    /**
+     * @param channel the connected channel to embed, it is switched to non-blocking mode.
+     * @param loop    the loop who will serve this Session.
+     * @param engine  the server engine securing the channel, null for a plain Session.
+     * @param server  the server accepting the channel, it configures the Session before its first frame is read. May be null.
+     * @throws IOException if the channel couldn't be configured or the handshake couldn't begin.
+     */
+    public NioSession(final SocketChannel channel, final EventLoop loop, @Nullable final SSLEngine engine, @Nullable final SessionServer server) throws IOException {
+        super(SessionType.SERVER_SIDE);
+        this.channel = channel;
+        this.loop = loop;
+        if (engine != null)
+            this.tls = new TlsCodec(engine);
+        this.channel.configureBlocking(false);
+        this.socket = channel.socket();
+        if (server != null)
+            server.configure(this);
+        if (this.channel.isConnected())
+            setStatus(ConnectionStatus.CONNECTED);
+    }
+
+    /**
+     * @return the embedded channel.
+     */
+    public SocketChannel getChannel() {
+        return this.channel;
+    }
+
+    @Override
+    protected void startReader() {
+        this.loop.register(this);
+    }
+
+    @Override
+    public void setMaxFrameSize(final int maxFrameSize) {
+        super.setMaxFrameSize(maxFrameSize);
+        this.decoder.setMaxFrameSize(maxFrameSize);
+    }
+
+    /**
+     * {@link QueueOverflowPolicy#BLOCK} would stall the loop and all its Sessions, {@link QueueOverflowPolicy#DROP_NEWEST} is used instead.
+     */
+    @Override
+    public void setPacketQueue(final int capacity, final QueueOverflowPolicy overflowPolicy) {
+        if (overflowPolicy == QueueOverflowPolicy.BLOCK) {
+            logger.warn("BLOCK would stall the EventLoop of the Session, DROP_NEWEST is used.");
+            super.setPacketQueue(capacity, QueueOverflowPolicy.DROP_NEWEST);
+            return;
+        }
+        super.setPacketQueue(capacity, overflowPolicy);
+    }
+
+    /**
+     * The channel at close is captured : the Session can already use another one when the loop runs the task.
+     */
+    @Override
+    protected void stopReader() {
+        final SocketChannel channel = this.channel;
+        final SelectionKey key = this.key;
+        final FrameDecoder decoder = this.decoder;
+        final TlsCodec tls = this.tls;
+        this.loop.execute(() -> closeChannel(channel, key, decoder, tls));
+    }
+
+    /**
+     * The channel is registered on the loop of this Session when it is connected again, the other Session stops reading it.
+     */
+    @Override
+    protected void takeTransport(final Session from) {
+        final NioSession session = (NioSession) from;
+        if (session.key != null)
+            session.key.cancel();
+        clearPendingWrites();
+        this.channel = session.channel;
+        this.socket = session.channel.socket();
+        this.decoder = new FrameDecoder(this.maxFrameSize);
+        this.tls = session.tls;
+        session.channel = null;
+        session.tls = null;
+        session.key = null;
+        session.socket = null;
+    }
+
+    @Override
+    protected void writePacket(final SPacket packet) throws IOException {
+        if (this.channel == null || !this.channel.isOpen())
+            throw new SocketException("Channel closed.");
+
+        final int length = packet.getLength();
+        final int inBuffer = fillSendBuffer(packet, 0);
+        if (this.sendView == null)
+            this.sendView = ByteBuffer.wrap(this.sendBuffer);
+        this.sendView.clear().limit(FrameDecoder.HEADER_SIZE + inBuffer);
+        final ByteBuffer rest = inBuffer < length ? ByteBuffer.wrap(packet.getArray(), inBuffer, length - inBuffer) : null;
+
+        if (this.tls != null) {
+            this.frame[0] = this.sendView;
+            this.frame[1] = rest != null ? rest : TlsCodec.EMPTY[0];
+            try {
+                encrypt(this.frame);
+            } finally {
+                this.frame[1] = null;
+            }
+            return;
+        }
+
+        try {
+            if (this.pendingWrites.isEmpty()) {
+                if (rest == null) {
+                    this.channel.write(this.sendView);
+                } else {
+                    this.frame[0] = this.sendView;
+                    this.frame[1] = rest;
+                    this.channel.write(this.frame);
+                    this.frame[1] = null;
+                }
+            }
+        } catch (IOException e) {
+            throw new SocketException(e.getMessage());
+        }
+
+        final int remaining = this.sendView.remaining() + (rest == null ? 0 : rest.remaining());
+        if (remaining > 0) {
+            final ByteBuffer pending = addPendingWrite(remaining).put(this.sendView);
+            if (rest != null)
+                pending.put(rest);
+            pending.flip();
+        }
+    }
+
+    /**
+     * Without compression, the region is given to {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * when no write is pending. Bytes the socket didn't accept are read in a pending buffer.
+     */
+    @Override
+    public boolean sendFileRegion(final int tag, final byte[] head, final FileChannel file, final long position, final int count) throws IOException {
+        synchronized (this.lockerSend) {
+            try {
+                awaitTransport();
+            } catch (IOException e) {
+                logger.err("COULD'T SEND FILE REGION : {}", e.getMessage());
+                return false;
+            }
+            if (this.sendBuffer == null)
+                this.sendBuffer = new byte[SEND_BUFFER_SIZE];
+            // Numbered packets are kept in the retransmit buffer, they need to be read.
+            if (this.codec != null || this.tls != null || !this.pendingWrites.isEmpty() || FrameDecoder.HEADER_SIZE + head.length > this.sendBuffer.length
+                    || this.sequenced && !ReservedTags.isReserved(tag))
+                return super.sendFileRegion(tag, head, file, position, count);
+            if (this.channel == null || !this.channel.isOpen())
+                return false;
+
+            putInt(this.sendBuffer, 0, head.length + count);
+            putInt(this.sendBuffer, 4, tag);
+            System.arraycopy(head, 0, this.sendBuffer, FrameDecoder.HEADER_SIZE, head.length);
+            if (this.sendView == null)
+                this.sendView = ByteBuffer.wrap(this.sendBuffer);
+            this.sendView.clear().limit(FrameDecoder.HEADER_SIZE + head.length);
+
+            long sent = 0;
+            try {
+                this.channel.write(this.sendView);
+                if (!this.sendView.hasRemaining()) {
+                    long transferred;
+                    while (sent < count && (transferred = file.transferTo(position + sent, count - sent, this.channel)) > 0)
+                        sent += transferred;
+                }
+            } catch (IOException e) {
+                logger.err("COULD'T SEND FILE REGION : {}", e.getMessage());
+                return false;
+            }
+
+            if (!this.sendView.hasRemaining() && sent == count)
+                this.lastWriteTime = System.nanoTime();
+            if (this.sendView.hasRemaining() || sent < count) {
+                final ByteBuffer pending = addPendingWrite(this.sendView.remaining() + (int) (count - sent)).put(this.sendView);
+                readFully(file, pending, position + sent);
+                pending.flip();
+            }
+            return true;
+        }
+    }
+
+    @Override
+    protected void writeBytes(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (this.channel == null || !this.channel.isOpen())
+            throw new SocketException("Channel closed.");
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        if (this.tls != null) {
+            this.frame[0] = buffer;
+            this.frame[1] = TlsCodec.EMPTY[0];
+            try {
+                encrypt(this.frame);
+            } finally {
+                this.frame[0] = null;
+                this.frame[1] = null;
+            }
+            return;
+        }
+        writeNet(buffer);
+    }
+
+    /**
+     * Write bytes ready for the channel, the bytes it didn't accept are kept in {@link NioSession#pendingWrites}. Called with {@link Session#lockerSend}.
+     */
+    private void writeNet(final ByteBuffer buffer) throws IOException {
+        try {
+            if (this.pendingWrites.isEmpty())
+                this.channel.write(buffer);
+        } catch (IOException e) {
+            throw new SocketException(e.getMessage());
+        }
+
+        if (buffer.hasRemaining())
+            addPendingWrite(buffer.remaining()).put(buffer).flip();
+    }
+
+    /**
+     * Add a pooled buffer to {@link NioSession#pendingWrites} and ask the loop to write it. Called with {@link Session#lockerSend}.
+     *
+     * @param length the number of bytes to keep.
+     * @return the buffer to fill with exactly length bytes, then to flip.
+     */
+    private ByteBuffer addPendingWrite(final int length) {
+        final PendingBytes pending = new PendingBytes(BufferPool.getDefault().acquire(length), length);
+        this.pendingWrites.add(pending);
+        this.pendingBytes += length;
+        this.loop.execute(this::enableWriteInterest);
+        return pending.bytes;
+    }
+
+    /**
+     * Release the buffers of {@link NioSession#pendingWrites} and wake up the senders waiting for them.
+     */
+    private void clearPendingWrites() {
+        synchronized (this.lockerSend) {
+            PendingBytes pending;
+            while ((pending = this.pendingWrites.poll()) != null)
+                pending.buffer.release();
+            this.pendingBytes = 0;
+            this.lockerSend.notifyAll();
+        }
+    }
+
+    /**
+     * Wait while more than the write high water mark is pending, the loop writes them when the peer reads.
+     * The EventLoop can't wait for itself, the write fails instead.
+     */
+    @Override
+    protected void awaitTransport() throws IOException {
+        while (this.pendingBytes > 0 && this.pendingBytes >= getWriteHighWaterMark()) {
+            if (this.channel == null || !this.channel.isOpen())
+                throw new SocketException("Channel closed.");
+            if (this.loop.inLoop())
+                throw new IOException("Too many bytes pending, the loop can't wait for the peer.");
+            try {
+                this.lockerSend.wait(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the peer to read.");
+            }
+        }
+    }
+
+    /**
+     * Encrypt plain bytes and write them. Until the end of the handshake they are kept by the {@link TlsCodec}. Called with {@link Session#lockerSend}.
+     */
+    private void encrypt(final ByteBuffer[] srcs) throws IOException {
+        final TlsCodec tls = this.tls;
+        if (tls.isReleased())
+            throw new SocketException("Channel closed.");
+        if (!tls.handshaking && wrapAll(tls, srcs))
+            return;
+        tls.keepPlain(srcs);
+    }
+
+    /**
+     * @return false if the engine started to handshake again, the remaining bytes aren't wrapped and the loop continues the handshake.
+     */
+    private boolean wrapAll(final TlsCodec tls, final ByteBuffer[] srcs) throws IOException {
+        while (TlsCodec.hasRemaining(srcs)) {
+            final SSLEngineResult result = tls.wrap(srcs);
+            writeNet(tls.netOut);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED)
+                throw new SocketException("TLS closed.");
+            if (result.getStatus() == SSLEngineResult.Status.OK && result.bytesConsumed() == 0) {
+                tls.handshaking = true;
+                this.loop.execute(() -> continueHandshake(tls));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Also true while bytes wait in {@link NioSession#pendingWrites}, the racy read is enough for the idle check.
+     */
+    @Override
+    protected boolean hasPendingWrites() {
+        final TlsCodec tls = this.tls;
+        return super.hasPendingWrites() || !this.pendingWrites.isEmpty() || tls != null && !tls.pendingPlain.isEmpty();
+    }
+
+    /**
+     * The writer stops as soon as the socket buffer is full, it is scheduled again by {@link NioSession#handleWrite()}.
+     */
+    @Override
+    protected boolean canWrite() {
+        return this.pendingWrites.isEmpty();
+    }
+
+    @Override
+    protected long transportPendingBytes() {
+        return this.pendingBytes;
+    }
+
+    /**
+     * Called by the loop when the channel has bytes to read.
+     *
+     * @param buffer the read buffer of the loop.
+     * @throws IOException if the channel couldn't be read or the frame is malformed.
+     */
+    protected void handleRead(final ByteBuffer buffer) throws IOException {
+        final TlsCodec tls = this.tls;
+        if (tls != null) {
+            if (this.channel.read(tls.netIn) < 0)
+                handleClosed();
+            else if (!tls.tasksRunning)
+                unwrap(tls);
+            return;
+        }
+        buffer.clear();
+        final int read = this.channel.read(buffer);
+        if (read < 0) {
+            handleClosed();
+            return;
+        }
+        buffer.flip();
+        this.decoder.decode(buffer, this::receiveFrame);
+    }
+
+    private void handleClosed() {
+        logger.log("Reader closing, other part closed the Session.");
+        closeChannel();
+        setStatus(ConnectionStatus.DISCONNECTED);
+    }
+
+    /**
+     * Decrypt the records read and decode their frames, the handshake continues meanwhile. Only called by the loop Thread.
+     */
+    private void unwrap(final TlsCodec tls) throws IOException {
+        tls.netIn.flip();
+        try {
+            while (!tls.tasksRunning && !tls.isReleased()) {
+                final SSLEngineResult result = tls.unwrap();
+                if (tls.appIn.hasRemaining())
+                    this.decoder.decode(tls.appIn, this::receiveFrame);
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    handleClosed();
+                    return;
+                }
+                handshake(tls, result.getHandshakeStatus());
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW || !tls.netIn.hasRemaining()
+                        || result.bytesConsumed() == 0 && result.bytesProduced() == 0)
+                    break;
+            }
+        } finally {
+            if (!tls.isReleased())
+                tls.netIn.compact();
+        }
+    }
+
+    /**
+     * Wrap the handshake data, offload the delegated tasks and flush the plain bytes kept once the handshake is done.
+     * Only called by the loop Thread.
+     */
+    private void handshake(final TlsCodec tls, SSLEngineResult.HandshakeStatus status) throws IOException {
+        while (!tls.isReleased()) {
+            switch (status) {
+                case NEED_WRAP:
+                    final SSLEngineResult result;
+                    synchronized (this.lockerSend) {
+                        result = tls.wrap(TlsCodec.EMPTY);
+                        writeNet(tls.netOut);
+                    }
+                    if (result.getStatus() == SSLEngineResult.Status.CLOSED)
+                        return;
+                    status = result.getHandshakeStatus();
+                    break;
+                case NEED_TASK:
+                    runDelegatedTasks(tls);
+                    return;
+                case FINISHED:
+                    finishHandshake(tls);
+                    return;
+                case NOT_HANDSHAKING:
+                    if (tls.handshaking)
+                        finishHandshake(tls);
+                    return;
+                default:
+                    return;
+            }
+        }
+    }
+
+    private void continueHandshake(final TlsCodec tls) {
+        if (tls != this.tls || tls.isReleased())
+            return;
+        try {
+            handshake(tls, tls.engine.getHandshakeStatus());
+            if (!tls.tasksRunning && tls.netIn.position() > 0)
+                unwrap(tls);
+        } catch (IOException e) {
+            handleFailure(e);
+        }
+    }
+
+    /**
+     * The loop stops reading while the tasks run, they may take a while (certificates, key exchange).
+     */
+    private void runDelegatedTasks(final TlsCodec tls) {
+        tls.tasksRunning = true;
+        if (this.key != null && this.key.isValid())
+            this.key.interestOpsAnd(~SelectionKey.OP_READ);
+        this.loop.getDelegatedTasks().exe(() -> {
+            Runnable task;
+            while ((task = tls.engine.getDelegatedTask()) != null)
+                task.run();
+            this.loop.execute(() -> {
+                tls.tasksRunning = false;
+                if (this.key != null && this.key.isValid())
+                    this.key.interestOpsOr(SelectionKey.OP_READ);
+                continueHandshake(tls);
+            });
+        });
+    }
+
+    private void finishHandshake(final TlsCodec tls) throws IOException {
+        synchronized (this.lockerSend) {
+            tls.handshaking = false;
+            ByteBuffer plain;
+            while ((plain = tls.pendingPlain.peek()) != null) {
+                this.frame[0] = plain;
+                this.frame[1] = TlsCodec.EMPTY[0];
+                try {
+                    if (!wrapAll(tls, this.frame))
+                        return;
+                } finally {
+                    this.frame[0] = null;
+                    this.frame[1] = null;
+                }
+                tls.pendingPlain.poll();
+            }
+        }
+        if (!this.writeQueue.isEmpty())
+            scheduleWriter();
+    }
+
+    /**
+     * Called by the loop when the channel can accept the pending writes.
+     *
+     * @throws IOException if the channel couldn't be written.
+     */
+    protected void handleWrite() throws IOException {
+        synchronized (this.lockerSend) {
+            PendingBytes pending;
+            while ((pending = this.pendingWrites.peek()) != null) {
+                final int written = this.channel.write(pending.bytes);
+                if (written > 0) {
+                    this.lastWriteTime = System.nanoTime();
+                    this.pendingBytes -= written;
+                    this.lockerSend.notifyAll();
+                }
+                if (pending.bytes.hasRemaining())
+                    return;
+                this.pendingWrites.poll();
+                pending.buffer.release();
+            }
+            this.key.interestOpsAnd(~SelectionKey.OP_WRITE);
+        }
+        if (!this.writeQueue.isEmpty())
+            scheduleWriter();
+    }
+
+    /**
+     * Called when the channel failed, the Session is disconnected.
+     *
+     * @param e the cause.
+     */
+    protected void handleFailure(final IOException e) {
+        if (this.isConnected())
+            logger.log("Reader stopped by closing the socket. {}", e.getMessage());
+        closeChannel();
+        setStatus(ConnectionStatus.DISCONNECTED);
+    }
+
+    void enableWriteInterest() {
+        if (this.key != null && this.key.isValid())
+            this.key.interestOpsOr(SelectionKey.OP_WRITE);
+    }
+
+    private void closeChannel() {
+        closeChannel(this.channel, this.key, this.decoder, this.tls);
+    }
+
+    private void closeChannel(final SocketChannel channel, final SelectionKey key, final FrameDecoder decoder, final TlsCodec tls) {
+        if (key != null)
+            key.cancel();
+        decoder.release();
+        if (tls != null) {
+            synchronized (this.lockerSend) {
+                // Best effort close_notify, unless it would pass before pending bytes.
+                if (channel != null && channel.isOpen() && !tls.isReleased() && (channel != this.channel || this.pendingWrites.isEmpty())) {
+                    tls.closeOutbound();
+                    try {
+                        channel.write(tls.netOut);
+                    } catch (IOException ignored) {
+                    }
+                }
+                tls.release();
+            }
+        }
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        synchronized (this.lockerSend) {
+            if (channel == this.channel)
+                clearPendingWrites();
+        }
+    }
+
+    /**
+     * Bytes the channel didn't accept, kept in a pooled buffer until the loop writes them.
+     */
+    protected static final class PendingBytes {
+        private final PooledBuffer buffer;
+        private final ByteBuffer bytes;
+
+        private PendingBytes(final PooledBuffer buffer, final int length) {
+            this.buffer = buffer;
+            this.bytes = ByteBuffer.wrap(buffer.array(), 0, length);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package fr.jazer.session.transport;
+
+import fr.jazer.buffer_manager.BufferPool;
+import fr.jazer.buffer_manager.PooledBuffer;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * The TLS of a {@link NioSession} : an {@link SSLEngine} and its buffers, borrowed from the {@link BufferPool}.
+ * <p>
+ * {@link TlsCodec#netIn} and {@link TlsCodec#appIn} are only used by the loop Thread. {@link TlsCodec#netOut}, {@link TlsCodec#pendingPlain}
+ * and {@link TlsCodec#handshaking} are guarded by the send locker of the Session, wrap and unwrap can run at the same time.
+ */
+public class TlsCodec {
+
+    /**
+     * Records wrapped into {@link TlsCodec#netOut} before writing it.
+     */
+    protected static final int RECORDS_BY_WRITE = 4;
+
+    protected static final ByteBuffer[] EMPTY = {ByteBuffer.allocate(0)};
+
+    protected final SSLEngine engine;
+
+    /**
+     * Encrypted bytes read on the channel, in write mode between two reads.
+     */
+    protected PooledBuffer netInBuffer;
+    protected ByteBuffer netIn;
+    /**
+     * Decrypted bytes of the last unwrap.
+     */
+    protected PooledBuffer appInBuffer;
+    protected ByteBuffer appIn;
+    /**
+     * Encrypted bytes of the last wrap, in read mode.
+     */
+    protected PooledBuffer netOutBuffer;
+    protected ByteBuffer netOut;
+
+    /**
+     * Plain bytes written while the engine is handshaking, wrapped once it is done.
+     */
+    protected final ArrayDeque<ByteBuffer> pendingPlain = new ArrayDeque<>();
+    protected boolean handshaking = true;
+    /**
+     * True while the delegated tasks of the engine run, the loop doesn't unwrap meanwhile. Only used by the loop Thread.
+     */
+    protected boolean tasksRunning = false;
+    protected volatile boolean released = false;
+
+    /**
+     * @param engine the engine, its handshake begins.
+     * @throws SSLException if the handshake couldn't begin.
+     */
+    public TlsCodec(final SSLEngine engine) throws SSLException {
+        this.engine = engine;
+        final int packetSize = engine.getSession().getPacketBufferSize();
+        this.netInBuffer = BufferPool.getDefault().acquire(packetSize);
+        this.netIn = ByteBuffer.wrap(this.netInBuffer.array());
+        this.appInBuffer = BufferPool.getDefault().acquire(engine.getSession().getApplicationBufferSize());
+        this.appIn = ByteBuffer.wrap(this.appInBuffer.array());
+        this.netOutBuffer = BufferPool.getDefault().acquire(RECORDS_BY_WRITE * packetSize);
+        this.netOut = ByteBuffer.wrap(this.netOutBuffer.array());
+        engine.beginHandshake();
+    }
+
+    /**
+     * Decrypt one record of {@link TlsCodec#netIn}, in read mode, into {@link TlsCodec#appIn}.
+     *
+     * @return the result of the engine, {@link SSLEngineResult.Status#BUFFER_UNDERFLOW} if the record isn't fully read.
+     * @throws SSLException if the record is malformed.
+     */
+    public SSLEngineResult unwrap() throws SSLException {
+        while (true) {
+            this.appIn.clear();
+            final SSLEngineResult result = this.engine.unwrap(this.netIn, this.appIn);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                growAppIn();
+                continue;
+            }
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW && this.netIn.capacity() < this.engine.getSession().getPacketBufferSize())
+                growNetIn();
+            this.appIn.flip();
+            return result;
+        }
+    }
+
+    /**
+     * Encrypt plain bytes into {@link TlsCodec#netOut}, at most {@link TlsCodec#RECORDS_BY_WRITE} records. An empty source wraps handshake data.
+     *
+     * @param srcs the plain bytes, consumed.
+     * @return the last result of the engine.
+     * @throws SSLException if the engine failed.
+     */
+    public SSLEngineResult wrap(final ByteBuffer[] srcs) throws SSLException {
+        this.netOut.clear();
+        SSLEngineResult result;
+        do {
+            result = this.engine.wrap(srcs, this.netOut);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW && this.netOut.position() == 0)
+                growNetOut();
+        } while (result.getStatus() != SSLEngineResult.Status.CLOSED && hasRemaining(srcs)
+                && this.netOut.remaining() >= this.engine.getSession().getPacketBufferSize()
+                && (result.bytesConsumed() > 0 || result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW));
+        this.netOut.flip();
+        return result;
+    }
+
+    /**
+     * Keep the remaining plain bytes until the end of the handshake.
+     */
+    public void keepPlain(final ByteBuffer[] srcs) {
+        int remaining = 0;
+        for (final ByteBuffer src : srcs)
+            remaining += src.remaining();
+        if (remaining == 0)
+            return;
+        final ByteBuffer plain = ByteBuffer.allocate(remaining);
+        for (final ByteBuffer src : srcs)
+            plain.put(src);
+        this.pendingPlain.add(plain.flip());
+    }
+
+    /**
+     * Wrap the close_notify of the engine into {@link TlsCodec#netOut}.
+     */
+    public void closeOutbound() {
+        this.engine.closeOutbound();
+        try {
+            wrap(EMPTY);
+        } catch (SSLException e) {
+            this.netOut.clear().flip();
+        }
+    }
+
+    /**
+     * Give the buffers back to the pool, the codec can't be used anymore.
+     */
+    public void release() {
+        if (this.released)
+            return;
+        this.released = true;
+        this.pendingPlain.clear();
+        this.netInBuffer.release();
+        this.appInBuffer.release();
+        this.netOutBuffer.release();
+    }
+
+    public boolean isReleased() {
+        return this.released;
+    }
+
+    public SSLEngine getEngine() {
+        return this.engine;
+    }
+
+    private void growAppIn() {
+        final int size = Math.max(this.engine.getSession().getApplicationBufferSize(), this.appIn.capacity() * 2);
+        final PooledBuffer bigger = BufferPool.getDefault().acquire(size);
+        this.appInBuffer.release();
+        this.appInBuffer = bigger;
+        this.appIn = ByteBuffer.wrap(bigger.array());
+    }
+
+    private void growNetIn() {
+        final PooledBuffer bigger = BufferPool.getDefault().acquire(this.engine.getSession().getPacketBufferSize());
+        final ByteBuffer netIn = ByteBuffer.wrap(bigger.array()).put(this.netIn);
+        netIn.flip();
+        this.netInBuffer.release();
+        this.netInBuffer = bigger;
+        this.netIn = netIn;
+    }
+
+    private void growNetOut() {
+        final PooledBuffer bigger = BufferPool.getDefault().acquire(RECORDS_BY_WRITE * this.engine.getSession().getPacketBufferSize());
+        this.netOutBuffer.release();
+        this.netOutBuffer = bigger;
+        this.netOut = ByteBuffer.wrap(bigger.array());
+    }
+
+    protected static boolean hasRemaining(final ByteBuffer[] buffers) {
+        for (final ByteBuffer buffer : buffers)
+            if (buffer.hasRemaining())
+                return true;
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "TlsCodec{" +
+                "protocol=" + engine.getSession().getProtocol() +
+                ", handshaking=" + handshaking +
+                ", pendingPlain=" + pendingPlain.size() +
+                ", released=" + released +
+                '}';
+    }
+}
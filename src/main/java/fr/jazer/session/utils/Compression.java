@@ -0,0 +1,48 @@
+package fr.jazer.session.utils;
+
+import fr.jazer.session.compression.Codec;
+import fr.jazer.session.compression.DeflateCodec;
+import fr.jazer.session.compression.Lz4Codec;
+
+/**
+ * Compression algorithms a Session can negotiate with the other side.
+ */
+public enum Compression {
+    /**
+     * JDK Deflate, see {@link DeflateCodec}.
+     */
+    DEFLATE((byte) 1),
+    /**
+     * LZ4 block format, see {@link Lz4Codec}.
+     */
+    LZ4((byte) 2);
+
+    /**
+     * The id sent during the handshake.
+     */
+    public final byte id;
+
+    Compression(final byte id) {
+        this.id = id;
+    }
+
+    /**
+     * @return a new codec, with its own context.
+     */
+    public Codec newCodec() {
+        if (this == DEFLATE)
+            return new DeflateCodec();
+        return new Lz4Codec();
+    }
+
+    /**
+     * @param id an id sent during the handshake.
+     * @return the Compression of this id, null if unknown.
+     */
+    public static Compression of(final byte id) {
+        for (final Compression compression : values())
+            if (compression.id == id)
+                return compression;
+        return null;
+    }
+}
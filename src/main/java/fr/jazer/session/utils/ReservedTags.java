@@ -0,0 +1,77 @@
+package fr.jazer.session.utils;
+
+/**
+ * Tags used by Jazer for its own frames. The {@link ReservedTags#COUNT} tags from {@link Integer#MIN_VALUE} are reserved,
+ * packets of the user must not use them.
+ */
+public final class ReservedTags {
+
+    /**
+     * Number of reserved tags.
+     */
+    public static final int COUNT = 256;
+
+    /**
+     * A request of {@link fr.jazer.session.rpc.RpcManager}.
+     */
+    public static final int RPC_REQUEST = Integer.MIN_VALUE;
+    /**
+     * A response of {@link fr.jazer.session.rpc.RpcManager}.
+     */
+    public static final int RPC_RESPONSE = Integer.MIN_VALUE + 1;
+    /**
+     * Compressions offered by a client, see {@link fr.jazer.session.Session#integrityCheck(java.net.Socket)}.
+     */
+    public static final int COMPRESSION_HELLO = Integer.MIN_VALUE + 2;
+    /**
+     * Compression chosen by the server.
+     */
+    public static final int COMPRESSION_ACK = Integer.MIN_VALUE + 3;
+    /**
+     * A {@link fr.jazer.session.channel.Channel} opened by the other side.
+     */
+    public static final int CHANNEL_OPEN = Integer.MIN_VALUE + 4;
+    /**
+     * A packet of a Channel.
+     */
+    public static final int CHANNEL_DATA = Integer.MIN_VALUE + 5;
+    /**
+     * Bytes of a Channel consumed by the other side.
+     */
+    public static final int CHANNEL_CREDIT = Integer.MIN_VALUE + 6;
+    /**
+     * A Channel closed by the other side.
+     */
+    public static final int CHANNEL_CLOSE = Integer.MIN_VALUE + 7;
+    /**
+     * Heartbeat sent by an idle Session, see {@link fr.jazer.session.Session#setHeartbeatInterval(long)}.
+     */
+    public static final int PING = Integer.MIN_VALUE + 8;
+    /**
+     * Answer to a {@link ReservedTags#PING}.
+     */
+    public static final int PONG = Integer.MIN_VALUE + 9;
+    /**
+     * Resumption offered by a client, see {@link fr.jazer.session.Session#setResumable(boolean)}.
+     */
+    public static final int SESSION_RESUME = Integer.MIN_VALUE + 10;
+    /**
+     * Answer of the server : the Session resumed, or the token of a new resumable Session.
+     */
+    public static final int SESSION_RESUMED = Integer.MIN_VALUE + 11;
+    /**
+     * Number of packets received by the other side, the acknowledged packets leave its {@link fr.jazer.session.RetransmitBuffer}.
+     */
+    public static final int FRAMES_ACK = Integer.MIN_VALUE + 12;
+
+    private ReservedTags() {
+    }
+
+    /**
+     * @param tag a tag.
+     * @return true if the tag is reserved to Jazer.
+     */
+    public static boolean isReserved(final int tag) {
+        return tag < Integer.MIN_VALUE + COUNT;
+    }
+}
@@ -0,0 +1,20 @@
+package fr.jazer.session.utils;
+
+public enum TransportMode {
+    /**
+     * Each Session owns a reader Thread blocking on its Socket.
+     */
+    BLOCKING,
+    /**
+     * Sessions are non-blocking channels served by a small fixed set of event loops.
+     */
+    NIO;
+
+    public static boolean isBlocking(final TransportMode mode) {
+        return mode == BLOCKING;
+    }
+
+    public static boolean isNio(final TransportMode mode) {
+        return mode == NIO;
+    }
+}
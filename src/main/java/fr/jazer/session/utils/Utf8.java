@@ -0,0 +1,71 @@
+package fr.jazer.session.utils;
+
+/**
+ * UTF-8 encoding without intermediate array.
+ */
+public final class Utf8 {
+
+    private Utf8() {
+    }
+
+    /**
+     * @param text a text.
+     * @return the number of bytes of the text encoded in UTF-8.
+     */
+    public static int encodedLength(final CharSequence text) {
+        final int length = text.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (Character.isSurrogate(c)) {
+                // A valid pair is 4 bytes for 2 chars, a malformed surrogate is replaced by 1 byte.
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    bytes += 2;
+                    i++;
+                }
+            } else if (c >= 0x800) {
+                bytes += 2;
+            } else if (c >= 0x80) {
+                bytes += 1;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Encode a text in UTF-8. Malformed surrogates are replaced by '?' as {@link String#getBytes(java.nio.charset.Charset)} does.
+     *
+     * @param text   the text at encode.
+     * @param dest   the destination array, at least {@link Utf8#encodedLength(CharSequence)} bytes after the offset.
+     * @param offset the position of the first byte.
+     * @return the number of bytes written.
+     */
+    public static int encode(final CharSequence text, final byte[] dest, final int offset) {
+        final int length = text.length();
+        int position = offset;
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                dest[position++] = (byte) c;
+            } else if (c < 0x800) {
+                dest[position++] = (byte) (0xC0 | (c >> 6));
+                dest[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    dest[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    dest[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    dest[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    dest[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    dest[position++] = '?';
+                }
+            } else {
+                dest[position++] = (byte) (0xE0 | (c >> 12));
+                dest[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                dest[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position - offset;
+    }
+}
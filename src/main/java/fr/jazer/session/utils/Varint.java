@@ -0,0 +1,89 @@
+package fr.jazer.session.utils;
+
+/**
+ * Variable length integers, 7 bits by byte with the high bit set on all bytes but the last, lowest bits first (LEB128).
+ * <p>
+ * Small positive values take 1 byte, negative values take the maximum : use the zigzag encoding for signed values.
+ */
+public final class Varint {
+
+    /**
+     * Maximum bytes of an encoded int.
+     */
+    public static final int MAX_INT_SIZE = 5;
+    /**
+     * Maximum bytes of an encoded long.
+     */
+    public static final int MAX_LONG_SIZE = 10;
+
+    private Varint() {
+    }
+
+    /**
+     * @return the number of bytes of the value encoded.
+     */
+    public static int size(final int value) {
+        return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    /**
+     * @return the number of bytes of the value encoded.
+     */
+    public static int size(final long value) {
+        return (63 - Long.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    /**
+     * @param dest   the destination array, at least {@link Varint#size(int)} bytes after the offset.
+     * @param offset the position of the first byte.
+     * @return the position after the last byte written.
+     */
+    public static int put(final byte[] dest, final int offset, final int value) {
+        int position = offset;
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            dest[position++] = (byte) ((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        dest[position++] = (byte) remaining;
+        return position;
+    }
+
+    /**
+     * @param dest   the destination array, at least {@link Varint#size(long)} bytes after the offset.
+     * @param offset the position of the first byte.
+     * @return the position after the last byte written.
+     */
+    public static int put(final byte[] dest, final int offset, final long value) {
+        int position = offset;
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            dest[position++] = (byte) ((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        dest[position++] = (byte) remaining;
+        return position;
+    }
+
+    /**
+     * @return the value mapped to a positive int, small when the value is close to 0 : 0, -1, 1, -2... become 0, 1, 2, 3...
+     */
+    public static int zigzag(final int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static long zigzag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * @return the value given to {@link Varint#zigzag(int)}.
+     */
+    public static int unzigzag(final int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static long unzigzag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,15 @@
+package fr.jazer.session.utils;
+
+/**
+ * What a Session does with a packet sent asynchronously when its write queue is above the high-water mark.
+ */
+public enum WriteOverflowPolicy {
+    /**
+     * The packet is not queued, its future is completed with false.
+     */
+    REJECT,
+    /**
+     * The caller waits until the writer drained the queue under the high-water mark.
+     */
+    BLOCK
+}
@@ -1,14 +1,43 @@
 package fr.jazer.session.utils.crypted;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import java.io.IOException;
 import java.io.InputStream;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
 
+/**
+ * Cert of the servers trusted by a client Session.
+ * <p>
+ * The cert is read once into an {@link SSLContext} shared by all Sessions connecting with this config,
+ * the config can be reused and the TLS sessions of these connections are resumed instead of doing a full handshake.
+ */
 public class ClientCertConfig {
 
+    /**
+     * Default number of TLS sessions kept to be resumed.
+     */
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 1024;
+    /**
+     * Default time in seconds a TLS session can be resumed.
+     */
+    public static final int DEFAULT_SESSION_TIMEOUT = 24 * 60 * 60;
+
     protected final InputStream input;
     protected final String password;
     protected final SecureType type;
     protected final CertFormat certFormat;
 
+    protected int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+    protected int sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+    /**
+     * Built at the first {@link ClientCertConfig#context()}, guarded by this.
+     */
+    protected SSLContext context;
+
     public ClientCertConfig(final InputStream input, final String password, final SecureType type, final CertFormat certFormat) {
         this.input = input;
         this.password = password;
@@ -16,6 +45,50 @@ public class ClientCertConfig {
         this.certFormat = certFormat;
     }
 
+    /**
+     * Read the cert and build the context at the first call, the next calls return the same context.
+     * <p>
+     * If the cert can't be loaded the input is consumed, a new config is needed.
+     *
+     * @return the context creating the sockets of this config.
+     * @throws IOException              If the cert couldn't be read
+     * @throws KeyManagementException   If the KeyManager couldn't be loaded
+     * @throws CertificateException     If the certificate is not correct (null or damaged) or the password is incorrect
+     * @throws NoSuchAlgorithmException If the certificate is from an unknown type
+     * @throws KeyStoreException        If your system is not compatible with the format of the cert
+     */
+    public synchronized SSLContext context() throws IOException, KeyManagementException, NoSuchAlgorithmException, CertificateException, KeyStoreException {
+        if (this.context == null) {
+            this.context = SSLSocketKeystoreFactory.getContext(this.input, this.password, this.type, this.certFormat);
+            applySessionCache();
+        }
+        return this.context;
+    }
+
+    /**
+     * @param sessionCacheSize number of TLS sessions kept to be resumed, 0 for no limit.
+     */
+    public synchronized void setSessionCacheSize(final int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+        applySessionCache();
+    }
+
+    /**
+     * @param sessionTimeout time in seconds a TLS session can be resumed, 0 for no limit.
+     */
+    public synchronized void setSessionTimeout(final int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+        applySessionCache();
+    }
+
+    private void applySessionCache() {
+        if (this.context == null)
+            return;
+        final SSLSessionContext sessions = this.context.getClientSessionContext();
+        sessions.setSessionCacheSize(this.sessionCacheSize);
+        sessions.setSessionTimeout(this.sessionTimeout);
+    }
+
     public InputStream input() {
         return this.input;
     }
@@ -31,4 +104,4 @@ public class ClientCertConfig {
     public CertFormat format() {
         return this.certFormat;
     }
-}
\ No newline at end of file
+}
@@ -91,6 +91,50 @@ public class SSLServerSocketKeystoreFactory {
      */
     public static SSLServerSocket getServerSocketWithCert(int port, InputStream pathToCert, String passwordFromCert, SecureType type, CertFormat certFormat) throws IOException,
             KeyManagementException, NoSuchAlgorithmException, CertificateException, KeyStoreException, UnrecoverableKeyException {
+        return getServerSocketWithCert(port, getContext(pathToCert, passwordFromCert, type, certFormat));
+    }
+
+    /**
+     * @param port       The port of the socket
+     * @param certConfig The cert, its context is built once and reused by the next servers
+     * @return The SSLServerSocket
+     * @throws IOException               If the socket couldn't be created
+     * @throws KeyManagementException    If the KeyManager couldn't be loaded
+     * @throws CertificateException      If the certificate is not correct (null or damaged) or the password is incorrect
+     * @throws NoSuchAlgorithmException  If the certificate is from an unknown type
+     * @throws KeyStoreException         If your system is not compatible with JKS KeyStore certificates
+     * @throws UnrecoverableKeyException Cannot get the keys of the KeyStore
+     */
+    public static SSLServerSocket getServerSocketWithCert(int port, ServerCertConfig certConfig) throws IOException,
+            KeyManagementException, NoSuchAlgorithmException, CertificateException, KeyStoreException, UnrecoverableKeyException {
+        return getServerSocketWithCert(port, certConfig.context());
+    }
+
+    private static SSLServerSocket getServerSocketWithCert(int port, SSLContext ctx) throws IOException {
+        SSLServerSocketFactory socketFactory = (SSLServerSocketFactory) ctx.getServerSocketFactory();
+        SSLServerSocket ssocket = (SSLServerSocket) socketFactory.createServerSocket(port);
+        return ssocket;
+    }
+
+    /**
+     * Load the cert and create a context using its keys.
+     * <p>
+     * The context keeps the TLS sessions resumed by clients, reuse it for the next servers, see {@link ServerCertConfig#context()}.
+     *
+     * @param pathToCert       The KeyStore cert, read once
+     * @param passwordFromCert The password of the KeyStore cert
+     * @param type             The SSL algorithm to use
+     * @param certFormat       The format of the KeyStore cert
+     * @return The context
+     * @throws IOException               If the cert couldn't be read
+     * @throws KeyManagementException    If the KeyManager couldn't be loaded
+     * @throws CertificateException      If the certificate is not correct (null or damaged) or the password is incorrect
+     * @throws NoSuchAlgorithmException  If the certificate is from an unknown type
+     * @throws KeyStoreException         If your system is not compatible with JKS KeyStore certificates
+     * @throws UnrecoverableKeyException Cannot get the keys of the KeyStore
+     */
+    public static SSLContext getContext(InputStream pathToCert, String passwordFromCert, SecureType type, CertFormat certFormat) throws IOException,
+            KeyManagementException, NoSuchAlgorithmException, CertificateException, KeyStoreException, UnrecoverableKeyException {
         X509TrustManager[] tmm;
         X509KeyManager[] kmm;
         KeyStore ks = KeyStore.getInstance(certFormat.format);
@@ -99,9 +143,7 @@ public class SSLServerSocketKeystoreFactory {
         kmm = km(ks, passwordFromCert);
         SSLContext ctx = SSLContext.getInstance(type.getType());
         ctx.init(kmm, tmm, null);
-        SSLServerSocketFactory socketFactory = (SSLServerSocketFactory) ctx.getServerSocketFactory();
-        SSLServerSocket ssocket = (SSLServerSocket) socketFactory.createServerSocket(port);
-        return ssocket;
+        return ctx;
     }
 
     /**
@@ -161,16 +161,54 @@ public class SSLSocketKeystoreFactory {
      */
     public static SSLSocket getSocketWithCert(InetAddress ip, int port, InputStream pathToCert, String passwordFromCert, SecureType type, CertFormat certFormat) throws IOException,
             KeyManagementException, NoSuchAlgorithmException, CertificateException, KeyStoreException, SocketException {
+        SSLSocket socket = (SSLSocket) getSocketFactory(pathToCert, passwordFromCert, type, certFormat).createSocket(ip, port);
+        return socket;
+    }
+
+    /**
+     * Load the cert and create a factory, reusable to create many SSLSockets trusting this cert.
+     *
+     * @param pathToCert       The KeyStore cert, read once
+     * @param passwordFromCert The password of the KeyStore cert
+     * @param type             The SSL algorithm to use
+     * @param certFormat       The format of the KeyStore cert
+     * @return The factory
+     * @throws IOException              If the cert couldn't be read
+     * @throws KeyManagementException   If the KeyManager couldn't be loaded
+     * @throws CertificateException     If the certificate is not correct (null or damaged) or the password is incorrect
+     * @throws NoSuchAlgorithmException If the certificate is from an unknown type
+     * @throws KeyStoreException        If your system is not compatible with JKS KeyStore certificates
+     */
+    public static SSLSocketFactory getSocketFactory(InputStream pathToCert, String passwordFromCert, SecureType type, CertFormat certFormat) throws IOException,
+            KeyManagementException, NoSuchAlgorithmException, CertificateException, KeyStoreException {
+        return getContext(pathToCert, passwordFromCert, type, certFormat).getSocketFactory();
+    }
+
+    /**
+     * Load the cert and create a context trusting it.
+     * <p>
+     * Sockets created by the same context resume their TLS sessions, keep it to connect again, see {@link ClientCertConfig#context()}.
+     *
+     * @param pathToCert       The KeyStore cert, read once
+     * @param passwordFromCert The password of the KeyStore cert
+     * @param type             The SSL algorithm to use
+     * @param certFormat       The format of the KeyStore cert
+     * @return The context
+     * @throws IOException              If the cert couldn't be read
+     * @throws KeyManagementException   If the KeyManager couldn't be loaded
+     * @throws CertificateException     If the certificate is not correct (null or damaged) or the password is incorrect
+     * @throws NoSuchAlgorithmException If the certificate is from an unknown type
+     * @throws KeyStoreException        If your system is not compatible with JKS KeyStore certificates
+     */
+    public static SSLContext getContext(InputStream pathToCert, String passwordFromCert, SecureType type, CertFormat certFormat) throws IOException,
+            KeyManagementException, NoSuchAlgorithmException, CertificateException, KeyStoreException {
         X509TrustManager[] tmm;
         KeyStore ks = KeyStore.getInstance(certFormat.format);
         ks.load(pathToCert, passwordFromCert.toCharArray());
         tmm = tm(ks);
         SSLContext ctx = SSLContext.getInstance(type.getType());
         ctx.init(null, tmm, null);
-
-        SSLSocketFactory SocketFactory = (SSLSocketFactory) ctx.getSocketFactory();
-        SSLSocket socket = (SSLSocket) SocketFactory.createSocket(ip, port);
-        return socket;
+        return ctx;
     }
 
     /**
@@ -191,14 +229,7 @@ public class SSLSocketKeystoreFactory {
      */
     public static SSLSocket getSocketWithCert(InetAddress ip, int port, InputStream pathToCert, String passwordFromCert, SecureType type, CertFormat certFormat, Proxy proxy) throws IOException,
             KeyManagementException, NoSuchAlgorithmException, CertificateException, KeyStoreException, SocketException {
-        X509TrustManager[] tmm;
-        KeyStore ks = KeyStore.getInstance(certFormat.format);
-        ks.load(pathToCert, passwordFromCert.toCharArray());
-        tmm = tm(ks);
-        SSLContext ctx = SSLContext.getInstance(type.getType());
-        ctx.init(null, tmm, null);
-
-        SSLSocketFactory SocketFactory = (SSLSocketFactory) ctx.getSocketFactory();
+        SSLSocketFactory SocketFactory = getSocketFactory(pathToCert, passwordFromCert, type, certFormat);
 
         Socket proxy_s = new Socket(proxy);
         SSLSocket socket = (SSLSocket) SocketFactory.createSocket(proxy_s, ip.getHostAddress(), port, true);
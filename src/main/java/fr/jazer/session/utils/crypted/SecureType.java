@@ -26,7 +26,8 @@ public enum SecureType {
     @Deprecated
     TLSv1("TLSv1"),
     TLSv1_1("TLSv1.1"),
-    TLSv1_2("TLSv1.2");
+    TLSv1_2("TLSv1.2"),
+    TLSv1_3("TLSv1.3");
 
     private final String type;
 
@@ -0,0 +1,23 @@
+package fr.jazer.thread_manager;
+
+/**
+ * What a {@link ThreadPool} does with a task when its queue is full or when it is destroyed.
+ */
+public enum RejectionPolicy {
+    /**
+     * Throw a {@link java.util.concurrent.RejectedExecutionException} to the caller.
+     */
+    ABORT,
+    /**
+     * Run the task on the calling Thread, slowing down the producer.
+     */
+    CALLER_RUNS,
+    /**
+     * Drop the task.
+     */
+    DISCARD,
+    /**
+     * Drop the oldest queued task and queue the new one. If no task is queued anymore, the new task is dropped.
+     */
+    DISCARD_OLDEST
+}
@@ -0,0 +1,111 @@
+package fr.jazer.thread_manager;
+
+import fr.jazer.logger.Logger;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The kind of Threads created by Jazer for readers, the session listener and {@link ThreadPool} slaves.
+ * <p>
+ * The global default is {@link ThreadMode#PLATFORM}, it can be changed with {@link ThreadMode#setDefault(ThreadMode)}
+ * or the system property "jazer.threadMode". Sessions and SessionServers can also override it.
+ */
+public enum ThreadMode {
+    /**
+     * Classic Threads, one OS Thread each.
+     */
+    PLATFORM,
+    /**
+     * Virtual Threads (JDK 21+). Blocking socket reads no longer pin an OS Thread.
+     * On older JDKs, {@link ThreadMode#PLATFORM} Threads are created instead.
+     */
+    VIRTUAL;
+
+    private static final Logger logger = Logger.loggerOfStatic(ThreadMode.class);
+
+    /**
+     * Factory of virtual Threads, null if the running JDK doesn't support them.
+     */
+    private static final ThreadFactory virtualFactory = lookupVirtualFactory();
+
+    /**
+     * The mode used when none is specified.
+     */
+    private static volatile ThreadMode defaultMode = parse(System.getProperty("jazer.threadMode"));
+
+    /**
+     * Create a Thread of this mode, the Thread is not started.
+     *
+     * @param task the task of the Thread.
+     * @return the created Thread.
+     */
+    public Thread newThread(final Runnable task) {
+        if (this == VIRTUAL && virtualFactory != null)
+            return virtualFactory.newThread(task);
+        return new Thread(task);
+    }
+
+    /**
+     * Create a named Thread of this mode, the Thread is not started.
+     *
+     * @param task the task of the Thread.
+     * @param name the name of the Thread.
+     * @return the created Thread.
+     */
+    public Thread newThread(final Runnable task, final String name) {
+        final Thread thread = newThread(task);
+        thread.setName(name);
+        return thread;
+    }
+
+    /**
+     * @return the mode used when none is specified.
+     */
+    public static ThreadMode getDefault() {
+        return defaultMode;
+    }
+
+    /**
+     * Change the mode used when none is specified. Only Threads and ThreadPools created after this call are affected.
+     *
+     * @param mode the new default mode.
+     */
+    public static void setDefault(final ThreadMode mode) {
+        if (mode == VIRTUAL && !isVirtualSupported())
+            logger.err("Virtual threads need a JDK 21+, platform threads will be used.");
+        defaultMode = mode;
+    }
+
+    /**
+     * @return true if the running JDK can create virtual Threads.
+     */
+    public static boolean isVirtualSupported() {
+        return virtualFactory != null;
+    }
+
+    /**
+     * @param property the value of the system property "jazer.threadMode", may be null.
+     * @return the mode named by the property, {@link ThreadMode#PLATFORM} if it names none.
+     */
+    private static ThreadMode parse(final String property) {
+        if (property == null)
+            return PLATFORM;
+        for (final ThreadMode mode : values())
+            if (mode.name().equalsIgnoreCase(property.trim()))
+                return mode;
+        logger.err("Unknown jazer.threadMode '{}', platform threads will be used.", property);
+        return PLATFORM;
+    }
+
+    /**
+     * Thread.ofVirtual() is looked up by reflection so Jazer still runs on JDKs without virtual Threads.
+     */
+    private static ThreadFactory lookupVirtualFactory() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
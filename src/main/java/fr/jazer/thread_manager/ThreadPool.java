@@ -1,51 +1,157 @@
 package fr.jazer.thread_manager;
 
 import fr.jazer.logger.Logger;
-import org.jetbrains.annotations.Nullable;
+import fr.jazer.metrics.MetricsRegistry;
 
-import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 public class ThreadPool {
 
     /**
-     * The static logger from ThreadPool, all output are by default disabled.
+     * The static logger from ThreadPool, only its warnings and errors are printed by default.
      * <p>
-     * If you want ThreadPool to show output. Remove the "ThreadPool" String in {@link Logger#disabledOutPut}.
+     * If you want ThreadPool to show output. Use {@link Logger#setLevel(Class, fr.jazer.logger.Level)}.
      */
     private static Logger logger = Logger.loggerOfStatic(ThreadPool.class);
 
     /**
-     * The default time before a thread is release {@link Slave#release()}.
+     * The default time before a thread is release.
      */
     private static final long DEFAULT_LIVE_TIME = 20000;
     /**
-     * Count the current number of Thread alive in this {@link ThreadPool}.
+     * The default maximum number of Slaves of a {@link ThreadPool}.
      */
-    private static int currentPool = 0;
+    private static final int DEFAULT_MAX_SLAVES = 1024;
+    /**
+     * Count the number of {@link ThreadPool} created.
+     */
+    private static final AtomicInteger currentPool = new AtomicInteger();
 
     /**
-     * The list of all Slave who are serving this {@link ThreadPool}. There is no limit on the number of Threads.
+     * Totals of all ThreadPools, in {@link MetricsRegistry#getDefault()}.
      */
-    protected final ArrayList<Slave> slaves;
+    private static final LongAdder TOTAL_ALIVE = MetricsRegistry.getDefault().counter("threadpool.slaves.alive");
+    private static final LongAdder TOTAL_ACTIVE = MetricsRegistry.getDefault().counter("threadpool.slaves.active");
+    private static final LongAdder TOTAL_QUEUED = MetricsRegistry.getDefault().counter("threadpool.tasks.queued");
+    private static final LongAdder TOTAL_REJECTED = MetricsRegistry.getDefault().counter("threadpool.tasks.rejected");
+
+    static {
+        MetricsRegistry.getDefault().gauge("threadpool.slaves.free", () -> Math.max(0, TOTAL_ALIVE.sum() - TOTAL_ACTIVE.sum()));
+    }
+
+    /**
+     * Tasks waiting for a Slave. Lock-free, Slaves poll it as soon as they finish a task.
+     */
+    protected final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    /**
+     * Number of tasks in {@link ThreadPool#tasks}.
+     */
+    protected final AtomicInteger queued = new AtomicInteger();
+    /**
+     * Slaves parked waiting for a task, the most recently parked first so the others can be released.
+     */
+    protected final ConcurrentLinkedDeque<Slave> idleSlaves = new ConcurrentLinkedDeque<>();
+    /**
+     * All Slaves alive, used by {@link ThreadPool#destroy()}.
+     */
+    protected final Set<Slave> slaves = ConcurrentHashMap.newKeySet();
+    /**
+     * Number of Slaves alive, never above {@link ThreadPool#maxSlaves}.
+     */
+    protected final AtomicInteger aliveSlaves = new AtomicInteger();
+    /**
+     * Number of Slaves currently running a task.
+     */
+    protected final AtomicInteger activeSlaves = new AtomicInteger();
+    /**
+     * Used to name Slaves.
+     */
+    protected final AtomicInteger slaveNb = new AtomicInteger();
 
     /**
      * {@link ThreadPool} get a number at it creation used to identify a Slave.
      */
     protected final int poolNb;
     /**
-     * The time used by Slaves from the current {@link ThreadPool} to be release.
+     * Number of Slaves kept alive even without task.
+     */
+    protected final int coreSlaves;
+    /**
+     * Maximum number of Slaves alive at the same time.
+     */
+    protected final int maxSlaves;
+    /**
+     * Maximum number of tasks waiting in {@link ThreadPool#tasks}, above the {@link ThreadPool#rejectionPolicy} is applied.
+     */
+    protected final int queueCapacity;
+    /**
+     * The time waited without task by a Slave before being released, unless it is one of the {@link ThreadPool#coreSlaves}.
      * By default, the value of {@link ThreadPool#DEFAULT_LIVE_TIME} is used.
      */
     protected final long liveTime;
+    /**
+     * The kind of Threads owned by Slaves of the current {@link ThreadPool}.
+     */
+    protected final ThreadMode threadMode;
+    /**
+     * Applied to tasks who can't be queued.
+     */
+    protected final RejectionPolicy rejectionPolicy;
+
+    protected volatile boolean destroyed = false;
+
+    /**
+     * @param coreSlaves      number of Slaves kept alive even without task.
+     * @param maxSlaves       maximum number of Slaves alive at the same time.
+     * @param liveTime        define the time waited by Slaves to be release.
+     * @param queueCapacity   maximum number of tasks waiting for a Slave, at least 1 : each task is queued before waking up a Slave.
+     * @param rejectionPolicy applied to tasks who can't be queued.
+     * @param threadMode      the kind of Threads owned by Slaves.
+     */
+    public ThreadPool(final int coreSlaves, final int maxSlaves, final long liveTime, final int queueCapacity, final RejectionPolicy rejectionPolicy, final ThreadMode threadMode) {
+        if (coreSlaves < 0 || maxSlaves <= 0 || coreSlaves > maxSlaves || queueCapacity < 1)
+            throw new IllegalArgumentException("Invalid ThreadPool bounds : core=" + coreSlaves + ", max=" + maxSlaves + ", queue=" + queueCapacity + ".");
+        this.coreSlaves = coreSlaves;
+        this.maxSlaves = maxSlaves;
+        this.liveTime = liveTime;
+        this.queueCapacity = queueCapacity;
+        this.rejectionPolicy = rejectionPolicy;
+        this.threadMode = threadMode;
+        this.poolNb = currentPool.getAndIncrement();
+    }
+
+    /**
+     * @param coreSlaves      number of Slaves kept alive even without task.
+     * @param maxSlaves       maximum number of Slaves alive at the same time.
+     * @param liveTime        define the time waited by Slaves to be release.
+     * @param queueCapacity   maximum number of tasks waiting for a Slave, at least 1.
+     * @param rejectionPolicy applied to tasks who can't be queued.
+     */
+    public ThreadPool(final int coreSlaves, final int maxSlaves, final long liveTime, final int queueCapacity, final RejectionPolicy rejectionPolicy) {
+        this(coreSlaves, maxSlaves, liveTime, queueCapacity, rejectionPolicy, ThreadMode.getDefault());
+    }
+
+    /**
+     * @param liveTime   define the time waited by Slaves to be release.
+     * @param threadMode the kind of Threads owned by Slaves.
+     */
+    public ThreadPool(final long liveTime, final ThreadMode threadMode) {
+        this(0, DEFAULT_MAX_SLAVES, liveTime, Integer.MAX_VALUE, RejectionPolicy.CALLER_RUNS, threadMode);
+    }
 
     /**
      * @param liveTime define the time waited by Slaves to be release.
      */
     public ThreadPool(final long liveTime) {
-        this.slaves = new ArrayList<>();
-        this.liveTime = liveTime;
-        this.poolNb = currentPool;
-        currentPool++;
+        this(liveTime, ThreadMode.getDefault());
     }
 
     /**
@@ -58,145 +164,199 @@ public class ThreadPool {
     /**
      * Execute a runnable on a Thread.
      * <p>
-     * If any slave owned by the current ThreadPool is available, it will execute the task without creating Thread.
-     * If all Slaves owned by the current ThreadPool are working, it will create a new Slave and execute the task on it.
+     * The task is queued, then an idle Slave is woken up to run it. If no Slave is idle, a new Slave is created
+     * unless {@link ThreadPool#maxSlaves} are alive, in this case the task waits for the first Slave finishing its task.
+     * <p>
+     * If the queue is full or the ThreadPool is destroyed, the {@link ThreadPool#rejectionPolicy} is applied.
      *
      * @param runnable the task to execute.
      */
     public void exe(final Runnable runnable) {
-        synchronized (slaves) {
-            for (final Slave slave : slaves) {
-                if (slave.isFree()) {
-                    logger.log("Executing on " + slave.getName() + ".");
-                    slave.workOn(runnable);
-                    return;
-                }
-            }
-            final Slave slave = new Slave("Slave " + slaves.size(), liveTime, this, runnable);
-            logger.log("Creating slave : " + "Slave " + slaves.size() + " & executing on " + slave.getName() + ".");
-            slaves.add(slave);
+        if (this.destroyed) {
+            reject(runnable);
+            return;
+        }
+        if (this.queued.incrementAndGet() > this.queueCapacity) {
+            this.queued.decrementAndGet();
+            reject(runnable);
+            return;
         }
+        TOTAL_QUEUED.increment();
+        this.tasks.offer(runnable);
+        dispatch();
     }
 
     /**
-     * Interrupt all slaves.
+     * Interrupt all slaves. Already queued tasks are still executed, new tasks are rejected.
      */
     public void destroy() {
-        synchronized (slaves) {
-            for (final Slave slave : slaves)
-                slave.worker.interrupt();
+        this.destroyed = true;
+        for (final Slave slave : this.slaves)
+            slave.worker.interrupt();
+    }
+
+    /**
+     * @return the number of tasks waiting for a Slave.
+     */
+    public int getQueueDepth() {
+        return this.queued.get();
+    }
+
+    /**
+     * @return the number of Slaves currently running a task.
+     */
+    public int getActiveSlaves() {
+        return this.activeSlaves.get();
+    }
+
+    /**
+     * @return the number of Slaves alive, working or not.
+     */
+    public int getAliveSlaves() {
+        return this.aliveSlaves.get();
+    }
+
+    /**
+     * @return the number of Slaves alive waiting for a task.
+     */
+    public int getFreeSlaves() {
+        return Math.max(0, this.aliveSlaves.get() - this.activeSlaves.get());
+    }
+
+    public boolean isDestroyed() {
+        return this.destroyed;
+    }
+
+    /**
+     * Give the queued tasks a Slave : wake up an idle one or create one if the pool isn't full.
+     */
+    protected void dispatch() {
+        Slave slave;
+        while ((slave = this.idleSlaves.pollFirst()) != null)
+            if (slave.wake())
+                return;
+
+        // A Slave alive and not active is between two tasks or going idle, it will poll the queue again.
+        if (this.aliveSlaves.get() > this.activeSlaves.get())
+            return;
+
+        int alive;
+        while ((alive = this.aliveSlaves.get()) < this.maxSlaves) {
+            if (this.aliveSlaves.compareAndSet(alive, alive + 1)) {
+                TOTAL_ALIVE.increment();
+                slave = new Slave("Slave " + this.poolNb + "-" + this.slaveNb.getAndIncrement(), this);
+                this.slaves.add(slave);
+                logger.debug("Creating slave : {}, {} slaves alive.", slave.getName(), alive + 1);
+                slave.worker.start();
+                return;
+            }
+        }
+    }
+
+    protected void reject(final Runnable runnable) {
+        TOTAL_REJECTED.increment();
+        switch (this.destroyed ? RejectionPolicy.DISCARD : this.rejectionPolicy) {
+            case ABORT:
+                throw new RejectedExecutionException("ThreadPool " + this.poolNb + " queue is full (" + this.queueCapacity + " tasks).");
+            case CALLER_RUNS:
+                runnable.run();
+                break;
+            case DISCARD_OLDEST:
+                // The new task takes the place of the oldest one in the count, it can't be taken by another Thread.
+                if (this.tasks.poll() != null) {
+                    this.tasks.offer(runnable);
+                    dispatch();
+                    break;
+                }
+                // The queued tasks were just taken by Slaves, or aren't offered yet.
+                logger.log("Task discarded by ThreadPool {}, no queued task to discard.", this.poolNb);
+                break;
+            case DISCARD:
+                logger.log("Task discarded by ThreadPool {}.", this.poolNb);
+                break;
         }
     }
 
     /**
-     * This method is called by Slaves asking to release.
-     * If the slave who's calling this method do not have a task, he is removed from {@link ThreadPool#slaves}.
+     * Called by a Slave who waited {@link ThreadPool#liveTime} without task.
      *
-     * @param slave the slave at remove.
-     * @return true if the Slaves was removed, false if not.
+     * @return true if the Slave can be released, false if it must keep serving.
      */
-    protected boolean freeSlave(final Slave slave) {
-        synchronized (slaves) {
-            if (slave.task != null)
+    protected boolean tryRelease() {
+        int alive;
+        do {
+            alive = this.aliveSlaves.get();
+            if (!this.destroyed && alive <= this.coreSlaves)
                 return false;
-            slaves.remove(slave);
-            logger.log(slave.getName() + " free. Current " + slaves.size() + " slaves alive.");
-            return true;
+        } while (!this.aliveSlaves.compareAndSet(alive, alive - 1));
+
+        // A task queued while this Slave was counted alive would not have created a new Slave.
+        if (!this.destroyed && !this.tasks.isEmpty()) {
+            this.aliveSlaves.incrementAndGet();
+            return false;
         }
+        TOTAL_ALIVE.decrement();
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ThreadPool{" +
+                "poolNb=" + poolNb +
+                ", alive=" + aliveSlaves.get() +
+                ", active=" + activeSlaves.get() +
+                ", queued=" + queued.get() +
+                ", maxSlaves=" + maxSlaves +
+                ", destroyed=" + destroyed +
+                '}';
     }
 
     /**
-     * The Slave classes own a Thread and a Task (a {@link Runnable}), and execute this task on the owned Thread.
-     * The Slave will wait for a new task to execute after finishing the current Task.
+     * The Slave classes own a Thread running the tasks of its ThreadPool one after the other.
      * <p>
-     * The Slave wait {@link ThreadPool#liveTime} ms, and ask for freedom to the ThreadPool who's owning it.
+     * Without task, the Slave park at most {@link ThreadPool#liveTime} ms, and ask for freedom to the ThreadPool who's owning it.
      */
-    private static class Slave {
+    protected static class Slave {
+
+        private static final int RUNNING = 0;
+        private static final int IDLE = 1;
+        private static final int WOKEN = 2;
+
         /**
          * The Thread working.
          */
         protected final Thread worker;
         /**
-         * Flag the current state of the Slave.
-         * true if the slaves always accept work.
-         * false if not.
+         * The ThreadPool owning this Slave.
          */
-        protected boolean alwaysServing;
+        protected final ThreadPool master;
         /**
-         * The task to execute. If the Slave don't have any task at the moment, task is null.
+         * RUNNING, IDLE (parked in {@link ThreadPool#idleSlaves}) or WOKEN (handed a task by {@link ThreadPool#dispatch()}).
          */
-        protected Runnable task;
-        /**
-         * The time a Slave is waiting before asking for release.
-         */
-        protected final long liveTime;
-
-
-        public Slave(final String name, final long liveTime, final ThreadPool master) {
-            this(name, liveTime, master, null);
-        }
+        protected final AtomicInteger state = new AtomicInteger(RUNNING);
 
         /**
-         * Create a new Thread.
-         * If a task is given as param, the task will be directly executed with out sleeping before.
+         * Create a new Thread, not started.
          *
-         * @param name     the name of the Slave.
-         * @param liveTime the time a Slave is waiting before asking for release.
-         * @param master   the ThreadPool owning this Slave.
+         * @param name   the name of the Slave.
+         * @param master the ThreadPool owning this Slave.
          */
-        public Slave(final String name, final long liveTime, final ThreadPool master, @Nullable final Runnable task) {
-            this.alwaysServing = true;
-            this.liveTime = liveTime;
-            this.task = task;
-            this.worker = new Thread(() -> {
-                while (alwaysServing) {
-                    try {
-                        if (this.task == null)
-                            Thread.sleep(liveTime);
-                    } catch (InterruptedException ignored) {
-                    }
-                    if (this.task == null && master.freeSlave(this))
-                        this.alwaysServing = false;
-                    if (this.task != null)
-                        try {
-                            this.task.run();
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    this.task = null;
-                }
-            });
-            this.worker.setName(name);
-            this.worker.start();
+        public Slave(final String name, final ThreadPool master) {
+            this.master = master;
+            this.worker = master.threadMode.newThread(this::serve, name);
         }
 
         /**
-         * Ask the Slave to work on a task.
+         * Wake up the Slave if it is idle.
          *
-         * @param task the task to run.
+         * @return true if the Slave was idle and will look for tasks.
          */
-        protected void workOn(final Runnable task) {
-            if (this.task != null) {
-                System.err.println("THREAD AS ALREADY A RUNNING TASK !!");
-                return;
+        protected boolean wake() {
+            if (this.state.compareAndSet(IDLE, WOKEN)) {
+                LockSupport.unpark(this.worker);
+                return true;
             }
-
-            this.task = task;
-            this.worker.interrupt();
-        }
-
-        /**
-         * @return if the Slave has been released.
-         */
-        protected boolean isFree() {
-            return this.task == null;
-        }
-
-        /**
-         * @return if the Slave is currently working.
-         */
-        protected boolean isWorking() {
-            return this.task != null;
+            return false;
         }
 
         /**
@@ -206,13 +366,63 @@ public class ThreadPool {
             return this.worker.getName();
         }
 
+        private void serve() {
+            try {
+                while (true) {
+                    // Counted active before polling, so a Slave holding a task is never seen as free by dispatch().
+                    this.master.activeSlaves.incrementAndGet();
+                    final Runnable task = this.master.tasks.poll();
+                    if (task != null) {
+                        this.master.queued.decrementAndGet();
+                        TOTAL_QUEUED.decrement();
+                        TOTAL_ACTIVE.increment();
+                        try {
+                            task.run();
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        } finally {
+                            this.master.activeSlaves.decrementAndGet();
+                            TOTAL_ACTIVE.decrement();
+                        }
+                        continue;
+                    }
+                    this.master.activeSlaves.decrementAndGet();
+                    if (!waitTask())
+                        return;
+                }
+            } finally {
+                this.master.slaves.remove(this);
+                logger.debug("{} free. Current {} slaves alive.", getName(), this.master.aliveSlaves.get());
+            }
+        }
+
         /**
-         * Stop the Thread.
+         * Park until woken up by {@link ThreadPool#dispatch()} or until {@link ThreadPool#liveTime} ms are elapsed.
+         *
+         * @return true if the Slave must look for tasks, false if it is released.
          */
-        protected void release() {
-            this.alwaysServing = false;
-            workOn(() -> {
-            });
+        private boolean waitTask() {
+            Thread.interrupted();
+            this.state.set(IDLE);
+            this.master.idleSlaves.offerFirst(this);
+
+            // A task queued before this Slave was visible as idle.
+            if ((!this.master.tasks.isEmpty() || this.master.destroyed) && this.state.compareAndSet(IDLE, RUNNING)) {
+                this.master.idleSlaves.removeFirstOccurrence(this);
+                return !this.master.destroyed || !this.master.tasks.isEmpty() || !this.master.tryRelease();
+            }
+
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.master.liveTime);
+            long remaining;
+            while (this.state.get() == IDLE && !this.master.destroyed && (remaining = deadline - System.nanoTime()) > 0)
+                LockSupport.parkNanos(this, remaining);
+
+            if (this.state.compareAndSet(IDLE, RUNNING)) {
+                this.master.idleSlaves.removeFirstOccurrence(this);
+                return !this.master.tryRelease();
+            }
+            this.state.set(RUNNING);
+            return true;
         }
     }
 
@@ -0,0 +1,257 @@
+package fr.jazer.thread_manager;
+
+import fr.jazer.logger.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed wheel timer : a single Thread runs the timeouts of any number of Sessions.
+ * <p>
+ * Timeouts are hashed in the buckets of a wheel turning one bucket per tick. Scheduling and cancelling are O(1),
+ * a tick only visits the timeouts of its bucket. Timeouts expire at most one tick late.
+ * <p>
+ * Tasks run on the timer Thread and must be short, longer work is given to a {@link ThreadPool}.
+ */
+public class WheelTimer {
+
+    private static final Logger logger = Logger.loggerOfStatic(WheelTimer.class);
+
+    public static final long DEFAULT_TICK_MS = 100;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+    /**
+     * Maximum number of new timeouts put in the wheel by tick, the others wait the next tick.
+     */
+    private static final int MAX_TRANSFER_BY_TICK = 100_000;
+
+    private static WheelTimer defaultTimer;
+
+    protected final long tickNanos;
+    protected final Bucket[] wheel;
+    protected final int mask;
+    /**
+     * Timeouts scheduled by any Thread, put in the wheel by the timer Thread.
+     */
+    protected final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    /**
+     * Timeouts cancelled by any Thread, removed from the wheel by the timer Thread.
+     */
+    protected final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    protected final long startTime = System.nanoTime();
+    protected final Thread worker;
+
+    /**
+     * Ticks done, only used by the timer Thread.
+     */
+    protected long tick;
+    protected volatile boolean running = true;
+
+    /**
+     * @param name      name of the timer Thread.
+     * @param tick      duration of a tick, the precision of the timer.
+     * @param unit      unit of the tick.
+     * @param wheelSize number of buckets, rounded to a power of two. Timeouts further than a turn wait in their bucket.
+     */
+    public WheelTimer(final String name, final long tick, final TimeUnit unit, final int wheelSize) {
+        this.tickNanos = Math.max(unit.toNanos(tick), TimeUnit.MILLISECONDS.toNanos(1));
+        final int size = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+            this.wheel[i] = new Bucket();
+        this.mask = size - 1;
+        this.worker = new Thread(this::internalLoop);
+        this.worker.setName(name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * @return the timer shared by all Sessions, ticking every {@link WheelTimer#DEFAULT_TICK_MS} ms.
+     */
+    public static synchronized WheelTimer getDefault() {
+        if (defaultTimer == null)
+            defaultTimer = new WheelTimer("Jazer-Timer", DEFAULT_TICK_MS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+        return defaultTimer;
+    }
+
+    /**
+     * Run a task once after a delay.
+     *
+     * @param task  the task, run on the timer Thread.
+     * @param delay the delay.
+     * @param unit  unit of the delay.
+     * @return the timeout, to cancel it.
+     */
+    public Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        final Timeout timeout = new Timeout(this, task, System.nanoTime() - this.startTime + unit.toNanos(Math.max(delay, 0)));
+        this.scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stop the timer Thread, pending timeouts never expire.
+     */
+    public void shutdown() {
+        this.running = false;
+        LockSupport.unpark(this.worker);
+    }
+
+    /**
+     * @return the number of timeouts waiting to be put in the wheel.
+     */
+    public int getScheduledCount() {
+        return this.scheduled.size();
+    }
+
+    private void internalLoop() {
+        while (this.running) {
+            final long deadline = this.tickNanos * (this.tick + 1);
+            long sleep;
+            while (this.running && (sleep = deadline - (System.nanoTime() - this.startTime)) > 0)
+                LockSupport.parkNanos(this, sleep);
+            if (!this.running)
+                return;
+
+            removeCancelled();
+            transferScheduled();
+            this.wheel[(int) (this.tick & this.mask)].expire(deadline);
+            this.tick++;
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = this.cancelled.poll()) != null)
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+    }
+
+    private void transferScheduled() {
+        Timeout timeout;
+        for (int i = 0; i < MAX_TRANSFER_BY_TICK && (timeout = this.scheduled.poll()) != null; i++) {
+            if (timeout.state.get() == Timeout.CANCELLED)
+                continue;
+            final long expireTick = timeout.deadline / this.tickNanos;
+            timeout.remainingRounds = (expireTick - this.tick) / this.wheel.length;
+            // Timeouts already late expire on this tick.
+            this.wheel[(int) (Math.max(expireTick, this.tick) & this.mask)].add(timeout);
+        }
+    }
+
+    /**
+     * A task scheduled on a {@link WheelTimer}.
+     */
+    public static class Timeout {
+
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        protected final WheelTimer timer;
+        protected final Runnable task;
+        /**
+         * Nanos from the start of the timer.
+         */
+        protected final long deadline;
+        protected final AtomicInteger state = new AtomicInteger(WAITING);
+
+        // Only used by the timer Thread.
+        long remainingRounds;
+        Bucket bucket;
+        Timeout previous;
+        Timeout next;
+
+        protected Timeout(final WheelTimer timer, final Runnable task, final long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel the timeout if it didn't expire yet.
+         *
+         * @return false if the timeout already expired or was cancelled.
+         */
+        public boolean cancel() {
+            if (!this.state.compareAndSet(WAITING, CANCELLED))
+                return false;
+            this.timer.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return this.state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return this.state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!this.state.compareAndSet(WAITING, EXPIRED))
+                return;
+            try {
+                this.task.run();
+            } catch (Throwable e) {
+                logger.err("Timer task failed : {}", e);
+            }
+        }
+    }
+
+    /**
+     * A bucket of the wheel, a doubly linked list of timeouts. Only used by the timer Thread.
+     */
+    protected static class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add(final Timeout timeout) {
+            timeout.bucket = this;
+            if (this.head == null) {
+                this.head = this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                timeout.previous = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        /**
+         * Expire the timeouts of their last round, the others wait one more turn.
+         */
+        void expire(final long deadline) {
+            Timeout timeout = this.head;
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(final Timeout timeout) {
+            if (timeout.bucket != this)
+                return;
+            if (timeout.previous != null)
+                timeout.previous.next = timeout.next;
+            else
+                this.head = timeout.next;
+            if (timeout.next != null)
+                timeout.next.previous = timeout.previous;
+            else
+                this.tail = timeout.previous;
+            timeout.previous = timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import fr.jazer.logger.Level;
+import fr.jazer.logger.Logger;
+import fr.jazer.session.SPacket;
+import fr.jazer.session.Session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * Compare packets/sec of {@link Session#send(SPacket)} with the previous implementation writing
+ * the length, the packetNumber and the data with three calls and a flush.
+ * <p>
+ * The other side of the socket only drains the bytes, so only the send path is measured.
+ */
+public class SendBenchmark {
+
+    private static final int PORT = 5557;
+    private static final long WARMUP_MS = 1000;
+    private static final long MEASURE_MS = 3000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Logger.setLevel(LegacySession.class, Level.WARN);
+        final ServerSocket server = new ServerSocket(PORT);
+        final Thread drainer = new Thread(() -> {
+            try {
+                while (!server.isClosed()) {
+                    final Socket socket = server.accept();
+                    new Thread(() -> drain(socket)).start();
+                }
+            } catch (IOException ignored) {
+            }
+        });
+        drainer.setDaemon(true);
+        drainer.start();
+
+        System.out.printf("%-10s %20s %20s %10s%n", "payload", "legacy (packets/s)", "current (packets/s)", "ratio");
+        for (final int size : new int[]{16, 1024, 64 * 1024}) {
+            final SPacket packet = new SPacket(1, new byte[size]);
+            final double legacy = measure(new LegacySession(), packet);
+            final double current = measure(new Session(), packet);
+            System.out.printf("%-10s %20.0f %20.0f %10.2f%n", size + "B", legacy, current, current / legacy);
+        }
+
+        server.close();
+        System.exit(0);
+    }
+
+    private static double measure(final Session session, final SPacket packet) throws InterruptedException {
+        session.connect("localhost", PORT);
+        sendFor(session, packet, WARMUP_MS);
+        final long start = System.nanoTime();
+        final long sent = sendFor(session, packet, MEASURE_MS);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        session.destroy();
+        return sent / seconds;
+    }
+
+    private static long sendFor(final Session session, final SPacket packet, final long ms) {
+        final long end = System.currentTimeMillis() + ms;
+        long sent = 0;
+        while (System.currentTimeMillis() < end) {
+            for (int i = 0; i < 100; i++)
+                session.send(packet);
+            sent += 100;
+        }
+        return sent;
+    }
+
+    private static void drain(final Socket socket) {
+        try (InputStream in = socket.getInputStream()) {
+            final byte[] buffer = new byte[64 * 1024];
+            while (in.read(buffer) >= 0) ;
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * The send path before the single write framing.
+     */
+    private static class LegacySession extends Session {
+        @Override
+        protected void writePacket(final SPacket packet) throws IOException {
+            final OutputStream out = socket.getOutputStream();
+            out.write(ByteBuffer.allocate(4).putInt(packet.getData().length).array());
+            out.write(ByteBuffer.allocate(4).putInt(packet.getTag()).array());
+            out.write(packet.getData());
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import fr.jazer.session.Session;
+import fr.jazer.session.SessionServer;
+import fr.jazer.session.utils.ConnectionStatus;
+import fr.jazer.thread_manager.ThreadMode;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connect a lot of idle Sessions to a SessionServer in the same JVM and print the resources used.
+ * <p>
+ * Run with : gradle loadTest -PvirtualThreads -Psessions=50000
+ * <p>
+ * Each Session is connected twice in this JVM (client and server side), the open files limit must be above 2 * sessions.
+ * Clients are spread on several loopback addresses to not run out of ephemeral ports.
+ */
+public class VirtualThreadsLoadTest {
+
+    private static final int PORT = 5556;
+    private static final int LOOPBACK_ADDRESSES = 8;
+
+    public static void main(String[] args) throws InterruptedException {
+        final int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        System.out.println("Thread mode : " + ThreadMode.getDefault() + " (virtual supported : " + ThreadMode.isVirtualSupported() + ")");
+
+        final AtomicInteger accepted = new AtomicInteger();
+        final SessionServer server = new SessionServer();
+        server.addSessionListener(session -> accepted.incrementAndGet());
+        server.openSession(PORT);
+
+        final List<Session> clients = new ArrayList<>(sessions);
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < sessions; i++) {
+            final Session client = new Session();
+            if (client.connect("127.0.0." + (1 + i % LOOPBACK_ADDRESSES), PORT) != ConnectionStatus.CONNECTED) {
+                System.out.println("Couldn't connect session " + i + ", stopping.");
+                break;
+            }
+            clients.add(client);
+            if ((i + 1) % 5000 == 0)
+                System.out.println((i + 1) + " sessions connected.");
+        }
+
+        while (accepted.get() < clients.size() && System.currentTimeMillis() - start < 120000)
+            Thread.sleep(100);
+        System.gc();
+        Thread.sleep(1000);
+
+        final Runtime runtime = Runtime.getRuntime();
+        System.out.println("------------------");
+        System.out.println("Connected sessions : " + clients.size() + ", accepted : " + accepted.get() + " in " + (System.currentTimeMillis() - start) + "ms");
+        System.out.println("Heap used : " + (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024) + "MB / max " + runtime.maxMemory() / (1024 * 1024) + "MB");
+        System.out.println("Platform threads : " + ManagementFactory.getThreadMXBean().getThreadCount());
+
+        clients.forEach(Session::destroy);
+        server.destroy();
+        System.exit(0);
+    }
+}
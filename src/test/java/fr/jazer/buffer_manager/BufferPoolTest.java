@@ -0,0 +1,57 @@
+package fr.jazer.buffer_manager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+
+    @AfterEach
+    void disableLeakDetection() {
+        BufferPool.setLeakDetection(false);
+    }
+
+    @Test
+    void recyclesReleasedArrays() {
+        final BufferPool pool = new BufferPool();
+        final PooledBuffer buffer = pool.acquire(100);
+        assertEquals(128, buffer.capacity());
+        final byte[] array = buffer.array();
+        assertTrue(buffer.release());
+        assertEquals(1, pool.freeBuffers());
+        assertSame(array, pool.acquire(120).array());
+        assertEquals(0, pool.freeBuffers());
+    }
+
+    @Test
+    void rejectsUseAfterTheLastRelease() {
+        final PooledBuffer buffer = new BufferPool().acquire(10);
+        buffer.release();
+        assertThrows(IllegalStateException.class, buffer::array);
+        assertThrows(IllegalStateException.class, buffer::retain);
+        assertThrows(IllegalStateException.class, buffer::release);
+    }
+
+    @Test
+    void detectsBuffersNeverReleased() {
+        final BufferPool pool = new BufferPool();
+        BufferPool.setLeakDetection(true);
+        final PooledBuffer leaked = pool.acquire(10);
+        final PooledBuffer released = pool.acquire(10);
+        released.release();
+        assertEquals(1, BufferPool.leaks().size());
+        assertEquals(1, BufferPool.reportLeaks());
+        leaked.release();
+        assertEquals(0, BufferPool.leaks().size());
+    }
+
+    @Test
+    void doesntPoolHugeBuffers() {
+        final BufferPool pool = new BufferPool();
+        final PooledBuffer buffer = pool.acquire(BufferPool.MAX_CLASS_SIZE + 1);
+        assertEquals(BufferPool.MAX_CLASS_SIZE + 1, buffer.capacity());
+        assertTrue(buffer.release());
+        assertEquals(0, pool.freeBuffers());
+    }
+}
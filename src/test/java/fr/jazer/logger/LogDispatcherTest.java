@@ -0,0 +1,42 @@
+package fr.jazer.logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogDispatcherTest {
+
+    @AfterEach
+    void restoreConsole() {
+        Logger.setSink(new ConsoleSink());
+        Logger.flush();
+    }
+
+    @Test
+    void fallsBackToTheConsoleWhenTheSinkThrows() {
+        final AtomicInteger writes = new AtomicInteger();
+        Logger.setSink(new LogSink() {
+            @Override
+            public void write(final CharSequence lines) {
+                writes.incrementAndGet();
+                throw new IllegalStateException("Expected by the test.");
+            }
+
+            @Override
+            public void flush() {
+            }
+        });
+        final Logger logger = Logger.loggerOfStatic(LogDispatcherTest.class);
+        logger.err("Lost with the failing sink.");
+        Logger.flush();
+        logger.err("Written to the console.");
+        Logger.flush();
+
+        assertEquals(1, writes.get());
+        assertTrue(LogDispatcher.get().worker.isAlive());
+        assertTrue(LogDispatcher.get().sink instanceof ConsoleSink);
+    }
+}
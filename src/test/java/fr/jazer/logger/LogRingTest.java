@@ -0,0 +1,103 @@
+package fr.jazer.logger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogRingTest {
+
+    @Test
+    void roundsItsCapacityToAPowerOfTwo() {
+        assertEquals(4, new LogRing(4).slots.length);
+        assertEquals(8, new LogRing(5).slots.length);
+        assertEquals(1024, new LogRing(1000).slots.length);
+    }
+
+    @Test
+    void dropsWhenFull() {
+        final LogRing ring = new LogRing(4);
+        for (int i = 0; i < 4; i++)
+            assertTrue(offer(ring, "event " + i));
+        assertFalse(offer(ring, "dropped"));
+        assertEquals(4, ring.published());
+
+        final LogRing.Event event = ring.poll();
+        assertEquals("event 0", event.message);
+        ring.release(event);
+        assertTrue(offer(ring, "event 4"));
+        assertFalse(offer(ring, "dropped"));
+    }
+
+    @Test
+    void wrapsAroundInOrder() {
+        final LogRing ring = new LogRing(4);
+        int read = 0;
+        for (int written = 0; written < 100; written++) {
+            assertTrue(offer(ring, "event " + written));
+            if (written % 3 == 2) {
+                LogRing.Event event;
+                while ((event = ring.poll()) != null) {
+                    assertEquals("event " + read++, event.message);
+                    ring.release(event);
+                }
+                assertTrue(ring.isEmpty());
+            }
+        }
+        LogRing.Event event;
+        while ((event = ring.poll()) != null) {
+            assertEquals("event " + read++, event.message);
+            ring.release(event);
+        }
+        assertEquals(100, read);
+    }
+
+    @Test
+    void clearsTheReleasedSlots() {
+        final LogRing ring = new LogRing(2);
+        final Object arg = new Object();
+        ring.offer(1, Level.INFO, null, "{}", 1, arg, null, null, null);
+        final LogRing.Event event = ring.poll();
+        assertSame(arg, event.arg1);
+        ring.release(event);
+        assertNull(event.arg1);
+        assertNull(event.message);
+        assertNull(ring.poll());
+    }
+
+    @Test
+    void neverLosesNorDuplicatesConcurrentEvents() throws InterruptedException {
+        final LogRing ring = new LogRing(64);
+        final int producers = 4;
+        final int events = 20_000;
+        final Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < events; i++)
+                    while (!ring.offer(i, Level.INFO, null, null, producer, null, null, null, null))
+                        Thread.onSpinWait();
+            });
+            threads[p].start();
+        }
+        final long[] next = new long[producers];
+        int read = 0;
+        while (read < producers * events) {
+            final LogRing.Event event = ring.poll();
+            if (event == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            // Each producer publishes its events in order.
+            assertEquals(next[event.argCount]++, event.time);
+            ring.release(event);
+            read++;
+        }
+        for (final Thread thread : threads)
+            thread.join();
+        assertTrue(ring.isEmpty());
+    }
+
+    private static boolean offer(final LogRing ring, final String message) {
+        return ring.offer(0, Level.INFO, null, message, 0, null, null, null, null);
+    }
+}
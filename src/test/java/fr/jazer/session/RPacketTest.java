@@ -0,0 +1,49 @@
+package fr.jazer.session;
+
+import fr.jazer.buffer_manager.BufferPool;
+import fr.jazer.buffer_manager.PooledBuffer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RPacketTest {
+
+    private static RPacket pooled(final byte... data) {
+        final PooledBuffer buffer = new BufferPool().acquire(data.length);
+        System.arraycopy(data, 0, buffer.array(), 0, data.length);
+        return new RPacket(1, buffer, data.length);
+    }
+
+    @Test
+    void pooledPacketCantBeReadAfterItsLastRelease() {
+        final RPacket packet = pooled((byte) 1, (byte) 2);
+        assertTrue(packet.release());
+        assertThrows(IllegalStateException.class, packet::getData);
+        assertThrows(IllegalStateException.class, packet::getArray);
+    }
+
+    @Test
+    void retainedPacketStaysReadable() {
+        final RPacket packet = pooled((byte) 1, (byte) 2);
+        packet.retain();
+        assertFalse(packet.release());
+        assertArrayEquals(new byte[]{1, 2}, packet.getData());
+        assertTrue(packet.release());
+    }
+
+    @Test
+    void detachedPacketStaysReadableAfterRelease() {
+        final RPacket packet = pooled((byte) 1, (byte) 2, (byte) 3).detach();
+        assertFalse(packet.release());
+        assertFalse(packet.release());
+        assertArrayEquals(new byte[]{1, 2, 3}, packet.getData());
+        assertEquals(3, packet.getLength());
+    }
+
+    @Test
+    void plainPacketIgnoresRelease() {
+        final RPacket packet = new RPacket(1, new byte[]{4, 5});
+        assertFalse(packet.retain().release());
+        assertArrayEquals(new byte[]{4, 5}, packet.getArray());
+    }
+}
@@ -0,0 +1,93 @@
+package fr.jazer.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetransmitBufferTest {
+
+    private static EncodedFrame frame(final int tag, final int size) {
+        return new EncodedFrame(new SPacket(tag, new byte[size]));
+    }
+
+    private static int tagOf(final EncodedFrame frame) {
+        final byte[] b = frame.getArray();
+        return ((b[4] & 0xFF) << 24) | ((b[5] & 0xFF) << 16) | ((b[6] & 0xFF) << 8) | (b[7] & 0xFF);
+    }
+
+    @Test
+    void numbersFramesInWriteOrder() {
+        final RetransmitBuffer buffer = new RetransmitBuffer();
+        for (int tag = 0; tag < 3; tag++)
+            buffer.add(frame(tag, 2));
+        assertEquals(0, buffer.getFirstSequence());
+        assertEquals(3, buffer.getNextSequence());
+        assertEquals(30, buffer.getBytes());
+    }
+
+    @Test
+    void acknowledgeReleasesTheReceivedFrames() {
+        final RetransmitBuffer buffer = new RetransmitBuffer();
+        final EncodedFrame first = frame(1, 0);
+        buffer.add(first);
+        buffer.add(frame(2, 0));
+        buffer.add(frame(3, 0));
+
+        buffer.acknowledge(2);
+        assertEquals(2, buffer.getFirstSequence());
+        assertEquals(3, buffer.getNextSequence());
+        assertThrows(IllegalStateException.class, first::getArray);
+        // Acknowledgements are cumulative, an old one changes nothing.
+        buffer.acknowledge(1);
+        assertEquals(2, buffer.getFirstSequence());
+        // More than written empties the buffer without moving past the last frame.
+        buffer.acknowledge(10);
+        assertEquals(3, buffer.getFirstSequence());
+        assertEquals(3, buffer.getNextSequence());
+        assertEquals(0, buffer.getBytes());
+    }
+
+    @Test
+    void replaysTheUnacknowledgedFramesInOrder() {
+        final RetransmitBuffer buffer = new RetransmitBuffer();
+        for (int tag = 0; tag < 5; tag++)
+            buffer.add(frame(tag, 4));
+        buffer.acknowledge(2);
+        final List<EncodedFrame> pending = buffer.getPending();
+        assertEquals(3, pending.size());
+        for (int i = 0; i < pending.size(); i++)
+            assertEquals(i + 2, tagOf(pending.get(i)));
+    }
+
+    @Test
+    void dropsTheOldestFramesAboveItsCapacity() {
+        final RetransmitBuffer buffer = new RetransmitBuffer();
+        buffer.setCapacity(30);
+        final EncodedFrame oldest = frame(0, 2);
+        buffer.add(oldest);
+        buffer.add(frame(1, 2));
+        buffer.add(frame(2, 2));
+        assertEquals(0, buffer.getFirstSequence());
+        buffer.add(frame(3, 2));
+        // The other side can't resume if it didn't receive the dropped frame.
+        assertEquals(1, buffer.getFirstSequence());
+        assertEquals(4, buffer.getNextSequence());
+        assertEquals(30, buffer.getBytes());
+        assertThrows(IllegalStateException.class, oldest::getArray);
+    }
+
+    @Test
+    void resetStartsTheNumberingAgain() {
+        final RetransmitBuffer buffer = new RetransmitBuffer();
+        buffer.add(frame(1, 1));
+        buffer.add(frame(2, 1));
+        buffer.acknowledge(1);
+        buffer.reset();
+        assertEquals(0, buffer.getFirstSequence());
+        assertEquals(0, buffer.getNextSequence());
+        assertEquals(0, buffer.getBytes());
+        assertTrue(buffer.getPending().isEmpty());
+    }
+}
@@ -0,0 +1,161 @@
+package fr.jazer.session.channel;
+
+import fr.jazer.session.RPacket;
+import fr.jazer.session.SPacket;
+import fr.jazer.session.Session;
+import fr.jazer.session.utils.ReservedTags;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelTest {
+
+    /**
+     * A Session keeping the frames it sends, without socket.
+     */
+    private static class CapturingSession extends Session {
+        final List<RPacket> sent = new CopyOnWriteArrayList<>();
+
+        @Override
+        public boolean send(final SPacket packet) {
+            this.sent.add(new RPacket(packet.getTag(), Arrays.copyOf(packet.getArray(), packet.getLength())));
+            return true;
+        }
+
+        RPacket last(final int tag) {
+            for (int i = this.sent.size() - 1; i >= 0; i--)
+                if (this.sent.get(i).getTag() == tag)
+                    return this.sent.get(i);
+            return null;
+        }
+    }
+
+    private final CapturingSession session = new CapturingSession();
+    private final ChannelManager manager = new ChannelManager(this.session);
+
+    @AfterEach
+    void destroy() {
+        this.session.destroy();
+    }
+
+    private static RPacket frame(final int tag, final int... values) {
+        final ByteBuffer data = ByteBuffer.allocate(4 * values.length);
+        for (final int value : values)
+            data.putInt(value);
+        return new RPacket(tag, data.array());
+    }
+
+    private static RPacket data(final int id, final int tag, final int length) {
+        return new RPacket(ReservedTags.CHANNEL_DATA, ByteBuffer.allocate(ChannelManager.DATA_HEADER + length).putInt(id).putInt(tag).array());
+    }
+
+    private static int getInt(final RPacket packet, final int offset) {
+        return ByteBuffer.wrap(packet.getArray()).getInt(offset);
+    }
+
+    @Test
+    void announcesItsWindowWhenOpened() {
+        final Channel channel = this.manager.open(false, 100);
+        final RPacket open = this.session.last(ReservedTags.CHANNEL_OPEN);
+        assertEquals(channel.getId(), getInt(open, 0));
+        assertEquals(100, getInt(open, 4));
+        // No credit before the other side answered.
+        assertEquals(0, channel.getSendCredit());
+    }
+
+    @Test
+    void closesAChannelReceivingBeyondItsWindow() {
+        final Channel channel = this.manager.open(false, 100);
+        // A sender with credit left can go beyond the window by one packet.
+        this.manager.onFrame(data(channel.getId(), 1, 60));
+        this.manager.onFrame(data(channel.getId(), 1, 60));
+        assertTrue(channel.isOpen());
+        assertEquals(2, channel.getPacketFlux().getQueueSize(1));
+
+        this.manager.onFrame(data(channel.getId(), 1, 60));
+        assertFalse(channel.isOpen());
+        assertEquals(channel.getId(), getInt(this.session.last(ReservedTags.CHANNEL_CLOSE), 0));
+        assertEquals(0, this.manager.size());
+    }
+
+    @Test
+    void givesCreditBackByHalfWindow() {
+        final Channel channel = this.manager.open(false, 100);
+        this.manager.onFrame(data(channel.getId(), 1, 32));
+        this.manager.onFrame(data(channel.getId(), 1, 32));
+
+        channel.read(1).release();
+        assertNull(this.session.last(ReservedTags.CHANNEL_CREDIT));
+        channel.read(1).release();
+        final RPacket credit = this.session.last(ReservedTags.CHANNEL_CREDIT);
+        assertEquals(channel.getId(), getInt(credit, 0));
+        assertEquals(80, getInt(credit, 4));
+
+        // The window is free again.
+        this.manager.onFrame(data(channel.getId(), 1, 60));
+        this.manager.onFrame(data(channel.getId(), 1, 20));
+        assertTrue(channel.isOpen());
+    }
+
+    @Test
+    void senderWaitsForCredit() throws InterruptedException {
+        final Channel channel = this.manager.open(false, 100);
+        final AtomicBoolean sent = new AtomicBoolean();
+        final Thread sender = new Thread(() -> sent.set(channel.send(new SPacket(1, new byte[10]))));
+        sender.start();
+        sender.join(100);
+        assertTrue(sender.isAlive());
+        assertNull(this.session.last(ReservedTags.CHANNEL_DATA));
+
+        this.manager.onFrame(frame(ReservedTags.CHANNEL_CREDIT, channel.getId(), 50));
+        sender.join(5000);
+        assertTrue(sent.get());
+        assertEquals(50 - ChannelManager.DATA_HEADER - 10, channel.getSendCredit());
+        assertEquals(channel.getId(), getInt(this.session.last(ReservedTags.CHANNEL_DATA), 0));
+    }
+
+    @Test
+    void closeWakesUpTheSender() throws InterruptedException {
+        final Channel channel = this.manager.open(false, 100);
+        final AtomicBoolean sent = new AtomicBoolean(true);
+        final Thread sender = new Thread(() -> sent.set(channel.send(new SPacket(1, new byte[10]))));
+        sender.start();
+        sender.join(50);
+        this.manager.onFrame(frame(ReservedTags.CHANNEL_CLOSE, channel.getId()));
+        sender.join(5000);
+        assertFalse(sender.isAlive());
+        assertFalse(sent.get());
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    void dropsMalformedFrames() {
+        final Channel channel = this.manager.open(false, 100);
+        assertTrue(this.manager.onFrame(new RPacket(ReservedTags.CHANNEL_DATA, new byte[7])));
+        assertTrue(this.manager.onFrame(new RPacket(ReservedTags.CHANNEL_CREDIT, new byte[4])));
+        assertTrue(this.manager.onFrame(new RPacket(ReservedTags.CHANNEL_OPEN, new byte[5])));
+        assertTrue(this.manager.onFrame(new RPacket(ReservedTags.CHANNEL_CLOSE, new byte[3])));
+        assertTrue(channel.isOpen());
+        assertEquals(0, channel.getSendCredit());
+        assertEquals(1, this.manager.size());
+        assertFalse(this.manager.onFrame(new RPacket(1, new byte[8])));
+    }
+
+    @Test
+    void acceptsAChannelOpenedByTheOtherSideOnce() {
+        this.manager.onFrame(frame(ReservedTags.CHANNEL_OPEN, 2, 300));
+        this.manager.onFrame(frame(ReservedTags.CHANNEL_OPEN, 2, 300));
+        assertEquals(1, this.manager.size());
+        final RPacket credit = this.session.last(ReservedTags.CHANNEL_CREDIT);
+        assertEquals(2, getInt(credit, 0));
+        assertEquals(ChannelManager.DEFAULT_WINDOW, getInt(credit, 4));
+        assertEquals(1, this.session.sent.size());
+    }
+}
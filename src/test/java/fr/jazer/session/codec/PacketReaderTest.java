@@ -0,0 +1,112 @@
+package fr.jazer.session.codec;
+
+import fr.jazer.session.RPacket;
+import fr.jazer.session.SPacket;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PacketReaderTest {
+
+    private static RPacket received(final SPacket packet) {
+        return new RPacket(packet.getTag(), Arrays.copyOf(packet.getArray(), packet.getLength()));
+    }
+
+    private static PacketReader reader(final int... bytes) {
+        final byte[] array = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++)
+            array[i] = (byte) bytes[i];
+        return new PacketReader(array, 0, array.length);
+    }
+
+    @Test
+    void readsWhatTheWritersAppended() {
+        final SPacket packet = new SPacket(1).writeByte(-3).writeBoolean(true).writeShort(-2).writeInt(0xCAFEBABE)
+                .writeLong(Long.MIN_VALUE + 7).writeFloat(1.5f).writeDouble(-2.25).writeUtf("héllo").writeBytes(new byte[]{4, 5}, 0, 2);
+        final PacketReader reader = received(packet).reader();
+        assertEquals(-3, reader.readByte());
+        assertTrue(reader.readBoolean());
+        assertEquals(-2, reader.readShort());
+        assertEquals(0xCAFEBABE, reader.readInt());
+        assertEquals(Long.MIN_VALUE + 7, reader.readLong());
+        assertEquals(1.5f, reader.readFloat());
+        assertEquals(-2.25, reader.readDouble());
+        assertEquals("héllo", reader.readUtf());
+        final ByteBuffer slice = reader.readSlice(2);
+        assertTrue(slice.isReadOnly());
+        assertEquals(4, slice.get(0));
+        assertEquals(0, reader.remaining());
+    }
+
+    @Test
+    void roundTripsVarintsAtTheirBoundaries() {
+        final int[] ints = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        final int[] sizes = {1, 1, 1, 2, 2, 3, 5, 5, 5};
+        for (int i = 0; i < ints.length; i++) {
+            final SPacket packet = new SPacket(1).writeVarInt(ints[i]);
+            assertEquals(sizes[i], packet.getLength());
+            assertEquals(ints[i], received(packet).reader().readVarInt());
+        }
+        final long[] longs = {0, 127, 128, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        for (final long value : longs)
+            assertEquals(value, received(new SPacket(1).writeVarLong(value)).reader().readVarLong());
+        assertEquals(10, new SPacket(1).writeVarLong(-1).getLength());
+    }
+
+    @Test
+    void zigzagsSignedVarints() {
+        assertEquals(1, new SPacket(1).writeSignedVarInt(-1).getLength());
+        final int[] ints = {0, -1, 1, -64, 64, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        for (final int value : ints)
+            assertEquals(value, received(new SPacket(1).writeSignedVarInt(value)).reader().readSignedVarInt());
+        final long[] longs = {0, -1, Long.MIN_VALUE, Long.MAX_VALUE};
+        for (final long value : longs)
+            assertEquals(value, received(new SPacket(1).writeSignedVarLong(value)).reader().readSignedVarLong());
+    }
+
+    @Test
+    void refusesMalformedVarints() {
+        assertThrows(CodecException.class, () -> reader(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01).readVarInt());
+        assertThrows(CodecException.class, () -> reader(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01).readVarLong());
+        // Truncated : the last byte announces another one.
+        assertThrows(CodecException.class, () -> reader(0x80, 0x80).readVarInt());
+    }
+
+    @Test
+    void neverReadsBeyondItsLimit() {
+        final byte[] array = {1, 2, 3, 4, 5, 6};
+        final PacketReader reader = new PacketReader(array, 1, 3);
+        assertThrows(CodecException.class, reader::readInt);
+        // A failed read doesn't move the cursor.
+        assertEquals(3, reader.remaining());
+        assertEquals(2, reader.readByte());
+        assertThrows(CodecException.class, () -> reader.skip(3));
+        assertThrows(CodecException.class, () -> reader.skip(-1));
+        assertThrows(CodecException.class, () -> reader.readBytes(new byte[3], 0, 3));
+        assertThrows(CodecException.class, () -> reader.readBytes(ByteBuffer.allocate(3)));
+        assertEquals(3, reader.readShort() >> 8);
+        assertThrows(CodecException.class, reader::readByte);
+    }
+
+    @Test
+    void refusesTextsLongerThanTheData() {
+        // Length 10 with 2 bytes of text.
+        assertThrows(CodecException.class, () -> reader(10, 'h', 'i').readUtf());
+        // Negative length, written as a 5 bytes varint.
+        assertThrows(CodecException.class, () -> reader(0xFF, 0xFF, 0xFF, 0xFF, 0x0F).readUtf());
+    }
+
+    @Test
+    void givesEachReaderItsOwnCursor() {
+        final RPacket packet = received(new SPacket(1).writeInt(7).writeInt(8));
+        final PacketReader first = packet.reader();
+        assertEquals(7, first.readInt());
+        final PacketReader second = packet.reader();
+        assertEquals(7, second.readInt());
+        assertEquals(8, first.readInt());
+        assertEquals(8, second.readInt());
+    }
+}
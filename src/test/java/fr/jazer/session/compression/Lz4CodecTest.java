@@ -0,0 +1,111 @@
+package fr.jazer.session.compression;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Lz4CodecTest {
+
+    private final Lz4Codec codec = new Lz4Codec();
+
+    @Test
+    void roundTripsRepetitiveData() throws IOException {
+        final byte[] data = "player moved to 12;34, player moved to 12;35, player moved to 12;36".repeat(200).getBytes(StandardCharsets.UTF_8);
+        final byte[] compressed = compress(data);
+        assertTrue(compressed.length < data.length / 4, "Only " + data.length + " -> " + compressed.length + " bytes.");
+        assertArrayEquals(data, decompress(compressed, data.length));
+    }
+
+    @Test
+    void roundTripsIncompressibleData() throws IOException {
+        final byte[] data = new byte[70_000];
+        new Random(42).nextBytes(data);
+        assertArrayEquals(data, decompress(compress(data), data.length));
+    }
+
+    @Test
+    void roundTripsShortAndOverlappingData() throws IOException {
+        for (final byte[] data : new byte[][]{new byte[0], {1}, "abcdefghijkl".getBytes(StandardCharsets.US_ASCII), new byte[1000]})
+            assertArrayEquals(data, decompress(compress(data), data.length));
+    }
+
+    @Test
+    void keepsItsContextBetweenPackets() throws IOException {
+        final Random random = new Random(7);
+        for (int i = 0; i < 50; i++) {
+            final byte[] data = new byte[random.nextInt(5000)];
+            for (int j = 0; j < data.length; j++)
+                data[j] = (byte) random.nextInt(4);
+            assertArrayEquals(data, decompress(compress(data), data.length));
+        }
+    }
+
+    @Test
+    void refusesATooSmallDestination() {
+        final byte[] data = new byte[100];
+        assertEquals(-1, this.codec.compress(data, 0, data.length, new byte[data.length], 0));
+    }
+
+    @Test
+    void rejectsTruncatedData() {
+        final byte[] data = "abcabcabcabcabcabcabcabcabcabcabcabc".repeat(10).getBytes(StandardCharsets.US_ASCII);
+        final byte[] compressed = compress(data);
+        for (int length = 0; length < compressed.length; length++) {
+            final byte[] truncated = Arrays.copyOf(compressed, length);
+            assertThrows(IOException.class, () -> decompress(truncated, data.length));
+        }
+    }
+
+    @Test
+    void rejectsAWrongOriginalLength() {
+        final byte[] data = "hello hello hello hello hello".getBytes(StandardCharsets.US_ASCII);
+        final byte[] compressed = compress(data);
+        assertThrows(IOException.class, () -> decompress(compressed, data.length - 1));
+        assertThrows(IOException.class, () -> decompress(compressed, data.length + 1));
+    }
+
+    @Test
+    void rejectsAnOffsetBeforeTheData() {
+        // 1 literal then a match 2 bytes back, before the first byte.
+        final byte[] malformed = {0x10, 'a', 0x02, 0x00, 0x00};
+        assertThrows(IOException.class, () -> decompress(malformed, 10));
+        // A match of offset 0.
+        assertThrows(IOException.class, () -> decompress(new byte[]{0x10, 'a', 0x00, 0x00}, 10));
+    }
+
+    @Test
+    void rejectsLiteralsBeyondTheData() {
+        assertThrows(IOException.class, () -> decompress(new byte[]{(byte) 0xF0, (byte) 0xFF, (byte) 0xFF, 1}, 100));
+    }
+
+    @Test
+    void neverThrowsAnotherExceptionOnGarbage() {
+        final Random random = new Random(3);
+        for (int i = 0; i < 10_000; i++) {
+            final byte[] garbage = new byte[1 + random.nextInt(64)];
+            random.nextBytes(garbage);
+            try {
+                decompress(garbage, random.nextInt(256));
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    private byte[] compress(final byte[] data) {
+        final byte[] dst = new byte[this.codec.maxCompressedLength(data.length)];
+        final int length = this.codec.compress(data, 0, data.length, dst, 0);
+        assertTrue(length >= 0);
+        return Arrays.copyOf(dst, length);
+    }
+
+    private byte[] decompress(final byte[] compressed, final int originalLength) throws IOException {
+        final byte[] dst = new byte[originalLength];
+        this.codec.decompress(compressed, 0, compressed.length, dst, 0, originalLength);
+        return dst;
+    }
+}
@@ -0,0 +1,118 @@
+package fr.jazer.session.rpc;
+
+import fr.jazer.session.RPacket;
+import fr.jazer.session.SPacket;
+import fr.jazer.session.Session;
+import fr.jazer.session.stream.DispatchMode;
+import fr.jazer.session.utils.ReservedTags;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RpcManagerTest {
+
+    /**
+     * A Session receiving the frames it sends, without socket.
+     */
+    private static class LoopbackSession extends Session {
+        volatile boolean looping = true;
+        final AtomicInteger sent = new AtomicInteger();
+
+        LoopbackSession() {
+            setPacketDispatchMode(DispatchMode.INLINE);
+        }
+
+        @Override
+        public boolean send(final SPacket packet) {
+            this.sent.incrementAndGet();
+            if (this.looping)
+                receive(packet.getTag(), Arrays.copyOf(packet.getArray(), packet.getLength()));
+            return true;
+        }
+
+        void receive(final int tag, final byte[] data) {
+            this.packetFlux.emitValue(new RPacket(tag, data));
+        }
+
+        RpcManager rpc() {
+            return this.rpc;
+        }
+    }
+
+    private final LoopbackSession session = new LoopbackSession();
+
+    @AfterEach
+    void destroy() {
+        this.session.destroy();
+    }
+
+    private static Throwable failure(final CompletableFuture<RPacket> call) {
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> call.get(5, TimeUnit.SECONDS));
+        return e.getCause();
+    }
+
+    @Test
+    void answersARequestWithTheResponseOfItsHandler() throws Exception {
+        this.session.addRequestHandler(7, request -> new SPacket(7, ("echo " + request.readString()).getBytes(StandardCharsets.UTF_8)));
+        final RPacket response = this.session.request(new SPacket(7, "hello".getBytes(StandardCharsets.UTF_8)), 5000).get(5, TimeUnit.SECONDS);
+        assertEquals(7, response.getTag());
+        assertEquals("echo hello", response.readString());
+        assertEquals(0, this.session.rpc().inFlight());
+    }
+
+    @Test
+    void failsWithoutHandlerOrWhenTheHandlerThrows() {
+        assertTrue(failure(this.session.request(new SPacket(3), 5000)) instanceof RpcException);
+        this.session.addRequestHandler(4, request -> {
+            throw new IllegalStateException("Expected by the test.");
+        });
+        final Throwable cause = failure(this.session.request(new SPacket(4), 5000));
+        assertTrue(cause instanceof RpcException);
+        assertTrue(cause.getMessage().contains("Expected by the test."));
+    }
+
+    @Test
+    void timesOutWithoutResponse() {
+        this.session.looping = false;
+        final CompletableFuture<RPacket> call = this.session.request(new SPacket(1), 50);
+        assertEquals(1, this.session.rpc().inFlight());
+        assertTrue(failure(call) instanceof TimeoutException);
+        assertEquals(0, this.session.rpc().inFlight());
+    }
+
+    @Test
+    void dropsMalformedFrames() throws Exception {
+        this.session.looping = false;
+        final CompletableFuture<RPacket> call = this.session.request(new SPacket(1), 5000);
+        // Shorter than their header.
+        this.session.receive(ReservedTags.RPC_RESPONSE, new byte[4]);
+        this.session.receive(ReservedTags.RPC_REQUEST, new byte[7]);
+        // Response to an unknown call.
+        this.session.receive(ReservedTags.RPC_RESPONSE, new byte[]{0, 0, 0, 42, 0});
+        assertFalse(call.isDone());
+        assertEquals(1, this.session.rpc().inFlight());
+        // The malformed request isn't answered.
+        assertEquals(1, this.session.sent.get());
+
+        this.session.receive(ReservedTags.RPC_RESPONSE, new byte[]{0, 0, 0, 0, 0, 9});
+        assertEquals(9, call.get(5, TimeUnit.SECONDS).getArray()[0]);
+    }
+
+    @Test
+    void failCallsCompletesTheCallsInFlight() {
+        this.session.looping = false;
+        final CompletableFuture<RPacket> call = this.session.request(new SPacket(1), 5000);
+        this.session.rpc().failCalls(new IllegalStateException("Expected by the test."));
+        assertTrue(failure(call) instanceof IllegalStateException);
+        assertEquals(0, this.session.rpc().inFlight());
+    }
+}
@@ -0,0 +1,64 @@
+package fr.jazer.session.stream;
+
+import fr.jazer.session.RPacket;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PacketVirtualStreamTest {
+
+    private static RPacket packet(final int tag) {
+        return new RPacket(tag, new byte[0]);
+    }
+
+    @Test
+    void queuesByTagUntilRead() {
+        final PacketVirtualStream<RPacket> stream = new PacketVirtualStream<>();
+        stream.emitValue(packet(1));
+        stream.emitValue(packet(2));
+        stream.emitValue(packet(1));
+        assertEquals(2, stream.getQueueSize(1));
+        assertEquals(1, stream.getQueueSize(2));
+        assertEquals(1, stream.readASlash(1).getTag());
+        assertEquals(1, stream.getQueueSize(1));
+    }
+
+    @Test
+    void dropsNewTagsBeyondTheLimit() {
+        final PacketVirtualStream<RPacket> stream = new PacketVirtualStream<>();
+        stream.setMaxTags(2);
+        for (int tag = 0; tag < 5; tag++)
+            stream.emitValue(packet(tag));
+        assertEquals(2, stream.getTagCount());
+        assertEquals(3, stream.getDroppedCount());
+        // Known tags still queue.
+        stream.emitValue(packet(1));
+        assertEquals(2, stream.getQueueSize(1));
+    }
+
+    @Test
+    void deliversToReceiversBeyondTheLimit() {
+        final PacketVirtualStream<RPacket> stream = new PacketVirtualStream<>(DeliveryMode.LISTENERS_ONLY, 16, QueueOverflowPolicy.DROP_OLDEST);
+        stream.setDispatchMode(DispatchMode.INLINE);
+        stream.setMaxTags(1);
+        stream.emitValue(packet(1));
+        final List<Integer> received = new ArrayList<>();
+        stream.addReceiver(9, value -> received.add(value.getTag()));
+        stream.emitValue(packet(9));
+        assertEquals(List.of(9), received);
+        assertEquals(0, stream.getDroppedCount());
+    }
+
+    @Test
+    void dropsTheOldestValuesOfAFullQueue() {
+        final PacketVirtualStream<RPacket> stream = new PacketVirtualStream<>(DeliveryMode.QUEUE_ONLY, 2, QueueOverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 5; i++)
+            stream.emitValue(new RPacket(3, new byte[]{(byte) i}));
+        assertEquals(2, stream.getQueueSize(3));
+        assertEquals(3, stream.getDroppedCount());
+        assertEquals(3, stream.readASlash(3).getArray()[0]);
+    }
+}
@@ -0,0 +1,96 @@
+package fr.jazer.session.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagMapTest {
+
+    @Test
+    void createsAValueOnce() {
+        final TagMap<String> map = new TagMap<>();
+        assertNull(map.get(7));
+        assertEquals("7", map.computeIfAbsent(7, Integer::toString));
+        assertEquals("7", map.computeIfAbsent(7, tag -> fail("Value created twice.")));
+        assertEquals("7", map.get(7));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void growsWithoutLosingTags() {
+        final TagMap<Integer> map = new TagMap<>();
+        for (int tag = 0; tag < 1000; tag++) {
+            map.computeIfAbsent(tag, Integer::valueOf);
+            assertEquals(tag + 1, map.size());
+        }
+        for (int tag = 0; tag < 1000; tag++)
+            assertEquals(tag, map.get(tag));
+        assertNull(map.get(1000));
+    }
+
+    @Test
+    void findsCollidingTags() {
+        // Tags sharing their low bits, and the extremes of int.
+        final TagMap<Integer> map = new TagMap<>();
+        final List<Integer> tags = new ArrayList<>();
+        for (int i = 0; i < 64; i++)
+            tags.add(i << 20);
+        tags.add(Integer.MIN_VALUE);
+        tags.add(Integer.MAX_VALUE);
+        tags.add(-1);
+        for (final int tag : tags)
+            map.computeIfAbsent(tag, Integer::valueOf);
+        for (final int tag : tags)
+            assertEquals(tag, map.get(tag));
+        assertNull(map.get(1 << 19));
+        assertEquals(tags.size(), map.size());
+    }
+
+    @Test
+    void removesInTheMiddleOfAProbeChain() {
+        final TagMap<Integer> map = new TagMap<>();
+        for (int tag = 0; tag < 200; tag++)
+            map.computeIfAbsent(tag << 16, Integer::valueOf);
+        for (int tag = 0; tag < 200; tag += 2)
+            assertEquals(tag << 16, map.remove(tag << 16));
+        assertNull(map.remove(0));
+        assertEquals(100, map.size());
+        for (int tag = 0; tag < 200; tag++) {
+            if (tag % 2 == 0)
+                assertNull(map.get(tag << 16));
+            else
+                assertEquals(tag << 16, map.get(tag << 16));
+        }
+    }
+
+    @Test
+    void shrinksAndGrowsAgain() {
+        final TagMap<Integer> map = new TagMap<>();
+        for (int round = 0; round < 3; round++) {
+            for (int tag = 0; tag < 500; tag++)
+                map.computeIfAbsent(tag, Integer::valueOf);
+            for (int tag = 0; tag < 500; tag++)
+                map.remove(tag);
+            assertEquals(0, map.size());
+        }
+        map.computeIfAbsent(3, Integer::valueOf);
+        assertEquals(3, map.get(3));
+    }
+
+    @Test
+    void iteratesOnASnapshot() {
+        final TagMap<Integer> map = new TagMap<>();
+        for (int tag = 0; tag < 10; tag++)
+            map.computeIfAbsent(tag, Integer::valueOf);
+        final List<Integer> values = new ArrayList<>();
+        map.forEach(value -> {
+            values.add(value);
+            map.computeIfAbsent(value + 100, Integer::valueOf);
+        });
+        assertEquals(10, values.size());
+        assertEquals(20, map.size());
+    }
+}
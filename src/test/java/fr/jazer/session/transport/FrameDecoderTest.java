@@ -0,0 +1,87 @@
+package fr.jazer.session.transport;
+
+import fr.jazer.buffer_manager.PooledBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameDecoderTest {
+
+    private final List<String> frames = new ArrayList<>();
+    private final FrameDecoder decoder = new FrameDecoder(1024);
+
+    private void onFrame(final int packetNumber, final PooledBuffer payload, final int length, final int flags) {
+        this.frames.add(packetNumber + ":" + Arrays.toString(Arrays.copyOf(payload.array(), length)) + (flags != 0 ? ":compressed" : ""));
+        payload.release();
+    }
+
+    private static byte[] frame(final int rawLength, final int packetNumber, final byte... data) {
+        return ByteBuffer.allocate(FrameDecoder.HEADER_SIZE + data.length).putInt(rawLength).putInt(packetNumber).put(data).array();
+    }
+
+    private static byte[] frame(final int packetNumber, final byte... data) {
+        return frame(data.length, packetNumber, data);
+    }
+
+    private void decode(final byte[] bytes, final int from, final int to) throws IOException {
+        this.decoder.decode(ByteBuffer.wrap(bytes, from, to - from), this::onFrame);
+    }
+
+    @Test
+    void decodesAFrameSplitByteByByte() throws IOException {
+        final byte[] bytes = frame(7, (byte) 1, (byte) 2, (byte) 3);
+        for (int i = 0; i < bytes.length; i++) {
+            assertTrue(this.frames.isEmpty());
+            decode(bytes, i, i + 1);
+        }
+        assertEquals(List.of("7:[1, 2, 3]"), this.frames);
+    }
+
+    @Test
+    void decodesFramesAcrossChunks() throws IOException {
+        final ByteBuffer stream = ByteBuffer.allocate(64);
+        stream.put(frame(1, (byte) 10)).put(frame(2)).put(frame(3, (byte) 30, (byte) 31));
+        final byte[] bytes = Arrays.copyOf(stream.array(), stream.position());
+        // The first chunk ends in the middle of the header of the second frame.
+        decode(bytes, 0, 12);
+        assertEquals(List.of("1:[10]"), this.frames);
+        decode(bytes, 12, 20);
+        assertEquals(List.of("1:[10]", "2:[]"), this.frames);
+        decode(bytes, 20, bytes.length);
+        assertEquals(List.of("1:[10]", "2:[]", "3:[30, 31]"), this.frames);
+    }
+
+    @Test
+    void keepsTheFlagsOfTheLength() throws IOException {
+        final byte[] bytes = frame(FrameDecoder.COMPRESSED | 1, 5, (byte) 9);
+        decode(bytes, 0, bytes.length);
+        assertEquals(List.of("5:[9]:compressed"), this.frames);
+    }
+
+    @Test
+    void refusesFramesAboveTheMaximum() {
+        // Only the header is received, the buffer of the frame is never allocated.
+        final byte[] header = ByteBuffer.allocate(FrameDecoder.HEADER_SIZE).putInt(1025).putInt(1).array();
+        assertThrows(IOException.class, () -> decode(header, 0, header.length));
+        assertNull(this.decoder.payload);
+        final byte[] forged = ByteBuffer.allocate(FrameDecoder.HEADER_SIZE).putInt(FrameDecoder.LENGTH_MASK).putInt(1).array();
+        assertThrows(IOException.class, () -> new FrameDecoder(1024).decode(ByteBuffer.wrap(forged), this::onFrame));
+    }
+
+    @Test
+    void releasesAPartialFrame() throws IOException {
+        final byte[] bytes = frame(1, (byte) 1, (byte) 2);
+        decode(bytes, 0, bytes.length - 1);
+        final PooledBuffer partial = this.decoder.payload;
+        assertEquals(1, partial.referenceCount());
+        this.decoder.release();
+        assertEquals(0, partial.referenceCount());
+        assertTrue(this.frames.isEmpty());
+    }
+}
@@ -0,0 +1,125 @@
+package fr.jazer.thread_manager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThreadPoolTest {
+
+    private final CountDownLatch blocker = new CountDownLatch(1);
+    private final Queue<String> ran = new ConcurrentLinkedQueue<>();
+    private ThreadPool pool;
+
+    @AfterEach
+    void destroy() {
+        this.blocker.countDown();
+        if (this.pool != null)
+            this.pool.destroy();
+    }
+
+    /**
+     * A pool of one Slave busy with a blocking task, and a queue of one task.
+     */
+    private ThreadPool busyPool(final RejectionPolicy policy) throws InterruptedException {
+        this.pool = new ThreadPool(0, 1, 2000, 1, policy, ThreadMode.PLATFORM);
+        final CountDownLatch started = new CountDownLatch(1);
+        this.pool.exe(() -> {
+            started.countDown();
+            try {
+                this.blocker.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return this.pool;
+    }
+
+    private Runnable task(final String name, final CountDownLatch done) {
+        return () -> {
+            this.ran.add(name);
+            done.countDown();
+        };
+    }
+
+    @Test
+    void refusesAQueueWithoutRoom() {
+        assertThrows(IllegalArgumentException.class, () -> new ThreadPool(0, 1, 2000, 0, RejectionPolicy.ABORT));
+        assertThrows(IllegalArgumentException.class, () -> new ThreadPool(2, 1, 2000, 1, RejectionPolicy.ABORT));
+    }
+
+    @Test
+    void runsTasksWithTheSmallestQueue() throws InterruptedException {
+        this.pool = new ThreadPool(0, 1, 2000, 1, RejectionPolicy.ABORT, ThreadMode.PLATFORM);
+        for (int i = 0; i < 20; i++) {
+            final CountDownLatch done = new CountDownLatch(1);
+            this.pool.exe(task("task", done));
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+        assertEquals(20, this.ran.size());
+    }
+
+    @Test
+    void abortThrowsWhenTheQueueIsFull() throws InterruptedException {
+        final ThreadPool pool = busyPool(RejectionPolicy.ABORT);
+        final CountDownLatch done = new CountDownLatch(1);
+        pool.exe(task("queued", done));
+        assertThrows(RejectedExecutionException.class, () -> pool.exe(task("rejected", done)));
+        this.blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("[queued]", this.ran.toString());
+    }
+
+    @Test
+    void callerRunsOnTheCallingThread() throws InterruptedException {
+        final ThreadPool pool = busyPool(RejectionPolicy.CALLER_RUNS);
+        pool.exe(task("queued", new CountDownLatch(1)));
+        final AtomicReference<Thread> runner = new AtomicReference<>();
+        pool.exe(() -> runner.set(Thread.currentThread()));
+        assertSame(Thread.currentThread(), runner.get());
+    }
+
+    @Test
+    void discardDropsTheNewTask() throws InterruptedException {
+        final ThreadPool pool = busyPool(RejectionPolicy.DISCARD);
+        final CountDownLatch done = new CountDownLatch(1);
+        pool.exe(task("queued", done));
+        pool.exe(task("dropped", done));
+        this.blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals("[queued]", this.ran.toString());
+    }
+
+    @Test
+    void discardOldestReplacesTheOldestTask() throws InterruptedException {
+        final ThreadPool pool = busyPool(RejectionPolicy.DISCARD_OLDEST);
+        final CountDownLatch done = new CountDownLatch(1);
+        pool.exe(task("oldest", done));
+        pool.exe(task("middle", done));
+        pool.exe(task("newest", done));
+        assertEquals(1, pool.getQueueDepth());
+        this.blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals("[newest]", this.ran.toString());
+        assertEquals(0, pool.getQueueDepth());
+    }
+
+    @Test
+    void destroyedPoolDiscardsTasks() throws InterruptedException {
+        this.pool = new ThreadPool(0, 1, 2000, 1, RejectionPolicy.ABORT, ThreadMode.PLATFORM);
+        this.pool.destroy();
+        final CountDownLatch done = new CountDownLatch(1);
+        this.pool.exe(task("dropped", done));
+        assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+        assertTrue(this.ran.isEmpty());
+    }
+}
@@ -0,0 +1,100 @@
+package fr.jazer.thread_manager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WheelTimerTest {
+
+    // 4 buckets of 10 ms, a turn of the wheel is 40 ms.
+    private final WheelTimer timer = new WheelTimer("Test-Timer", 10, TimeUnit.MILLISECONDS, 4);
+
+    @AfterEach
+    void shutdown() {
+        this.timer.shutdown();
+    }
+
+    @Test
+    void expiresAfterItsDelay() throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        final WheelTimer.Timeout timeout = this.timer.schedule(expired::countDown, 25, TimeUnit.MILLISECONDS);
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(25));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    void expiresAcrossRounds() throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(3);
+        final long start = System.nanoTime();
+        final long[] elapsed = new long[3];
+        final long[] delays = {95, 135, 170};
+        for (int i = 0; i < delays.length; i++) {
+            final int index = i;
+            this.timer.schedule(() -> {
+                elapsed[index] = System.nanoTime() - start;
+                expired.countDown();
+            }, delays[i], TimeUnit.MILLISECONDS);
+        }
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        // Several turns of the wheel, none expired on an earlier turn of its bucket.
+        for (int i = 0; i < delays.length; i++)
+            assertTrue(elapsed[i] >= TimeUnit.MILLISECONDS.toNanos(delays[i]), "Expired after " + elapsed[i] + " ns instead of " + delays[i] + " ms.");
+    }
+
+    @Test
+    void neverRunsACancelledTimeout() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        final WheelTimer.Timeout soon = this.timer.schedule(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+        final WheelTimer.Timeout later = this.timer.schedule(runs::incrementAndGet, 90, TimeUnit.MILLISECONDS);
+        assertTrue(soon.cancel());
+        assertFalse(soon.cancel());
+        // Cancelled once in the wheel, on a later round.
+        Thread.sleep(40);
+        assertTrue(later.cancel());
+
+        final CountDownLatch after = new CountDownLatch(1);
+        this.timer.schedule(after::countDown, 150, TimeUnit.MILLISECONDS);
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+        assertTrue(soon.isCancelled());
+        assertTrue(later.isCancelled());
+        assertFalse(later.isExpired());
+    }
+
+    @Test
+    void keepsRunningAfterAFailedTask() throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(1);
+        this.timer.schedule(() -> {
+            throw new IllegalStateException("Expected by the test.");
+        }, 0, TimeUnit.MILLISECONDS);
+        this.timer.schedule(expired::countDown, 30, TimeUnit.MILLISECONDS);
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void expiresEveryTimeoutOfABucket() throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++)
+            this.timer.schedule(expired::countDown, 15 + i % 3, TimeUnit.MILLISECONDS);
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertEquals(0, this.timer.getScheduledCount());
+    }
+
+    @Test
+    void neverExpiresAfterShutdown() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        final WheelTimer.Timeout timeout = this.timer.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        this.timer.shutdown();
+        Thread.sleep(150);
+        assertEquals(0, runs.get());
+        assertFalse(timeout.isExpired());
+    }
+}